@@ -32,7 +32,7 @@
  */
 package org.codehaus.preon;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -53,8 +53,18 @@ import nl.flotsam.pecia.builder.xml.XmlWriter;
 import org.codehaus.preon.binding.BindingDecorator;
 import org.codehaus.preon.buffer.BitBuffer;
 import org.codehaus.preon.buffer.DefaultBitBuffer;
+import org.codehaus.preon.buffer.DefaultBitBufferPool;
+import org.codehaus.preon.buffer.DeflateIndex;
+import org.codehaus.preon.buffer.InflatingBitBuffer;
+import org.codehaus.preon.buffer.MappedBitBuffer;
+import org.codehaus.preon.buffer.PrefetchingBitBuffer;
+import org.codehaus.preon.buffer.TrustedBitBuffer;
 import org.codehaus.preon.channel.BitChannel;
-import org.codehaus.preon.channel.OutputStreamBitChannel;
+import org.codehaus.preon.channel.BufferedBitChannel;
+import org.codehaus.preon.channel.ByteBufferBitChannel;
+import org.codehaus.preon.channel.CountingBitChannel;
+import org.codehaus.preon.codec.GeneratedCodec;
+import org.codehaus.preon.el.Expression;
 
 import org.apache.commons.io.IOUtils;
 
@@ -100,6 +110,54 @@ public class Codecs {
 
     }
 
+    /**
+     * An object decoded from a file that is read on demand, along with that file. Since parts of the object may be
+     * loaded lazily, the file is left open until {@link #close()} is called; the object should no longer be used after
+     * that, unless it has been loaded entirely.
+     *
+     * @param <T> The type of object decoded.
+     * @see Codecs#decode(Codec, Builder, File, boolean)
+     * @see Codecs#decode(Codec, Builder, File, DeflateIndex)
+     */
+    public static class Decoded<T> implements Closeable {
+
+        /**
+         * The object decoded.
+         */
+        private final T value;
+
+        /**
+         * The file the object is read from, or <code>null</code> if there is nothing to be closed.
+         */
+        private final Closeable resource;
+
+        private Decoded(T value, Closeable resource) {
+            this.value = value;
+            this.resource = resource;
+        }
+
+        /**
+         * Returns the object decoded.
+         *
+         * @return The object decoded.
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Closes the file the object is read from.
+         *
+         * @throws IOException If the file cannot be closed.
+         */
+        public void close() throws IOException {
+            if (resource != null) {
+                resource.close();
+            }
+        }
+
+    }
+
     /**
      * Documents the codec, writing a document of the given type to the given file.
      *
@@ -200,6 +258,49 @@ public class Codecs {
         return decode(codec, new DefaultBitBuffer(buffer), builder, null);
     }
 
+    /**
+     * Decodes an object from the buffer passed in, optionally treating its contents as <em>trusted</em>: input that is
+     * known to be valid. Trusted input is read using a {@link TrustedBitBuffer}, checking bounds once for every slice
+     * rather than on every read.
+     *
+     * @param <T>     The of object to be decoded.
+     * @param codec   The {@link Codec} that will take care of the actual work.
+     * @param buffer  The {@link ByteBuffer} holding the encoded data; preferably a direct buffer if trusted.
+     * @param builder The {@link Builder} used to construct objects, or <code>null</code> to use the default.
+     * @param trusted Whether the contents of the buffer is known to be valid.
+     * @return The decoded object.
+     * @throws DecodingException If the {@link Codec} fails to decode a value from the buffer passed in.
+     */
+    public static <T> T decode(Codec<T> codec, ByteBuffer buffer, Builder builder, boolean trusted)
+            throws DecodingException {
+        BitBuffer bitBuffer = trusted ? new TrustedBitBuffer(buffer) : new DefaultBitBuffer(buffer);
+        return decode(codec, bitBuffer, builder, null);
+    }
+
+    /**
+     * Decodes an object from the buffer passed in, using a {@link DefaultBitBuffer} taken from the pool passed in, rather
+     * than creating a new one. Useful when decoding many small messages in a row. Parts of the object decoded that are
+     * loaded lazily read from a duplicate of their own, rather than from the pooled instance, but still read from
+     * <code>buffer</code>: its contents should be left alone as long as the object decoded is in use.
+     *
+     * @param <T>     The of object to be decoded.
+     * @param codec   The {@link Codec} that will take care of the actual work.
+     * @param buffer  The {@link ByteBuffer} holding the encoded data, between its position and its limit.
+     * @param builder The {@link Builder} used to construct objects, or <code>null</code> to use the default.
+     * @param pool    The {@link DefaultBitBufferPool} owned by the current thread.
+     * @return The decoded object.
+     * @throws DecodingException If the {@link Codec} fails to decode a value from the buffer passed in.
+     */
+    public static <T> T decode(Codec<T> codec, ByteBuffer buffer, Builder builder, DefaultBitBufferPool pool)
+            throws DecodingException {
+        DefaultBitBuffer bitBuffer = pool.acquire(buffer);
+        try {
+            return decode(codec, bitBuffer, builder, null);
+        } finally {
+            pool.release(bitBuffer);
+        }
+    }
+
     public static <T> T decode(Codec<T> codec, BitBuffer buffer, Builder builder, Resolver resolver)
             throws DecodingException {
         if (builder == null) {
@@ -224,6 +325,18 @@ public class Codecs {
         return decode(codec, null, file);
     }
 
+    /**
+     * Decodes an object from the file passed in. Files larger than 2 GB are mapped using a {@link MappedBitBuffer}.
+     *
+     * @param <T>     The of object to be decoded.
+     * @param codec   The {@link Codec} that will take care of the actual work.
+     * @param builder The {@link Builder} used to construct objects, or <code>null</code> to use the default.
+     * @param file    The {@link File} providing the data to be decoded.
+     * @return The decoded object.
+     * @throws FileNotFoundException If the {@link File} does not exist.
+     * @throws IOException           If the system fails to read data from the file.
+     * @throws DecodingException     If the {@link Codec} fails to decode a value from the buffer passed in.
+     */
     public static <T> T decode(Codec<T> codec, Builder builder, File file)
             throws FileNotFoundException, IOException, DecodingException {
         FileInputStream in = null;
@@ -231,7 +344,10 @@ public class Codecs {
         try {
             in = new FileInputStream(file);
             channel = in.getChannel();
-            int fileSize = (int) channel.size();
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                return decode(codec, new MappedBitBuffer(file), builder, null);
+            }
             ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
                     fileSize);
             return decode(codec, buffer, builder);
@@ -242,6 +358,72 @@ public class Codecs {
         }
     }
 
+    /**
+     * Decodes an object from the file passed in, optionally reading it through a {@link PrefetchingBitBuffer} rather than
+     * mapping it into memory. The {@link PrefetchingBitBuffer} reads the file in blocks, loading the next blocks in the
+     * background while the current one is being decoded. Parts of the object decoded that are loaded lazily keep
+     * reading from the file, so it is only closed once the {@link Decoded} instance returned gets closed.
+     *
+     * @param <T>         The of object to be decoded.
+     * @param codec       The {@link Codec} that will take care of the actual work.
+     * @param builder     The {@link Builder} used to construct objects, or <code>null</code> to use the default.
+     * @param file        The {@link File} providing the data to be decoded.
+     * @param prefetching Whether the file should be read in the background, rather than being mapped into memory.
+     * @return The decoded object, along with the file it is read from.
+     * @throws FileNotFoundException If the {@link File} does not exist.
+     * @throws IOException           If the system fails to read data from the file.
+     * @throws DecodingException     If the {@link Codec} fails to decode a value from the buffer passed in.
+     */
+    public static <T> Decoded<T> decode(Codec<T> codec, Builder builder, File file, boolean prefetching)
+            throws FileNotFoundException, IOException, DecodingException {
+        if (!prefetching) {
+            return new Decoded<T>(decode(codec, builder, file), null);
+        }
+        PrefetchingBitBuffer buffer = new PrefetchingBitBuffer(file);
+        return decode(codec, builder, buffer, buffer);
+    }
+
+    /**
+     * Decodes an object from a file holding deflate compressed data (gzip, zlib or raw deflate), inflating the data on
+     * demand using an {@link InflatingBitBuffer}, rather than inflating the entire file up front. Parts of the object
+     * decoded that are loaded lazily keep inflating data from the file, so it is only closed once the {@link Decoded}
+     * instance returned gets closed.
+     *
+     * @param <T>     The of object to be decoded.
+     * @param codec   The {@link Codec} that will take care of the actual work.
+     * @param builder The {@link Builder} used to construct objects, or <code>null</code> to use the default.
+     * @param file    The {@link File} providing the compressed data to be decoded.
+     * @param index   The index of the file, typically {@link DeflateIndex#load(File) loaded} from a sidecar file, or
+     *                <code>null</code> to build it while opening the file.
+     * @return The decoded object, along with the file it is read from.
+     * @throws FileNotFoundException If the {@link File} does not exist.
+     * @throws IOException           If the system fails to read data from the file, or the data is not valid.
+     * @throws DecodingException     If the {@link Codec} fails to decode a value from the buffer passed in.
+     */
+    public static <T> Decoded<T> decode(Codec<T> codec, Builder builder, File file, DeflateIndex index)
+            throws FileNotFoundException, IOException, DecodingException {
+        InflatingBitBuffer buffer = index == null ? new InflatingBitBuffer(file) : new InflatingBitBuffer(file, index);
+        return decode(codec, builder, buffer, buffer);
+    }
+
+    /**
+     * Decodes an object from the buffer passed in, handing the resource the buffer reads from over to the {@link
+     * Decoded} instance returned. The resource is only closed right away if decoding fails.
+     */
+    private static <T> Decoded<T> decode(Codec<T> codec, Builder builder, BitBuffer buffer, Closeable resource)
+            throws IOException, DecodingException {
+        boolean decoded = false;
+        try {
+            Decoded<T> result = new Decoded<T>(decode(codec, buffer, builder, null), resource);
+            decoded = true;
+            return result;
+        } finally {
+            if (!decoded) {
+                resource.close();
+            }
+        }
+    }
+
     /**
      * Encodes the value to the channel passed in, using the given Codec. So why not have this operation on codec
      * instead? Well, it <em>is</em> actually there. However, there will be quite a few overloaded versions of this
@@ -259,24 +441,73 @@ public class Codecs {
         channel.flush(); 
     }
 
+    /**
+     * Encodes the value into a byte array, using the given Codec. The array is allocated up front, based on the size
+     * returned by {@link #sizeOf(Object, Codec)}, so the data encoded does not need to be copied.
+     *
+     * @param value The object that needs to be encoded.
+     * @param codec The codec to be used.
+     * @param <T>   The type of object to be encoded.
+     * @return The bytes encoded, the last one padded with zeros.
+     * @throws IOException If the value cannot be encoded.
+     */
     public static <T> byte[] encode(T value, Codec<T> codec) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        encode(value, codec, out);
-        return out.toByteArray();
+        long size = sizeOf(value, codec);
+        if (size > ((long) Integer.MAX_VALUE) << 3) {
+            throw new IOException("Encoded value (" + size + " bits) does not fit in a byte array.");
+        }
+        byte[] result = new byte[(int) ((size + 7) >>> 3)];
+        ByteBufferBitChannel channel = new ByteBufferBitChannel(ByteBuffer.wrap(result));
+        encode(value, codec, channel);
+        if (channel.size() != result.length) {
+            // The value did not encode to the size expected; return whatever has been encoded.
+            ByteBuffer bytes = channel.getByteBuffer();
+            result = new byte[bytes.remaining()];
+            bytes.get(result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the exact number of bits the value would be encoded into by the given Codec. If the size of the value
+     * does not depend on any data, it is obtained by evaluating the {@link Codec#getSize() size expression} of the
+     * Codec. Otherwise, the value is encoded to a {@link CountingBitChannel}, which only counts the bits written.
+     *
+     * @param value The object that would be encoded.
+     * @param codec The codec to be used.
+     * @param <T>   The type of object that would be encoded.
+     * @return The number of bits written when encoding the value, excluding the padding of the last byte.
+     * @throws IOException If the value cannot be encoded.
+     */
+    public static <T> long sizeOf(T value, Codec<T> codec) throws IOException {
+        Resolver resolver = new NullResolver();
+        Expression<Integer, Resolver> size = codec.getSize();
+        if (size != null && !size.isParameterized()) {
+            return size.eval(resolver);
+        }
+        CountingBitChannel channel = new CountingBitChannel();
+        codec.encode(value, channel, resolver);
+        return channel.getBitPos();
     }
 
     public static <T> void encode(T value, Codec<T> codec, OutputStream out) throws IOException {
-        encode(value, codec, new OutputStreamBitChannel(out));
+        encode(value, codec, new BufferedBitChannel(out));
     }
 
     /**
-     * Creates a {@link Codec} for the given type.
+     * Creates a {@link Codec} for the given type. If a {@link GeneratedCodec} has been generated for that type at
+     * compile time, an instance of that {@link Codec} is returned; otherwise, the {@link Codec} is constructed by
+     * reflecting on the type.
      *
      * @param <T>  The of object constructed using the {@link Codec}.
      * @param type The type of object constructed using the {@link Codec}.
      * @return A {@link Codec} capable of decoding/encoding instances of the type passed in.
      */
     public static <T> Codec<T> create(Class<T> type) {
+        Codec<T> generated = GeneratedCodec.forType(type);
+        if (generated != null) {
+            return generated;
+        }
         return new DefaultCodecFactory().create(type);
     }
 
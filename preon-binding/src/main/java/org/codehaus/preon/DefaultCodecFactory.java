@@ -91,8 +91,10 @@ public class DefaultCodecFactory implements CodecFactory {
         List<CodecDecorator> decorators = new ArrayList<CodecDecorator>();
         decorators.add(new LazyLoadingCodecDecorator());
         decorators.add(new SlicingCodecDecorator());
+        decorators.add(new LengthPrefixCodecDecorator());
         decorators.add(new ByteAligningDecorator());
         decorators.add(new InitCodecDecorator());
+        decorators.add(new ResyncDecorator());
         decorators.addAll(Arrays.asList(addOnDecorators));
 
         DecoratingCodecFactory top = new DecoratingCodecFactory(codecFactory,
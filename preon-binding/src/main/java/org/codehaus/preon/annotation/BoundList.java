@@ -39,6 +39,7 @@ import java.lang.annotation.Target;
 import java.util.List;
 
 import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.util.ElementCache;
 
 /**
  * The annotation used to mark {@link List} fields as potential candidates to be bound to a {@link BitBuffer}.
@@ -95,6 +96,18 @@ public @interface BoundList {
      */
     String offset() default "";
 
+    /**
+     * The condition ending a List of an unknown number of elements. A Limbo expression, evaluated before decoding every
+     * element, accepting a parameter 'index', representing the number of elements decoded so far, and a parameter
+     * 'last', representing the element decoded last. So an expression could be <code>index &gt;= maxRecords</code>, or
+     * <code>last.type == 0</code>, ending the List after a sentinel element of type 0. An expression referring to
+     * 'last' is only evaluated once the first element has been decoded. If not set, elements are decoded until the
+     * buffer is exhausted.
+     *
+     * @return A Limbo expression, evaluating to <code>true</code> once the List ends.
+     */
+    String until() default "";
+
     /** Indicates that the type prefix must be ignored. Note that this is fairly experimental. Use this with cause. */
     boolean ommitTypePrefix() default false;
 
@@ -105,4 +118,19 @@ public @interface BoundList {
      */
     Choices selectFrom() default @Choices(alternatives = {});
 
+    /**
+     * The way elements of a lazily loaded {@link List} are cached once decoded. By default, elements are held on to
+     * using soft references.
+     *
+     * @return The policy for caching elements decoded.
+     */
+    ElementCache.Policy cache() default ElementCache.Policy.SOFT;
+
+    /**
+     * The maximum number of elements cached, if the {@link #cache()} policy is {@link ElementCache.Policy#LRU}.
+     *
+     * @return The maximum number of elements cached.
+     */
+    int cacheSize() default 64;
+
 }
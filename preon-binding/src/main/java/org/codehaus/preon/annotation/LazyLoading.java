@@ -46,4 +46,15 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 public @interface LazyLoading {
 
+    /**
+     * Whether the data loaded may be reclaimed by the garbage collector, and loaded again from the buffer when needed.
+     * By default, the data is held on to once loaded, and the reference to the buffer is dropped, allowing for instance
+     * memory mapped files to be unmapped. Set this to <code>true</code> for large structures that are only read, in
+     * order to keep them only softly referenced; the buffer is then referenced for as long as the object, and any
+     * changes made to the object are lost once it gets reloaded.
+     *
+     * @return Whether to reload the data after the garbage collector reclaimed it.
+     */
+    boolean reload() default false;
+
 }
@@ -40,9 +40,14 @@ import org.codehaus.preon.buffer.ByteOrder;
 
 
 /**
- * The annotation used to indicate the discriminator used to recognize an instance of this class.
+ * The annotation used to indicate that a (compound) value is preceded by its length. While decoding, only the number
+ * of bits indicated by the prefix is passed on to the {@link Codec} of the value, so anything following the value can
+ * be reached even if the value is not decoded entirely. While encoding, the prefix is calculated from the number of
+ * bits encoded. Writing to a {@link org.codehaus.preon.channel.SeekableBitChannel}, the prefix is patched once the value
+ * has been written; writing to any other channel, the value is encoded into a temporary buffer first.
  *
  * @author Wilfred Springer
+ * @see Slice
  */
 @Retention(RetentionPolicy.RUNTIME)
 public @interface LengthPrefix {
@@ -55,9 +60,20 @@ public @interface LengthPrefix {
     ByteOrder endian() default ByteOrder.LittleEndian;
 
     /**
-     * The number of bits used to represent the numeric value. Defaults to 0, allowing the {@link Codec} to make its own
-     * decision on the number of bits to be used; however, they are expected to respect the following defaults:
+     * The number of bits used to represent the length. (A Limbo expression.) Defaults to "", in which case 32 bits are
+     * used.
+     *
+     * @return The size of the length prefix, in number of bits.
      */
     String size() default "";
 
+    /**
+     * The number of bits represented by a single unit of the length. Defaults to 8, in which case the prefix holds the
+     * length of the value in bytes. While encoding, the value is padded with zeros up to a multiple of this number of
+     * bits.
+     *
+     * @return The number of bits per unit of length.
+     */
+    int unit() default 8;
+
 }
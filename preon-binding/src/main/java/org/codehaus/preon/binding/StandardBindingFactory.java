@@ -41,6 +41,7 @@ import org.codehaus.preon.*;
 import org.codehaus.preon.buffer.BitBuffer;
 import org.codehaus.preon.buffer.BitBufferException;
 import org.codehaus.preon.channel.BitChannel;
+import org.codehaus.preon.codec.PrimitiveCodec;
 import org.codehaus.preon.reflect.ReflectionUtils;
 import org.codehaus.preon.rendering.CamelCaseRewriter;
 import org.codehaus.preon.rendering.IdentifierRewriter;
@@ -77,6 +78,11 @@ public class StandardBindingFactory implements BindingFactory {
 
         private Codec codec;
 
+        /**
+         * The {@link #codec}, if the field is of the primitive type decoded natively by it; <code>null</code> otherwise.
+         */
+        private PrimitiveCodec primitiveCodec;
+
         private IdentifierRewriter rewriter;
 
         private Decorator<Builder> builderDecorator;
@@ -93,6 +99,10 @@ public class StandardBindingFactory implements BindingFactory {
             this.rewriter = rewriter;
             this.containerReference = containerReference;
             field.setAccessible(true);
+            if (codec instanceof PrimitiveCodec
+                    && ((PrimitiveCodec) codec).getPrimitiveType() == field.getType()) {
+                primitiveCodec = (PrimitiveCodec) codec;
+            }
             Class<?> declaring = field.getDeclaringClass();
             builderDecorator = new ContextualBuilderDecorator(declaring);
         }
@@ -101,9 +111,13 @@ public class StandardBindingFactory implements BindingFactory {
                          Builder builder) throws DecodingException {
             try {
                 ReflectionUtils.makeAssessible(field);
-                Object value = codec.decode(buffer, resolver, builderDecorator
-                        .decorate(builder, object));
-                field.set(object, value);
+                if (primitiveCodec != null) {
+                    loadPrimitive(object, buffer, resolver);
+                } else {
+                    Object value = codec.decode(buffer, resolver, builderDecorator
+                            .decorate(builder, object));
+                    field.set(object, value);
+                }
             } catch (IllegalAccessException iae) {
                 throw new DecodingException(iae);
             } catch (DecodingException de) {
@@ -119,6 +133,25 @@ public class StandardBindingFactory implements BindingFactory {
             }
         }
 
+        /** Sets the field to the value decoded by the {@link #primitiveCodec}, without boxing it. */
+        private void loadPrimitive(Object object, BitBuffer buffer, Resolver resolver)
+                throws DecodingException, IllegalAccessException {
+            Class<?> type = primitiveCodec.getPrimitiveType();
+            if (type == int.class) {
+                field.setInt(object, primitiveCodec.decodeInt(buffer, resolver));
+            } else if (type == long.class) {
+                field.setLong(object, primitiveCodec.decodeLong(buffer, resolver));
+            } else if (type == short.class) {
+                field.setShort(object, primitiveCodec.decodeShort(buffer, resolver));
+            } else if (type == byte.class) {
+                field.setByte(object, primitiveCodec.decodeByte(buffer, resolver));
+            } else if (type == float.class) {
+                field.setFloat(object, primitiveCodec.decodeFloat(buffer, resolver));
+            } else {
+                field.setDouble(object, primitiveCodec.decodeDouble(buffer, resolver));
+            }
+        }
+
         public <V extends SimpleContents<?>> V describe(V contents) {
             CodecDescriptor codecDescriptor = codec.getCodecDescriptor();
             contents.para().document(codecDescriptor.summary()).end();
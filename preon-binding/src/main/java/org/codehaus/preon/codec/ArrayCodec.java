@@ -85,7 +85,13 @@ class ArrayCodec implements Codec<Object> {
 
     public Object decode(BitBuffer buffer, Resolver resolver,
                          Builder builder) throws DecodingException {
-        int length = size.eval(resolver).intValue();
+        int length = Expressions.evalInt(size, resolver);
+        if (type.getComponentType().isPrimitive() && codec instanceof NumericCodec) {
+            Object result = ((NumericCodec) codec).decodeArray(buffer, length, resolver);
+            if (result != null) {
+                return result;
+            }
+        }
         Object result = Array.newInstance(type.getComponentType(), length);
         for (int i = 0; i < length; i++) {
             Object value = codec.decode(buffer, resolver, builder);
@@ -95,7 +101,7 @@ class ArrayCodec implements Codec<Object> {
     }
 
     public void encode(Object object, BitChannel channel, Resolver resolver) throws IOException {
-        int numberOfElements = size.eval(resolver);
+        int numberOfElements = Expressions.evalInt(size, resolver);
         for (int i = 0; i < numberOfElements; i++) {
             codec.encode((Object) Array.get(object, i), channel, resolver);
         }
@@ -346,6 +346,25 @@ public class BindingsContext implements ObjectResolverContext {
             }
         }
 
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+
+        public boolean equals(Object other) {
+            if (other instanceof BindingReference) {
+                BindingReference that = (BindingReference) other;
+                return binding.equals(that.binding) && getReferenceContext().equals(that.getReferenceContext());
+            } else {
+                return false;
+            }
+        }
+
+        public int hashCode() {
+            return binding.hashCode();
+        }
+
     }
 
     /**
@@ -85,7 +85,7 @@ public class EnumCodec<T> implements Codec<T> {
 
     public T decode(BitBuffer buffer, Resolver resolver, Builder builder)
             throws DecodingException {
-        long value = buffer.readAsLong(size.eval(resolver), byteOrder);
+        long value = buffer.readAsLong(Expressions.evalInt(size, resolver), byteOrder);
         T result = mapping.get(value);
         if (result == null) {
             result = mapping.get(null);
@@ -94,7 +94,7 @@ public class EnumCodec<T> implements Codec<T> {
     }
 
     public void encode(T object, BitChannel channel, Resolver resolver) throws IOException {
-        channel.write(size.eval(resolver), inverseMapping.get(object), byteOrder);
+        channel.write(Expressions.evalInt(size, resolver), inverseMapping.get(object), byteOrder);
     }
 
     public Class<?>[] getTypes() {
@@ -82,7 +82,7 @@ public class FixedLengthStringCodec implements Codec<String> {
 		/* This takes a slice of the BitBuffer as a ByteBuffer,
 		 * and feeds it into encoding.decode.
 		 * */
-        int size = sizeExpr.eval(resolver);
+        int size = Expressions.evalInt(sizeExpr, resolver);
         ByteBuffer bytebuffer = ByteBuffer.allocate(size);
 		byte readbyte;
 		for (int i = 0; i < size; i++) {
@@ -104,7 +104,7 @@ public class FixedLengthStringCodec implements Codec<String> {
     }
 
     public void encode(String value, BitChannel channel, Resolver resolver) throws IOException {
-        int size = sizeExpr.eval(resolver);
+        int size = Expressions.evalInt(sizeExpr, resolver);
         ByteBuffer bytebuffer = ByteBuffer.allocate(size);
         encoder.encode(CharBuffer.wrap(value), bytebuffer, true);
 
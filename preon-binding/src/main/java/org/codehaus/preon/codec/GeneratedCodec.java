@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.codec;
+
+import org.codehaus.preon.Builder;
+import org.codehaus.preon.Codec;
+import org.codehaus.preon.CodecConstructionException;
+import org.codehaus.preon.CodecDescriptor;
+import org.codehaus.preon.DecodingException;
+import org.codehaus.preon.DefaultCodecFactory;
+import org.codehaus.preon.Resolver;
+import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.el.Expression;
+import org.codehaus.preon.el.Expressions;
+
+/**
+ * The base class of {@link Codec Codecs} generated at compile time by the annotation processor in the preon-processor
+ * module. A generated {@link Codec} reads and writes the fields of the type it has been generated for directly, without
+ * reflection, and with all expressions translated into plain Java. The generated class is named after the binary name
+ * of that type, followed by {@link #SUFFIX}, and {@link org.codehaus.preon.Codecs#create(Class)} uses it whenever it is
+ * found.
+ * <p/>
+ * Only types bound in ways the processor understands get a generated {@link Codec}; everything else keeps being
+ * handled through reflection. The {@link CodecDescriptor} of a generated {@link Codec} is taken from its reflective
+ * counterpart, which is constructed on demand.
+ *
+ * @param <T> The type of object decoded and encoded.
+ * @author Wilfred Springer
+ */
+public abstract class GeneratedCodec<T> implements Codec<T> {
+
+    /** The suffix appended to the binary name of a type to obtain the name of its generated {@link Codec}. */
+    public static final String SUFFIX = "$PreonCodec";
+
+    /** The type of object decoded and encoded. */
+    private final Class<T> type;
+
+    /** The number of bits of an encoded instance, or <code>-1</code> if it depends on the data. */
+    private final int size;
+
+    /** The reflective counterpart of this {@link Codec}, constructed on demand. */
+    private Codec<T> reflective;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param type The type of object decoded and encoded.
+     * @param size The number of bits of an encoded instance, or <code>-1</code> if it depends on the data.
+     */
+    protected GeneratedCodec(Class<T> type, int size) {
+        this.type = type;
+        this.size = size;
+    }
+
+    public T decode(BitBuffer buffer, Resolver resolver, Builder builder) throws DecodingException {
+        try {
+            T result = builder.create(type);
+            load(result, buffer);
+            return result;
+        } catch (InstantiationException ie) {
+            throw new DecodingException(type, ie);
+        } catch (IllegalAccessException iae) {
+            throw new DecodingException(iae);
+        }
+    }
+
+    /**
+     * Decodes the fields of the object passed in.
+     *
+     * @param value  The object constructed for holding the data decoded.
+     * @param buffer The buffer to read from.
+     * @throws DecodingException If the data does not match the expectations.
+     */
+    protected abstract void load(T value, BitBuffer buffer) throws DecodingException;
+
+    public Class<?>[] getTypes() {
+        return new Class[]{type};
+    }
+
+    public Expression<Integer, Resolver> getSize() {
+        return size < 0 ? null : Expressions.createInteger(size, Resolver.class);
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public CodecDescriptor getCodecDescriptor() {
+        return getReflectiveCodec().getCodecDescriptor();
+    }
+
+    public String toString() {
+        return "Generated codec of " + type.getSimpleName();
+    }
+
+    /**
+     * Throws an {@link UnsupportedOperationException}, for types that cannot be encoded.
+     *
+     * @param type The name of the type, in plural form.
+     */
+    protected static void encodingNotSupported(String type) {
+        throw new UnsupportedOperationException("Encoding not supported for " + type + ".");
+    }
+
+    private synchronized Codec<T> getReflectiveCodec() {
+        if (reflective == null) {
+            reflective = new DefaultCodecFactory().create(type);
+        }
+        return reflective;
+    }
+
+    /**
+     * Returns an instance of the {@link Codec} generated for the type passed in, if there is one.
+     *
+     * @param type The type of object to be decoded and encoded.
+     * @param <T>  The type of object to be decoded and encoded.
+     * @return The generated {@link Codec}, or <code>null</code> if none has been generated.
+     * @throws CodecConstructionException If the generated {@link Codec} cannot be instantiated.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Codec<T> forType(Class<T> type) {
+        Class<?> generated;
+        try {
+            generated = Class.forName(type.getName() + SUFFIX, true, type.getClassLoader());
+        } catch (ClassNotFoundException cnfe) {
+            return null;
+        }
+        if (!GeneratedCodec.class.isAssignableFrom(generated)) {
+            return null;
+        }
+        try {
+            return (Codec<T>) generated.newInstance();
+        } catch (InstantiationException ie) {
+            throw new CodecConstructionException("Failed to instantiate " + generated.getName() + ".");
+        } catch (IllegalAccessException iae) {
+            throw new CodecConstructionException("Failed to instantiate " + generated.getName() + ".");
+        }
+    }
+
+}
@@ -33,6 +33,7 @@
 package org.codehaus.preon.codec;
 
 import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
 import org.codehaus.preon.el.Expression;
@@ -41,16 +42,19 @@ import org.codehaus.preon.annotation.LazyLoading;
 import org.codehaus.preon.buffer.BitBuffer;
 import org.codehaus.preon.channel.BitChannel;
 import org.codehaus.preon.descriptor.PassThroughCodecDescriptor2;
+import org.codehaus.preon.util.LazyLoadingReference;
 
 import java.io.IOException;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
 
 /**
  * An attempt to create a general purpose {@link CodecFactory} whose {@link Codec Codecs} will only load their data once
- * operations are invoked upon them. <p/> <p> Note that there are some concurrency issues with this approach. The {@link
- * Codec} will create a proxy. When an operation is invoked on that proxy, the proxy will check if it already obtained
- * the actual value. This is where it's getting nasty. Multiple threads might come in simultaneously. </p>
+ * operations are invoked upon them. <p/> <p> The {@link Codec} will create a proxy. The proxy class is generated only
+ * once for every type, and instantiated for every object decoded. Every proxy decodes the actual value from a
+ * duplicate of the {@link BitBuffer}, the first time an operation is invoked upon it; if multiple threads come in
+ * simultaneously, only one of them will load the data, while the others wait for it. </p>
  *
  * @author Wilfred Springer
  */
@@ -59,7 +63,8 @@ public class LazyLoadingCodecDecorator implements CodecDecorator {
     public <T> Codec<T> decorate(Codec<T> decorated, AnnotatedElement metadata,
                                  Class<T> type, ResolverContext context) {
         if (metadata != null && metadata.isAnnotationPresent(LazyLoading.class)) {
-            return new LazyLoadingCodec<T>(decorated, type);
+            return new LazyLoadingCodec<T>(decorated, type,
+                    metadata.getAnnotation(LazyLoading.class).reload());
         } else {
             return decorated;
         }
@@ -75,6 +80,19 @@ public class LazyLoadingCodecDecorator implements CodecDecorator {
      */
     public static class LazyLoadingCodec<T> implements Codec<T> {
 
+        /**
+         * The {@link MethodInterceptor} of the prototypes, which are never expected to be used other than while they
+         * are being constructed.
+         */
+        private static final MethodInterceptor PROTOTYPE_INTERCEPTOR = new MethodInterceptor() {
+
+            public Object intercept(Object target, Method method, Object[] args, MethodProxy proxy)
+                    throws Throwable {
+                return proxy.invokeSuper(target, args);
+            }
+
+        };
+
         /**
          * The {@link Codec} to use.
          */
@@ -85,6 +103,18 @@ public class LazyLoadingCodecDecorator implements CodecDecorator {
          */
         private Class<T> type;
 
+        /**
+         * Whether to hold on to the data only softly, reloading it after the garbage collector reclaimed it.
+         */
+        private boolean reload;
+
+        /**
+         * An instance of the proxy class for the {@link #type}, used for creating new proxies; <code>null</code> until
+         * the first value is decoded. Kept by the {@link Codec} rather than in a static cache, so that it does not
+         * keep the class loader of the {@link #type} alive once the {@link Codec} is gone.
+         */
+        private volatile Factory prototype;
+
         /**
          * Constructs a new instance.
          *
@@ -94,8 +124,24 @@ public class LazyLoadingCodecDecorator implements CodecDecorator {
          *            The type of object that will be returned.
          */
         public LazyLoadingCodec(Codec<T> wrapped, Class<T> type) {
+            this(wrapped, type, false);
+        }
+
+        /**
+         * Constructs a new instance.
+         *
+         * @param wrapped
+         *            The {@link Codec} to use when loading the data.
+         * @param type
+         *            The type of object that will be returned.
+         * @param reload
+         *            Whether to hold on to the data only softly, reloading it after the garbage collector reclaimed it,
+         *            rather than holding on to the data and dropping the reference to the buffer.
+         */
+        public LazyLoadingCodec(Codec<T> wrapped, Class<T> type, boolean reload) {
             this.wrapped = wrapped;
             this.type = type;
+            this.reload = reload;
         }
 
         /*
@@ -110,25 +156,32 @@ public class LazyLoadingCodecDecorator implements CodecDecorator {
                         final Builder builder) throws DecodingException {
             final int size = wrapped.getSize().eval(resolver);
             final long pos = buffer.getBitPos();
-            ClassLoader loader = this.getClass().getClassLoader();
-            Enhancer enhancer = new Enhancer();
-            enhancer.setClassLoader(loader);
-            enhancer.setSuperclass(type);
-            enhancer.setCallback(new MethodInterceptor() {
-
-                private Object actual;
-
-                public Object intercept(Object target, Method method,
-                                        Object[] args, MethodProxy proxy) throws Throwable {
-                    if (actual == null) {
-                        buffer.setBitPos(pos);
-                        actual = wrapped.decode(buffer, resolver, builder);
-                    }
-                    return proxy.invoke(actual, args);
-                }
-            });
+            Loader<T> loader = new Loader<T>(wrapped, buffer.duplicate(), pos, resolver, builder);
             buffer.setBitPos(pos + size);
-            return (T) enhancer.create();
+            MethodInterceptor interceptor;
+            if (reload) {
+                interceptor = new ReloadingInterceptor<T>(loader);
+            } else {
+                interceptor = new ReleasingInterceptor<T>(loader);
+            }
+            return (T) getPrototype().newInstance(interceptor);
+        }
+
+        /**
+         * Returns an instance of the proxy class for the {@link #type}, generating the class if needed. Threads racing
+         * to create it may each create an instance, which is harmless, since Enhancer caches the class itself.
+         */
+        private Factory getPrototype() {
+            Factory result = prototype;
+            if (result == null) {
+                Enhancer enhancer = new Enhancer();
+                enhancer.setClassLoader(this.getClass().getClassLoader());
+                enhancer.setSuperclass(type);
+                enhancer.setCallback(PROTOTYPE_INTERCEPTOR);
+                result = (Factory) enhancer.create();
+                prototype = result;
+            }
+            return result;
         }
 
         public void encode(T value, BitChannel channel, Resolver resolver) throws IOException {
@@ -172,4 +225,91 @@ public class LazyLoadingCodecDecorator implements CodecDecorator {
 
     }
 
+    /**
+     * Loads the actual value of a proxy, from its own duplicate of the {@link BitBuffer}.
+     */
+    private static class Loader<T> implements LazyLoadingReference.Loader<T> {
+
+        private final Codec<T> codec;
+
+        private final BitBuffer cursor;
+
+        private final long pos;
+
+        private final Resolver resolver;
+
+        private final Builder builder;
+
+        public Loader(Codec<T> codec, BitBuffer cursor, long pos, Resolver resolver, Builder builder) {
+            this.codec = codec;
+            this.cursor = cursor;
+            this.pos = pos;
+            this.resolver = resolver;
+            this.builder = builder;
+        }
+
+        public T load() throws DecodingException {
+            cursor.setBitPos(pos);
+            return codec.decode(cursor, resolver, builder);
+        }
+
+    }
+
+    /**
+     * The {@link MethodInterceptor} of a proxy holding on to its value softly, reloading it from the {@link BitBuffer}
+     * if the garbage collector reclaimed it.
+     */
+    private static class ReloadingInterceptor<T> implements MethodInterceptor {
+
+        private final LazyLoadingReference<T> actual;
+
+        public ReloadingInterceptor(Loader<T> loader) {
+            this.actual = new LazyLoadingReference<T>(loader);
+        }
+
+        public Object intercept(Object target, Method method,
+                                Object[] args, MethodProxy proxy) throws Throwable {
+            T value;
+            try {
+                value = actual.get();
+            } catch (ExecutionException ee) {
+                throw ee.getCause();
+            }
+            return proxy.invoke(value, args);
+        }
+
+    }
+
+    /**
+     * The {@link MethodInterceptor} of a proxy holding on to its value once loaded, dropping the {@link Loader} and
+     * therefore the reference to the {@link BitBuffer}.
+     */
+    private static class ReleasingInterceptor<T> implements MethodInterceptor {
+
+        private Loader<T> loader;
+
+        private volatile T actual;
+
+        public ReleasingInterceptor(Loader<T> loader) {
+            this.loader = loader;
+        }
+
+        public Object intercept(Object target, Method method,
+                                Object[] args, MethodProxy proxy) throws Throwable {
+            T value = actual;
+            if (value == null) {
+                synchronized (this) {
+                    value = actual;
+                    if (value == null) {
+                        value = loader.load();
+                        actual = value;
+                        loader = null;
+                    }
+                }
+            }
+            return proxy.invoke(value, args);
+        }
+
+    }
+
 }
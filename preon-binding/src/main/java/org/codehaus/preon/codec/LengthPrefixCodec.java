@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.codec;
+
+import org.codehaus.preon.el.Expression;
+import org.codehaus.preon.el.Expressions;
+import nl.flotsam.pecia.Documenter;
+import nl.flotsam.pecia.ParaContents;
+import nl.flotsam.pecia.SimpleContents;
+import org.codehaus.preon.Builder;
+import org.codehaus.preon.Codec;
+import org.codehaus.preon.CodecDescriptor;
+import org.codehaus.preon.DecodingException;
+import org.codehaus.preon.Resolver;
+import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.buffer.ByteOrder;
+import org.codehaus.preon.channel.BitChannel;
+import org.codehaus.preon.channel.ByteBufferBitChannel;
+import org.codehaus.preon.channel.SeekableBitChannel;
+import org.codehaus.preon.descriptor.Documenters;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link Codec} decoration, reading the length of the value before decoding it from a slice of that length, and
+ * writing the length of the value before the value itself. When writing to a {@link SeekableBitChannel}, the length is
+ * patched after the value has been written; otherwise, the value is encoded into a temporary buffer first.
+ *
+ * @param <T> The type of object expected to be returned by this {@link Codec}.
+ */
+class LengthPrefixCodec<T> implements Codec<T> {
+
+    private final Codec<T> wrapped;
+
+    private final Expression<Integer, Resolver> sizeExpr;
+
+    private final ByteOrder endian;
+
+    private final int unit;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param wrapped  The {@link Codec} to be wrapped.
+     * @param sizeExpr The size of the length prefix, expressed in bits, as a Limbo expression.
+     * @param endian   The byte order of the length prefix.
+     * @param unit     The number of bits per unit of length.
+     */
+    public LengthPrefixCodec(Codec<T> wrapped, Expression<Integer, Resolver> sizeExpr, ByteOrder endian, int unit) {
+        this.wrapped = wrapped;
+        this.sizeExpr = sizeExpr;
+        this.endian = endian;
+        this.unit = unit;
+    }
+
+    public T decode(BitBuffer buffer, Resolver resolver, Builder builder)
+            throws DecodingException {
+        long length = buffer.readAsLong(Expressions.evalInt(sizeExpr, resolver), endian);
+        BitBuffer slice = buffer.slice(length * unit);
+        return wrapped.decode(slice, resolver, builder);
+    }
+
+    public void encode(T value, BitChannel channel, Resolver resolver) throws IOException {
+        int nrBits = Expressions.evalInt(sizeExpr, resolver);
+        if (channel instanceof SeekableBitChannel) {
+            SeekableBitChannel seekable = (SeekableBitChannel) channel;
+            long prefixPos = seekable.reserve(nrBits);
+            long start = seekable.getBitPos();
+            wrapped.encode(value, channel, resolver);
+            long length = pad(channel, seekable.getBitPos() - start, nrBits);
+            seekable.patch(prefixPos, nrBits, length, endian);
+        } else {
+            ByteBufferBitChannel contents = new ByteBufferBitChannel(ByteBufferBitChannel.DEFAULT_CAPACITY, false);
+            wrapped.encode(value, contents, resolver);
+            long length = pad(contents, contents.getBitPos(), nrBits);
+            long bits = contents.getBitPos();
+            channel.write(nrBits, length, endian);
+            ByteBuffer bytes = contents.getByteBuffer();
+            byte[] array = new byte[bytes.remaining()];
+            bytes.get(array);
+            channel.write(array, 0, (int) (bits >>> 3));
+            if ((bits & 7) != 0) {
+                channel.write((int) (bits & 7), (byte) ((array[array.length - 1] & 0xff) >>> (8 - (bits & 7))));
+            }
+        }
+    }
+
+    /**
+     * Pads the value written with zeros, up to a multiple of {@link #unit} bits.
+     *
+     * @param channel The channel to which the value has been written.
+     * @param bits    The number of bits written.
+     * @param nrBits  The number of bits of the length prefix.
+     * @return The length of the value, in units.
+     * @throws IOException If the padding cannot be written, or the length does not fit the prefix.
+     */
+    private long pad(BitChannel channel, long bits, int nrBits) throws IOException {
+        long padding = (unit - bits % unit) % unit;
+        for (long remaining = padding; remaining > 0; remaining -= 64) {
+            channel.write((int) Math.min(remaining, 64), 0L, ByteOrder.BigEndian);
+        }
+        long length = (bits + padding) / unit;
+        if (nrBits < 64 && (length >>> nrBits) != 0) {
+            throw new IOException("Length " + length + " does not fit in a " + nrBits + "-bit length prefix.");
+        }
+        return length;
+    }
+
+    public Class<?>[] getTypes() {
+        return wrapped.getTypes();
+    }
+
+    public Expression<Integer, Resolver> getSize() {
+        return null;
+    }
+
+    public Class<?> getType() {
+        return wrapped.getType();
+    }
+
+    public CodecDescriptor getCodecDescriptor() {
+        return new CodecDescriptor() {
+
+            public <C extends SimpleContents<?>> Documenter<C> details(
+                    final String bufferReference) {
+                return new Documenter<C>() {
+                    public void document(C target) {
+                        target.para().text("The format precedes ")
+                                .document(
+                                        wrapped.getCodecDescriptor()
+                                                .reference(Adjective.THE, false))
+                                .text(" by its length in units of ")
+                                .text(Integer.toString(unit))
+                                .text(" bits, encoded as a ")
+                                .document(Documenters.forByteOrder(endian))
+                                .text(" integer of ")
+                                .document(Documenters.forBits(sizeExpr))
+                                .text(".")
+                                .end();
+                        target.document(wrapped.getCodecDescriptor()
+                                .details(bufferReference));
+                    }
+                };
+            }
+
+            public String getTitle() {
+                return null;
+            }
+
+            public <C extends ParaContents<?>> Documenter<C> reference(
+                    Adjective adjective, boolean startWithCapital) {
+                return wrapped.getCodecDescriptor().reference(adjective, false);
+            }
+
+            public boolean requiresDedicatedSection() {
+                return false;
+            }
+
+            public <C extends ParaContents<?>> Documenter<C> summary() {
+                return wrapped.getCodecDescriptor().summary();
+            }
+
+        };
+    }
+}
@@ -32,10 +32,10 @@
  */
 package org.codehaus.preon.codec;
 
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.codehaus.preon.el.BindingException;
@@ -59,6 +59,7 @@ import org.codehaus.preon.ResolverContext;
 import org.codehaus.preon.annotation.BoundList;
 import org.codehaus.preon.annotation.BoundObject;
 import org.codehaus.preon.annotation.Choices;
+import org.codehaus.preon.annotation.Slice;
 import org.codehaus.preon.buffer.BitBuffer;
 import org.codehaus.preon.buffer.BitBufferUnderflowException;
 import org.codehaus.preon.buffer.SlicedBitBuffer;
@@ -66,10 +67,14 @@ import org.codehaus.preon.channel.BitChannel;
 import org.codehaus.preon.descriptor.Documenters;
 import org.codehaus.preon.descriptor.NullCodecDescriptor2;
 import org.codehaus.preon.el.ContextReplacingReference;
+import org.codehaus.preon.el.PropertyReference;
+import org.codehaus.preon.el.ctx.MultiReference;
 import org.codehaus.preon.util.AnnotationWrapper;
 import org.codehaus.preon.util.CodecDescriptorHolder;
+import org.codehaus.preon.util.ElementCache;
 import org.codehaus.preon.util.EvenlyDistributedLazyList;
 import org.codehaus.preon.util.ParaContentsDocument;
+import org.codehaus.preon.util.UnevenlyDistributedLazyList;
 
 import javax.annotation.Nullable;
 
@@ -115,11 +120,21 @@ public class ListCodecFactory implements CodecFactory {
             Codec<?> codec = createElementCodec(context, settings);
             if (settings.size().length() == 0) {
                 // So, we don't know the number of elements in this list.
-                // This means we need to keep on reading elements until we get
-                // an 'EOF' or a DecodingException. In case of a
-                // DecodingException, the pointer is expected to be moved back
-                // to the first position.
-                return (Codec<T>) new DynamicListCodec(codec);
+                // This means we need to keep on reading elements until the
+                // condition ending the list holds, or until we run out of
+                // data. In case of a DecodingException, the pointer is
+                // expected to be moved back to the first position.
+                Expression<Boolean, Resolver> until = null;
+                boolean untilReadsLast = false;
+                CodecDescriptorHolder holder = new CodecDescriptorHolder();
+                if (settings.until().length() != 0) {
+                    IndexedResolverContext untilContext = new IndexedResolverContext(context, holder, codec);
+                    until = Expressions.createBoolean(untilContext, settings.until());
+                    untilReadsLast = untilContext.isLastSelected();
+                }
+                Codec<T> result = (Codec<T>) new DynamicListCodec(codec, until, untilReadsLast);
+                holder.setDescriptor(result.getCodecDescriptor());
+                return result;
             } else if (settings.offset().length() != 0) {
                 // So the size is known. If the offset attribute has been set,
                 // it means we can calculate the position of the individual
@@ -148,13 +163,18 @@ public class ListCodecFactory implements CodecFactory {
                 Expression<Integer, Resolver> elementSize = codec.getSize();
                 if (elementSize != null && (!elementSize.isParameterized() || elementSize.isConstantFor(context))) {
                     if (!elementSize.isParameterized()) {
-                        return new StaticListCodec(expr, codec, elementSize);
+                        return new StaticListCodec(expr, codec, elementSize, settings.cache(),
+                                settings.cacheSize());
                     } else {
                         elementSize = elementSize.rescope(context);
-                        return new StaticListCodec(expr.rescope(context), codec, elementSize);
+                        return new StaticListCodec(expr.rescope(context), codec, elementSize, settings.cache(),
+                                settings.cacheSize());
                     }
                 } else {
-                    return new DynamicListCodec(codec);
+                    // The size of the elements depends on their contents. If the List is sliced, we do not need
+                    // to find its end while decoding, and elements are only decoded when needed.
+                    return new IndexingListCodec(expr, codec, metadata.isAnnotationPresent(Slice.class),
+                            settings.cache(), settings.cacheSize());
                 }
             }
         } else {
@@ -242,25 +262,47 @@ public class ListCodecFactory implements CodecFactory {
          */
         private Expression<Integer, Resolver> elementSize;
 
+        /**
+         * The policy for caching the elements decoded.
+         */
+        private ElementCache.Policy cache;
+
+        /**
+         * The maximum number of elements cached, if limited by the {@link #cache} policy.
+         */
+        private int cacheSize;
+
         /**
          * Constructs a new instance.
          *
-         * @param maxSize An {@link Expression} representing the number of elements in the {@link List}.
-         * @param codec   The {@link Codec} constructing elements in the {@link List}.
+         * @param maxSize   An {@link Expression} representing the number of elements in the {@link List}.
+         * @param codec     The {@link Codec} constructing elements in the {@link List}.
+         * @param cache     The policy for caching the elements decoded.
+         * @param cacheSize The maximum number of elements cached, if limited by the policy.
          */
         public StaticListCodec(Expression<Integer, Resolver> maxSize,
                                Codec<T> codec,
-                               Expression<Integer, Resolver> elementSize) {
+                               Expression<Integer, Resolver> elementSize,
+                               ElementCache.Policy cache,
+                               int cacheSize) {
             this.size = maxSize;
             this.codec = codec;
             this.elementSize = elementSize;
+            this.cache = cache;
+            this.cacheSize = cacheSize;
         }
 
-        @SuppressWarnings("unchecked")
         public List<T> decode(BitBuffer buffer, Resolver resolver,
                               Builder builder) throws DecodingException {
-            return new EvenlyDistributedLazyList(codec, buffer.getBitPos(),
-                    buffer, size.eval(resolver), builder, resolver, elementSize.eval(resolver));
+            long start = buffer.getBitPos();
+            int length = Expressions.evalInt(size, resolver);
+            int bits = Expressions.evalInt(elementSize, resolver);
+            // The list decodes its elements from duplicates of its own duplicate, so it keeps working even if the
+            // buffer passed in gets reused, as when taken from a DefaultBitBufferPool; skip the elements here.
+            BitBuffer duplicate = buffer.duplicate();
+            buffer.setBitPos(start + (long) length * bits);
+            return new EvenlyDistributedLazyList<T>(codec, start, duplicate, length, builder, resolver, bits,
+                    cache.<T>create(length, cacheSize));
         }
 
         public void encode(List<T> value, BitChannel channel, Resolver resolver) {
@@ -332,6 +374,141 @@ public class ListCodecFactory implements CodecFactory {
 
     }
 
+    /**
+     * The {@link Codec} for reading a {@link List} of a known number of elements, varying in size. Instances of this
+     * class will create an {@link UnevenlyDistributedLazyList}, indexing the positions of its elements as they are
+     * needed. Unless the {@link List} is sliced, all elements are decoded once in order to find the end of the {@link
+     * List}, and kept in the cache, depending on its policy.
+     */
+    private static class IndexingListCodec<T> implements Codec<List<T>> {
+
+        /**
+         * The number of elements in the list.
+         */
+        private Expression<Integer, Resolver> size;
+
+        /**
+         * The {@link Codec} that will construct elements from the {@link List}.
+         */
+        private Codec<T> codec;
+
+        /**
+         * Whether the {@link BitBuffer} passed in is a slice holding the {@link List} only, which means there is no
+         * need to move past the end of the {@link List}.
+         */
+        private boolean sliced;
+
+        /**
+         * The policy for caching the elements decoded.
+         */
+        private ElementCache.Policy cache;
+
+        /**
+         * The maximum number of elements cached, if limited by the {@link #cache} policy.
+         */
+        private int cacheSize;
+
+        /**
+         * Constructs a new instance.
+         *
+         * @param size      An {@link Expression} representing the number of elements in the {@link List}.
+         * @param codec     The {@link Codec} constructing elements in the {@link List}.
+         * @param sliced    Whether the {@link List} is read from a slice of its own.
+         * @param cache     The policy for caching the elements decoded.
+         * @param cacheSize The maximum number of elements cached, if limited by the policy.
+         */
+        public IndexingListCodec(Expression<Integer, Resolver> size, Codec<T> codec, boolean sliced,
+                                 ElementCache.Policy cache, int cacheSize) {
+            this.size = size;
+            this.codec = codec;
+            this.sliced = sliced;
+            this.cache = cache;
+            this.cacheSize = cacheSize;
+        }
+
+        public List<T> decode(BitBuffer buffer, Resolver resolver,
+                              Builder builder) throws DecodingException {
+            int length = Expressions.evalInt(size, resolver);
+            // A duplicate of its own, since the buffer passed in may get reused
+            UnevenlyDistributedLazyList<T> result = new UnevenlyDistributedLazyList<T>(codec, buffer.getBitPos(),
+                    buffer.duplicate(), length, builder, resolver, cache.<T>create(length, cacheSize));
+            if (!sliced) {
+                buffer.setBitPos(result.getEnd());
+            }
+            return result;
+        }
+
+        public void encode(List<T> value, BitChannel channel, Resolver resolver) throws IOException {
+            for (T element : value) {
+                codec.encode(element, channel, resolver);
+            }
+        }
+
+        public Class<?>[] getTypes() {
+            return codec.getTypes();
+        }
+
+        public Expression<Integer, Resolver> getSize() {
+            return null;
+        }
+
+        public Class<?> getType() {
+            return List.class;
+        }
+
+        public CodecDescriptor getCodecDescriptor() {
+            return new CodecDescriptor() {
+
+                public <C extends SimpleContents<?>> Documenter<C> details(
+                        final String bufferReference) {
+                    return new Documenter<C>() {
+                        public void document(C target) {
+                            target.para().text("The number of elements in ")
+                                    .document(reference(Adjective.THE, false)).text(
+                                    " is ").document(
+                                    Documenters.forExpression(size))
+                                    .text(".")
+                                    .end();
+                            if (!codec.getCodecDescriptor().requiresDedicatedSection()) {
+                                target.document(codec.getCodecDescriptor().details(bufferReference));
+                            }
+                        }
+                    };
+                }
+
+                public String getTitle() {
+                    return null;
+                }
+
+                public <C extends ParaContents<?>> Documenter<C> reference(
+                        final Adjective adjective, final boolean startWithCapital) {
+                    return new Documenter<C>() {
+                        public void document(C target) {
+                            target.text(adjective.asTextPreferA(startWithCapital)).text(
+                                    "list of ").document(
+                                    codec.getCodecDescriptor().reference(
+                                            Adjective.NONE, false));
+                        }
+                    };
+                }
+
+                public boolean requiresDedicatedSection() {
+                    return false;
+                }
+
+                public <C extends ParaContents<?>> Documenter<C> summary() {
+                    return new Documenter<C>() {
+                        public void document(C target) {
+                            target.document(reference(Adjective.A, true)).text(".");
+                        }
+                    };
+                }
+
+            };
+        }
+
+    }
+
     /**
      * Returns the {@link Expression} that will be evaluated to the {@link List} 's size.
      *
@@ -344,22 +521,73 @@ public class ListCodecFactory implements CodecFactory {
         return Expressions.createInteger(context, listSettings.size());
     }
 
-    private static class DynamicListCodec<T> implements Codec<List<T>> {
+    static class DynamicListCodec<T> implements Codec<List<T>> {
+
+        /**
+         * The initial capacity of the {@link List}, if the size of the elements is unknown.
+         */
+        private static final int DEFAULT_CAPACITY = 16;
+
+        /**
+         * The largest initial capacity of the {@link List}; beyond that, it just grows as elements get added.
+         */
+        static final int MAX_INITIAL_CAPACITY = 1024;
 
         private Codec<T> codec;
 
+        /**
+         * The condition ending the {@link List}, or <code>null</code> if the {@link List} ends with the buffer.
+         */
+        private Expression<Boolean, Resolver> until;
+
+        /**
+         * Whether {@link #until} refers to the element decoded last, in which case it is only evaluated once there is
+         * such an element.
+         */
+        private boolean untilReadsLast;
+
+        /**
+         * The minimal number of bits occupied by an element, if known up front; <code>1</code> otherwise.
+         */
+        private int elementSize = 1;
+
         public DynamicListCodec(Codec<T> codec) {
+            this(codec, null);
+        }
+
+        public DynamicListCodec(Codec<T> codec, Expression<Boolean, Resolver> until) {
+            this(codec, until, false);
+        }
+
+        public DynamicListCodec(Codec<T> codec, Expression<Boolean, Resolver> until, boolean untilReadsLast) {
             this.codec = codec;
+            this.until = until;
+            this.untilReadsLast = untilReadsLast;
+            Expression<Integer, Resolver> size = codec.getSize();
+            if (size != null && !size.isParameterized()) {
+                elementSize = Math.max(1, size.eval(null));
+            }
         }
 
         public List<T> decode(BitBuffer buffer, Resolver resolver,
                               Builder builder) throws DecodingException {
-            List<T> result = new LinkedList<T>();
             long mark = buffer.getBitPos();
+            List<T> result = new ArrayList<T>(getInitialCapacity(buffer.getBitBufBitSize() - mark));
+            IndexResolver indexResolver = until == null ? null : new IndexResolver(resolver);
             try {
-                while (true) {
+                // Ending the loop with an exception is costly; stop as soon as we know no element can follow.
+                while (buffer.getBitBufBitSize() - mark >= elementSize) {
+                    if (indexResolver != null && (!untilReadsLast || !result.isEmpty())) {
+                        indexResolver.setIndex(result.size());
+                        if (until.eval(indexResolver)) {
+                            break;
+                        }
+                    }
                     T value = codec.decode(buffer, resolver, builder);
                     result.add(value);
+                    if (indexResolver != null) {
+                        indexResolver.setLast(value);
+                    }
                     mark = buffer.getBitPos();
                 }
             } catch (BitBufferUnderflowException oore) {
@@ -375,6 +603,23 @@ public class ListCodecFactory implements CodecFactory {
             return result;
         }
 
+        /**
+         * Returns the initial capacity of the {@link List}: the number of elements fitting in the bits remaining, if the
+         * size of the elements is known, but never more than {@link #MAX_INITIAL_CAPACITY}, since the number of bits
+         * remaining may be unknown ({@link Long#MAX_VALUE}), or the {@link List} may end long before the buffer does.
+         * If the {@link List} ends on a condition, it is not presized at all.
+         *
+         * @param remaining The number of bits remaining in the buffer.
+         * @return The initial capacity of the {@link List}.
+         */
+        int getInitialCapacity(long remaining) {
+            if (until != null || elementSize <= 1) {
+                return DEFAULT_CAPACITY;
+            } else {
+                return (int) Math.max(0, Math.min(remaining / elementSize, MAX_INITIAL_CAPACITY));
+            }
+        }
+
         public void encode(List<T> value, BitChannel channel, Resolver resolver) {
             throw new UnsupportedOperationException();
         }
@@ -398,11 +643,20 @@ public class ListCodecFactory implements CodecFactory {
                         final String bufferReference) {
                     return new Documenter<C>() {
                         public void document(C target) {
-                            target
-                                    .para()
-                                    .text(
-                                            "The number of elements in the list is unknown at forehand. The codec will just decode as many elements as the buffer allows to decode.")
-                                    .end();
+                            if (until == null) {
+                                target
+                                        .para()
+                                        .text(
+                                                "The number of elements in the list is unknown at forehand. The codec will just decode as many elements as the buffer allows to decode.")
+                                        .end();
+                            } else {
+                                target
+                                        .para()
+                                        .text("The number of elements in the list is unknown at forehand. The list ends as soon as ")
+                                        .document(Documenters.forExpression(until))
+                                        .text(", or when running out of data.")
+                                        .end();
+                            }
                             if (!codec.getCodecDescriptor().requiresDedicatedSection()) {
                                 target.document(codec.getCodecDescriptor().details(bufferReference));
                             }
@@ -464,7 +718,7 @@ public class ListCodecFactory implements CodecFactory {
         public List<T> decode(BitBuffer buffer, Resolver resolver,
                               Builder builder) throws DecodingException {
             Expression<Integer, Resolver> sizeExpr = skipListCodec.getSize();
-            if (sizeExpr != null && sizeExpr.eval(resolver) >= 0) {
+            if (sizeExpr != null && Expressions.evalInt(sizeExpr, resolver) >= 0) {
                 return skipListCodec.decode(buffer, resolver, builder);
             } else {
                 return nonSkipListCodec.decode(buffer, resolver, builder);
@@ -509,17 +763,43 @@ public class ListCodecFactory implements CodecFactory {
 
         final public static String INDEX = "index";
 
+        final public static String LAST = "last";
+
         private CodecDescriptor descriptor;
 
+        /**
+         * The {@link Codec} of the elements, if the element decoded last can be referred to; <code>null</code>
+         * otherwise.
+         */
+        private Codec<?> elementCodec;
+
+        /**
+         * Whether the element decoded last has been referred to.
+         */
+        private boolean lastSelected;
+
         public IndexedResolverContext(ResolverContext context,
                                       CodecDescriptor descriptor) {
+            this(context, descriptor, null);
+        }
+
+        public IndexedResolverContext(ResolverContext context,
+                                      CodecDescriptor descriptor, Codec<?> elementCodec) {
             this.context = context;
             this.descriptor = descriptor;
+            this.elementCodec = elementCodec;
+        }
+
+        public boolean isLastSelected() {
+            return lastSelected;
         }
 
         public Reference<Resolver> selectAttribute(String name) {
             if (INDEX.equals(name)) {
                 return new IndexReference(context, descriptor);
+            } else if (LAST.equals(name) && elementCodec != null) {
+                lastSelected = true;
+                return new LastReference(context, descriptor, elementCodec);
             } else {
                 return new ContextReplacingReference(this, context
                         .selectAttribute(name));
@@ -607,6 +887,96 @@ public class ListCodecFactory implements CodecFactory {
 
         }
 
+        /**
+         * A {@link Reference} to the element decoded last.
+         */
+        private static class LastReference implements Reference<Resolver> {
+
+            private ReferenceContext<Resolver> context;
+
+            private CodecDescriptor descriptor;
+
+            private Codec<?> codec;
+
+            public LastReference(ReferenceContext<Resolver> context,
+                                 CodecDescriptor descriptor, Codec<?> codec) {
+                this.context = context;
+                this.descriptor = descriptor;
+                this.codec = codec;
+            }
+
+            public ReferenceContext<Resolver> getReferenceContext() {
+                return context;
+            }
+
+            public boolean isAssignableTo(Class<?> type) {
+                for (Class<?> bound : codec.getTypes()) {
+                    if (bound.isAssignableFrom(type)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            public Object resolve(Resolver context) {
+                return context.get(LAST);
+            }
+
+            @SuppressWarnings("unchecked")
+            public Reference<Resolver> selectAttribute(String name) {
+                Reference<Resolver>[] template = new Reference[0];
+                List<Reference<Resolver>> references = new ArrayList<Reference<Resolver>>();
+                for (Class<?> bound : codec.getTypes()) {
+                    try {
+                        references.add(new PropertyReference(this, bound, name, context, false));
+                    } catch (BindingException be) {
+                        // Ok, let's skip this one.
+                    }
+                }
+                if (references.size() == 0) {
+                    throw new BindingException("Attribute " + name + " not defined for any type.");
+                } else {
+                    return new MultiReference<Resolver>(references.toArray(template));
+                }
+            }
+
+            public Reference<Resolver> selectItem(String index) {
+                throw new BindingException("No item selection allowed.");
+            }
+
+            public Reference<Resolver> selectItem(
+                    Expression<Integer, Resolver> index) {
+                throw new BindingException("No item selection allowed.");
+            }
+
+            public void document(Document target) {
+                target.text("the element decoded last in ");
+                ParaContentsDocument doc = new ParaContentsDocument(target);
+                doc.document(Documenters.forDescriptor(descriptor));
+            }
+
+            public Class<?> getType() {
+                return codec.getType();
+            }
+
+            public Reference<Resolver> narrow(Class<?> type) {
+                if (type.isAssignableFrom(codec.getType())) {
+                    return this;
+                } else {
+                    return null;
+                }
+            }
+
+            public boolean isBasedOn(ReferenceContext<Resolver> resolverReferenceContext) {
+                return false;
+            }
+
+            public Reference<Resolver> rescope(ReferenceContext<Resolver> resolverReferenceContext) {
+                return this;
+            }
+
+        }
+
     }
 
     private static class IndexResolver implements Resolver {
@@ -615,6 +985,8 @@ public class ListCodecFactory implements CodecFactory {
 
         private int index;
 
+        private Object last;
+
         public IndexResolver(Resolver resolver) {
             this.resolver = resolver;
         }
@@ -622,6 +994,8 @@ public class ListCodecFactory implements CodecFactory {
         public Object get(String name) {
             if (IndexedResolverContext.INDEX.equals(name)) {
                 return index;
+            } else if (IndexedResolverContext.LAST.equals(name)) {
+                return last;
             } else {
                 return resolver.get(name);
             }
@@ -635,6 +1009,10 @@ public class ListCodecFactory implements CodecFactory {
             this.index = index;
         }
 
+        public void setLast(Object last) {
+            this.last = last;
+        }
+
         public Resolver getOriginalResolver() {
             return this;
         }
@@ -682,7 +1060,7 @@ public class ListCodecFactory implements CodecFactory {
 
         public List<T> decode(BitBuffer buffer, Resolver resolver,
                               Builder builder) throws DecodingException {
-            int maxSize = size.eval(resolver);
+            int maxSize = Expressions.evalInt(size, resolver);
             List<T> result = new ArrayList<T>(maxSize);
             long curPos = buffer.getBitPos();
             IndexResolver indexResolver = new IndexResolver(resolver);
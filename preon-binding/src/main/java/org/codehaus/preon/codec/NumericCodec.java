@@ -61,7 +61,7 @@ import org.codehaus.preon.descriptor.Documenters;
 import org.codehaus.preon.descriptor.NullDocumenter;
 
 /** The {@link org.codehaus.preon.Codec} capable of decoding numeric types in a sensible way. */
-public class NumericCodec implements Codec<Object> {
+public class NumericCodec implements Codec<Object>, PrimitiveCodec {
 
     static Map<Class<?>, NumericType> NUMERIC_TYPES = new HashMap<Class<?>, NumericType>(
             8);
@@ -100,29 +100,101 @@ public class NumericCodec implements Codec<Object> {
 
     public Object decode(BitBuffer buffer, Resolver resolver,
                          Builder builder) throws DecodingException {
-        int size = ((Number) (this.sizeExpr.eval(resolver))).intValue();
+        int size = Expressions.evalInt(sizeExpr, resolver);
         Object result = type.decode(buffer, size, byteOrder);
         if (matchExpr != null) {
-            if (!matchExpr.eval(resolver).equals(Converters.toInt(result))) {
-                StringBuilder stringBuilder = new StringBuilder();
-                Document document = new StringBuilderDocument(stringBuilder);
-                if (matchExpr.isParameterized()) {
-                    stringBuilder.append("Expected different value than "
-                            + result);
-                } else {
-                    stringBuilder.append("Expected ");
-                    matchExpr.document(document);
-                    stringBuilder.append(" but got ");
-                    stringBuilder.append(result);
-                }
-                throw new DecodingException(stringBuilder.toString());
+            if (Expressions.evalInt(matchExpr, resolver) != Converters.toInt(result)) {
+                throw mismatch(result);
             }
         }
         return result;
     }
 
+    public Class<?> getPrimitiveType() {
+        return type.getPrimitiveType();
+    }
+
+    public int decodeInt(BitBuffer buffer, Resolver resolver) throws DecodingException {
+        int result = buffer.readAsInt(Expressions.evalInt(sizeExpr, resolver), byteOrder);
+        if (matchExpr != null && Expressions.evalInt(matchExpr, resolver) != result) {
+            throw mismatch(result);
+        }
+        return result;
+    }
+
+    public long decodeLong(BitBuffer buffer, Resolver resolver) throws DecodingException {
+        long result = buffer.readAsLong(Expressions.evalInt(sizeExpr, resolver), byteOrder);
+        if (matchExpr != null && Expressions.evalInt(matchExpr, resolver) != (int) result) {
+            throw mismatch(result);
+        }
+        return result;
+    }
+
+    public short decodeShort(BitBuffer buffer, Resolver resolver) throws DecodingException {
+        short result = buffer.readAsShort(Expressions.evalInt(sizeExpr, resolver), byteOrder);
+        if (matchExpr != null && Expressions.evalInt(matchExpr, resolver) != result) {
+            throw mismatch(result);
+        }
+        return result;
+    }
+
+    public byte decodeByte(BitBuffer buffer, Resolver resolver) throws DecodingException {
+        byte result = buffer.readAsByte(Expressions.evalInt(sizeExpr, resolver), byteOrder);
+        if (matchExpr != null && Expressions.evalInt(matchExpr, resolver) != result) {
+            throw mismatch(result);
+        }
+        return result;
+    }
+
+    public float decodeFloat(BitBuffer buffer, Resolver resolver) throws DecodingException {
+        if (matchExpr != null) {
+            return (Float) decode(buffer, resolver, null);
+        }
+        return Float.intBitsToFloat(buffer.readAsInt(Expressions.evalInt(sizeExpr, resolver), byteOrder));
+    }
+
+    public double decodeDouble(BitBuffer buffer, Resolver resolver) throws DecodingException {
+        if (matchExpr != null) {
+            return (Double) decode(buffer, resolver, null);
+        }
+        return Double.longBitsToDouble(buffer.readAsLong(Expressions.evalInt(sizeExpr, resolver), byteOrder));
+    }
+
+    private DecodingException mismatch(Object result) {
+        StringBuilder stringBuilder = new StringBuilder();
+        Document document = new StringBuilderDocument(stringBuilder);
+        if (matchExpr.isParameterized()) {
+            stringBuilder.append("Expected different value than "
+                    + result);
+        } else {
+            stringBuilder.append("Expected ");
+            matchExpr.document(document);
+            stringBuilder.append(" but got ");
+            stringBuilder.append(result);
+        }
+        return new DecodingException(stringBuilder.toString());
+    }
+
+    /**
+     * Decodes a number of consecutive values at once, into an array of the primitive type corresponding to the {@link
+     * NumericType}.
+     *
+     * @param buffer   The {@link BitBuffer} to read from.
+     * @param length   The number of values to read.
+     * @param resolver The {@link Resolver} used for evaluating the size of a single value.
+     * @return An array of primitives, or <code>null</code> if values cannot be decoded in bulk; in that case, nothing
+     *         has been read.
+     */
+    Object decodeArray(BitBuffer buffer, int length, Resolver resolver) {
+        if (matchExpr != null) {
+            return null;
+        } else {
+            return type.decodeArray(buffer, length, Expressions.evalInt(sizeExpr, resolver), byteOrder);
+        }
+    }
+
     public void encode(Object value, BitChannel channel, Resolver resolver) throws IOException {
-        type.encode(channel, sizeExpr.eval(resolver), byteOrder, value);
+        type.encode(channel, Expressions.evalInt(sizeExpr, resolver), byteOrder, value);
     }
 
     public Class<?>[] getTypes() {
@@ -228,6 +300,10 @@ public class NumericCodec implements Codec<Object> {
                 return Float.class;
             }
 
+            public Class<?> getPrimitiveType() {
+                return float.class;
+            }
+
         },
 
         Double {
@@ -249,6 +325,10 @@ public class NumericCodec implements Codec<Object> {
                 return Double.class;
             }
 
+            public Class<?> getPrimitiveType() {
+                return double.class;
+            }
+
         },
 
         Integer {
@@ -260,6 +340,12 @@ public class NumericCodec implements Codec<Object> {
                 return buffer.readAsInt(size, endian);
             }
 
+            public Object decodeArray(BitBuffer buffer, int length, int size, ByteOrder endian) {
+                int[] result = new int[length];
+                buffer.readInts(result, 0, length, size, endian);
+                return result;
+            }
+
             public void encode(BitChannel channel, int size, ByteOrder endian, Object value) throws IOException {
                 channel.write(size, (Integer) value, endian);
             }
@@ -267,6 +353,10 @@ public class NumericCodec implements Codec<Object> {
             public Class<?> getType() {
                 return Integer.class;
             }
+
+            public Class<?> getPrimitiveType() {
+                return int.class;
+            }
         },
 
         Long {
@@ -278,6 +368,12 @@ public class NumericCodec implements Codec<Object> {
                 return buffer.readAsLong(size, endian);
             }
 
+            public Object decodeArray(BitBuffer buffer, int length, int size, ByteOrder endian) {
+                long[] result = new long[length];
+                buffer.readLongs(result, 0, length, size, endian);
+                return result;
+            }
+
             public void encode(BitChannel channel, int size, ByteOrder endian, Object value) throws IOException {
                 channel.write(size, (Long) value, endian);
             }
@@ -285,6 +381,10 @@ public class NumericCodec implements Codec<Object> {
             public Class<?> getType() {
                 return Long.class;
             }
+
+            public Class<?> getPrimitiveType() {
+                return long.class;
+            }
         },
 
         Short {
@@ -296,6 +396,12 @@ public class NumericCodec implements Codec<Object> {
                 return buffer.readAsShort(size, endian);
             }
 
+            public Object decodeArray(BitBuffer buffer, int length, int size, ByteOrder endian) {
+                short[] result = new short[length];
+                buffer.readShorts(result, 0, length, size, endian);
+                return result;
+            }
+
             public void encode(BitChannel channel, int size, ByteOrder endian, Object value) throws IOException {
                 channel.write(size, (Short) value, endian);
             }
@@ -303,6 +409,10 @@ public class NumericCodec implements Codec<Object> {
             public Class<?> getType() {
                 return Short.class;
             }
+
+            public Class<?> getPrimitiveType() {
+                return short.class;
+            }
         },
 
         Byte {
@@ -314,6 +424,12 @@ public class NumericCodec implements Codec<Object> {
                 return buffer.readAsByte(size, endian);
             }
 
+            public Object decodeArray(BitBuffer buffer, int length, int size, ByteOrder endian) {
+                byte[] result = new byte[length];
+                buffer.readBytes(result, 0, length, size, endian);
+                return result;
+            }
+
             public void encode(BitChannel channel, int size, ByteOrder endian, Object value) throws IOException {
                 channel.write(size, (Byte) value);
             }
@@ -321,6 +437,10 @@ public class NumericCodec implements Codec<Object> {
             public Class<?> getType() {
                 return Byte.class;
             }
+
+            public Class<?> getPrimitiveType() {
+                return byte.class;
+            }
         };
 
         public abstract int getDefaultSize();
@@ -328,10 +448,21 @@ public class NumericCodec implements Codec<Object> {
         public abstract Object decode(BitBuffer buffer, int size,
                                       ByteOrder endian);
 
+        /**
+         * Decodes <code>length</code> values at once, into an array of the corresponding primitive type.
+         *
+         * @return An array of primitives, or <code>null</code> if not supported for this type.
+         */
+        public Object decodeArray(BitBuffer buffer, int length, int size, ByteOrder endian) {
+            return null;
+        }
+
         public abstract void encode(BitChannel channel, int size, ByteOrder endian, Object value) throws IOException;
 
         public abstract Class<?> getType();
 
+        public abstract Class<?> getPrimitiveType();
+
     }
 
     /**
@@ -120,13 +120,10 @@ public class ObjectCodec<T> implements Codec<T> {
     public Expression<Integer, Resolver> getSize() {
         List<Binding> bindings = context.getBindings();
         if (bindings.size() > 0) {
-            Expression<Integer, Resolver> result = null;
-            for (Binding binding : bindings) {
-                if (result == null) {
-                    result = binding.getSize();
-                } else {
-                    result = Expressions.add(result, binding.getSize());
-                }
+            Expression<Integer, Resolver> result = bindings.get(0).getSize();
+            for (int i = 1; i < bindings.size() && result != null; i++) {
+                // Unknown as soon as the size of any of the bindings is unknown
+                result = Expressions.add(result, bindings.get(i).getSize());
             }
             return result;
         } else {
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.codec;
+
+import org.codehaus.preon.DecodingException;
+import org.codehaus.preon.Resolver;
+import org.codehaus.preon.buffer.BitBuffer;
+
+/**
+ * To be implemented by {@link org.codehaus.preon.Codec Codecs} capable of decoding values straight into primitives,
+ * without boxing them first. Bindings to fields of a primitive type check for this interface, and set the field by
+ * calling the method corresponding to {@link #getPrimitiveType()}, rather than {@link org.codehaus.preon.Codec#decode(BitBuffer,
+ * Resolver, org.codehaus.preon.Builder)}. The other methods are not expected to be called.
+ *
+ * @author Wilfred Springer
+ */
+public interface PrimitiveCodec {
+
+    /**
+     * Returns the primitive type decoded natively, such as <code>int.class</code>.
+     *
+     * @return The primitive type decoded by this {@link org.codehaus.preon.Codec}.
+     */
+    Class<?> getPrimitiveType();
+
+    int decodeInt(BitBuffer buffer, Resolver resolver) throws DecodingException;
+
+    long decodeLong(BitBuffer buffer, Resolver resolver) throws DecodingException;
+
+    short decodeShort(BitBuffer buffer, Resolver resolver) throws DecodingException;
+
+    byte decodeByte(BitBuffer buffer, Resolver resolver) throws DecodingException;
+
+    float decodeFloat(BitBuffer buffer, Resolver resolver) throws DecodingException;
+
+    double decodeDouble(BitBuffer buffer, Resolver resolver) throws DecodingException;
+
+}
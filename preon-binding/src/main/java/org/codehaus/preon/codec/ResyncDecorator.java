@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.codec;
+
+import org.codehaus.preon.el.Expression;
+import nl.flotsam.pecia.Documenter;
+import nl.flotsam.pecia.ParaContents;
+import nl.flotsam.pecia.SimpleContents;
+import org.codehaus.preon.*;
+import org.codehaus.preon.annotation.Resync;
+import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.channel.BitChannel;
+
+import java.io.IOException;
+import java.lang.reflect.AnnotatedElement;
+
+/**
+ * A {@link CodecDecorator} that will make decoding resynchronize on the sync pattern of the {@link Resync} annotation
+ * if decoding fails.
+ *
+ * @author Wilfred Springer
+ */
+public class ResyncDecorator implements CodecDecorator {
+
+    public <T> Codec<T> decorate(Codec<T> decorated, AnnotatedElement metadata,
+                                 Class<T> type, ResolverContext context) {
+        Resync resync = type.getAnnotation(Resync.class);
+        if (resync == null && metadata != null) {
+            resync = metadata.getAnnotation(Resync.class);
+        }
+        if (resync != null) {
+            return new ResyncingCodec<T>(decorated, resync.pattern(), resync.size(), resync.aligned());
+        } else {
+            return decorated;
+        }
+    }
+
+    private static class ResyncingCodec<T> implements Codec<T> {
+
+        private Codec<T> decorated;
+
+        private long pattern;
+
+        private int nrBits;
+
+        private boolean aligned;
+
+        public ResyncingCodec(Codec<T> decorated, long pattern, int nrBits, boolean aligned) {
+            this.decorated = decorated;
+            this.pattern = pattern;
+            this.nrBits = nrBits;
+            this.aligned = aligned;
+        }
+
+        public T decode(BitBuffer buffer, Resolver resolver, Builder builder)
+                throws DecodingException {
+            long start = buffer.getBitPos();
+            while (true) {
+                try {
+                    return decorated.decode(buffer, resolver, builder);
+                } catch (DecodingException de) {
+                    long next = aligned
+                            ? buffer.indexOfAligned(pattern, nrBits, start + 1)
+                            : buffer.indexOf(pattern, nrBits, start + 1);
+                    if (next < 0) {
+                        throw de;
+                    }
+                    buffer.setBitPos(next);
+                    start = next;
+                }
+            }
+        }
+
+        public void encode(T object, BitChannel channel, Resolver resolver) throws IOException {
+            decorated.encode(object, channel, resolver);
+        }
+
+        public Class<?>[] getTypes() {
+            return decorated.getTypes();
+        }
+
+        public Expression<Integer, Resolver> getSize() {
+            return decorated.getSize();
+        }
+
+        public Class<?> getType() {
+            return decorated.getType();
+        }
+
+        public CodecDescriptor getCodecDescriptor() {
+            return new CodecDescriptor() {
+
+                public <C extends SimpleContents<?>> Documenter<C> details(
+                        final String bufferReference) {
+                    return new Documenter<C>() {
+                        public void document(C target) {
+                            decorated.getCodecDescriptor().details(bufferReference).document(target);
+                            target
+                                    .para()
+                                    .text("If ")
+                                    .document(
+                                            decorated.getCodecDescriptor()
+                                                    .reference(Adjective.THE, false))
+                                    .text(" cannot be decoded, then the data following it will be searched for the ")
+                                    .text(aligned ? "next byte-aligned occurrence" : "next occurrence")
+                                    .text(" of the " + nrBits + "-bit sync pattern 0x" + Long.toHexString(pattern)
+                                            + ", and decoding will be attempted again from there.")
+                                    .end();
+                        }
+                    };
+                }
+
+                public String getTitle() {
+                    return decorated.getCodecDescriptor().getTitle();
+                }
+
+                public <C extends ParaContents<?>> Documenter<C> reference(
+                        Adjective adjective, boolean startWithCapital) {
+                    return decorated.getCodecDescriptor().reference(adjective, startWithCapital);
+                }
+
+                public boolean requiresDedicatedSection() {
+                    return decorated.getCodecDescriptor().requiresDedicatedSection();
+                }
+
+                public <C extends ParaContents<?>> Documenter<C> summary() {
+                    return decorated.getCodecDescriptor().summary();
+                }
+
+            };
+        }
+
+    }
+
+}
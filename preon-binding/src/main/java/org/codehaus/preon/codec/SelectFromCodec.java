@@ -43,13 +43,29 @@ import org.codehaus.preon.buffer.ByteOrder;
 import org.codehaus.preon.channel.BitChannel;
 import org.codehaus.preon.descriptor.Documenters;
 import org.codehaus.preon.el.*;
+import org.codehaus.preon.el.ast.IntegerReferenceNode;
+import org.codehaus.preon.el.ast.Node;
+import org.codehaus.preon.el.ast.ReferenceNode;
+import org.codehaus.preon.el.ast.RelationalNode;
 
+import java.io.IOException;
 import java.lang.reflect.AnnotatedElement;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A Codec supporting the {@link Choices} annotation.
+ * <p/>
+ * Conditions testing the equality of one value (typically the <code>prefix</code>, or a single field) to a constant are
+ * compiled into a table while constructing the codec, mapping the value to the first of these conditions it satisfies.
+ * While decoding, that value is evaluated only once, and only the other conditions preceding the condition found in the
+ * table are evaluated one by one. The same table is used to find the prefix to write when encoding.
  *
  * @author Wilfred Springer (wis)
  * @param <T> The type of object to be returned.
@@ -96,6 +112,43 @@ public class SelectFromCodec<T> implements Codec<T> {
      */
     private Codec<?> defaultCodec;
 
+    /**
+     * The value compared to a constant by the conditions compiled into {@link #numbers} and {@link #objects}, or
+     * <code>null</code> if no conditions have been compiled.
+     */
+    private Node<?, Resolver> key;
+
+    /**
+     * Whether {@link #key} is the prefix, in which case the prefix read can be looked up straight away.
+     */
+    private boolean keyIsPrefix;
+
+    /**
+     * The index of the first condition compiled for every integer constant.
+     */
+    private TypePrefixSelectorFactory.PrefixTable numbers = new TypePrefixSelectorFactory.PrefixTable();
+
+    /**
+     * The index of the first condition compiled for every other constant.
+     */
+    private Map<Object, Integer> objects = new HashMap<Object, Integer>();
+
+    /**
+     * The indexes of the conditions that have not been compiled, in ascending order.
+     */
+    private int[] remaining;
+
+    /**
+     * The prefix selecting every alternative, or <code>null</code> if it cannot be determined up front.
+     */
+    private Integer[] prefixes;
+
+    /**
+     * The index of the alternative used for encoding instances of every type encoded so far: -1 if there is none, the
+     * number of alternatives for the default type.
+     */
+    private final ConcurrentMap<Class<?>, Integer> encoders = new ConcurrentHashMap<Class<?>, Integer>();
+
     /**
      * Constructs a new instance, accepting the type, choices, a {@link ResolverContext} to wrap for introducing the
      * <code>prefix</code> variable, the {@link CodecFactory} to delegate to, and the metadata.
@@ -126,34 +179,179 @@ public class SelectFromCodec<T> implements Codec<T> {
             codecs.add(factory.create(null, choices.alternatives()[i].type(),
                     passThroughContext));
         }
+        compile();
     }
 
-    public T decode(BitBuffer buffer, Resolver resolver, Builder builder)
-            throws DecodingException {
-        if (prefixSize <= 0) {
-            for (int i = 0; i < conditions.size(); i++) {
-                if (conditions.get(i).eval(resolver)) {
-                    return (T) codecs.get(i).decode(buffer, resolver, builder);
+    /**
+     * Compiles the conditions testing the equality of the same value to a constant into {@link #numbers} and {@link
+     * #objects}. If conditions compare different values to constants, only the value compared most often is picked.
+     */
+    private void compile() {
+        Reference<?>[] references = new Reference<?>[conditions.size()];
+        Node<?, Resolver>[] operands = new Node[conditions.size()];
+        Object[] constants = new Object[conditions.size()];
+        Map<Reference<?>, Integer> counts = new HashMap<Reference<?>, Integer>();
+        Reference<?> selected = null;
+        for (int i = 0; i < conditions.size(); i++) {
+            if (conditions.get(i) instanceof RelationalNode) {
+                RelationalNode<?, Resolver> condition = (RelationalNode<?, Resolver>) conditions.get(i);
+                if (condition.getRelation() == RelationalNode.Relation.EQ) {
+                    if (isConstant(condition.getRhs())) {
+                        operands[i] = condition.getLhs();
+                        constants[i] = condition.getRhs().eval(null);
+                    } else if (isConstant(condition.getLhs())) {
+                        operands[i] = condition.getRhs();
+                        constants[i] = condition.getLhs().eval(null);
+                    }
+                    references[i] = getReference(operands[i]);
                 }
             }
-        } else {
-            int prefix = buffer.readAsInt(this.prefixSize, byteOrder);
-            for (int i = 0; i < conditions.size(); i++) {
-                if (conditions.get(i)
-                        .eval(new PrefixResolver(resolver, prefix))) {
-                    return (T) codecs.get(i).decode(buffer, resolver, builder);
+            if (references[i] != null) {
+                Integer count = counts.get(references[i]);
+                counts.put(references[i], count == null ? 1 : count + 1);
+                if (selected == null || counts.get(references[i]) > counts.get(selected)) {
+                    selected = references[i];
                 }
             }
         }
-        if (defaultCodec != null) {
+        int[] remaining = new int[conditions.size()];
+        int nrRemaining = 0;
+        for (int i = 0; i < conditions.size(); i++) {
+            if (selected != null && selected.equals(references[i])) {
+                key = operands[i];
+                if (constants[i] instanceof Integer) {
+                    numbers.put((Integer) constants[i], i);
+                } else if (!objects.containsKey(constants[i])) {
+                    objects.put(constants[i], i);
+                }
+            } else {
+                remaining[nrRemaining++] = i;
+            }
+        }
+        this.remaining = new int[nrRemaining];
+        System.arraycopy(remaining, 0, this.remaining, 0, nrRemaining);
+        keyIsPrefix = prefixSize > 0 && selected instanceof PrefixResolverContext.PrefixReference;
+        prefixes = new Integer[conditions.size()];
+        for (int i = 0; keyIsPrefix && i < conditions.size(); i++) {
+            if (constants[i] instanceof Integer && numbers.get((Integer) constants[i]) == i) {
+                prefixes[i] = (Integer) constants[i];
+            }
+        }
+    }
+
+    public T decode(BitBuffer buffer, Resolver resolver, Builder builder)
+            throws DecodingException {
+        int index;
+        if (prefixSize <= 0) {
+            index = select(resolver, resolver, 0);
+        } else {
+            index = select(resolver, null, buffer.readAsInt(this.prefixSize, byteOrder));
+        }
+        if (index != -1) {
+            return (T) codecs.get(index).decode(buffer, resolver, builder);
+        } else if (defaultCodec != null) {
             return (T) defaultCodec.decode(buffer, resolver, builder);
         } else {
             return null;
         }
     }
 
-    public void encode(T value, BitChannel channel, Resolver resolver) {
-        throw new UnsupportedOperationException();
+    /**
+     * Returns the index of the first condition met.
+     *
+     * @param resolver          The {@link Resolver} passed in.
+     * @param conditionResolver The {@link Resolver} for evaluating conditions, or <code>null</code> if it still needs
+     *                          to be constructed, by wrapping <code>resolver</code> in order to resolve the prefix.
+     * @param prefix            The prefix read; ignored without a prefix.
+     * @return The index of the first condition met, or -1 if none of them is met.
+     */
+    private int select(Resolver resolver, Resolver conditionResolver, int prefix) {
+        int match = -1;
+        if (keyIsPrefix) {
+            match = numbers.get(prefix);
+        } else if (key != null) {
+            if (conditionResolver == null) {
+                conditionResolver = new PrefixResolver(resolver, prefix);
+            }
+            Object value = key.eval(conditionResolver);
+            if (value instanceof Integer) {
+                match = numbers.get((Integer) value);
+            } else if (objects.containsKey(value)) {
+                match = objects.get(value);
+            }
+        }
+        // Conditions that have not been compiled only matter if they precede the one found in the table
+        for (int i : remaining) {
+            if (match != -1 && i > match) {
+                break;
+            }
+            if (conditionResolver == null) {
+                conditionResolver = new PrefixResolver(resolver, prefix);
+            }
+            if (conditions.get(i).eval(conditionResolver)) {
+                match = i;
+                break;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Encodes the value passed in using the first alternative of a matching type. If the alternatives are preceded by a
+     * prefix, only alternatives selected by a constant prefix (such as <code>prefix == 3</code>) are considered.
+     */
+    public void encode(T value, BitChannel channel, Resolver resolver) throws IOException {
+        Integer index = encoders.get(value.getClass());
+        if (index == null) {
+            index = -1;
+            for (int i = 0; i < types.length; i++) {
+                if (types[i].isAssignableFrom(value.getClass()) && (prefixSize <= 0 || prefixes[i] != null)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index == -1 && prefixSize <= 0 && defaultCodec != null
+                    && defaultCodec.getType().isAssignableFrom(value.getClass())) {
+                index = types.length;
+            }
+            encoders.put(value.getClass(), index);
+        }
+        if (index == -1) {
+            throw new IOException("No alternative for encoding " + value.getClass().getName() + " without ambiguity.");
+        } else if (index == types.length) {
+            ((Codec<Object>) defaultCodec).encode(value, channel, resolver);
+        } else {
+            if (prefixSize > 0) {
+                int prefix = prefixes[index];
+                if (select(resolver, null, prefix) != index) {
+                    throw new IOException("Prefix " + prefix + " does not select " + types[index].getName() + ".");
+                }
+                channel.write(prefixSize, prefix, byteOrder);
+            }
+            ((Codec<Object>) codecs.get(index)).encode(value, channel, resolver);
+        }
+    }
+
+    /**
+     * Returns whether the node passed in evaluates to a constant: either because it does not refer to anything at all,
+     * or because all of its references are constant (such as enum constants).
+     */
+    private static boolean isConstant(Node<?, Resolver> node) {
+        return !node.isParameterized() || node.isConstantFor(Unrelated.INSTANCE);
+    }
+
+    /**
+     * Returns the {@link Reference} if the node passed in is a plain reference, or <code>null</code> otherwise.
+     */
+    private static Reference<?> getReference(Node<?, Resolver> node) {
+        if (node instanceof ReferenceNode || node instanceof IntegerReferenceNode) {
+            Set<Reference<Resolver>> references = new HashSet<Reference<Resolver>>();
+            node.gather(references);
+            if (references.size() == 1) {
+                return references.iterator().next();
+            }
+        }
+        return null;
     }
 
     public Expression<Integer, Resolver> getSize() {
@@ -280,19 +478,21 @@ public class SelectFromCodec<T> implements Codec<T> {
 
         private ResolverContext context;
 
-        private int prefixSize;
+        /**
+         * The {@link Reference} to the prefix, shared by all conditions, allowing conditions to be compiled.
+         */
+        private PrefixReference prefixReference;
 
         final public static String PREFIX = "prefix";
 
         public PrefixResolverContext(ResolverContext context, int prefixSize) {
             this.context = context;
-            this.prefixSize = prefixSize;
+            this.prefixReference = new PrefixReference(context, prefixSize);
         }
 
         public Reference<Resolver> selectAttribute(String name) {
             if (PREFIX.equals(name)) {
-                Reference result = new PrefixReference(context, prefixSize);
-                return result;
+                return prefixReference;
             } else {
                 return new ContextReplacingReference(this, context
                         .selectAttribute(name));
@@ -383,6 +583,32 @@ public class SelectFromCodec<T> implements Codec<T> {
 
     }
 
+    /**
+     * A {@link ReferenceContext} no {@link Reference} is based on. Nodes that are constant for this context do not
+     * depend on any context at all.
+     */
+    private static class Unrelated implements ReferenceContext<Resolver> {
+
+        public final static Unrelated INSTANCE = new Unrelated();
+
+        public Reference<Resolver> selectAttribute(String name) {
+            throw new BindingException("No attribute selection allowed.");
+        }
+
+        public Reference<Resolver> selectItem(String index) {
+            throw new BindingException("No item selection allowed.");
+        }
+
+        public Reference<Resolver> selectItem(Expression<Integer, Resolver> index) {
+            throw new BindingException("No item selection allowed.");
+        }
+
+        public void document(Document target) {
+            target.text("nothing");
+        }
+
+    }
+
     private static class PrefixResolver implements Resolver {
 
         private Resolver resolver;
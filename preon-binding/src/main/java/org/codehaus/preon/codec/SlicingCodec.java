@@ -33,6 +33,7 @@
 package org.codehaus.preon.codec;
 
 import org.codehaus.preon.el.Expression;
+import org.codehaus.preon.el.Expressions;
 import nl.flotsam.pecia.Documenter;
 import nl.flotsam.pecia.ParaContents;
 import nl.flotsam.pecia.SimpleContents;
@@ -74,12 +75,12 @@ class SlicingCodec<T> implements Codec<T> {
     public T decode(BitBuffer buffer, Resolver resolver, Builder builder)
             throws DecodingException {
         BitBuffer slice = buffer
-                .slice(sizeExpr.eval(resolver));
+                .slice(Expressions.evalInt(sizeExpr, resolver));
         return wrapped.decode(slice, resolver, builder);
     }
 
     public void encode(T value, BitChannel channel, Resolver resolver) throws IOException {
-        wrapped.encode(value, new BoundedBitChannel(channel, sizeExpr.eval(resolver)), resolver);
+        wrapped.encode(value, new BoundedBitChannel(channel, Expressions.evalInt(sizeExpr, resolver)), resolver);
     }
 
     public Class<?>[] getTypes() {
@@ -45,6 +45,8 @@ import org.codehaus.preon.channel.BitChannel;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A {@link CodecSelectorFactory} that will create a {@link CodecSelector} that will look for leading bits, matching a
@@ -110,6 +112,10 @@ public class TypePrefixSelectorFactory implements CodecSelectorFactory {
     /**
      * A {@link CodecSelector} that determines its choice on a couple of leading bits. The correspondence between {@link
      * Codec} and leading bits is based on the {@link TypePrefix} annotation.
+     * <p/>
+     * Prefixes that do not depend on the context are evaluated once, and looked up in a {@link PrefixTable} while
+     * decoding; only the remaining prefixes are evaluated for every value decoded. While encoding, the {@link Codec}
+     * for every type encoded is looked up once, and remembered from then on.
      */
     private static class TypePrefixSelector implements CodecSelector {
 
@@ -123,6 +129,15 @@ public class TypePrefixSelectorFactory implements CodecSelectorFactory {
 
         private int size;
 
+        /** The index of the first {@link Codec} for every constant prefix. */
+        private final PrefixTable constants;
+
+        /** The indexes of the {@link Codec Codecs} with prefixes depending on the context, in ascending order. */
+        private final int[] parameterized;
+
+        /** The index of the {@link Codec} for every type encoded so far, or -1 if there is none. */
+        private final ConcurrentMap<Class<?>, Integer> encoders = new ConcurrentHashMap<Class<?>, Integer>();
+
         public TypePrefixSelector(
                 List<Expression<Integer, Resolver>> expressions,
                 List<Codec<?>> codecs, int size, ByteOrder byteOrder) {
@@ -132,6 +147,19 @@ public class TypePrefixSelectorFactory implements CodecSelectorFactory {
             this.size = size;
             this.byteOrder = byteOrder;
             this.uniqueCodecs.addAll(codecs);
+            this.constants = new PrefixTable();
+            int[] parameterized = new int[expressions.size()];
+            int count = 0;
+            for (int i = 0; i < expressions.size(); i++) {
+                Expression<Integer, Resolver> expression = expressions.get(i);
+                if (expression.isParameterized()) {
+                    parameterized[count++] = i;
+                } else {
+                    constants.put(expression.eval(null), i);
+                }
+            }
+            this.parameterized = new int[count];
+            System.arraycopy(parameterized, 0, this.parameterized, 0, count);
         }
 
         public Collection<Codec<?>> getChoices() {
@@ -141,25 +169,41 @@ public class TypePrefixSelectorFactory implements CodecSelectorFactory {
         public Codec<?> select(BitBuffer buffer, Resolver resolver)
                 throws DecodingException {
             long index = buffer.readAsLong(size, byteOrder);
-            for (int i = 0; i < codecs.size(); i++) {
-                if (index == expressions.get(i).eval(resolver)) {
-                    return codecs.get(i);
+            int match = constants.get(index);
+            // A prefix depending on the context only wins if it precedes the constant prefix matching
+            for (int i : parameterized) {
+                if (match != -1 && i > match) {
+                    break;
+                } else if (index == expressions.get(i).eval(resolver)) {
+                    match = i;
+                    break;
                 }
             }
-            throw new DecodingException("No matching Codec found for value "
-                    + index);
+            if (match == -1) {
+                throw new DecodingException("No matching Codec found for value "
+                        + index);
+            }
+            return codecs.get(match);
         }
 
         public <T> Codec<?> select(Class<T> type, BitChannel channel, Resolver resolver) throws IOException {
-            for (int i = 0; i < codecs.size(); i++) {
-                Codec<?> codec = codecs.get(i);
-                if (type.isAssignableFrom(codec.getType())) {
-                    // So we found the Codec. Now to make sure that same Codec is picked up again while decoding:
-                    channel.write(size, expressions.get(i).eval(resolver), ByteOrder.BigEndian);
-                    return codec;
+            Integer index = encoders.get(type);
+            if (index == null) {
+                index = -1;
+                for (int i = 0; i < codecs.size(); i++) {
+                    if (type.isAssignableFrom(codecs.get(i).getType())) {
+                        index = i;
+                        break;
+                    }
                 }
+                encoders.put(type, index);
             }
-            return null;
+            if (index == -1) {
+                return null;
+            }
+            // So we found the Codec. Now to make sure that same Codec is picked up again while decoding:
+            channel.write(size, expressions.get(index).eval(resolver), byteOrder);
+            return codecs.get(index);
         }
 
         public void document(final ParaContents<?> para) {
@@ -198,4 +242,111 @@ public class TypePrefixSelectorFactory implements CodecSelectorFactory {
 
     }
 
+    /**
+     * Maps prefix values to the index of the first {@link Codec} declaring that prefix: using a plain array if all values
+     * are small, non-negative numbers, or an open-addressed hash table otherwise. Filled while constructing the {@link
+     * TypePrefixSelector}, and only read afterwards.
+     */
+    static class PrefixTable {
+
+        /** The largest value for which prefixes are kept in a plain array. */
+        private static final int MAX_DENSE = 1024;
+
+        /** The keys of the hash table. */
+        private long[] keys = new long[8];
+
+        /** The indexes, plus one; zero for unused slots in both the array and the hash table. */
+        private int[] values = new int[8];
+
+        /** The number of entries. */
+        private int count;
+
+        /** Whether {@link #values} is indexed directly by the prefix value. */
+        private boolean dense = true;
+
+        /**
+         * Records the index for the given prefix value, unless a prefix with the same value has been recorded before.
+         */
+        void put(long prefix, int index) {
+            if (dense && prefix >= 0 && prefix < MAX_DENSE) {
+                if (prefix >= values.length) {
+                    values = copyOf(values, Math.max(values.length << 1, Integer.highestOneBit((int) prefix) << 1));
+                }
+                if (values[(int) prefix] == 0) {
+                    values[(int) prefix] = index + 1;
+                    count++;
+                }
+            } else {
+                // Keeping the table at most half full, before probing, guarantees an empty slot ends every probe
+                if (dense || (count + 1) * 2 > keys.length) {
+                    rehash(count + 1);
+                }
+                if (get(prefix) == -1) {
+                    insert(prefix, index + 1);
+                    count++;
+                }
+            }
+        }
+
+        /**
+         * Returns the index recorded for the given prefix value.
+         *
+         * @return The index of the first {@link Codec} declaring the prefix, or -1 if there is none.
+         */
+        int get(long prefix) {
+            if (dense) {
+                return prefix >= 0 && prefix < values.length ? values[(int) prefix] - 1 : -1;
+            } else {
+                int mask = keys.length - 1;
+                for (int slot = hash(prefix) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+                    if (keys[slot] == prefix) {
+                        return values[slot] - 1;
+                    }
+                }
+                return -1;
+            }
+        }
+
+        /** Moves all entries into a new hash table, at most half full once holding the given number of entries. */
+        private void rehash(int entries) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean wasDense = dense;
+            int capacity = 8;
+            while (capacity < entries * 2) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            values = new int[capacity];
+            dense = false;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != 0) {
+                    insert(wasDense ? i : oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private void insert(long prefix, int value) {
+            int mask = keys.length - 1;
+            int slot = hash(prefix) & mask;
+            while (values[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = prefix;
+            values[slot] = value;
+        }
+
+        private static int hash(long prefix) {
+            int h = (int) (prefix ^ (prefix >>> 32)) * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+
+        private static int[] copyOf(int[] original, int length) {
+            int[] result = new int[length];
+            System.arraycopy(original, 0, result, 0, original.length);
+            return result;
+        }
+
+    }
+
 }
@@ -147,6 +147,10 @@ public class ArrayElementReference implements Reference<Resolver> {
                 && index.equals(other.index);
     }
 
+    public int hashCode() {
+        return 31 * arrayReference.hashCode() + index.hashCode();
+    }
+
     /*
      * (non-Javadoc)
      * 
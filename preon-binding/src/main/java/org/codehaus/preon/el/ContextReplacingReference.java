@@ -106,4 +106,17 @@ public class ContextReplacingReference implements Reference<Resolver> {
         return reference.rescope(context);
     }
 
+    public boolean equals(Object other) {
+        if (other instanceof ContextReplacingReference) {
+            ContextReplacingReference that = (ContextReplacingReference) other;
+            return alternativeContext.equals(that.alternativeContext) && reference.equals(that.reference);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return reference.hashCode();
+    }
+
 }
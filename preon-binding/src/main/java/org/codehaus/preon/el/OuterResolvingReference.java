@@ -222,4 +222,18 @@ public class OuterResolvingReference implements Reference<Resolver> {
         }
     }
 
+    public boolean equals(Object other) {
+        if (other instanceof OuterResolvingReference) {
+            OuterResolvingReference that = (OuterResolvingReference) other;
+            return outerName.equals(that.outerName) && originalContext.equals(that.originalContext)
+                    && wrapped.equals(that.wrapped);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return wrapped.hashCode();
+    }
+
 }
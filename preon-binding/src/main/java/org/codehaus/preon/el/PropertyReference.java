@@ -151,6 +151,10 @@ public class PropertyReference implements Reference<Resolver> {
         return field.equals(other.field) && reference.equals(other.reference);
     }
 
+    public int hashCode() {
+        return 31 * field.hashCode() + reference.hashCode();
+    }
+
     public void document(Document target) {
         target.text("the " + rewriter.rewrite(field.getName()));
         if (includeType) {
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.util;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A cache of the elements decoded by a lazily loading {@link java.util.List}, indexed by their position in the list.
+ * Implementations are safe for use by multiple threads. The {@link Policy} determines the kind of cache constructed for
+ * a list.
+ *
+ * @author Wilfred Springer
+ * @param <E> The type of elements cached.
+ */
+public abstract class ElementCache<E> {
+
+    /**
+     * Returns the element cached at the given index.
+     *
+     * @param index The index of the element.
+     * @return The element cached, or <code>null</code> if it is not (or no longer) in the cache.
+     */
+    public abstract E get(int index);
+
+    /**
+     * Caches an element just decoded, unless another thread beat us to it. Callers are expected to use the element
+     * returned, in order to make sure all threads see the same instance.
+     *
+     * @param index   The index of the element.
+     * @param element The element decoded.
+     * @return The element cached at the given index.
+     */
+    public abstract E put(int index, E element);
+
+    /** The policies for caching elements. */
+    public enum Policy {
+
+        /** Elements are not cached, but decoded every time they are requested. */
+        NONE {
+            public <E> ElementCache<E> create(int size, int capacity) {
+                return new NoElementCache<E>();
+            }
+        },
+
+        /**
+         * All elements are cached using {@link SoftReference SoftReferences}, allowing the garbage collector to reclaim
+         * them when running low on memory.
+         */
+        SOFT {
+            public <E> ElementCache<E> create(int size, int capacity) {
+                return new SoftElementCache<E>(size);
+            }
+        },
+
+        /** Only the elements accessed most recently are cached, up to the capacity passed in. */
+        LRU {
+            public <E> ElementCache<E> create(int size, int capacity) {
+                return new LruElementCache<E>(Math.min(size, capacity));
+            }
+        };
+
+        /**
+         * Constructs a new cache.
+         *
+         * @param size     The number of elements in the list.
+         * @param capacity The maximum number of elements cached, if the policy imposes a limit.
+         * @return A new, empty cache.
+         */
+        public abstract <E> ElementCache<E> create(int size, int capacity);
+
+    }
+
+    private static class NoElementCache<E> extends ElementCache<E> {
+
+        public E get(int index) {
+            return null;
+        }
+
+        public E put(int index, E element) {
+            return element;
+        }
+
+    }
+
+    private static class SoftElementCache<E> extends ElementCache<E> {
+
+        private final AtomicReferenceArray<SoftReference<E>> references;
+
+        public SoftElementCache(int size) {
+            references = new AtomicReferenceArray<SoftReference<E>>(size);
+        }
+
+        public E get(int index) {
+            SoftReference<E> reference = references.get(index);
+            return reference == null ? null : reference.get();
+        }
+
+        public E put(int index, E element) {
+            SoftReference<E> replacement = new SoftReference<E>(element);
+            while (true) {
+                SoftReference<E> current = references.get(index);
+                E cached = current == null ? null : current.get();
+                if (cached != null) {
+                    return cached;
+                } else if (references.compareAndSet(index, current, replacement)) {
+                    return element;
+                }
+            }
+        }
+
+    }
+
+    private static class LruElementCache<E> extends ElementCache<E> {
+
+        private final Map<Integer, E> elements;
+
+        public LruElementCache(final int capacity) {
+            elements = new LinkedHashMap<Integer, E>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Integer, E> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        public synchronized E get(int index) {
+            return elements.get(index);
+        }
+
+        public synchronized E put(int index, E element) {
+            E cached = elements.get(index);
+            if (cached != null) {
+                return cached;
+            }
+            elements.put(index, element);
+            return element;
+        }
+
+    }
+
+}
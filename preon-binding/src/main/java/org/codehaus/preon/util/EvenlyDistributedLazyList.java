@@ -32,6 +32,7 @@
  */
 package org.codehaus.preon.util;
 
+import java.lang.reflect.Array;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -46,9 +47,10 @@ import org.codehaus.preon.Resolver;
 import org.codehaus.preon.buffer.BitBuffer;
 
 /**
- * A {@link List} that will lazily load objects from a {@link BitBuffer}. Note that it does <em>not</em> cache the
- * elements in any way. Since the objects will be instantiated on the fly, different threads will return instances with
- * a different object identity.
+ * A {@link List} that will lazily load objects from a {@link BitBuffer}. Elements are decoded from absolute positions,
+ * using a private duplicate of the {@link BitBuffer}, so the list can be used by several threads at once, and never
+ * moves the position of the buffer passed in. Elements decoded are kept in an {@link ElementCache}; unless elements are
+ * not cached at all, the same instance will be returned for the same element, until it is evicted from the cache.
  *
  * @author Wilfred Springer
  * @param <E> The type of elements in the {@link List}.
@@ -63,9 +65,15 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
     /** The starting point of the list, relative to the first position in the bitbuffer. */
     private long offset;
 
-    /** The {@link BitBuffer} from which data has to be read. */
+    /** The {@link BitBuffer} from which data has to be read. Only ever used to create duplicates. */
     private BitBuffer buffer;
 
+    /** The elements decoded so far. */
+    private ElementCache<E> cache;
+
+    /** The index of the first element of this list in the {@link #cache}, which is shared with sublists. */
+    private int first;
+
     /** The maximum number of elements in the list. */
     private int maxSize;
 
@@ -85,7 +93,7 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
     private Builder builder;
 
     /**
-     * Constructs a new instance. Currently the preferred way of constructing a {@link EvenlyDistributedLazyList}.
+     * Constructs a new instance, not caching any elements.
      *
      * @param codec    The {@link Codec} responsible for decoding elements in the list.
      * @param offset   The start position of the encoded list, relative to the start of the {@link BitBuffer}.
@@ -96,6 +104,31 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      */
     public EvenlyDistributedLazyList(Codec<E> codec, long offset, BitBuffer buffer, int numberOfElements,
                                      Builder builder, Resolver resolver, int elementSize) {
+        this(codec, offset, buffer, numberOfElements, builder, resolver, elementSize,
+                ElementCache.Policy.NONE.<E>create(numberOfElements, 0), 0);
+    }
+
+    /**
+     * Constructs a new instance. Currently the preferred way of constructing a {@link EvenlyDistributedLazyList}.
+     *
+     * @param codec    The {@link Codec} responsible for decoding elements in the list.
+     * @param offset   The start position of the encoded list, relative to the start of the {@link BitBuffer}.
+     * @param buffer   The {@link BitBuffer} from which data will be decoded.
+     * @param numberOfElements  The number of elements in the list.
+     * @param builder  The object capable of constructing new instances of a class, including non-static inner classes.
+     * @param resolver The context for evaluating expressions.
+     * @param cache    The cache for keeping the elements decoded.
+     */
+    public EvenlyDistributedLazyList(Codec<E> codec, long offset, BitBuffer buffer, int numberOfElements,
+                                     Builder builder, Resolver resolver, int elementSize, ElementCache<E> cache) {
+        this(codec, offset, buffer, numberOfElements, builder, resolver, elementSize, cache, 0);
+    }
+
+    private EvenlyDistributedLazyList(Codec<E> codec, long offset, BitBuffer buffer, int numberOfElements,
+                                      Builder builder, Resolver resolver, int elementSize, ElementCache<E> cache,
+                                      int first) {
+        this.cache = cache;
+        this.first = first;
         this.codec = codec;
         this.offset = offset;
         this.buffer = buffer;
@@ -170,7 +203,7 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      */
 
     public boolean contains(Object o) {
-        throw new UnsupportedOperationException();
+        return indexOf(o) >= 0;
     }
 
     /*
@@ -180,7 +213,12 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      */
 
     public boolean containsAll(Collection<?> c) {
-        throw new UnsupportedOperationException();
+        for (Object o : c) {
+            if (!contains(o)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /*
@@ -189,17 +227,37 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      * @see java.util.List#get(int)
      */
 
-    @SuppressWarnings("unchecked")
     public E get(int index) {
         if (index < 0 || index >= maxSize) {
             throw new IndexOutOfBoundsException();
         }
-        buffer.setBitPos(offset + index * elementSize);
-        try {
-            return codec.decode(buffer, resolver, builder);
-        } catch (DecodingException de) {
-            return policy.handle(de);
+        return get(index, null);
+    }
+
+    /**
+     * Returns the element at the given index, taking it from the cache if possible.
+     *
+     * @param index  The index of the element, known to be within bounds.
+     * @param cursor The buffer to decode the element from, or <code>null</code> to use a new duplicate.
+     * @return The element at the given index.
+     */
+    private E get(int index, BitBuffer cursor) {
+        E result = cache.get(first + index);
+        if (result == null) {
+            if (cursor == null) {
+                cursor = buffer.duplicate();
+            }
+            cursor.setBitPos(offset + (long) index * elementSize);
+            try {
+                result = codec.decode(cursor, resolver, builder);
+            } catch (DecodingException de) {
+                return policy.handle(de);
+            }
+            if (result != null) {
+                result = cache.put(first + index, result);
+            }
         }
+        return result;
     }
 
     /*
@@ -209,8 +267,14 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      */
 
     public int indexOf(Object o) {
-        // Requires full table scan. Way to expensive.
-        throw new UnsupportedOperationException();
+        // Requires a full table scan, but at least all elements are decoded from the same cursor.
+        BitBuffer cursor = buffer.duplicate();
+        for (int i = 0; i < maxSize; i++) {
+            if (equals(o, get(i, cursor))) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /*
@@ -220,7 +284,7 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      */
 
     public boolean isEmpty() {
-        return maxSize != 0;
+        return maxSize == 0;
     }
 
     /*
@@ -240,7 +304,13 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      */
 
     public int lastIndexOf(Object o) {
-        throw new UnsupportedOperationException();
+        BitBuffer cursor = buffer.duplicate();
+        for (int i = maxSize - 1; i >= 0; i--) {
+            if (equals(o, get(i, cursor))) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /*
@@ -330,8 +400,11 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      */
 
     public List<E> subList(int fromIndex, int toIndex) {
-        return new EvenlyDistributedLazyList<E>(codec, offset + elementSize * fromIndex, buffer,
-                toIndex - fromIndex, builder, resolver, elementSize);
+        if (fromIndex < 0 || toIndex > maxSize || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new EvenlyDistributedLazyList<E>(codec, offset + (long) elementSize * fromIndex, buffer,
+                toIndex - fromIndex, builder, resolver, elementSize, cache, first + fromIndex);
     }
 
     /*
@@ -341,7 +414,12 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      */
 
     public Object[] toArray() {
-        throw new UnsupportedOperationException();
+        Object[] result = new Object[maxSize];
+        BitBuffer cursor = buffer.duplicate();
+        for (int i = 0; i < maxSize; i++) {
+            result[i] = get(i, cursor);
+        }
+        return result;
     }
 
     /*
@@ -350,8 +428,22 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
      * @see java.util.List#toArray(T[])
      */
 
+    @SuppressWarnings("unchecked")
     public <T> T[] toArray(T[] a) {
-        throw new UnsupportedOperationException();
+        T[] result = a.length >= maxSize ? a
+                : (T[]) Array.newInstance(a.getClass().getComponentType(), maxSize);
+        BitBuffer cursor = buffer.duplicate();
+        for (int i = 0; i < maxSize; i++) {
+            result[i] = (T) get(i, cursor);
+        }
+        if (result.length > maxSize) {
+            result[maxSize] = null;
+        }
+        return result;
+    }
+
+    private static boolean equals(Object o, Object element) {
+        return o == null ? element == null : o.equals(element);
     }
 
     /** A {@link ListIterator} that will lazily load elements. */
@@ -360,6 +452,9 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
         /** The current referenced by the {@link Iterator}. */
         private int position = -1;
 
+        /** The buffer from which the iterator decodes elements, created when first needed. */
+        private BitBuffer cursor;
+
         public LazyListIterator() {
         }
 
@@ -412,7 +507,7 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             } else {
-                return get(++position);
+                return get(++position, getCursor());
             }
         }
 
@@ -436,7 +531,7 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
             if (!hasPrevious()) {
                 throw new NoSuchElementException();
             } else {
-                return get(--position);
+                return get(--position, getCursor());
             }
         }
 
@@ -470,6 +565,13 @@ public class EvenlyDistributedLazyList<E> implements List<E> {
             throw new UnsupportedOperationException();
         }
 
+        private BitBuffer getCursor() {
+            if (cursor == null) {
+                cursor = buffer.duplicate();
+            }
+            return cursor;
+        }
+
     }
 
     /**
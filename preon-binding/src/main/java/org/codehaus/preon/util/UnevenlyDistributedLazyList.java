@@ -32,156 +32,151 @@
  */
 package org.codehaus.preon.util;
 
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.AbstractList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.RandomAccess;
 
 import org.codehaus.preon.Builder;
 import org.codehaus.preon.Codec;
+import org.codehaus.preon.DecodingException;
 import org.codehaus.preon.Resolver;
 import org.codehaus.preon.buffer.BitBuffer;
 
 /**
  * A {@link List} implementation that will lazy load its elements. Big difference with {@link EvenlyDistributedLazyList}
  * is that this implementation does not assume all elements to have the same size.
+ * <p/>
+ * Since the position of an element depends on the size of all elements preceding it, the list maintains an index of
+ * the positions at which elements start. The index is extended incrementally, only as far as required: in order to
+ * find the end of an element, it needs to be decoded. Elements decoded while extending the index are kept in the
+ * {@link ElementCache}, so the effort is not wasted. Once indexed, elements evicted from the cache are decoded straight
+ * from their position.
+ * <p/>
+ * Like the {@link EvenlyDistributedLazyList}, this list only ever decodes from duplicates of the {@link BitBuffer}
+ * passed in, and is safe for use by multiple threads.
  *
  * @author Wilfred Springer
  */
-public class UnevenlyDistributedLazyList<E> implements List<E> {
+public class UnevenlyDistributedLazyList<E> extends AbstractList<E> implements RandomAccess {
 
     /** The {@link Codec} decoding elements of the list. */
-    private Codec<E> codec;
+    private final Codec<E> codec;
 
-    /** The {@link BitBuffer} to read from. */
-    private BitBuffer buffer;
+    /** The {@link BitBuffer} to read from. Only ever used to create duplicates. */
+    private final BitBuffer buffer;
+
+    /** A reference to the {@link Resolver} resolving variables referenced in {@link org.codehaus.preon.el.Expression}s. */
+    private final Resolver resolver;
 
     /**
-     *
+     * The object capable of creating new instances of classes. (Required in order to make sure it can take the outer
+     * instance into account.)
      */
-    private Resolver resolver;
-
-    private Builder builder;
-
-    public boolean add(E element) {
-        // TODO Auto-generated method stub
-        return false;
-    }
-
-    public void add(int position, E element) {
-        // TODO Auto-generated method stub
-
-    }
-
-    public boolean addAll(Collection<? extends E> elements) {
-        // TODO Auto-generated method stub
-        return false;
-    }
-
-    public boolean addAll(int position, Collection<? extends E> elements) {
-        // TODO Auto-generated method stub
-        return false;
-    }
-
-    public void clear() {
-        // TODO Auto-generated method stub
-
-    }
-
-    public boolean contains(Object object) {
-        // TODO Auto-generated method stub
-        return false;
-    }
-
-    public boolean containsAll(Collection<?> elements) {
-        // TODO Auto-generated method stub
-        return false;
-    }
-
-    public E get(int position) {
-        // TODO Auto-generated method stub
-        return null;
-    }
-
-    public int indexOf(Object object) {
-        // TODO Auto-generated method stub
-        return 0;
-    }
-
-    public boolean isEmpty() {
-        // TODO Auto-generated method stub
-        return false;
-    }
-
-    public Iterator<E> iterator() {
-        // TODO Auto-generated method stub
-        return null;
-    }
+    private final Builder builder;
 
-    public int lastIndexOf(Object object) {
-        // TODO Auto-generated method stub
-        return 0;
-    }
-
-    public ListIterator<E> listIterator() {
-        // TODO Auto-generated method stub
-        return null;
-    }
-
-    public ListIterator<E> listIterator(int position) {
-        // TODO Auto-generated method stub
-        return null;
-    }
-
-    public boolean remove(Object object) {
-        // TODO Auto-generated method stub
-        return false;
-    }
+    /** The elements decoded so far. */
+    private final ElementCache<E> cache;
 
-    public E remove(int position) {
-        // TODO Auto-generated method stub
-        return null;
-    }
+    /**
+     * The positions at which elements start; the last entry holds the position right after the last element. Only the
+     * first {@link #indexed} entries are known.
+     */
+    private final long[] offsets;
 
-    public boolean removeAll(Collection<?> elements) {
-        // TODO Auto-generated method stub
-        return false;
-    }
+    /** The number of {@link #offsets} known. Written after the offset itself, while holding the lock on this list. */
+    private volatile int indexed;
 
-    public boolean retainAll(Collection<?> elements) {
-        // TODO Auto-generated method stub
-        return false;
-    }
+    /** The buffer used for extending the index, created when first needed. Guarded by the lock on this list. */
+    private BitBuffer cursor;
 
-    public E set(int position, E element) {
-        // TODO Auto-generated method stub
-        return null;
+    /**
+     * Constructs a new instance.
+     *
+     * @param codec            The {@link Codec} responsible for decoding elements in the list.
+     * @param offset           The start position of the encoded list, relative to the start of the {@link BitBuffer}.
+     * @param buffer           The {@link BitBuffer} from which data will be decoded.
+     * @param numberOfElements The number of elements in the list.
+     * @param builder          The object capable of constructing new instances of a class, including non-static inner
+     *                         classes.
+     * @param resolver         The context for evaluating expressions.
+     * @param cache            The cache for keeping the elements decoded.
+     */
+    public UnevenlyDistributedLazyList(Codec<E> codec, long offset, BitBuffer buffer, int numberOfElements,
+                                       Builder builder, Resolver resolver, ElementCache<E> cache) {
+        this.codec = codec;
+        this.buffer = buffer;
+        this.builder = builder;
+        this.resolver = resolver;
+        this.cache = cache;
+        this.offsets = new long[numberOfElements + 1];
+        this.offsets[0] = offset;
+        this.indexed = 1;
+    }
+
+    public E get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException();
+        }
+        E result = cache.get(index);
+        if (result == null) {
+            try {
+                if (index >= indexed) {
+                    // Extending the index decodes the element requested as well
+                    result = index(index + 1);
+                }
+                if (result == null) {
+                    BitBuffer duplicate = buffer.duplicate();
+                    duplicate.setBitPos(offsets[index]);
+                    result = cache(index, codec.decode(duplicate, resolver, builder));
+                }
+            } catch (DecodingException de) {
+                // There is really no way to be prepared for this.
+                throw new RuntimeException(de);
+            }
+        }
+        return result;
     }
 
     public int size() {
-        // TODO Auto-generated method stub
-        return 0;
-    }
-
-    public List<E> subList(int start, int end) {
-        // TODO Auto-generated method stub
-        return null;
+        return offsets.length - 1;
     }
 
-    public Object[] toArray() {
-        // TODO Auto-generated method stub
-        return null;
-    }
-
-    public <T> T[] toArray(T[] elements) {
-        // TODO Auto-generated method stub
-        return null;
+    /**
+     * Returns the position right after the last element, decoding all elements not indexed yet.
+     *
+     * @return The position right after the last element.
+     * @throws DecodingException If one of the elements cannot be decoded.
+     */
+    public long getEnd() throws DecodingException {
+        index(offsets.length - 1);
+        return offsets[offsets.length - 1];
     }
 
-    private interface Holder<T> {
-
-        T get() throws InterruptedException;
-
+    /**
+     * Makes sure the index holds the offset of the element at the given index, decoding the elements preceding it.
+     *
+     * @param index The index of the offset required.
+     * @return The element decoded last, or <code>null</code> if the index had already been extended far enough.
+     * @throws DecodingException If one of the elements cannot be decoded.
+     */
+    private synchronized E index(int index) throws DecodingException {
+        E last = null;
+        if (indexed <= index) {
+            if (cursor == null) {
+                cursor = buffer.duplicate();
+            }
+            cursor.setBitPos(offsets[indexed - 1]);
+            while (indexed <= index) {
+                last = cache(indexed - 1, codec.decode(cursor, resolver, builder));
+                offsets[indexed] = cursor.getBitPos();
+                indexed++;
+            }
+        }
+        return last;
+    }
+
+    private E cache(int index, E element) {
+        return element == null ? null : cache.put(index, element);
     }
 
 }
@@ -35,12 +35,21 @@ package org.codehaus.preon.binding;
 import java.lang.reflect.Field;
 
 import org.codehaus.preon.Codec;
+import org.codehaus.preon.Resolver;
+import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.buffer.ByteOrder;
+import org.codehaus.preon.codec.NumericCodec;
+import org.codehaus.preon.el.Expression;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 @RunWith(MockitoJUnitRunner.class)
 public class StandardBindingFactoryTest {
     
@@ -55,6 +64,15 @@ public class StandardBindingFactoryTest {
     @Mock
     private Codec<Spam> codec;
 
+    @Mock
+    private Expression<Integer, Resolver> size;
+
+    @Mock
+    private BitBuffer buffer;
+
+    @Mock
+    private Resolver resolver;
+
     private StandardBindingFactory factory;
 
     @Before
@@ -68,4 +86,18 @@ public class StandardBindingFactoryTest {
         Binding binding = factory.create(null, field, codec, null, null);
         binding.save(new Spam(), null, null);
     }
+
+    @Test
+    public void shouldDecodePrimitivesWithoutBoxing() throws Exception {
+        Field field = Spam.class.getDeclaredField("eggs");
+        NumericCodec codec = new NumericCodec(size, ByteOrder.BigEndian, NumericCodec.NumericType.Integer, null);
+        when(size.eval(resolver)).thenReturn(12);
+        when(buffer.readAsInt(12, ByteOrder.BigEndian)).thenReturn(42);
+        Binding binding = factory.create(null, field, codec, null, null);
+        Spam spam = new Spam();
+        binding.load(spam, buffer, resolver, null);
+        assertEquals(42, spam.getEggs());
+        verify(buffer).readAsInt(12, ByteOrder.BigEndian);
+    }
+
 }
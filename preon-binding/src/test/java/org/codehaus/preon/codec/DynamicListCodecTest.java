@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.codec;
+
+import org.codehaus.preon.Codec;
+import org.codehaus.preon.Resolver;
+import org.codehaus.preon.el.Expression;
+import org.codehaus.preon.el.Expressions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DynamicListCodecTest {
+
+    @Mock
+    private Codec<Integer> codec;
+
+    @Mock
+    private Expression<Boolean, Resolver> until;
+
+    @Test
+    public void shouldPresizeForElementsRemaining() {
+        when(codec.getSize()).thenReturn(Expressions.createInteger(8, Resolver.class));
+        ListCodecFactory.DynamicListCodec<Integer> listCodec = new ListCodecFactory.DynamicListCodec<Integer>(codec);
+        assertEquals(3, listCodec.getInitialCapacity(24));
+        assertEquals(0, listCodec.getInitialCapacity(0));
+    }
+
+    @Test
+    public void shouldNotPresizeBeyondLimitIfSizeUnknown() {
+        when(codec.getSize()).thenReturn(Expressions.createInteger(8, Resolver.class));
+        ListCodecFactory.DynamicListCodec<Integer> listCodec = new ListCodecFactory.DynamicListCodec<Integer>(codec);
+        // As reported by a StreamingBitBuffer that has not reached the end of the stream
+        assertEquals(ListCodecFactory.DynamicListCodec.MAX_INITIAL_CAPACITY, listCodec.getInitialCapacity(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldNotPresizeListEndingOnCondition() {
+        when(codec.getSize()).thenReturn(Expressions.createInteger(8, Resolver.class));
+        ListCodecFactory.DynamicListCodec<Integer> listCodec =
+                new ListCodecFactory.DynamicListCodec<Integer>(codec, until);
+        // 100 MB worth of 8-bit elements, of which the condition may only take a few
+        assertEquals(16, listCodec.getInitialCapacity(800L * 1024 * 1024));
+    }
+
+}
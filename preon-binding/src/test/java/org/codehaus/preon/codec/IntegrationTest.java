@@ -132,6 +132,21 @@ public class IntegrationTest {
         assertEquals(3, replica.value3);
     }
 
+    @Test
+    public void testSizeOf() throws IOException {
+        Codec<Test1> fixed = Codecs.create(Test1.class);
+        assertEquals(24, Codecs.sizeOf(new Test1(), fixed));
+        Codec<Test6> conditional = Codecs.create(Test6.class);
+        Test6 object = new Test6();
+        object.value1 = 4;
+        object.value2 = 1;
+        assertEquals(16, Codecs.sizeOf(object, conditional));
+        assertEquals(2, Codecs.encode(object, conditional).length);
+        object.value1 = 1;
+        assertEquals(8, Codecs.sizeOf(object, conditional));
+        assertArrayEquals(new byte[]{1}, Codecs.encode(object, conditional));
+    }
+
     @Test
     public void testChoice() throws DecodingException, FileNotFoundException {
         Codec<Test28> codec = Codecs.create(Test28.class);
@@ -512,6 +527,22 @@ public class IntegrationTest {
         assertEquals(0, value.value);
     }
 
+    @Test
+    public void testSelectingByStaticReferences() throws DecodingException {
+        Codec<Test55> codec = Codecs.create(Test55.class);
+        Test55 value = Codecs.decode(codec, new byte[]{1, 5, 6});
+        assertEquals(2, value.records.size());
+        assertEquals(5, ((Test58) value.records.get(0).value).value);
+        assertEquals(6, ((Test58) value.records.get(1).value).value);
+        value = Codecs.decode(codec, new byte[]{2, 5, 0, 6, 0});
+        assertEquals(2, value.records.size());
+        assertEquals(5, ((Test59) value.records.get(0).value).value);
+        assertEquals(6, ((Test59) value.records.get(1).value).value);
+        value = Codecs.decode(codec, new byte[]{3});
+        assertNull(value.records.get(0).value);
+        assertNull(value.records.get(1).value);
+    }
+
     @Test
     public void testDefaultBigEndian() throws DecodingException {
         Codec<Test49> codec = Codecs.create(Test49.class);
@@ -1112,5 +1143,46 @@ public class IntegrationTest {
         }
     }
 
+    public static class Test55 {
+
+        @BoundObject
+        Test56 header;
+
+        @BoundList(size = "2", type = Test57.class)
+        List<Test57> records;
+
+    }
+
+    public static class Test56 {
+
+        @BoundNumber(size = "8")
+        Direction direction;
+
+    }
+
+    @ImportStatic(Direction.class)
+    public static class Test57 {
+
+        @BoundObject(selectFrom = @Choices(alternatives = {
+                @Choice(condition = "outer.header.direction == Direction.LEFT", type = Test58.class),
+                @Choice(condition = "outer.header.direction == Direction.RIGHT", type = Test59.class)}))
+        Object value;
+
+    }
+
+    public static class Test58 {
+
+        @BoundNumber(size = "8")
+        int value;
+
+    }
+
+    public static class Test59 {
+
+        @BoundNumber(size = "16")
+        int value;
+
+    }
+
 
 }
@@ -46,6 +46,7 @@ import junit.framework.TestCase;
 
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
@@ -55,6 +56,8 @@ public class LazyLoadingCodecDecoratorTest extends TestCase {
 
     private BitBuffer buffer;
 
+    private BitBuffer cursor;
+
     private LazyLoadingCodecDecorator factory;
 
     private AnnotatedElement metadata;
@@ -68,6 +71,7 @@ public class LazyLoadingCodecDecoratorTest extends TestCase {
     public void setUp() {
         wrapped = createMock(Codec.class);
         buffer = createMock(BitBuffer.class);
+        cursor = createMock(BitBuffer.class);
         factory = new LazyLoadingCodecDecorator();
         metadata = createMock(AnnotatedElement.class);
         annotation = createMock(LazyLoading.class);
@@ -83,19 +87,22 @@ public class LazyLoadingCodecDecoratorTest extends TestCase {
         // Stuff expected when Codec is getting constructed
         expect(metadata.isAnnotationPresent(LazyLoading.class))
                 .andReturn(true);
+        expect(metadata.getAnnotation(LazyLoading.class)).andReturn(annotation);
+        expect(annotation.reload()).andReturn(false);
         expect(wrapped.getSize()).andReturn(sizeExpr);
         expect(sizeExpr.eval(resolver)).andReturn(32);
 
         // Stuff expected when Test instance is constructed using Codec
         expect(buffer.getBitPos()).andReturn(64L);
+        expect(buffer.duplicate()).andReturn(cursor);
         buffer.setBitPos(64L + 32);
 
-        // Stuff expected after when Test instance is accessed
-        buffer.setBitPos(64L);
-        expect(wrapped.decode(buffer, resolver, null)).andReturn(test);
+        // Stuff expected after when Test instance is accessed, using its own cursor
+        cursor.setBitPos(64L);
+        expect(wrapped.decode(cursor, resolver, null)).andReturn(test);
 
         // Replay
-        replay(wrapped, buffer, metadata, annotation, resolver, sizeExpr);
+        replay(wrapped, buffer, cursor, metadata, annotation, resolver, sizeExpr);
         Codec<Test> codec = factory.decorate(wrapped, metadata, Test.class, null);
         assertNotNull(codec);
         Test result = codec.decode(buffer, resolver, null);
@@ -103,13 +110,85 @@ public class LazyLoadingCodecDecoratorTest extends TestCase {
         assertEquals("bar", result.getFoo());
         // Second time should not cause reload.
         assertEquals("bar", result.getFoo());
-        verify(wrapped, buffer, metadata, annotation, resolver, sizeExpr);
+        verify(wrapped, buffer, cursor, metadata, annotation, resolver, sizeExpr);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testProxyClassReused() throws DecodingException {
+        expect(wrapped.getSize()).andReturn(sizeExpr).times(2);
+        expect(sizeExpr.eval(resolver)).andReturn(32).times(2);
+        expect(buffer.getBitPos()).andReturn(0L).times(2);
+        expect(buffer.duplicate()).andReturn(cursor).times(2);
+        buffer.setBitPos(32L);
+        expectLastCall().times(2);
+
+        // Only the first one is accessed, and releases the buffer after loading
+        cursor.setBitPos(0L);
+        expect(wrapped.decode(cursor, resolver, null)).andReturn(new Test());
+
+        replay(wrapped, buffer, cursor, metadata, annotation, resolver, sizeExpr);
+        Codec<Test> codec = new LazyLoadingCodecDecorator.LazyLoadingCodec<Test>(wrapped, Test.class, false);
+        Test first = codec.decode(buffer, resolver, null);
+        Test second = codec.decode(buffer, resolver, null);
+        assertNotSame(first, second);
+        assertSame(first.getClass(), second.getClass());
+        assertEquals("bar", first.getFoo());
+        assertEquals("bar", first.getFoo());
+        verify(wrapped, buffer, cursor, metadata, annotation, resolver, sizeExpr);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testChangesKeptByDefault() throws DecodingException {
+        expect(metadata.isAnnotationPresent(LazyLoading.class)).andReturn(true);
+        expect(metadata.getAnnotation(LazyLoading.class)).andReturn(annotation);
+        expect(annotation.reload()).andReturn(false);
+        expect(wrapped.getSize()).andReturn(sizeExpr);
+        expect(sizeExpr.eval(resolver)).andReturn(32);
+        expect(buffer.getBitPos()).andReturn(0L);
+        expect(buffer.duplicate()).andReturn(cursor);
+        buffer.setBitPos(32L);
+        cursor.setBitPos(0L);
+        expect(wrapped.decode(cursor, resolver, null)).andReturn(new Test());
+
+        replay(wrapped, buffer, cursor, metadata, annotation, resolver, sizeExpr);
+        Codec<Test> codec = factory.decorate(wrapped, metadata, Test.class, null);
+        Test result = codec.decode(buffer, resolver, null);
+        result.setFoo("baz");
+        System.gc();
+        assertEquals("baz", result.getFoo());
+        verify(wrapped, buffer, cursor, metadata, annotation, resolver, sizeExpr);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testReloadingIsOptIn() throws DecodingException {
+        expect(metadata.isAnnotationPresent(LazyLoading.class)).andReturn(true);
+        expect(metadata.getAnnotation(LazyLoading.class)).andReturn(annotation);
+        expect(annotation.reload()).andReturn(true);
+        expect(wrapped.getSize()).andReturn(sizeExpr);
+        expect(sizeExpr.eval(resolver)).andReturn(32);
+        expect(buffer.getBitPos()).andReturn(0L);
+        expect(buffer.duplicate()).andReturn(cursor);
+        buffer.setBitPos(32L);
+        cursor.setBitPos(0L);
+        expect(wrapped.decode(cursor, resolver, null)).andReturn(new Test());
+
+        replay(wrapped, buffer, cursor, metadata, annotation, resolver, sizeExpr);
+        Codec<Test> codec = factory.decorate(wrapped, metadata, Test.class, null);
+        Test result = codec.decode(buffer, resolver, null);
+        assertEquals("bar", result.getFoo());
+        verify(wrapped, buffer, cursor, metadata, annotation, resolver, sizeExpr);
     }
 
     public static class Test {
 
+        private String foo = "bar";
+
         public String getFoo() {
-            return "bar";
+            return foo;
+        }
+
+        public void setFoo(String foo) {
+            this.foo = foo;
         }
 
     }
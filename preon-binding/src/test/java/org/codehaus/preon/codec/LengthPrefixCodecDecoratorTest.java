@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.codec;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.AnnotatedElement;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.codehaus.preon.Builder;
+import org.codehaus.preon.Codec;
+import org.codehaus.preon.CodecDescriptor;
+import org.codehaus.preon.DecodingException;
+import org.codehaus.preon.Resolver;
+import org.codehaus.preon.ResolverContext;
+import org.codehaus.preon.annotation.LengthPrefix;
+import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.buffer.ByteOrder;
+import org.codehaus.preon.channel.BitChannel;
+import org.codehaus.preon.channel.ByteBufferBitChannel;
+import org.codehaus.preon.channel.OutputStreamBitChannel;
+import org.codehaus.preon.el.Expression;
+
+
+public class LengthPrefixCodecDecoratorTest extends TestCase {
+
+    private BitBuffer buffer;
+    private BitBuffer slice;
+    private AnnotatedElement metadata;
+    private Codec decorated;
+    private ResolverContext context;
+    private Resolver resolver;
+
+    public void setUp() {
+        buffer = createMock(BitBuffer.class);
+        slice = createMock(BitBuffer.class);
+        metadata = createMock(AnnotatedElement.class);
+        decorated = createMock(Codec.class);
+        resolver = createMock(Resolver.class);
+        context = createMock(ResolverContext.class);
+    }
+
+    public void testDecodingWithLengthPrefix() throws DecodingException {
+        Test1 value = new Test1();
+
+        expect(buffer.readAsLong(8, ByteOrder.LittleEndian)).andReturn(3L);
+        expect(buffer.slice(24L)).andReturn(slice);
+        expect(decorated.decode(slice, resolver, null)).andReturn(value);
+
+        replay(metadata, decorated, resolver, buffer, slice, context);
+        LengthPrefixCodecDecorator factory = new LengthPrefixCodecDecorator();
+        Codec<Test1> codec = factory.decorate(decorated, metadata, Test1.class,
+                context);
+        assertSame(value, codec.decode(buffer, resolver, null));
+
+        verify(metadata, decorated, resolver, buffer, slice, context);
+    }
+
+    public void testNoAnnotationsNoNothing() throws DecodingException {
+        expect(metadata.isAnnotationPresent(LengthPrefix.class)).andReturn(false);
+
+        replay(metadata, decorated, resolver, buffer, slice, context);
+        LengthPrefixCodecDecorator factory = new LengthPrefixCodecDecorator();
+        Codec<Test3> codec = factory.decorate(decorated, metadata, Test3.class,
+                context);
+        assertEquals(codec, decorated);
+
+        verify(metadata, decorated, resolver, buffer, slice, context);
+    }
+
+    public void testPatchingLengthPrefix() throws IOException {
+        Codec<Test1> codec = new LengthPrefixCodecDecorator().decorate(new TwelveBitCodec(), null,
+                Test1.class, context);
+        ByteBufferBitChannel channel = new ByteBufferBitChannel();
+        channel.write(4, (byte) 0x0f);
+        codec.encode(new Test1(), channel, resolver);
+        channel.write(4, (byte) 0x0f);
+        assertBytes(channel.getByteBuffer(), 0xf0, 0x2a, 0xbc, 0x0f);
+    }
+
+    public void testBufferingWithoutSeekableChannel() throws IOException {
+        Codec<Test1> codec = new LengthPrefixCodecDecorator().decorate(new TwelveBitCodec(), null,
+                Test1.class, context);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BitChannel channel = new OutputStreamBitChannel(out);
+        channel.write(4, (byte) 0x0f);
+        codec.encode(new Test1(), channel, resolver);
+        channel.write(4, (byte) 0x0f);
+        channel.close();
+        assertBytes(ByteBuffer.wrap(out.toByteArray()), 0xf0, 0x2a, 0xbc, 0x0f);
+    }
+
+    private static void assertBytes(ByteBuffer buffer, int... expected) {
+        assertEquals(expected.length, buffer.remaining());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals((byte) expected[i], buffer.get());
+        }
+    }
+
+    /**
+     * A {@link Codec} writing 12 bits, which get padded to a length of two bytes.
+     */
+    private static class TwelveBitCodec implements Codec<Test1> {
+
+        public Test1 decode(BitBuffer buffer, Resolver resolver, Builder builder) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void encode(Test1 value, BitChannel channel, Resolver resolver) throws IOException {
+            channel.write(12, 0xabcL, ByteOrder.BigEndian);
+        }
+
+        public Class<?>[] getTypes() {
+            return new Class<?>[]{Test1.class};
+        }
+
+        public Expression<Integer, Resolver> getSize() {
+            return null;
+        }
+
+        public Class<?> getType() {
+            return Test1.class;
+        }
+
+        public CodecDescriptor getCodecDescriptor() {
+            return null;
+        }
+    }
+
+    @LengthPrefix(size = "8")
+    public static class Test1 {
+
+    }
+
+    public static class Test3 {
+
+    }
+
+}
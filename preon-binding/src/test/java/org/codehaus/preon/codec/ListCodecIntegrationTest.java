@@ -39,11 +39,21 @@ import org.codehaus.preon.annotation.Bound;
 import org.codehaus.preon.annotation.BoundList;
 import org.codehaus.preon.annotation.BoundNumber;
 import org.codehaus.preon.annotation.BoundString;
+import org.codehaus.preon.buffer.DefaultBitBufferPool;
+import org.codehaus.preon.buffer.DeflateIndex;
+import org.codehaus.preon.buffer.StreamingBitBuffer;
 import org.codehaus.preon.util.EvenlyDistributedLazyList;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -71,6 +81,131 @@ public class ListCodecIntegrationTest {
         assertThat(result.records.get(1).value, is("ef"));
     }
 
+    @Test
+    public void shouldKeepLoadingLazilyAfterReleasingPooledBuffer() throws DecodingException {
+        DefaultBitBufferPool pool = new DefaultBitBufferPool(1);
+        Codec<Test1> codec = Codecs.create(Test1.class);
+        Test1 first = Codecs.decode(codec, ByteBuffer.wrap(new byte[] { 2, 3, 'a', 'b', 'c', 'd', 'e', 'f' }), null, pool);
+        Test1 second = Codecs.decode(codec, ByteBuffer.wrap(new byte[] { 2, 3, 'u', 'v', 'w', 'x', 'y', 'z' }), null, pool);
+        assertThat(first.records.get(0).value, is("abc"));
+        assertThat(first.records.get(1).value, is("def"));
+        assertThat(second.records.get(1).value, is("xyz"));
+    }
+
+    @Test
+    public void shouldKeepIndexingAfterReleasingPooledBuffer() throws DecodingException {
+        DefaultBitBufferPool pool = new DefaultBitBufferPool(1);
+        Codec<Test3> codec = Codecs.create(Test3.class);
+        Test3 first = Codecs.decode(codec, ByteBuffer.wrap(new byte[] { 2, 2, 1, 'a', 'b', 'c', 0, 'e', 'f' }), null, pool);
+        Test3 second = Codecs.decode(codec, ByteBuffer.wrap(new byte[] { 2, 2, 0, 'u', 'v', 1, 'x', 'y', 'z' }), null, pool);
+        assertThat(first.records.get(0).value, is("abc"));
+        assertThat(first.records.get(1).value, is("ef"));
+        assertThat(second.records.get(1).value, is("xyz"));
+    }
+
+    @Test
+    public void shouldKeepLoadingLazilyFromInflatedFile() throws DecodingException, IOException {
+        File file = File.createTempFile("preon", ".gz");
+        try {
+            GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+            out.write(new byte[] { 2, 3, 'a', 'b', 'c', 'd', 'e', 'f' });
+            out.close();
+            Codec<Test1> codec = Codecs.create(Test1.class);
+            Codecs.Decoded<Test1> decoded = Codecs.decode(codec, null, file, (DeflateIndex) null);
+            try {
+                Test1 result = decoded.getValue();
+                assertThat(result.records, instanceOf(EvenlyDistributedLazyList.class));
+                assertThat(result.records.get(1).value, is("def"));
+                assertThat(result.records.get(0).value, is("abc"));
+            } finally {
+                decoded.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldKeepLoadingLazilyFromPrefetchedFile() throws DecodingException, IOException {
+        File file = File.createTempFile("preon", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(new byte[] { 2, 3, 'a', 'b', 'c', 'd', 'e', 'f' });
+            out.close();
+            Codec<Test1> codec = Codecs.create(Test1.class);
+            Codecs.Decoded<Test1> decoded = Codecs.decode(codec, null, file, true);
+            try {
+                Test1 result = decoded.getValue();
+                assertThat(result.records, instanceOf(EvenlyDistributedLazyList.class));
+                assertThat(result.records.get(1).value, is("def"));
+                assertThat(result.records.get(0).value, is("abc"));
+            } finally {
+                decoded.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldLoadUntilConditionHolds() throws DecodingException {
+        Codec<Test7> codec = Codecs.create(Test7.class);
+        Test7 result = Codecs.decode(codec, new byte[] { 2, 10, 20, 99 });
+        assertThat(result.records.size(), is(2));
+        assertThat(result.records.get(1).value, is(20));
+        assertThat(result.trailer, is(99));
+    }
+
+    @Test
+    public void shouldLoadUntilSentinel() throws DecodingException {
+        Codec<Test10> codec = Codecs.create(Test10.class);
+        Test10 result = Codecs.decode(codec, new byte[] { 10, 20, 0, 99 });
+        assertThat(result.records.size(), is(3));
+        assertThat(result.records.get(1).value, is(20));
+        assertThat(result.records.get(2).value, is(0));
+        assertThat(result.trailer, is(99));
+    }
+
+    @Test
+    public void shouldLoadUntilSentinelAsFirstElement() throws DecodingException {
+        Codec<Test10> codec = Codecs.create(Test10.class);
+        Test10 result = Codecs.decode(codec, new byte[] { 0, 99 });
+        assertThat(result.records.size(), is(1));
+        assertThat(result.trailer, is(99));
+    }
+
+    @Test
+    public void shouldLoadUntilEndOfBuffer() throws DecodingException {
+        Codec<Test9> codec = Codecs.create(Test9.class);
+        Test9 result = Codecs.decode(codec, new byte[] { 10, 20, 30 });
+        assertThat(result.records, instanceOf(ArrayList.class));
+        assertThat(result.records.size(), is(3));
+        assertThat(result.records.get(2).value, is(30));
+    }
+
+    @Test
+    public void shouldLoadUntilEndOfStream() throws DecodingException {
+        // The size of a stream is unknown until reaching its end
+        Codec<Test9> codec = Codecs.create(Test9.class);
+        Test9 result = Codecs.decode(codec, new StreamingBitBuffer(new ByteArrayInputStream(new byte[] { 10, 20, 30 })),
+                null, null);
+        assertThat(result.records.size(), is(3));
+        assertThat(result.records.get(2).value, is(30));
+    }
+
+    @Test
+    public void shouldLoadUntilConditionHoldsInLargeBuffer() throws DecodingException {
+        byte[] data = new byte[16 * 1024 * 1024];
+        data[0] = 3;
+        data[1] = 10;
+        data[4] = 99;
+        Codec<Test7> codec = Codecs.create(Test7.class);
+        Test7 result = Codecs.decode(codec, data);
+        assertThat(result.records.size(), is(3));
+        assertThat(result.records.get(0).value, is(10));
+        assertThat(result.trailer, is(99));
+    }
+
     @Test
     public void shouldLoadArrayOfBooleans() throws DecodingException {
         Codec<Test5> codec = Codecs.create(Test5.class);
@@ -116,6 +251,43 @@ public class ListCodecIntegrationTest {
 
     }
 
+    public static class Test7 {
+
+        @BoundNumber(size = "8")
+        public int nrRecords;
+
+        @BoundList(type = Test8.class, until = "index >= nrRecords")
+        public List<Test8> records;
+
+        @BoundNumber(size = "8")
+        public int trailer;
+
+    }
+
+    public static class Test8 {
+
+        @BoundNumber(size = "8")
+        public int value;
+
+    }
+
+    public static class Test10 {
+
+        @BoundList(type = Test8.class, until = "last.value == 0")
+        public List<Test8> records;
+
+        @BoundNumber(size = "8")
+        public int trailer;
+
+    }
+
+    public static class Test9 {
+
+        @BoundList(type = Test8.class)
+        public List<Test8> records;
+
+    }
+
     public static class Test3 {
 
         @BoundNumber(size = "8")
@@ -33,7 +33,9 @@
 package org.codehaus.preon.codec;
 
 import org.codehaus.preon.el.Expression;
+import org.codehaus.preon.DecodingException;
 import org.codehaus.preon.Resolver;
+import org.codehaus.preon.buffer.BitBuffer;
 import org.codehaus.preon.buffer.ByteOrder;
 import org.codehaus.preon.channel.BitChannel;
 import org.junit.Test;
@@ -41,6 +43,8 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 
 import org.mockito.runners.MockitoJUnitRunner;
@@ -62,6 +66,9 @@ public class NumericCodecTest {
     @Mock
     private BitChannel channel;
 
+    @Mock
+    private BitBuffer buffer;
+
     @Test
     public void shouldEncodeCorrectly() throws IOException {
         NumericCodec codec = new NumericCodec(size, ByteOrder.BigEndian, NumericCodec.NumericType.Long, matchExpression);
@@ -69,4 +76,29 @@ public class NumericCodecTest {
         codec.encode(new Long(12L), channel, resolver);
         Mockito.verify(channel).write(3, 12L, ByteOrder.BigEndian);
     }
+
+    @Test
+    public void shouldDecodePrimitives() throws DecodingException {
+        NumericCodec codec = new NumericCodec(size, ByteOrder.LittleEndian, NumericCodec.NumericType.Long, null);
+        when(size.eval(resolver)).thenReturn(32);
+        when(buffer.readAsLong(32, ByteOrder.LittleEndian)).thenReturn(0xffffffffL);
+        assertEquals(long.class, codec.getPrimitiveType());
+        assertEquals(0xffffffffL, codec.decodeLong(buffer, resolver));
+    }
+
+    @Test
+    public void shouldCheckPrimitivesDecodedAgainstMatch() {
+        NumericCodec codec = new NumericCodec(size, ByteOrder.BigEndian, NumericCodec.NumericType.Short, matchExpression);
+        when(size.eval(resolver)).thenReturn(16);
+        when(matchExpression.eval(resolver)).thenReturn(7);
+        when(buffer.readAsShort(16, ByteOrder.BigEndian)).thenReturn((short) 7, (short) 8);
+        try {
+            assertEquals(7, codec.decodeShort(buffer, resolver));
+            codec.decodeShort(buffer, resolver);
+            fail("Expected DecodingException");
+        } catch (DecodingException de) {
+            // What we expect
+        }
+    }
+
 }
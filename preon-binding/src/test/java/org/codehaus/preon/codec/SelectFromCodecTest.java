@@ -32,6 +32,7 @@
  */
 package org.codehaus.preon.codec;
 
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.nio.ByteBuffer;
@@ -47,6 +48,7 @@ import org.codehaus.preon.annotation.Choices;
 import org.codehaus.preon.buffer.BitBuffer;
 import org.codehaus.preon.buffer.ByteOrder;
 import org.codehaus.preon.buffer.DefaultBitBuffer;
+import org.codehaus.preon.channel.BitChannel;
 import junit.framework.TestCase;
 
 import static org.easymock.EasyMock.*;
@@ -178,4 +180,107 @@ public class SelectFromCodecTest extends TestCase {
         verify(codecFactory, context, metadata, shortCodec, integerCodec, floatCodec, resolver,
                 builder);
     }
+
+    public void testEncode() throws IOException {
+        BitChannel channel = createMock(BitChannel.class);
+        expect(codecFactory.create(null, Float.class, context)).andReturn(floatCodec);
+        expect(
+                codecFactory.create((AnnotatedElement) isNull(), eq(Integer.class),
+                        isA(ResolverContext.class))).andReturn(integerCodec);
+        expect(
+                codecFactory.create((AnnotatedElement) isNull(), eq(Short.class),
+                        isA(ResolverContext.class))).andReturn(shortCodec);
+        channel.write(8, 1, ByteOrder.BigEndian);
+        shortCodec.encode(new Short((short) 5), channel, resolver);
+        replay(codecFactory, context, metadata, shortCodec, integerCodec, floatCodec, resolver,
+                builder, channel);
+        SelectFromCodec codec = new SelectFromCodec(Number.class, choices, context, codecFactory,
+                metadata);
+        codec.encode(new Short((short) 5), channel, resolver);
+        try {
+            // The prefix selecting the default type is unknown
+            codec.encode(new Float(3.0f), channel, resolver);
+            fail("Expected IOException");
+        } catch (IOException ioe) {
+            // What we expect
+        }
+        verify(codecFactory, context, metadata, shortCodec, integerCodec, floatCodec, resolver,
+                builder, channel);
+    }
+
+    public void testFirstConditionMetWins() throws DecodingException, IOException {
+        BitBuffer buffer = new DefaultBitBuffer(ByteBuffer.wrap(new byte[]{7, 1}));
+        BitChannel channel = createMock(BitChannel.class);
+        choices = createChoices(new String[]{"prefix > 5", "prefix == 7"}, Integer.class, Short.class);
+        expect(codecFactory.create(null, Float.class, context)).andReturn(floatCodec);
+        expect(
+                codecFactory.create((AnnotatedElement) isNull(), eq(Integer.class),
+                        isA(ResolverContext.class))).andReturn(integerCodec);
+        expect(
+                codecFactory.create((AnnotatedElement) isNull(), eq(Short.class),
+                        isA(ResolverContext.class))).andReturn(shortCodec);
+        expect(integerCodec.decode(buffer, resolver, builder)).andReturn(new Integer(3));
+        expect(floatCodec.decode(buffer, resolver, builder)).andReturn(new Float(2.0f));
+        replay(codecFactory, context, metadata, shortCodec, integerCodec, floatCodec, resolver,
+                builder, channel);
+        SelectFromCodec codec = new SelectFromCodec(Number.class, choices, context, codecFactory,
+                metadata);
+        assertEquals(new Integer(3), codec.decode(buffer, resolver, builder));
+        assertEquals(new Float(2.0f), codec.decode(buffer, resolver, builder));
+        try {
+            // Prefix 7 selects an Integer
+            codec.encode(new Short((short) 5), channel, resolver);
+            fail("Expected IOException");
+        } catch (IOException ioe) {
+            // What we expect
+        }
+        verify(codecFactory, context, metadata, shortCodec, integerCodec, floatCodec, resolver,
+                builder, channel);
+    }
+
+    private static Choices createChoices(final String[] conditions, final Class<?>... types) {
+        final Choices.Choice[] alternatives = new Choices.Choice[conditions.length];
+        for (int i = 0; i < conditions.length; i++) {
+            final int index = i;
+            alternatives[i] = new Choices.Choice() {
+
+                public String condition() {
+                    return conditions[index];
+                }
+
+                public Class<?> type() {
+                    return types[index];
+                }
+
+                public Class<? extends Annotation> annotationType() {
+                    return Choices.Choice.class;
+                }
+
+            };
+        }
+        return new Choices() {
+
+            public Choice[] alternatives() {
+                return alternatives;
+            }
+
+            public ByteOrder byteOrder() {
+                return ByteOrder.BigEndian;
+            }
+
+            public Class<?> defaultType() {
+                return Float.class;
+            }
+
+            public int prefixSize() {
+                return 8;
+            }
+
+            public Class<? extends Annotation> annotationType() {
+                return Choices.class;
+            }
+
+        };
+    }
+
 }
@@ -34,6 +34,7 @@ package org.codehaus.preon.codec;
 
 import static org.easymock.EasyMock.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,6 +48,7 @@ import org.codehaus.preon.Resolver;
 import org.codehaus.preon.ResolverContext;
 import org.codehaus.preon.annotation.TypePrefix;
 import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.channel.BitChannel;
 
 
 import junit.framework.TestCase;
@@ -106,6 +108,98 @@ public class TypePrefixSelectorFactoryTest extends TestCase {
         verify(context, codec1, codec2, resolver, bitBuffer, reference);
     }
 
+    public void testConstantPrefixes() throws DecodingException {
+        expect(codec1.getTypes()).andReturn(new Class<?>[]{Test1.class});
+        expect(codec2.getTypes()).andReturn(new Class<?>[]{Test2.class});
+        expect(bitBuffer.readAsLong(8, ByteOrder.LittleEndian)).andReturn(2L);
+        expect(bitBuffer.readAsLong(8, ByteOrder.LittleEndian)).andReturn(1L);
+        expect(bitBuffer.readAsLong(8, ByteOrder.LittleEndian)).andReturn(3L);
+        replay(context, codec1, codec2, resolver, bitBuffer);
+        CodecSelector selector = createSelector();
+        assertSame(codec2, selector.select(bitBuffer, resolver));
+        assertSame(codec1, selector.select(bitBuffer, resolver));
+        try {
+            selector.select(bitBuffer, resolver);
+            fail("Expected DecodingException");
+        } catch (DecodingException de) {
+            // What we expect
+        }
+        verify(context, codec1, codec2, resolver, bitBuffer);
+    }
+
+    public void testPrefixWithReferenceTakesPrecedence() throws DecodingException {
+        expect(codec1.getTypes()).andReturn(new Class<?>[]{Test3.class});
+        expect(codec2.getTypes()).andReturn(new Class<?>[]{Test4.class});
+        expect(context.selectAttribute("p")).andReturn(reference);
+        expect(bitBuffer.readAsLong(8, ByteOrder.LittleEndian)).andReturn(2L);
+        expect(reference.resolve(resolver)).andReturn(-1);
+        expect(reference.getType()).andReturn((Class) Integer.class).anyTimes();
+        replay(context, codec1, codec2, resolver, bitBuffer, reference);
+        CodecSelector selector = createSelector();
+        assertSame(codec1, selector.select(bitBuffer, resolver));
+        verify(context, codec1, codec2, resolver, bitBuffer, reference);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testEncodingRemembersCodec() throws IOException {
+        BitChannel channel = createMock(BitChannel.class);
+        expect(codec1.getTypes()).andReturn(new Class<?>[]{Test1.class});
+        expect(codec2.getTypes()).andReturn(new Class<?>[]{Test2.class});
+        expect(codec1.getType()).andReturn((Class) Test1.class);
+        expect(codec2.getType()).andReturn((Class) Test2.class);
+        channel.write(8, 2, ByteOrder.LittleEndian);
+        expectLastCall().times(2);
+        replay(context, codec1, codec2, resolver, channel);
+        CodecSelector selector = createSelector();
+        assertSame(codec2, selector.select(Test2.class, channel, resolver));
+        assertSame(codec2, selector.select(Test2.class, channel, resolver));
+        verify(context, codec1, codec2, resolver, channel);
+    }
+
+    public void testPrefixTable() {
+        TypePrefixSelectorFactory.PrefixTable table = new TypePrefixSelectorFactory.PrefixTable();
+        table.put(3, 0);
+        table.put(3, 1);
+        table.put(1000, 2);
+        assertEquals(0, table.get(3));
+        assertEquals(2, table.get(1000));
+        assertEquals(-1, table.get(4));
+        assertEquals(-1, table.get(-3));
+        // Switches to hashing
+        table.put(-3, 3);
+        for (int i = 0; i < 100; i++) {
+            table.put(i * 0x100000000L, 4 + i);
+        }
+        assertEquals(0, table.get(3));
+        assertEquals(2, table.get(1000));
+        assertEquals(3, table.get(-3));
+        assertEquals(4, table.get(0));
+        assertEquals(103, table.get(99 * 0x100000000L));
+        assertEquals(-1, table.get(4));
+    }
+
+    public void testPrefixTableSwitchingFromFullArray() {
+        TypePrefixSelectorFactory.PrefixTable table = new TypePrefixSelectorFactory.PrefixTable();
+        // Fills every slot of the initial array
+        for (int i = 0; i < 8; i++) {
+            table.put(i, i);
+        }
+        table.put(0xffff, 8);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, table.get(i));
+        }
+        assertEquals(8, table.get(0xffff));
+        assertEquals(-1, table.get(8));
+        assertEquals(-1, table.get(0xfffe));
+    }
+
+    private CodecSelector createSelector() {
+        List<Codec<?>> codecs = new ArrayList<Codec<?>>();
+        codecs.add(codec1);
+        codecs.add(codec2);
+        return new TypePrefixSelectorFactory().create(context, codecs);
+    }
+
     @TypePrefix(value = "1", size = 8)
     private static class Test1 {
 
@@ -53,6 +53,8 @@ public class LazyListTest extends TestCase {
 
     private BitBuffer buffer;
 
+    private BitBuffer cursor;
+
     private Codec codec;
 
     private Builder builder;
@@ -64,6 +66,7 @@ public class LazyListTest extends TestCase {
     @SuppressWarnings("unchecked")
     public void setUp() {
         buffer = createMock(BitBuffer.class);
+        cursor = createMock(BitBuffer.class);
         codec = createMock(Codec.class);
         builder = createMock(Builder.class);
         resolver = createMock(Resolver.class);
@@ -72,17 +75,18 @@ public class LazyListTest extends TestCase {
 
     public void testTakingElement() throws DecodingException {
         Object value = new Object();
-        buffer.setBitPos(20);
-        expect(codec.decode(buffer, resolver, builder)).andReturn(value);
-        replay(buffer, codec, resolver, builder, sizeExpr);
+        expect(buffer.duplicate()).andReturn(cursor);
+        cursor.setBitPos(20);
+        expect(codec.decode(cursor, resolver, builder)).andReturn(value);
+        replay(buffer, cursor, codec, resolver, builder, sizeExpr);
         EvenlyDistributedLazyList<Object> list = new EvenlyDistributedLazyList<Object>(
                 codec, 0, buffer, 10, builder, resolver, 20);
         list.get(1);
-        verify(buffer, codec, resolver, builder, sizeExpr);
+        verify(buffer, cursor, codec, resolver, builder, sizeExpr);
     }
 
     public void testIndexToLow() {
-        replay(buffer, codec, resolver, builder, sizeExpr);
+        replay(buffer, cursor, codec, resolver, builder, sizeExpr);
         try {
             EvenlyDistributedLazyList<Object> list = new EvenlyDistributedLazyList<Object>(
                     codec, 0, buffer, 10, builder, resolver, 20);
@@ -91,11 +95,11 @@ public class LazyListTest extends TestCase {
         } catch (IndexOutOfBoundsException iobe) {
             // That's ok.
         }
-        verify(buffer, codec, resolver, builder, sizeExpr);
+        verify(buffer, cursor, codec, resolver, builder, sizeExpr);
     }
 
     public void testIndexToHigh() {
-        replay(buffer, codec, resolver, builder, sizeExpr);
+        replay(buffer, cursor, codec, resolver, builder, sizeExpr);
         try {
             EvenlyDistributedLazyList<Object> list = new EvenlyDistributedLazyList<Object>(
                     codec, 0, buffer, 10, builder, resolver, 20);
@@ -104,37 +108,87 @@ public class LazyListTest extends TestCase {
         } catch (IndexOutOfBoundsException iobe) {
             // That's ok.
         }
-        verify(buffer, codec, resolver, builder, sizeExpr);
+        verify(buffer, cursor, codec, resolver, builder, sizeExpr);
     }
 
     public void testSubList() throws DecodingException {
         Object value = new Object();
-        buffer.setBitPos(20);
-        expect(codec.decode(buffer, resolver, builder)).andReturn(value);
-        replay(buffer, codec, resolver, builder, sizeExpr);
+        expect(buffer.duplicate()).andReturn(cursor);
+        cursor.setBitPos(20);
+        expect(codec.decode(cursor, resolver, builder)).andReturn(value);
+        replay(buffer, cursor, codec, resolver, builder, sizeExpr);
         EvenlyDistributedLazyList<Object> list = new EvenlyDistributedLazyList<Object>(
                 codec, 0, buffer, 10, builder, resolver, 20);
         List<Object> sublist = list.subList(1, 3);
         sublist.get(0);
-        verify(buffer, codec, resolver, builder, sizeExpr);
+        verify(buffer, cursor, codec, resolver, builder, sizeExpr);
     }
 
     public void testIterator() throws DecodingException {
         Object value = new Object();
-        buffer.setBitPos(0);
-        expect(codec.decode(buffer, resolver, builder)).andReturn(value);
-        buffer.setBitPos(20);
-        expect(codec.decode(buffer, resolver, builder)).andReturn(value);
-        buffer.setBitPos(40);
-        expect(codec.decode(buffer, resolver, builder)).andReturn(value);
-        replay(buffer, codec, resolver, builder, sizeExpr);
+        // All elements are decoded from the same cursor
+        expect(buffer.duplicate()).andReturn(cursor);
+        cursor.setBitPos(0);
+        expect(codec.decode(cursor, resolver, builder)).andReturn(value);
+        cursor.setBitPos(20);
+        expect(codec.decode(cursor, resolver, builder)).andReturn(value);
+        cursor.setBitPos(40);
+        expect(codec.decode(cursor, resolver, builder)).andReturn(value);
+        replay(buffer, cursor, codec, resolver, builder, sizeExpr);
         EvenlyDistributedLazyList<Object> list = new EvenlyDistributedLazyList<Object>(
                 codec, 0, buffer, 3, builder, resolver, 20);
         Iterator<Object> iterator = list.iterator();
         while (iterator.hasNext()) {
             iterator.next();
         }
-        verify(buffer, codec, resolver, builder, sizeExpr);
+        verify(buffer, cursor, codec, resolver, builder, sizeExpr);
+    }
+
+    public void testCachingElements() throws DecodingException {
+        Object value = new Object();
+        expect(buffer.duplicate()).andReturn(cursor);
+        cursor.setBitPos(20);
+        expect(codec.decode(cursor, resolver, builder)).andReturn(value);
+        replay(buffer, cursor, codec, resolver, builder, sizeExpr);
+        EvenlyDistributedLazyList<Object> list = new EvenlyDistributedLazyList<Object>(
+                codec, 0, buffer, 10, builder, resolver, 20, ElementCache.Policy.SOFT.create(10, 0));
+        assertSame(value, list.get(1));
+        assertSame(value, list.get(1));
+        // Sublists share the cache
+        assertSame(value, list.subList(1, 3).get(0));
+        verify(buffer, cursor, codec, resolver, builder, sizeExpr);
+    }
+
+    public void testLeastRecentlyUsedCache() {
+        ElementCache<Object> cache = ElementCache.Policy.LRU.create(10, 2);
+        Object first = new Object();
+        Object second = new Object();
+        assertSame(first, cache.put(0, first));
+        assertSame(first, cache.put(0, second));
+        cache.put(1, second);
+        cache.get(0);
+        cache.put(2, new Object());
+        assertSame(first, cache.get(0));
+        assertNull(cache.get(1));
+    }
+
+    public void testSearchingElements() throws DecodingException {
+        expect(buffer.duplicate()).andReturn(cursor).times(4);
+        for (int i = 0; i < 3; i++) {
+            cursor.setBitPos(i * 20);
+            expect(codec.decode(cursor, resolver, builder)).andReturn("element" + i);
+        }
+        replay(buffer, cursor, codec, resolver, builder, sizeExpr);
+        EvenlyDistributedLazyList<Object> list = new EvenlyDistributedLazyList<Object>(
+                codec, 0, buffer, 3, builder, resolver, 20, ElementCache.Policy.SOFT.create(3, 0));
+        assertEquals(1, list.indexOf("element1"));
+        assertEquals(-1, list.indexOf("element3"));
+        assertTrue(list.contains("element2"));
+        assertFalse(list.isEmpty());
+        String[] elements = list.toArray(new String[0]);
+        assertEquals(3, elements.length);
+        assertEquals("element0", elements[0]);
+        verify(buffer, cursor, codec, resolver, builder, sizeExpr);
     }
 
 }
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.util;
+
+import java.nio.ByteBuffer;
+
+import org.codehaus.preon.Builder;
+import org.codehaus.preon.Codec;
+import org.codehaus.preon.CodecDescriptor;
+import org.codehaus.preon.DecodingException;
+import org.codehaus.preon.Resolver;
+import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.buffer.DefaultBitBuffer;
+import org.codehaus.preon.channel.BitChannel;
+import org.codehaus.preon.el.Expression;
+
+import junit.framework.TestCase;
+
+public class UnevenlyDistributedLazyListTest extends TestCase {
+
+    /** Four elements, each holding its own length in bytes, followed by that many bytes. */
+    private static final byte[] DATA = {1, 9, 3, 9, 9, 9, 0, 2, 9, 9};
+
+    private BitBuffer buffer;
+
+    private CountingCodec codec;
+
+    public void setUp() {
+        buffer = new DefaultBitBuffer(ByteBuffer.wrap(DATA));
+        codec = new CountingCodec();
+    }
+
+    public void testIndexingIncrementally() throws DecodingException {
+        UnevenlyDistributedLazyList<Integer> list = new UnevenlyDistributedLazyList<Integer>(codec, 0, buffer, 4,
+                null, null, ElementCache.Policy.SOFT.<Integer>create(4, 0));
+        assertEquals(4, list.size());
+        assertEquals(0, codec.decoded);
+        assertEquals(Integer.valueOf(0), list.get(2));
+        assertEquals(3, codec.decoded);
+        // Decoded while indexing, so cached
+        assertEquals(Integer.valueOf(3), list.get(1));
+        assertEquals(3, codec.decoded);
+        assertEquals(DATA.length * 8, list.getEnd());
+        assertEquals(4, codec.decoded);
+        assertEquals(0, buffer.getBitPos());
+    }
+
+    public void testDecodingFromIndex() throws DecodingException {
+        UnevenlyDistributedLazyList<Integer> list = new UnevenlyDistributedLazyList<Integer>(codec, 0, buffer, 4,
+                null, null, ElementCache.Policy.NONE.<Integer>create(4, 0));
+        assertEquals(DATA.length * 8, list.getEnd());
+        assertEquals(4, codec.decoded);
+        assertEquals(Integer.valueOf(2), list.get(3));
+        assertEquals(Integer.valueOf(1), list.get(0));
+        assertEquals(6, codec.decoded);
+        assertEquals(2, list.indexOf(0));
+        try {
+            list.get(4);
+            fail();
+        } catch (IndexOutOfBoundsException ioobe) {
+            // What we expect
+        }
+    }
+
+    private static class CountingCodec implements Codec<Integer> {
+
+        private int decoded;
+
+        public Integer decode(BitBuffer buffer, Resolver resolver, Builder builder) throws DecodingException {
+            decoded++;
+            int length = buffer.readAsInt(8);
+            buffer.setBitPos(buffer.getBitPos() + length * 8);
+            return length;
+        }
+
+        public void encode(Integer value, BitChannel channel, Resolver resolver) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Class<?>[] getTypes() {
+            return new Class[]{Integer.class};
+        }
+
+        public Expression<Integer, Resolver> getSize() {
+            return null;
+        }
+
+        public Class<?> getType() {
+            return Integer.class;
+        }
+
+        public CodecDescriptor getCodecDescriptor() {
+            return null;
+        }
+
+    }
+
+}
@@ -118,6 +118,27 @@ public class Expressions {
         return new IntegerNode<E>(value);
     }
 
+    /**
+     * Evaluates an integer {@link Expression}, without boxing the result of arithmetic, in the way
+     * {@link Expression#eval(Object)} does. Values referenced are still obtained from the context as objects.
+     * 
+     * @param <E>
+     *            The type of context to which the expression should be
+     *            applied.
+     * @param expr
+     *            The expression to evaluate.
+     * @param context
+     *            The context for evaluating references.
+     * @return The result of evaluating the expression.
+     */
+    public static <E> int evalInt(Expression<Integer, E> expr, E context) {
+        if (expr instanceof ArithmeticNode) {
+            return ((ArithmeticNode<E>) expr).evalInt(context);
+        } else {
+            return expr.eval(context).intValue();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static <E> Node<Integer, E> arithmetic(ReferenceContext<E> context, String expr)
             throws InvalidExpressionException {
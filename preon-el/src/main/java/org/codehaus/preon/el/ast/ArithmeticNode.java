@@ -73,7 +73,7 @@ public class ArithmeticNode<E> extends AbstractNode<Integer, E> {
     public enum Operator {
         pow {
             <E> int eval(E context, Node<Integer, E> a, Node<Integer, E> b) {
-                return (int) Math.pow(a.eval(context).intValue(), b.eval(context).intValue());
+                return (int) Math.pow(evalInt(context, a), evalInt(context, b));
             }
 
             <E> void document(Node<Integer, E> a, Node<Integer, E> b,
@@ -85,7 +85,7 @@ public class ArithmeticNode<E> extends AbstractNode<Integer, E> {
         },
         div {
             <E> int eval(E context, Node<Integer, E> a, Node<Integer, E> b) {
-                return a.eval(context).intValue() / b.eval(context).intValue();
+                return evalInt(context, a) / evalInt(context, b);
             }
 
             <E> void document(Node<Integer, E> a, Node<Integer, E> b,
@@ -97,7 +97,7 @@ public class ArithmeticNode<E> extends AbstractNode<Integer, E> {
         },
         plus {
             <E> int eval(E context, Node<Integer, E> a, Node<Integer, E> b) {
-                return a.eval(context).intValue() + b.eval(context).intValue();
+                return evalInt(context, a) + evalInt(context, b);
             }
 
             <E> void document(Node<Integer, E> a, Node<Integer, E> b,
@@ -110,7 +110,7 @@ public class ArithmeticNode<E> extends AbstractNode<Integer, E> {
         },
         minus {
             <E> int eval(E context, Node<Integer, E> a, Node<Integer, E> b) {
-                return a.eval(context).intValue() - b.eval(context).intValue();
+                return evalInt(context, a) - evalInt(context, b);
             }
 
             <E> void document(Node<Integer, E> a, Node<Integer, E> b,
@@ -123,7 +123,7 @@ public class ArithmeticNode<E> extends AbstractNode<Integer, E> {
         },
         mult {
             <E> int eval(E context, Node<Integer, E> a, Node<Integer, E> b) {
-                return a.eval(context).intValue() * b.eval(context).intValue();
+                return evalInt(context, a) * evalInt(context, b);
             }
 
             <E> void document(Node<Integer, E> a, Node<Integer, E> b,
@@ -271,6 +271,27 @@ public class ArithmeticNode<E> extends AbstractNode<Integer, E> {
         return operator.eval(context, lhs, rhs);
     }
 
+    /**
+     * Evaluates the expression like {@link #eval(Object)} does, without boxing the result.
+     *
+     * @param context The context for evaluating references.
+     * @return The result of evaluating the expression.
+     */
+    public int evalInt(E context) {
+        return operator.eval(context, lhs, rhs);
+    }
+
+    /**
+     * Evaluates an operand, without boxing the result if it is arithmetic as well.
+     */
+    private static <E> int evalInt(E context, Node<Integer, E> operand) {
+        if (operand instanceof ArithmeticNode) {
+            return ((ArithmeticNode<E>) operand).evalInt(context);
+        } else {
+            return operand.eval(context).intValue();
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -152,6 +152,33 @@ public class RelationalNode<T extends Comparable<T>, E> extends
         return relation.holds(context, lhs, rhs);
     }
 
+    /**
+     * Returns the relationship that needs to be evaluated.
+     *
+     * @return The relationship that needs to be evaluated.
+     */
+    public Relation getRelation() {
+        return relation;
+    }
+
+    /**
+     * Returns the left-hand side of the expression.
+     *
+     * @return The left-hand side of the expression.
+     */
+    public Node<T, E> getLhs() {
+        return lhs;
+    }
+
+    /**
+     * Returns the right-hand side of the expression.
+     *
+     * @return The right-hand side of the expression.
+     */
+    public Node<T, E> getRhs() {
+        return rhs;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -151,6 +151,10 @@ public class ArrayElementReference<T> implements Reference<T> {
         return arrayReference.equals(other.arrayReference) && index.equals(other.index);
     }
 
+    public int hashCode() {
+        return 31 * arrayReference.hashCode() + index.hashCode();
+    }
+
     /*
      * (non-Javadoc)
      * 
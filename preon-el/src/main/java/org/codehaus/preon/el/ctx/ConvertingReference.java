@@ -106,4 +106,18 @@ public class ConvertingReference<T, E> implements Reference<E> {
         return new ConvertingReference<T,E>(type, reference.rescope(context));
     }
 
+    @SuppressWarnings("unchecked")
+    public boolean equals(Object other) {
+        if (other instanceof ConvertingReference) {
+            ConvertingReference<T, E> that = (ConvertingReference<T, E>) other;
+            return type.equals(that.type) && reference.equals(that.reference);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return 31 * type.hashCode() + reference.hashCode();
+    }
+
 }
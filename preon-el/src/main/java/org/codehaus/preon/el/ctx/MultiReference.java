@@ -33,6 +33,7 @@
 package org.codehaus.preon.el.ctx;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.codehaus.preon.el.BindingException;
@@ -212,4 +213,17 @@ public class MultiReference<E> implements Reference<E> {
         return new MultiReference<E>(replacements);
     }
 
+    @SuppressWarnings("unchecked")
+    public boolean equals(Object other) {
+        if (other instanceof MultiReference) {
+            return Arrays.equals(references, ((MultiReference<E>) other).references);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return Arrays.hashCode(references);
+    }
+
 }
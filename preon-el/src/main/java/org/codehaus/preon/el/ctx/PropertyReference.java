@@ -132,6 +132,10 @@ public class PropertyReference<T> implements Reference<T> {
         return field.equals(other.field) && reference.equals(other.reference);
     }
 
+    public int hashCode() {
+        return 31 * field.hashCode() + reference.hashCode();
+    }
+
     public void document(Document target) {
         target.text("the " + field.getName());
         if (includeType) {
@@ -35,6 +35,7 @@ package org.codehaus.preon.el.ast;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.codehaus.preon.el.BindingException;
+import org.codehaus.preon.el.Expressions;
 import org.codehaus.preon.el.ast.ArithmeticNode.Operator;
 import org.junit.Test;
 
@@ -67,4 +68,15 @@ public class ArithmeticNodeTest {
         Node<Integer, Object> node2 = new IntegerNode<Object>(5);
         Node<Integer, Object> sum = ArithmeticNode.create(Operator.plus, node2, node1);
     }
+
+    @Test
+    public void testEvalIntOfNestedArithmetic() {
+        Node<Integer, Object> difference = ArithmeticNode.create(Operator.minus, new IntegerNode<Object>(1000),
+                new IntegerNode<Object>(24));
+        ArithmeticNode<Object> product = ArithmeticNode.create(Operator.mult, difference, new IntegerNode<Object>(8));
+        assertEquals(7808, product.evalInt(null));
+        assertEquals(Integer.valueOf(7808), product.eval(null));
+        assertEquals(7808, Expressions.evalInt(product, null));
+        assertEquals(24, Expressions.evalInt(new IntegerNode<Object>(24), null));
+    }
 }
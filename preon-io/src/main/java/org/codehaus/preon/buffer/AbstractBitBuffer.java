@@ -0,0 +1,404 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+/**
+ * A base class for {@link BitBuffer} implementations that are not backed by a single {@link java.nio.ByteBuffer}. It
+ * keeps track of the bit pointer position, implements all of the overloaded read operations and leaves it to
+ * subclasses to provide access to the underlying bytes, using <code>long</code> byte offsets throughout.
+ *
+ * @author Wilfred Springer
+ */
+public abstract class AbstractBitBuffer implements BitBuffer {
+
+    /** The current position of the bit pointer. */
+    private long bitPos;
+
+    /** The number of bits accessible through this {@link BitBuffer}. */
+    private long bitBufBitSize;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param bitBufBitSize The number of bits accessible through this {@link BitBuffer}.
+     * @param bitPos        The initial position of the bit pointer.
+     */
+    protected AbstractBitBuffer(long bitBufBitSize, long bitPos) {
+        this.bitBufBitSize = bitBufBitSize;
+        this.bitPos = bitPos;
+    }
+
+    /**
+     * Returns the byte at the given (absolute) byte offset.
+     *
+     * @param index The offset of the byte, counted in bytes from the start of the buffer.
+     * @return The byte at that position.
+     */
+    protected abstract byte getByte(long index);
+
+    /**
+     * Returns the value of <code>nrReadBytes</code> (max 8) consecutive bytes, starting at <code>firstBytePos</code>,
+     * combined in the given byte order. The default implementation assembles the result one byte at a time; subclasses
+     * having more efficient means of accessing multiple bytes at once are free to override it.
+     *
+     * @param firstBytePos The offset of the first byte to read.
+     * @param nrReadBytes  The number of bytes to read.
+     * @param byteOrder    The order in which the bytes need to be combined.
+     * @return The value of all bytes read.
+     */
+    protected long getNumberBuf(long firstBytePos, int nrReadBytes, ByteOrder byteOrder) {
+        long result = 0L;
+        if (byteOrder == ByteOrder.LittleEndian) {
+            for (int i = 0; i < nrReadBytes; i++) {
+                result |= (0xFFL & getByte(firstBytePos + i)) << (i << 3);
+            }
+        } else {
+            for (int i = 0; i < nrReadBytes; i++) {
+                result = (result << 8) | (0xFFL & getByte(firstBytePos + i));
+            }
+        }
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public void setBitPos(long bitPos) {
+        this.bitPos = bitPos;
+    }
+
+    // JavaDoc inherited
+
+    public long getBitPos() {
+        return bitPos;
+    }
+
+    // JavaDoc inherited
+
+    public long getBitBufBitSize() {
+        return bitBufBitSize;
+    }
+
+    // JavaDoc inherited
+
+    public long getActualBitPos() {
+        return bitPos;
+    }
+
+    // readBits
+
+    // JavaDoc inherited
+
+    public long readBits(int nrBits) {
+        return readAsLong(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public long readBits(long bitPos, int nrBits) {
+        return readAsLong(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public long readBits(int nrBits, ByteOrder byteOrder) {
+        return readAsLong(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public long readBits(long bitPos, int nrBits, ByteOrder byteOrder) {
+        if (nrBits <= 8)
+            return readAsByte(bitPos, nrBits, byteOrder);
+        else if (nrBits <= 16)
+            return readAsShort(bitPos, nrBits, byteOrder);
+        else if (nrBits <= 32)
+            return readAsInt(bitPos, nrBits, byteOrder);
+        else if (nrBits <= 64)
+            return readAsLong(bitPos, nrBits, byteOrder);
+        else
+            throw new BitBufferException("Wrong number of bits to read ("
+                    + nrBits + ").");
+    }
+
+    // boolean
+
+    // JavaDoc inherited
+
+    public boolean readAsBoolean() {
+        return readAsBoolean(bitPos, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public boolean readAsBoolean(long bitPos) {
+        return readAsBoolean(bitPos, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public boolean readAsBoolean(ByteOrder byteOrder) {
+        return readAsBoolean(bitPos, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public boolean readAsBoolean(long bitPos, ByteOrder byteOrder) {
+        return getResult(bitPos, 1, byteOrder, 1) == 1;
+    }
+
+    // signed byte
+
+    // JavaDoc inherited
+
+    public byte readAsByte(int nrBits) {
+        return readAsByte(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public byte readAsByte(int nrBits, ByteOrder byteOrder) {
+        return readAsByte(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public byte readAsByte(int nrBits, long bitPos) {
+        return readAsByte(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public byte readAsByte(long bitPos, int nrBits, ByteOrder byteOrder) {
+        return (byte) getResult(bitPos, nrBits, byteOrder, 8);
+    }
+
+    // signed short
+
+    // JavaDoc inherited
+
+    public short readAsShort(int nrBits) {
+        return readAsShort(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public short readAsShort(long bitPos, int nrBits) {
+        return readAsShort(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public short readAsShort(int nrBits, ByteOrder byteOrder) {
+        return readAsShort(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public short readAsShort(long bitPos, int nrBits, ByteOrder byteOrder) {
+        return (short) getResult(bitPos, nrBits, byteOrder, 16);
+    }
+
+    // signed int
+
+    // JavaDoc inherited
+
+    public int readAsInt(int nrBits) {
+        return readAsInt(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public int readAsInt(long bitPos, int nrBits) {
+        return readAsInt(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public int readAsInt(int nrBits, ByteOrder byteOrder) {
+        return readAsInt(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public int readAsInt(long bitPos, int nrBits, ByteOrder byteOrder) {
+        return (int) getResult(bitPos, nrBits, byteOrder, 32);
+    }
+
+    // signed long
+
+    // JavaDoc inherited
+
+    public long readAsLong(int nrBits) {
+        return readAsLong(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public long readAsLong(long bitPos, int nrBits) {
+        return readAsLong(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public long readAsLong(int nrBits, ByteOrder byteOrder) {
+        return readAsLong(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public long readAsLong(long bitPos, int nrBits, ByteOrder byteOrder) {
+        return getResult(bitPos, nrBits, byteOrder, 64);
+    }
+
+    // bulk reads
+
+    // JavaDoc inherited
+
+    public void readBytes(byte[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        for (int i = off; i < off + count; i++) {
+            dst[i] = readAsByte(bitPos, nrBits, endian);
+        }
+    }
+
+    // JavaDoc inherited
+
+    public void readShorts(short[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        for (int i = off; i < off + count; i++) {
+            dst[i] = readAsShort(bitPos, nrBits, endian);
+        }
+    }
+
+    // JavaDoc inherited
+
+    public void readInts(int[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        for (int i = off; i < off + count; i++) {
+            dst[i] = readAsInt(bitPos, nrBits, endian);
+        }
+    }
+
+    // JavaDoc inherited
+
+    public void readLongs(long[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        for (int i = off; i < off + count; i++) {
+            dst[i] = readAsLong(bitPos, nrBits, endian);
+        }
+    }
+
+    // JavaDoc inherited
+
+    public long indexOf(long pattern, int nrBits, long fromBitPos) {
+        return PatternScanner.indexOf(this, pattern, nrBits, fromBitPos, false);
+    }
+
+    // JavaDoc inherited
+
+    public long indexOfAligned(long pattern, int nrBits, long fromBitPos) {
+        return PatternScanner.indexOf(this, pattern, nrBits, fromBitPos, true);
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer slice(long length) {
+        if (length < 0 || getBitPos() + length > getBitBufBitSize()) {
+            throw new BitBufferUnderflowException(getBitPos(), length);
+        }
+        BitBuffer result = new SlicedBitBuffer(duplicate(), length);
+        setBitPos(getBitPos() + length);
+        return result;
+    }
+
+    /**
+     * Calculates the value represented by the given bits, and moves the bit pointer to the first bit following them.
+     *
+     * @param bitPos        position of the first bit to read in the bit buffer
+     * @param nrBits        number of bits to read
+     * @param byteOrder     order of reading bytes (either Endian.Big or Endian.Little)
+     * @param maxNrBitsRead maximum number of bits allowed to read, based on the method return type
+     * @return the value represented by the given bits
+     */
+    private long getResult(long bitPos, int nrBits, ByteOrder byteOrder, int maxNrBitsRead) {
+        validateInputParams(bitPos, nrBits, maxNrBitsRead);
+        int offset = (int) (bitPos & 7);
+        int nrReadBytes = (offset + nrBits + 7) >> 3;
+        long firstBytePos = bitPos >>> 3;
+        long result;
+        if (nrReadBytes <= 8) {
+            long numberBuf = getNumberBuf(firstBytePos, nrReadBytes, byteOrder);
+            int shiftBits;
+            if (byteOrder == ByteOrder.BigEndian) {
+                shiftBits = 7 - ((nrBits + offset + 7) & 7);
+            } else {
+                shiftBits = offset;
+            }
+            result = numberBuf >>> shiftBits;
+        } else {
+            // An unaligned read of more than 56 bits, spanning nine bytes
+            long numberBuf = getNumberBuf(firstBytePos, 8, byteOrder);
+            long lastByte = 0xFFL & getByte(firstBytePos + 8);
+            if (byteOrder == ByteOrder.BigEndian) {
+                result = ((numberBuf << offset) | (lastByte >>> (8 - offset))) >>> (64 - nrBits);
+            } else {
+                result = (numberBuf >>> offset) | (lastByte << (64 - offset));
+            }
+        }
+        this.bitPos = bitPos + nrBits;
+        return result & (0xFFFFFFFFFFFFFFFFL >>> (64 - nrBits));
+    }
+
+    /**
+     * Check if all input parameters are correct, otherwise throw BitBufferException
+     *
+     * @param bitPos        position of the first bit to read in the bit buffer
+     * @param nrBits        number of bits to read
+     * @param maxNrBitsRead maximum number of bits allowed to read, based on the method return type
+     */
+    private void validateInputParams(long bitPos, int nrBits, int maxNrBitsRead) {
+        if (nrBits < 1) {
+            throw new BitBufferException("Number of bits to read (" + nrBits
+                    + ") should greater than zero.");
+        }
+        if (bitPos < 0) {
+            throw new BitBufferException("Bit position (" + bitPos
+                    + ") should be positive.");
+        }
+        if (nrBits > maxNrBitsRead) {
+            throw new BitBufferException("Cannot read " + nrBits
+                    + " bits using " + maxNrBitsRead
+                    + " bit long numberBuf (bitPos=" + bitPos + ").");
+        }
+        if (bitPos + nrBits > getBitBufBitSize()) {
+            throw new BitBufferUnderflowException(bitPos, nrBits);
+        }
+    }
+
+}
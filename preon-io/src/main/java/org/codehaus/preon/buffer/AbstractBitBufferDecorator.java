@@ -281,6 +281,60 @@ public abstract class AbstractBitBufferDecorator implements BitBuffer {
         return getDelegate().readBits(bitPos, nrBits, endian);
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.codehaus.preon.buffer.BitBuffer#readBytes(byte[], int, int, int, org.codehaus.preon.buffer.ByteOrder)
+     */
+
+    public void readBytes(byte[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        getDelegate().readBytes(dst, off, count, nrBits, endian);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.codehaus.preon.buffer.BitBuffer#readShorts(short[], int, int, int, org.codehaus.preon.buffer.ByteOrder)
+     */
+
+    public void readShorts(short[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        getDelegate().readShorts(dst, off, count, nrBits, endian);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.codehaus.preon.buffer.BitBuffer#readInts(int[], int, int, int, org.codehaus.preon.buffer.ByteOrder)
+     */
+
+    public void readInts(int[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        getDelegate().readInts(dst, off, count, nrBits, endian);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.codehaus.preon.buffer.BitBuffer#readLongs(long[], int, int, int, org.codehaus.preon.buffer.ByteOrder)
+     */
+
+    public void readLongs(long[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        getDelegate().readLongs(dst, off, count, nrBits, endian);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.codehaus.preon.buffer.BitBuffer#indexOf(long, int, long)
+     */
+
+    public long indexOf(long pattern, int nrBits, long fromBitPos) {
+        return getDelegate().indexOf(pattern, nrBits, fromBitPos);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.codehaus.preon.buffer.BitBuffer#indexOfAligned(long, int, long)
+     */
+
+    public long indexOfAligned(long pattern, int nrBits, long fromBitPos) {
+        return getDelegate().indexOfAligned(pattern, nrBits, fromBitPos);
+    }
+
     /*
      * (non-Javadoc)
      * @see org.codehaus.preon.buffer.BitBuffer#setBitPos(long)
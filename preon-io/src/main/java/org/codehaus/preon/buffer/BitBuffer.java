@@ -346,6 +346,96 @@ public interface BitBuffer {
      */
     long readAsLong(long bitPos, int nrBits, ByteOrder endian);
 
+    // bulk reads
+
+    /**
+     * Read <code>count</code> consecutive values of the specified number of bits (max 8) each, starting from the current
+     * bit pointer position in either the little- or big-endian order, and store them as <b>byte</b>s (signed) in the
+     * given array. Equivalent to calling {@link #readAsByte(int, ByteOrder)} <code>count</code> times, but typically a
+     * lot faster for values that are byte-aligned and 8 bits in size. After reading the pointer will indicate the
+     * position of the first bit that has not been read yet.
+     *
+     * @param dst    the array receiving the values
+     * @param off    the index of the first element in the array to receive a value
+     * @param count  the number of values to read
+     * @param nrBits number of bits of a single value
+     * @param endian order of reading bytes (either Endian.Big or Endian.Little)
+     * @throws BitBufferUnderflowException If not all values are available.
+     */
+    void readBytes(byte[] dst, int off, int count, int nrBits, ByteOrder endian);
+
+    /**
+     * Read <code>count</code> consecutive values of the specified number of bits (max 16) each, starting from the current
+     * bit pointer position in either the little- or big-endian order, and store them as <b>short</b>s (signed) in the
+     * given array. Equivalent to calling {@link #readAsShort(int, ByteOrder)} <code>count</code> times, but typically a
+     * lot faster for values that are byte-aligned and 8 or 16 bits in size. After reading the pointer will indicate
+     * the position of the first bit that has not been read yet.
+     *
+     * @param dst    the array receiving the values
+     * @param off    the index of the first element in the array to receive a value
+     * @param count  the number of values to read
+     * @param nrBits number of bits of a single value
+     * @param endian order of reading bytes (either Endian.Big or Endian.Little)
+     * @throws BitBufferUnderflowException If not all values are available.
+     */
+    void readShorts(short[] dst, int off, int count, int nrBits, ByteOrder endian);
+
+    /**
+     * Read <code>count</code> consecutive values of the specified number of bits (max 32) each, starting from the current
+     * bit pointer position in either the little- or big-endian order, and store them as <b>int</b>s (signed) in the
+     * given array. Equivalent to calling {@link #readAsInt(int, ByteOrder)} <code>count</code> times, but typically a
+     * lot faster for values that are byte-aligned and 8, 16 or 32 bits in size. After reading the pointer will indicate
+     * the position of the first bit that has not been read yet.
+     *
+     * @param dst    the array receiving the values
+     * @param off    the index of the first element in the array to receive a value
+     * @param count  the number of values to read
+     * @param nrBits number of bits of a single value
+     * @param endian order of reading bytes (either Endian.Big or Endian.Little)
+     * @throws BitBufferUnderflowException If not all values are available.
+     */
+    void readInts(int[] dst, int off, int count, int nrBits, ByteOrder endian);
+
+    /**
+     * Read <code>count</code> consecutive values of the specified number of bits (max 64) each, starting from the current
+     * bit pointer position in either the little- or big-endian order, and store them as <b>long</b>s (signed) in the
+     * given array. Equivalent to calling {@link #readAsLong(int, ByteOrder)} <code>count</code> times, but typically a
+     * lot faster for values that are byte-aligned and 8, 16, 32 or 64 bits in size. After reading the pointer will
+     * indicate the position of the first bit that has not been read yet.
+     *
+     * @param dst    the array receiving the values
+     * @param off    the index of the first element in the array to receive a value
+     * @param count  the number of values to read
+     * @param nrBits number of bits of a single value
+     * @param endian order of reading bytes (either Endian.Big or Endian.Little)
+     * @throws BitBufferUnderflowException If not all values are available.
+     */
+    void readLongs(long[] dst, int off, int count, int nrBits, ByteOrder endian);
+
+    /**
+     * Returns the position of the first occurrence of the given bit pattern, such as a sync word, at or after the given
+     * bit position. The bits are compared in big-endian order, the way {@link #readBits(long, int)} reads them. The bit
+     * pointer position is not changed.
+     *
+     * @param pattern    the pattern to look for, held by the <code>nrBits</code> least significant bits
+     * @param nrBits     number of bits of the pattern (max 64)
+     * @param fromBitPos position of the first bit from which to start searching
+     * @return the position of the first bit of the first occurrence, or <code>-1</code> if the pattern does not occur
+     */
+    long indexOf(long pattern, int nrBits, long fromBitPos);
+
+    /**
+     * Returns the position of the first byte-aligned occurrence of the given bit pattern, at or after the given bit
+     * position. Apart from ignoring occurrences that do not start at a byte boundary, the same as {@link #indexOf(long,
+     * int, long)}.
+     *
+     * @param pattern    the pattern to look for, held by the <code>nrBits</code> least significant bits
+     * @param nrBits     number of bits of the pattern (max 64)
+     * @param fromBitPos position of the first bit from which to start searching
+     * @return the position of the first bit of the first byte-aligned occurrence, or <code>-1</code> if there is none
+     */
+    long indexOfAligned(long pattern, int nrBits, long fromBitPos);
+
     /**
      * Returns a new BitBuffer, starting at {@link #getBitPos()}, with the given <code>length</code>. Moves the current
      * position in this BitBuffer to {@link #getBitPos()} <code> + length</code>. Note that each {@link BitBuffer} is
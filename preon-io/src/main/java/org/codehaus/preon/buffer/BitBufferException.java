@@ -38,6 +38,10 @@ public class BitBufferException extends RuntimeException {
         super(message);
     }
 
+    public BitBufferException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
     private static final long serialVersionUID = 4240144029636312003L;
 
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+/**
+ * An immutable source of bits, to be shared among any number of threads. Data is read through cursors: lightweight
+ * {@link BitBuffer BitBuffers} that have a position of their own, but only ever read the shared data using absolute
+ * positions. A cursor is meant to be used by a single thread; threads decoding concurrently, for instance different
+ * regions of the same file, should each obtain a cursor of their own. No locking or thread-bound state is involved.
+ *
+ * @author Wilfred Springer
+ */
+public interface BitSource {
+
+    /**
+     * Returns the number of bits available from this source.
+     *
+     * @return The number of bits available.
+     */
+    long getBitSize();
+
+    /**
+     * Returns a new cursor, positioned at the start of the data, and covering all of it.
+     *
+     * @return A new {@link BitBuffer}, not to be shared among threads.
+     */
+    BitBuffer cursor();
+
+    /**
+     * Returns a new cursor, covering the given region only. Positions passed to the cursor will be relative to the start
+     * of the region.
+     *
+     * @param bitPos The position of the first bit of the region.
+     * @param length The length of the region, in bits.
+     * @return A new {@link BitBuffer}, not to be shared among threads.
+     * @throws BitBufferUnderflowException If the region extends beyond the end of the data.
+     */
+    BitBuffer cursor(long bitPos, long length) throws BitBufferUnderflowException;
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bulk reads of byte-aligned values from a {@link ByteBuffer}, shared by the {@link BitBuffer} implementations backed
+ * by a {@link ByteBuffer}. All operations assume the caller already checked the values are available.
+ *
+ * @author Wilfred Springer
+ */
+final class BulkReads {
+
+    private BulkReads() {
+    }
+
+    /**
+     * Returns whether values of the given size, starting at the given position, can be read using the operations of
+     * this class.
+     *
+     * @param bitPos    The position of the first bit of the first value.
+     * @param nrBits    The number of bits of a single value.
+     * @param maxNrBits The size of the primitive type receiving the values.
+     * @return <code>true</code> if the values are byte-aligned and 8, 16, 32 or 64 bits in size.
+     */
+    static boolean isSupported(long bitPos, int nrBits, int maxNrBits) {
+        return (bitPos & 7) == 0 && nrBits <= maxNrBits
+                && (nrBits == 8 || nrBits == 16 || nrBits == 32 || nrBits == 64);
+    }
+
+    static void readBytes(ByteBuffer data, long firstBytePos, byte[] dst, int off, int count) {
+        view(data, firstBytePos, ByteOrder.BigEndian).get(dst, off, count);
+    }
+
+    static void readShorts(ByteBuffer data, long firstBytePos, short[] dst, int off, int count,
+                           int nrBits, ByteOrder endian) {
+        ByteBuffer view = view(data, firstBytePos, endian);
+        if (nrBits == 16) {
+            view.asShortBuffer().get(dst, off, count);
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = (short) (view.get() & 0xFF);
+            }
+        }
+    }
+
+    static void readInts(ByteBuffer data, long firstBytePos, int[] dst, int off, int count,
+                         int nrBits, ByteOrder endian) {
+        ByteBuffer view = view(data, firstBytePos, endian);
+        if (nrBits == 32) {
+            view.asIntBuffer().get(dst, off, count);
+        } else if (nrBits == 16) {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = view.getShort() & 0xFFFF;
+            }
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = view.get() & 0xFF;
+            }
+        }
+    }
+
+    static void readLongs(ByteBuffer data, long firstBytePos, long[] dst, int off, int count,
+                          int nrBits, ByteOrder endian) {
+        ByteBuffer view = view(data, firstBytePos, endian);
+        if (nrBits == 64) {
+            view.asLongBuffer().get(dst, off, count);
+        } else if (nrBits == 32) {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = view.getInt() & 0xFFFFFFFFL;
+            }
+        } else if (nrBits == 16) {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = view.getShort() & 0xFFFFL;
+            }
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = view.get() & 0xFFL;
+            }
+        }
+    }
+
+    /**
+     * Returns a view on the data, positioned at the given byte, using the given byte order. The original {@link
+     * ByteBuffer} is not affected.
+     */
+    private static ByteBuffer view(ByteBuffer data, long firstBytePos, ByteOrder endian) {
+        ByteBuffer view = data.duplicate();
+        view.position((int) firstBytePos);
+        view.order(endian == ByteOrder.BigEndian ? java.nio.ByteOrder.BIG_ENDIAN : java.nio.ByteOrder.LITTLE_ENDIAN);
+        return view;
+    }
+
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link BitBuffer} presenting a number of {@link ByteBuffer} fragments as a single, continuous sequence of bits,
+ * without copying them into a single buffer first. Typically used for messages reassembled from a number of network
+ * packets. Each fragment contributes the bytes between its position and its limit at the time of construction.
+ * <p/>
+ * The fragment holding a byte is found using a binary search over the start offsets of all fragments, remembering the
+ * last fragment used, since reads are mostly sequential. Reads crossing the boundary between two fragments are handled
+ * transparently. Slices and {@link ByteBuffer ByteBuffers} obtained from a range contained in a single fragment are
+ * views on that fragment; only ranges crossing fragment boundaries get copied.
+ * <p/>
+ * All instances created by {@link #duplicate()} share the same fragments; only the position is copied.
+ *
+ * @author Wilfred Springer
+ */
+public class CompositeBitBuffer extends AbstractBitBuffer {
+
+    /** The non-empty fragments, all in big endian order. */
+    private final ByteBuffer[] fragments;
+
+    /**
+     * The offset of the first byte of each fragment, followed by the total number of bytes. The fragment holding byte
+     * <code>i</code> is the fragment <code>f</code> for which <code>starts[f] &lt;= i &lt; starts[f + 1]</code>.
+     */
+    private final long[] starts;
+
+    /** The index of the fragment used most recently. */
+    private int current;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param fragments The fragments holding the data, in order.
+     */
+    public CompositeBitBuffer(ByteBuffer... fragments) {
+        this(Arrays.asList(fragments));
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param fragments The fragments holding the data, in order.
+     */
+    public CompositeBitBuffer(List<ByteBuffer> fragments) {
+        super(remaining(fragments) << 3, 0L);
+        int count = 0;
+        for (ByteBuffer fragment : fragments) {
+            if (fragment.hasRemaining()) {
+                count++;
+            }
+        }
+        this.fragments = new ByteBuffer[count];
+        this.starts = new long[count + 1];
+        int index = 0;
+        for (ByteBuffer fragment : fragments) {
+            if (fragment.hasRemaining()) {
+                this.fragments[index] = fragment.slice();
+                this.starts[index + 1] = starts[index] + fragment.remaining();
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Constructs a new instance, sharing the fragments passed in.
+     *
+     * @param fragments The fragments.
+     * @param starts    The offsets of the fragments, followed by the total number of bytes.
+     * @param bitPos    The initial bit position.
+     */
+    private CompositeBitBuffer(ByteBuffer[] fragments, long[] starts, long bitPos) {
+        super(starts[fragments.length] << 3, bitPos);
+        this.fragments = fragments;
+        this.starts = starts;
+    }
+
+    /**
+     * Returns the total number of bytes remaining in the fragments passed in.
+     *
+     * @param fragments The fragments.
+     * @return The sum of the number of bytes remaining in all fragments.
+     */
+    private static long remaining(List<ByteBuffer> fragments) {
+        long result = 0;
+        for (ByteBuffer fragment : fragments) {
+            result += fragment.remaining();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the fragment holding the byte at the given offset.
+     *
+     * @param index The offset of the byte.
+     * @return The index of the fragment holding that byte.
+     */
+    private int fragmentOf(long index) {
+        int fragment = current;
+        if (index < starts[fragment] || index >= starts[fragment + 1]) {
+            fragment = Arrays.binarySearch(starts, index);
+            if (fragment < 0) {
+                // Not the first byte of a fragment; take the fragment preceding the insertion point
+                fragment = -fragment - 2;
+            }
+            current = fragment;
+        }
+        return fragment;
+    }
+
+    @Override
+    protected byte getByte(long index) {
+        int fragment = fragmentOf(index);
+        return fragments[fragment].get((int) (index - starts[fragment]));
+    }
+
+    @Override
+    protected long getNumberBuf(long firstBytePos, int nrReadBytes, ByteOrder byteOrder) {
+        int fragment = fragmentOf(firstBytePos);
+        int offset = (int) (firstBytePos - starts[fragment]);
+        if (offset <= fragments[fragment].limit() - 8) {
+            // Take all bytes from a single big endian word, ignoring the bytes following them
+            long value = fragments[fragment].getLong(offset);
+            if (byteOrder == ByteOrder.BigEndian) {
+                return value >>> ((8 - nrReadBytes) << 3);
+            } else {
+                return Long.reverseBytes(value) & (0xFFFFFFFFFFFFFFFFL >>> ((8 - nrReadBytes) << 3));
+            }
+        } else {
+            return super.getNumberBuf(firstBytePos, nrReadBytes, byteOrder);
+        }
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer duplicate() {
+        return new CompositeBitBuffer(fragments, starts, getBitPos());
+    }
+
+    // JavaDoc inherited
+
+    @Override
+    public BitBuffer slice(long length) {
+        long bitPos = getBitPos();
+        if (length > 0 && bitPos >= 0 && bitPos + length <= getBitBufBitSize()) {
+            long firstBytePos = bitPos >>> 3;
+            long endBytePos = (bitPos + length + 7) >>> 3;
+            int fragment = fragmentOf(firstBytePos);
+            if (endBytePos <= starts[fragment + 1]) {
+                DefaultBitBuffer view = new DefaultBitBuffer(view(fragment, firstBytePos, (int) (endBytePos - firstBytePos)));
+                setBitPos(bitPos + length);
+                if ((bitPos & 7) == 0 && (length & 7) == 0) {
+                    return view;
+                } else {
+                    view.setBitPos(bitPos & 7);
+                    return new SlicedBitBuffer(view, length);
+                }
+            }
+        }
+        return super.slice(length);
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer(int length) throws BitBufferUnderflowException {
+        long bitPos = getBitPos();
+        if ((bitPos % 8) != 0) {
+            throw new BitBufferException(
+                    "8-bit alignment exception. Bit position (" + bitPos
+                            + ") should be 8-bit aligned");
+        }
+        long bitsToRead = ((long) length) << 3;
+        if (bitPos + bitsToRead > getBitBufBitSize()) {
+            throw new BitBufferUnderflowException(bitPos, bitsToRead);
+        }
+        ByteBuffer result = readAsByteBuffer(bitPos >>> 3, length);
+        setBitPos(bitPos + bitsToRead);
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer() {
+        long size = getBitBufBitSize() >>> 3;
+        if (size > Integer.MAX_VALUE) {
+            throw new BitBufferException("Unable to expose " + size
+                    + " bytes through a single ByteBuffer.");
+        }
+        return readAsByteBuffer(0, (int) size);
+    }
+
+    /**
+     * Returns a {@link ByteBuffer} holding the given range of bytes. If the range is contained in a single fragment, the
+     * result will be a view on that fragment. Otherwise the bytes will be copied.
+     *
+     * @param firstBytePos The offset of the first byte.
+     * @param length       The number of bytes.
+     * @return A {@link ByteBuffer} holding the bytes requested.
+     */
+    private ByteBuffer readAsByteBuffer(long firstBytePos, int length) {
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        int fragment = fragmentOf(firstBytePos);
+        if (firstBytePos + length <= starts[fragment + 1]) {
+            return view(fragment, firstBytePos, length);
+        } else {
+            ByteBuffer result = ByteBuffer.allocate(length);
+            long position = firstBytePos;
+            while (result.hasRemaining()) {
+                fragment = fragmentOf(position);
+                int count = (int) Math.min(result.remaining(), starts[fragment + 1] - position);
+                result.put(view(fragment, position, count));
+                position += count;
+            }
+            result.flip();
+            return result;
+        }
+    }
+
+    /**
+     * Returns a view on a range of bytes within a single fragment.
+     *
+     * @param fragment     The index of the fragment.
+     * @param firstBytePos The offset of the first byte, counted from the start of this buffer.
+     * @param length       The number of bytes.
+     * @return A {@link ByteBuffer} sharing its contents with the fragment.
+     */
+    private ByteBuffer view(int fragment, long firstBytePos, int length) {
+        int offset = (int) (firstBytePos - starts[fragment]);
+        ByteBuffer view = fragments[fragment].duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+}
@@ -38,7 +38,11 @@ import java.nio.ByteBuffer;
  * A threadsafe {@link BitBuffer}. The threadsafe implementation is wrapped around another {@link BitBuffer}.
  *
  * @author Wilfred Springer
+ * @deprecated Every thread using an instance keeps its own duplicate in a {@link ThreadLocal} that is never cleared,
+ *             which causes instances to be retained by pooled threads. Use a {@link BitSource} instead, giving every
+ *             thread a cursor of its own.
  */
+@Deprecated
 public class ConcurrentBitBuffer extends AbstractBitBufferDecorator {
 
     /** The current {@link BitBuffer}, indexed by thread. */
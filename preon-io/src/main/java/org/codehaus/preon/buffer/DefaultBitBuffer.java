@@ -41,7 +41,13 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
- * An implementation of {@link BitBuffer} wrapping a {@link ByteBuffer}.
+ * An implementation of {@link BitBuffer} wrapping a {@link ByteBuffer}. Instances can be reused for decoding another
+ * {@link ByteBuffer} using {@link #reset(ByteBuffer)}, possibly through a {@link DefaultBitBufferPool}; the bits
+ * available are then the ones between the position and the limit of that {@link ByteBuffer} at the time of the call.
+ * <p/>
+ * A {@link #slice(long) slice} is just another instance, covering a range of bits of the same {@link ByteBuffer}.
+ * Slices of slices therefore do not add any levels of indirection: reading from a slice costs the same, regardless of
+ * how deeply it is nested.
  *
  * @author Bartosz Wieczorek
  * @since Feb 18, 2007
@@ -52,30 +58,36 @@ public class DefaultBitBuffer implements BitBuffer {
 
     private ByteBuffer byteBuffer;
 
+    /** The position of the first bit, counted in bits from the start of {@link #byteBuffer}. */
+    private long startPos;
+
     private long bitPos;
 
     private long bitBufBitSize;
 
     /**
-     * Constructs a new instance.
+     * Constructs a new instance, covering all bytes of the buffer passed in, regardless of its position and limit. Use
+     * {@link #reset(ByteBuffer)} to cover only the bytes between its position and its limit.
      *
      * @param inputByteBuffer input buffered byte stream
      */
     public DefaultBitBuffer(ByteBuffer inputByteBuffer) {
         // TODO: I think we should use #limit() instead of #capacity()
-        this(inputByteBuffer, ((long) (inputByteBuffer.capacity())) << 3, 0L);
+        this(inputByteBuffer, 0L, ((long) (inputByteBuffer.capacity())) << 3, 0L);
     }
 
     /**
      * Constructs a new instance.
      *
      * @param inputByteBuffer
+     * @param startPos
      * @param bitBufBitSize
      * @param bitPos
      */
-    private DefaultBitBuffer(ByteBuffer inputByteBuffer, long bitBufBitSize,
-                             long bitPos) {
+    private DefaultBitBuffer(ByteBuffer inputByteBuffer, long startPos,
+                             long bitBufBitSize, long bitPos) {
         this.byteBuffer = inputByteBuffer;
+        this.startPos = startPos;
         this.bitBufBitSize = bitBufBitSize;
         this.bitPos = bitPos;
     }
@@ -94,6 +106,11 @@ public class DefaultBitBuffer implements BitBuffer {
             FileChannel fc = fis.getChannel();
 
             // Get the file's size and then map it into memory
+            if (fc.size() > Integer.MAX_VALUE) {
+                fc.close();
+                throw new BitBufferException("File " + fileName
+                        + " exceeds 2 GB; use MappedBitBuffer instead.");
+            }
             int fileSize = (int) fc.size();
             ByteBuffer inputByteBuffer = fc.map(FileChannel.MapMode.READ_ONLY,
                     0, fileSize);
@@ -101,15 +118,32 @@ public class DefaultBitBuffer implements BitBuffer {
             // Close the org.codehaus.preon.channel.channel and the stream
             fc.close();
 
-            this.byteBuffer = inputByteBuffer;
-            bitBufBitSize = ((long) (inputByteBuffer.capacity())) << 3;
-            bitPos = 0;
+            reset(inputByteBuffer);
 
+        } catch (BitBufferException bbe) {
+            throw bbe;
         } catch (Exception e) {
             throw new RuntimeException("Should never happen", e);
         }
     }
 
+    /**
+     * Makes this instance wrap another {@link ByteBuffer}, covering the bytes between its position and its limit, and
+     * resets the bit position to 0. Allows a single instance to be used for decoding many messages, without creating
+     * new instances. Note that {@link BitBuffer BitBuffers} previously obtained through {@link #duplicate()} or {@link
+     * #slice(long)} keep reading from the previous {@link ByteBuffer}.
+     *
+     * @param inputByteBuffer The {@link ByteBuffer} to read from.
+     * @return This instance.
+     */
+    public DefaultBitBuffer reset(ByteBuffer inputByteBuffer) {
+        this.byteBuffer = inputByteBuffer;
+        this.startPos = ((long) inputByteBuffer.position()) << 3;
+        this.bitBufBitSize = ((long) inputByteBuffer.remaining()) << 3;
+        this.bitPos = 0;
+        return this;
+    }
+
     // JavaDoc inherited
 
     public void setBitPos(long bitPos) {
@@ -133,19 +167,19 @@ public class DefaultBitBuffer implements BitBuffer {
     // JavaDoc inherited
 
     public long readBits(int nrBits) {
-        return readAsLong(nrBits);
+        return getResult(bitPos, nrBits, ByteOrder.BigEndian, 64);
     }
 
     // JavaDoc inherited
 
     public long readBits(long bitPos, int nrBits) {
-        return readAsLong(bitPos, nrBits);
+        return getResult(bitPos, nrBits, ByteOrder.BigEndian, 64);
     }
 
     // JavaDoc inherited
 
     public long readBits(int nrBits, ByteOrder byteOrder) {
-        return readAsLong(nrBits, byteOrder);
+        return getResult(bitPos, nrBits, byteOrder, 64);
     }
 
     // JavaDoc inherited
@@ -170,25 +204,25 @@ public class DefaultBitBuffer implements BitBuffer {
     // JavaDoc inherited
 
     public boolean readAsBoolean() {
-        return readAsBoolean(bitPos, ByteOrder.BigEndian);
+        return getResult(bitPos, 1, ByteOrder.BigEndian, 1) == 1;
     }
 
     // JavaDoc inherited
 
     public boolean readAsBoolean(long bitPos) {
-        return readAsBoolean(bitPos, ByteOrder.BigEndian);
+        return getResult(bitPos, 1, ByteOrder.BigEndian, 1) == 1;
     }
 
     // JavaDoc inherited
 
     public boolean readAsBoolean(ByteOrder byteOrder) {
-        return readAsBoolean(bitPos, byteOrder);
+        return getResult(bitPos, 1, byteOrder, 1) == 1;
     }
 
     // JavaDoc inherited
 
     public boolean readAsBoolean(long bitPos, ByteOrder byteOrder) {
-        return getResultAsInt(bitPos, 1, byteOrder, 1) == 1;
+        return getResult(bitPos, 1, byteOrder, 1) == 1;
     }
 
     // signed byte
@@ -196,50 +230,50 @@ public class DefaultBitBuffer implements BitBuffer {
     // JavaDoc inherited
 
     public byte readAsByte(int nrBits) {
-        return readAsByte(bitPos, nrBits, ByteOrder.BigEndian);
+        return (byte) getResult(bitPos, nrBits, ByteOrder.BigEndian, 8);
     }
 
     // JavaDoc inherited
 
     public byte readAsByte(int nrBits, ByteOrder byteOrder) {
-        return readAsByte(bitPos, nrBits, byteOrder);
+        return (byte) getResult(bitPos, nrBits, byteOrder, 8);
     }
 
     // JavaDoc inherited
 
     public byte readAsByte(int nrBits, long bitPos) {
-        return readAsByte(bitPos, nrBits, ByteOrder.BigEndian);
+        return (byte) getResult(bitPos, nrBits, ByteOrder.BigEndian, 8);
     }
 
     // JavaDoc inherited
 
     public byte readAsByte(long bitPos, int nrBits, ByteOrder byteOrder) {
-        return (byte) getResultAsInt(bitPos, nrBits, byteOrder, 8);
+        return (byte) getResult(bitPos, nrBits, byteOrder, 8);
     }
 
     // signed short
     // JavaDoc inherited
 
     public short readAsShort(int nrBits) {
-        return readAsShort(bitPos, nrBits, ByteOrder.BigEndian);
+        return (short) getResult(bitPos, nrBits, ByteOrder.BigEndian, 16);
     }
 
     // JavaDoc inherited
 
     public short readAsShort(long bitPos, int nrBits) {
-        return readAsShort(bitPos, nrBits, ByteOrder.BigEndian);
+        return (short) getResult(bitPos, nrBits, ByteOrder.BigEndian, 16);
     }
 
     // JavaDoc inherited
 
     public short readAsShort(int nrBits, ByteOrder byteOrder) {
-        return readAsShort(bitPos, nrBits, byteOrder);
+        return (short) getResult(bitPos, nrBits, byteOrder, 16);
     }
 
     // JavaDoc inherited
 
     public short readAsShort(long bitPos, int nrBits, ByteOrder byteOrder) {
-        return (short) getResultAsInt(bitPos, nrBits, byteOrder, 16);
+        return (short) getResult(bitPos, nrBits, byteOrder, 16);
     }
 
     // signed int
@@ -247,28 +281,25 @@ public class DefaultBitBuffer implements BitBuffer {
     // JavaDoc inherited
 
     public int readAsInt(int nrBits) {
-        return readAsInt(bitPos, nrBits, ByteOrder.BigEndian);
+        return (int) getResult(bitPos, nrBits, ByteOrder.BigEndian, 32);
     }
 
     // JavaDoc inherited
 
     public int readAsInt(long bitPos, int nrBits) {
-        return readAsInt(bitPos, nrBits, ByteOrder.BigEndian);
+        return (int) getResult(bitPos, nrBits, ByteOrder.BigEndian, 32);
     }
 
     // JavaDoc inherited
 
     public int readAsInt(int nrBits, ByteOrder byteOrder) {
-        return readAsInt(bitPos, nrBits, byteOrder);
+        return (int) getResult(bitPos, nrBits, byteOrder, 32);
     }
 
     // JavaDoc inherited
 
     public int readAsInt(long bitPos, int nrBits, ByteOrder byteOrder) {
-        if (getNrNecessaryBytes(bitPos, nrBits) > 4)
-            return (int) getResultAsLong(bitPos, nrBits, byteOrder, 32);
-        else
-            return getResultAsInt(bitPos, nrBits, byteOrder, 32);
+        return (int) getResult(bitPos, nrBits, byteOrder, 32);
     }
 
     // signed long
@@ -276,112 +307,197 @@ public class DefaultBitBuffer implements BitBuffer {
     // JavaDoc inherited
 
     public long readAsLong(int nrBits) {
-        return readAsLong(bitPos, nrBits, ByteOrder.BigEndian);
+        return getResult(bitPos, nrBits, ByteOrder.BigEndian, 64);
     }
 
     // JavaDoc inherited
 
     public long readAsLong(long bitPos, int nrBits) {
-        return readAsLong(bitPos, nrBits, ByteOrder.BigEndian);
+        return getResult(bitPos, nrBits, ByteOrder.BigEndian, 64);
     }
 
     // JavaDoc inherited
 
     public long readAsLong(int nrBits, ByteOrder byteOrder) {
-        return readAsLong(bitPos, nrBits, byteOrder);
+        return getResult(bitPos, nrBits, byteOrder, 64);
     }
 
     // JavaDoc inherited
 
     public long readAsLong(long bitPos, int nrBits, ByteOrder byteOrder) {
-        return getResultAsLong(bitPos, nrBits, byteOrder, 64);
+        return getResult(bitPos, nrBits, byteOrder, 64);
     }
 
-    // private methods
+    // bulk reads
 
-    /**
-     * Return the minimum number of bytes that are necessary to be read in order to read specified bits
-     *
-     * @param bitPos position of the first bit to read in the bit buffer
-     * @param nrBits number of bits to read
-     * @return number of bytes to read
-     */
-    private static int getNrNecessaryBytes(long bitPos, int nrBits) {
-        return (int) (((bitPos % 8) + nrBits + 7) / 8);
+    // JavaDoc inherited
+
+    public void readBytes(byte[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        if (BulkReads.isSupported(startPos + bitPos, nrBits, 8) && hasRemaining(count, nrBits)) {
+            BulkReads.readBytes(byteBuffer, (startPos + bitPos) >>> 3, dst, off, count);
+            bitPos += ((long) count) * nrBits;
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = readAsByte(nrBits, endian);
+            }
+        }
     }
 
-    /**
-     * This method shifts to the right the integer buffer containing the specified bits, so that the last specified bit is
-     * the last bit in the buffer.
-     *
-     * @param numberBuf integer buffer containing specified bits
-     * @param bitPos    position of the first specified bit
-     * @param nrBits    number of bits to read
-     * @return shifted integer buffer
-     */
-    private static int getRightShiftedNumberBufAsInt(int numberBuf,
-                                                     long bitPos, int nrBits, ByteOrder byteOrder) throws BitBufferException {
-
-        // number of bits integer buffer needs to be shifted to the right in
-        // order to reach the last bit in last byte
-        long shiftBits;
-        if (byteOrder == ByteOrder.BigEndian)
-            shiftBits = 7 - ((nrBits + bitPos + 7) % 8);
-        else
-            shiftBits = bitPos % 8;
+    // JavaDoc inherited
+
+    public void readShorts(short[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        if (BulkReads.isSupported(startPos + bitPos, nrBits, 16) && hasRemaining(count, nrBits)) {
+            BulkReads.readShorts(byteBuffer, (startPos + bitPos) >>> 3, dst, off, count, nrBits, endian);
+            bitPos += ((long) count) * nrBits;
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = readAsShort(nrBits, endian);
+            }
+        }
+    }
+
+    // JavaDoc inherited
+
+    public void readInts(int[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        if (BulkReads.isSupported(startPos + bitPos, nrBits, 32) && hasRemaining(count, nrBits)) {
+            BulkReads.readInts(byteBuffer, (startPos + bitPos) >>> 3, dst, off, count, nrBits, endian);
+            bitPos += ((long) count) * nrBits;
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = readAsInt(nrBits, endian);
+            }
+        }
+    }
+
+    // JavaDoc inherited
 
-        return numberBuf >> shiftBits;
+    public void readLongs(long[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        if (BulkReads.isSupported(startPos + bitPos, nrBits, 64) && hasRemaining(count, nrBits)) {
+            BulkReads.readLongs(byteBuffer, (startPos + bitPos) >>> 3, dst, off, count, nrBits, endian);
+            bitPos += ((long) count) * nrBits;
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = readAsLong(nrBits, endian);
+            }
+        }
+    }
+
+    // JavaDoc inherited
+
+    public long indexOf(long pattern, int nrBits, long fromBitPos) {
+        return PatternScanner.indexOf(this, pattern, nrBits, fromBitPos, false);
+    }
+
+    // JavaDoc inherited
+
+    public long indexOfAligned(long pattern, int nrBits, long fromBitPos) {
+        return PatternScanner.indexOf(this, pattern, nrBits, fromBitPos, true);
     }
 
     /**
-     * This method shifts to the right the long buffer containing the specified bits, so that the last specified bit is the
-     * last bit in the buffer.
-     *
-     * @param numberBuf long buffer containing specified bits
-     * @param bitPos    position of the first specified bit
-     * @param nrBits    number of bits to read
-     * @return shifted integer buffer
+     * Returns whether <code>count</code> values of <code>nrBits</code> bits each are available from the current position.
+     * If not, the values will be read one at a time, failing at the first one that is not available.
      */
-    private static long getRightShiftedNumberBufAsLong(long numberBuf,
-                                                       long bitPos, int nrBits, ByteOrder byteOrder) throws BitBufferException {
-
-        // number of bits integer buffer needs to be shifted to the right in
-        // order to reach the last bit in last byte
-        long shiftBits;
-        if (byteOrder == ByteOrder.BigEndian)
-            shiftBits = 7 - ((nrBits + bitPos + 7) % 8);
-        else
-            shiftBits = bitPos % 8;
-
-        return numberBuf >> shiftBits;
+    private boolean hasRemaining(int count, int nrBits) {
+        return bitPos + ((long) count) * nrBits <= bitBufBitSize
+                && ((startPos + bitPos + ((long) count) * nrBits + 7) >>> 3) <= byteBuffer.limit();
     }
 
+    // private methods
+
     /**
-     * Return a value of integer type representing the buffer storing specified bits
+     * Calculates the value represented by the given bits, and moves the bit pointer to the first bit following them.
+     * <p/>
+     * Whenever there are at least eight bytes left in the underlying {@link ByteBuffer}, all bits are taken from a
+     * single (unaligned) 64-bit word, using shifts and masks to get rid of the surrounding bits. Near the end of the
+     * buffer, the bytes are gathered one at a time.
      *
-     * @param byteOrder       Endian.Little of Endian.Big order of storing bytes
-     * @param nrReadBytes  number of bytes that are necessary to be read in order to read specific bits
-     * @param firstBytePos position of the first byte that is necessary to be read
-     * @return value of all read bytes, containing specified bits
+     * @param bitPos        position of the first bit to read in the bit buffer
+     * @param nrBits        number of bits to read
+     * @param byteOrder     order of reading bytes (either Endian.Big or Endian.Little)
+     * @param maxNrBitsRead maximum number of bits allowed to read, based on the method return type
+     * @return the value represented by the given bits
      */
-    private int getNumberBufAsInt(ByteOrder byteOrder, int nrReadBytes,
-                                  int firstBytePos) {
+    private long getResult(long bitPos, int nrBits, ByteOrder byteOrder,
+                           int maxNrBitsRead) {
 
-        int result = 0;
-        int bytePortion = 0;
-        for (int i = 0; i < nrReadBytes; i++) {
-            bytePortion = 0xFF & (byteBuffer.get(firstBytePos++));
+        // a single check for the common case; details are sorted out when it fails
+        if (nrBits < 1 || nrBits > maxNrBitsRead || bitPos < 0
+                || bitPos + nrBits > bitBufBitSize) {
+            validateInputParams(bitPos, nrBits, maxNrBitsRead);
+        }
 
-            if (byteOrder == ByteOrder.LittleEndian)
-                // reshift bytes
-                result = result | bytePortion << (i << 3);
-            else
-                result = bytePortion << ((nrReadBytes - i - 1) << 3) | result;
+        long absolutePos = startPos + bitPos;
+        int firstBytePos = (int) (absolutePos >>> 3);
+        int offset = (int) absolutePos & 7;
+        long result;
+        if (offset + nrBits <= 64 && firstBytePos <= byteBuffer.limit() - 8) {
+            long word = byteBuffer.getLong(firstBytePos);
+            boolean bigEndianBuffer = byteBuffer.order() == java.nio.ByteOrder.BIG_ENDIAN;
+            if (byteOrder == ByteOrder.BigEndian) {
+                if (!bigEndianBuffer) {
+                    word = Long.reverseBytes(word);
+                }
+                result = (word << offset) >>> (64 - nrBits);
+            } else {
+                if (bigEndianBuffer) {
+                    word = Long.reverseBytes(word);
+                }
+                result = (word >>> offset) & getMaskAsLong(nrBits);
+            }
+        } else {
+            result = getResultFromTail(firstBytePos, offset, nrBits, byteOrder);
         }
 
+        // increase bit pointer position by the number of read bits
+        this.bitPos = bitPos + nrBits;
+
         return result;
     }
 
+    /**
+     * Calculates the value represented by the given bits, for reads near the end of the buffer and unaligned reads
+     * spanning nine bytes. Uses a single 32-bit word if the bits fit, and gathers the bytes one at a time otherwise.
+     *
+     * @param firstBytePos position of the first byte holding the bits to read
+     * @param offset       position of the first bit to read within the first byte
+     * @param nrBits       number of bits to read
+     * @param byteOrder    order of reading bytes (either Endian.Big or Endian.Little)
+     * @return the value represented by the given bits
+     */
+    private long getResultFromTail(int firstBytePos, int offset, int nrBits,
+                                   ByteOrder byteOrder) {
+        int nrReadBytes = (offset + nrBits + 7) >> 3;
+        if (nrReadBytes <= 4 && firstBytePos <= byteBuffer.limit() - 4) {
+            int word = byteBuffer.getInt(firstBytePos);
+            boolean bigEndianBuffer = byteBuffer.order() == java.nio.ByteOrder.BIG_ENDIAN;
+            if (byteOrder == ByteOrder.BigEndian) {
+                if (!bigEndianBuffer)
+                    word = Integer.reverseBytes(word);
+                return ((word << offset) >>> (32 - nrBits)) & 0xFFFFFFFFL;
+            } else {
+                if (bigEndianBuffer)
+                    word = Integer.reverseBytes(word);
+                return (word >>> offset) & getMaskAsLong(nrBits);
+            }
+        } else if (nrReadBytes <= 8) {
+            long numberBuf = getNumberBufAsLong(byteOrder, nrReadBytes, firstBytePos);
+            int shiftBits;
+            if (byteOrder == ByteOrder.BigEndian)
+                shiftBits = 7 - ((nrBits + offset + 7) & 7);
+            else
+                shiftBits = offset;
+            return (numberBuf >>> shiftBits) & getMaskAsLong(nrBits);
+        } else {
+            long numberBuf = getNumberBufAsLong(byteOrder, 8, firstBytePos);
+            long lastByte = 0xFFL & byteBuffer.get(firstBytePos + 8);
+            if (byteOrder == ByteOrder.BigEndian)
+                return ((numberBuf << offset) | (lastByte >>> (8 - offset))) >>> (64 - nrBits);
+            else
+                return ((numberBuf >>> offset) | (lastByte << (64 - offset))) & getMaskAsLong(nrBits);
+        }
+    }
+
     /**
      * Return a value of long type representing the buffer storing specified bits.
      *
@@ -426,11 +542,6 @@ public class DefaultBitBuffer implements BitBuffer {
             throw new BitBufferException("Bit position (" + bitPos
                     + ") should be positive.");
 
-        if (maxNrBitsRead != 1 && maxNrBitsRead != 8 && maxNrBitsRead != 16
-                && maxNrBitsRead != 32 && maxNrBitsRead != 64)
-            throw new BitBufferException("Max number of bits to read ("
-                    + maxNrBitsRead + ") should be either 1, 8, 16, 32 or 64.");
-
         if (nrBits > maxNrBitsRead)
             throw new BitBufferException("Cannot read " + nrBits
                     + " bits using " + maxNrBitsRead
@@ -439,21 +550,6 @@ public class DefaultBitBuffer implements BitBuffer {
         if (bitPos + nrBits > bitBufBitSize)
             throw new BitBufferUnderflowException(bitPos, nrBits);
 
-        // if (nrBits <= maxNrBitsRead / 2 && log.isWarnEnabled())
-        // log.warn("It is not recommended to read " + nrBits + " using "
-        // + maxNrBitsRead + " bit long numberBuf (bitPos=" + bitPos
-        // + ").");
-
-    }
-
-    /**
-     * Return an integral mask with a given number of 1's at least significant bit positions.
-     *
-     * @param nrBits number of bits to read
-     * @return integer value of the mask
-     */
-    private static int getMaskAsInt(int nrBits) {
-        return 0xFFFFFFFF >>> (32 - nrBits);
     }
 
     /**
@@ -466,80 +562,6 @@ public class DefaultBitBuffer implements BitBuffer {
         return 0xFFFFFFFFFFFFFFFFL >>> (64 - nrBits);
     }
 
-    /**
-     * Calculates the value represented by the given bits.
-     *
-     * @param bitPos        position of the first bit to read in the bit buffer
-     * @param nrBits        number of bits to read
-     * @param byteOrder        order of reading bytes (either Endian.Big or Endian.Little)
-     * @param maxNrBitsRead maximum number of bits allowed to read, based on the method return type
-     * @return the integer value represented by the given bits
-     */
-    private int getResultAsInt(long bitPos, int nrBits, ByteOrder byteOrder,
-                               int maxNrBitsRead) {
-
-        // check if input params are correct otherwise throw BitBufferException
-        validateInputParams(bitPos, nrBits, maxNrBitsRead);
-
-        // min number of bytes covering specified bits
-        int nrReadBytes = getNrNecessaryBytes(bitPos, nrBits);
-
-        // buffer containing specified bits
-        int numberBuf = getNumberBufAsInt(byteOrder, nrReadBytes,
-                (int) (bitPos >> 3));
-
-        // mask leaving only specified bits
-        int mask = getMaskAsInt(nrBits);
-
-        // apply the mask for to the right shifted number buffer with the
-        // specific bits to the most right
-        int result = mask
-                & getRightShiftedNumberBufAsInt(numberBuf, bitPos, nrBits,
-                byteOrder);
-
-        // increase bit pointer position by the number of read bits
-        this.bitPos = bitPos + nrBits;
-
-        return result;
-    }
-
-    /**
-     * Calculates the value represented by the given bits.
-     *
-     * @param bitPos        position of the first bit to read in the bit buffer
-     * @param nrBits        number of bits to read
-     * @param byteOrder        order of reading bytes (either Endian.Big or Endian.Little)
-     * @param maxNrBitsRead maximum number of bits allowed to read, based on the method return type
-     * @return the long value represented by the given bits
-     */
-    private long getResultAsLong(long bitPos, int nrBits, ByteOrder byteOrder,
-                                 int maxNrBitsRead) {
-
-        // check if input params are correct otherwise throw BitBufferException
-        validateInputParams(bitPos, nrBits, maxNrBitsRead);
-
-        // min number of bytes covering specified bits
-        int nrReadBytes = getNrNecessaryBytes(bitPos, nrBits);
-
-        // buffer containing specified bits
-        long numberBuf = getNumberBufAsLong(byteOrder, nrReadBytes,
-                (int) (bitPos >> 3));
-
-        // mask leaving only specified bits
-        long mask = getMaskAsLong(nrBits);
-
-        // apply the mask for to the right shifted number buffer with the
-        // specific bits to the most right
-        long result = mask
-                & getRightShiftedNumberBufAsLong(numberBuf, bitPos, nrBits,
-                byteOrder);
-
-        // increase bit pointer position by the number of read bits
-        this.bitPos = bitPos + nrBits;
-
-        return result;
-    }
-
     /**
      * Getter for inputByteBuf.
      *
@@ -552,7 +574,10 @@ public class DefaultBitBuffer implements BitBuffer {
     // JavaDoc inherited
 
     public BitBuffer slice(long length) {
-        BitBuffer result = new SlicedBitBuffer(duplicate(), length);
+        if (length < 0 || bitPos + length > bitBufBitSize) {
+            throw new BitBufferUnderflowException(bitPos, length);
+        }
+        BitBuffer result = new DefaultBitBuffer(byteBuffer, startPos + bitPos, length, 0L);
         setBitPos(getBitPos() + length);
         return result;
     }
@@ -560,14 +585,15 @@ public class DefaultBitBuffer implements BitBuffer {
     // JavaDoc inherited
 
     public BitBuffer duplicate() {
-        return new DefaultBitBuffer(byteBuffer.duplicate(), bitBufBitSize,
+        // sharing the ByteBuffer is safe, since it is only ever read using absolute positions
+        return new DefaultBitBuffer(byteBuffer, startPos, bitBufBitSize,
                 bitPos);
     }
 
     public ByteBuffer readAsByteBuffer(int length)
             throws BitBufferUnderflowException {
 
-        if ((this.bitPos % 8) != 0) {
+        if (((startPos + bitPos) % 8) != 0) {
             throw new BitBufferException(
                     "8-bit alignment exception. Bit position (" + bitPos
                             + ") should be 8-bit aligned");
@@ -579,7 +605,7 @@ public class DefaultBitBuffer implements BitBuffer {
             throw new BitBufferUnderflowException(getBitPos(), bitsToRead);
         }
 
-        int sliceStartPosition = (int) (this.bitPos >>> 3);// == (bitPos / 8)
+        int sliceStartPosition = (int) ((startPos + bitPos) >>> 3);// == (bitPos / 8)
 
         ByteBuffer slicedByteBuffer = this.slice(byteBuffer,
                 sliceStartPosition, length);
@@ -593,9 +619,12 @@ public class DefaultBitBuffer implements BitBuffer {
     }
 
     public ByteBuffer readAsByteBuffer() {
-        ByteBuffer buffer =  byteBuffer.duplicate();
-        buffer.rewind();
-        return buffer;
+        if ((startPos % 8) != 0) {
+            throw new BitBufferException(
+                    "8-bit alignment exception. Start position (" + startPos
+                            + ") should be 8-bit aligned");
+        }
+        return this.slice(byteBuffer, (int) (startPos >>> 3), (int) ((bitBufBitSize + 7) >>> 3));
     }
 
     /**
@@ -606,27 +635,18 @@ public class DefaultBitBuffer implements BitBuffer {
      * @param byteBuffer    - Original {@link ByteBuffer} to be sliced
      * @param slicePosition - Start position of the slice (e.g. sub-view) in the byte buffer
      * @param length        - Length of the slice (e.g. sub-view) in bytes, measured from the positions
-     * @return Returns the sliced {@link ByteBuffer}. Original buffer is left in its original state;
+     * @return Returns the sliced {@link ByteBuffer}. Original buffer is left untouched, since it might be shared with
+     *         other instances.
      */
     private ByteBuffer slice(ByteBuffer byteBuffer, int slicePosition,
                              int length) {
-
-        int currentBufferPosition = this.byteBuffer.position();
-        int currentBufferLimit = this.byteBuffer.limit();
-
-        this.byteBuffer.position(slicePosition).limit(slicePosition + length);
-
-        ByteBuffer slicedByteBuffer = this.byteBuffer.slice();
-
-		// Revert the buffer in its original state
-		this.byteBuffer.position(currentBufferPosition).limit(
-				currentBufferLimit);
-
-		return slicedByteBuffer;
-	}
+        ByteBuffer view = byteBuffer.duplicate();
+        view.limit(slicePosition + length).position(slicePosition);
+        return view.slice();
+    }
 
     public long getActualBitPos() {
-        return bitPos;
+        return startPos + bitPos;
     }
 
 }
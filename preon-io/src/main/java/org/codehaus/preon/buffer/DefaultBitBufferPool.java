@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * A pool of {@link DefaultBitBuffer} instances, allowing a stream of messages to be decoded without creating a new
+ * {@link BitBuffer} for every single message:
+ * <p/>
+ * <pre>
+ * DefaultBitBuffer buffer = pool.acquire(datagram);
+ * try {
+ *     Packet packet = codec.decode(buffer, null, builder);
+ *     ...
+ * } finally {
+ *     pool.release(buffer);
+ * }
+ * </pre>
+ * <p/>
+ * The pool is meant to be confined to a single thread; threads decoding in parallel should all have a pool of their
+ * own. Instances handed out should not be used after having been released. Objects decoded from them that load data
+ * lazily (such as lazy lists, or fields annotated with <code>@LazyLoading</code>) keep reading from a {@link
+ * BitBuffer#duplicate() duplicate} of their own, and therefore keep working after the instance has been released; they
+ * do still read from the {@link ByteBuffer} wrapped, which should therefore not be overwritten while they are in use.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+public class DefaultBitBufferPool {
+
+    /** The default maximum number of instances kept in the pool. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /** The buffer wrapped by released instances, preventing the pool from holding on to data no longer needed. */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /** The instances available for reuse. */
+    private final DefaultBitBuffer[] available;
+
+    /** The number of instances available for reuse. */
+    private int size;
+
+    /** Constructs a new instance, keeping at most {@link #DEFAULT_CAPACITY} instances. */
+    public DefaultBitBufferPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param capacity The maximum number of released instances kept in the pool.
+     */
+    public DefaultBitBufferPool(int capacity) {
+        this.available = new DefaultBitBuffer[capacity];
+    }
+
+    /**
+     * Returns a {@link DefaultBitBuffer} wrapping the {@link ByteBuffer} passed in, reusing a released instance if there
+     * is one.
+     *
+     * @param buffer The {@link ByteBuffer} to read from; bits are read from its position up to its limit.
+     * @return A {@link DefaultBitBuffer} reading from the {@link ByteBuffer} passed in.
+     */
+    public DefaultBitBuffer acquire(ByteBuffer buffer) {
+        if (size > 0) {
+            DefaultBitBuffer result = available[--size];
+            available[size] = null;
+            return result.reset(buffer);
+        } else {
+            return new DefaultBitBuffer(buffer).reset(buffer);
+        }
+    }
+
+    /**
+     * Returns an instance to the pool, allowing it to be handed out again by {@link #acquire(ByteBuffer)}. If the pool
+     * is full, the instance is left to the garbage collector.
+     *
+     * @param buffer The {@link DefaultBitBuffer} no longer used.
+     */
+    public void release(DefaultBitBuffer buffer) {
+        if (size < available.length) {
+            available[size++] = buffer.reset(EMPTY);
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The default implementation of {@link BitSource}, backed by a {@link ByteBuffer} or a memory mapped file. Cursors are
+ * {@link BitBuffer#duplicate() duplicates} of a prototype {@link BitBuffer} that is never read from itself; the {@link
+ * DefaultBitBuffer} and the {@link MappedBitBuffer} share their data among duplicates, reading it using absolute
+ * positions only.
+ *
+ * @author Wilfred Springer
+ */
+@Immutable
+public class DefaultBitSource implements BitSource {
+
+    /** The {@link BitBuffer} from which all cursors are duplicated. Never read from, and therefore never modified. */
+    private final BitBuffer prototype;
+
+    /**
+     * Constructs a new instance, covering the bytes between the position and the limit of the buffer passed in. The
+     * contents of the buffer are not supposed to change while the instance is in use.
+     *
+     * @param buffer The {@link ByteBuffer} holding the data.
+     */
+    public DefaultBitSource(ByteBuffer buffer) {
+        this(new DefaultBitBuffer(buffer.slice()));
+    }
+
+    /**
+     * Constructs a new instance, mapping the file passed in into memory. Files larger than 2 GB are mapped using a
+     * {@link MappedBitBuffer}.
+     *
+     * @param file The file holding the data.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public DefaultBitSource(File file) throws IOException {
+        this(map(file));
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param prototype The {@link BitBuffer} from which all cursors will be duplicated.
+     */
+    private DefaultBitSource(BitBuffer prototype) {
+        this.prototype = prototype;
+    }
+
+    /**
+     * Maps the file passed in into memory.
+     *
+     * @param file The file to be mapped.
+     * @return A {@link BitBuffer} providing access to the contents of the file.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    private static BitBuffer map(File file) throws IOException {
+        if (file.length() > Integer.MAX_VALUE) {
+            return new MappedBitBuffer(file);
+        } else {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                return new DefaultBitBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    // JavaDoc inherited
+
+    public long getBitSize() {
+        return prototype.getBitBufBitSize();
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer cursor() {
+        return prototype.duplicate();
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer cursor(long bitPos, long length) throws BitBufferUnderflowException {
+        if (bitPos < 0 || length < 0) {
+            throw new BitBufferException("Region (" + bitPos + ", " + length
+                    + ") should not start or end before the start of the data.");
+        }
+        if (bitPos + length > prototype.getBitBufBitSize()) {
+            throw new BitBufferUnderflowException(bitPos, length);
+        }
+        BitBuffer result = prototype.duplicate();
+        result.setBitPos(bitPos);
+        return result.slice(length);
+    }
+
+}
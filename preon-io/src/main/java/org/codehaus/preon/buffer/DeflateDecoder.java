@@ -0,0 +1,722 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Inflates deflate compressed data (raw, zlib or gzip) from a file, keeping the most recently inflated bytes in a
+ * buffer. Unlike {@link java.util.zip.Inflater}, it exposes the boundaries between deflate blocks, and is able to
+ * resume inflating from any such boundary, given the position of that boundary in the compressed data and the last 32
+ * KB of data inflated before it. That is what allows the {@link InflatingBitBuffer} to jump to any position in the
+ * data, without inflating everything preceding it.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+final class DeflateDecoder {
+
+    /** Deflate data without any header or trailer. */
+    static final int RAW = 0;
+
+    /** Deflate data preceded by a zlib header. */
+    static final int ZLIB = 1;
+
+    /** One or more gzip members. */
+    static final int GZIP = 2;
+
+    /** The maximum distance of a back reference. */
+    static final int WINDOW_SIZE = 32768;
+
+    /** The maximum length of a back reference. */
+    private static final int MAX_MATCH = 258;
+
+    /** The number of bytes inflated ahead of the window. */
+    private static final int CHUNK_SIZE = 1 << 17;
+
+    /** The number of bytes inflated beyond the byte requested when {@link #advance(long) advancing}. */
+    private static final int READ_AHEAD = 1 << 12;
+
+    /** Reading the header of the next block. */
+    private static final int HEADER = 0;
+
+    /** Copying the bytes of a stored block. */
+    private static final int STORED = 1;
+
+    /** Decoding the literals and back references of a compressed block. */
+    private static final int CODES = 2;
+
+    /** Past the last block of the deflate data. */
+    private static final int END = 3;
+
+    /** Past the end of the compressed data. */
+    private static final int DONE = 4;
+
+    private static final short[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51,
+            59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+
+    private static final short[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4,
+            4, 5, 5, 5, 5, 0};
+
+    private static final short[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+            513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+
+    private static final short[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9,
+            10, 10, 11, 11, 12, 12, 13, 13};
+
+    /** The order in which the code lengths of the code length alphabet are stored. */
+    private static final byte[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LITERALS = new Huffman(288);
+
+    private static final Huffman FIXED_DISTANCES = new Huffman(30);
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        try {
+            FIXED_LITERALS.build(lengths, 0, 288);
+            Arrays.fill(lengths, 0, 30, 5);
+            FIXED_DISTANCES.build(lengths, 0, 30);
+        } catch (DataFormatException dfe) {
+            throw new IllegalStateException(dfe);
+        }
+    }
+
+    /** The file holding the compressed data. */
+    private final FileChannel channel;
+
+    /** The number of bytes of compressed data. */
+    private final long compressedSize;
+
+    /** The format of the compressed data. */
+    private int format;
+
+    /** Compressed data read from the file. */
+    private final byte[] input = new byte[1 << 16];
+
+    /** The position in the file of the first byte in {@link #input}. */
+    private long inputStart;
+
+    /** The number of bytes in {@link #input}. */
+    private int inputLength;
+
+    /** The position in the file of the next byte to be added to {@link #bitBuf}. */
+    private long loaded;
+
+    /** The bits loaded, but not consumed yet, least significant bit first. */
+    private long bitBuf;
+
+    /** The number of bits in {@link #bitBuf}. */
+    private int bitCount;
+
+    /** The bytes inflated most recently, including at least the preceding {@link #WINDOW_SIZE} bytes, if any. */
+    private final byte[] output = new byte[WINDOW_SIZE + CHUNK_SIZE];
+
+    /** The position in the inflated data of the first byte in {@link #output}. */
+    private long outputStart;
+
+    /** The number of bytes in {@link #output}. */
+    private int outputLength;
+
+    /** The position in the inflated data beyond which decoding a compressed block pauses. */
+    private long stop = Long.MAX_VALUE;
+
+    /** What's currently being decoded. */
+    private int mode;
+
+    /** Whether the current block is the last block of the deflate data. */
+    private boolean lastBlock;
+
+    /** The number of bytes of the current stored block still to be copied. */
+    private int storedRemaining;
+
+    /** The codes of the literals and lengths of the current block. */
+    private Huffman literals;
+
+    /** The codes of the distances of the current block. */
+    private Huffman distances;
+
+    private final Huffman dynamicLiterals = new Huffman(288);
+
+    private final Huffman dynamicDistances = new Huffman(30);
+
+    private final Huffman codeLengths = new Huffman(19);
+
+    private final int[] lengths = new int[288 + 32];
+
+    /**
+     * Constructs a new instance, positioned at the start of the compressed data. The format of the data is detected
+     * from its first bytes.
+     *
+     * @param channel        The file holding the compressed data.
+     * @param compressedSize The number of bytes of compressed data.
+     * @throws IOException If the file cannot be read, or it does not hold valid compressed data.
+     */
+    DeflateDecoder(FileChannel channel, long compressedSize) throws IOException {
+        this.channel = channel;
+        this.compressedSize = compressedSize;
+        need(16);
+        int first = (int) bitBuf & 0xFF;
+        int second = (int) (bitBuf >>> 8) & 0xFF;
+        if (first == 0x1F && second == 0x8B) {
+            format = GZIP;
+            readGzipHeader();
+        } else if ((first & 0x0F) == 8 && (second & 0x20) == 0 && ((first << 8) | second) % 31 == 0) {
+            format = ZLIB;
+            drop(16);
+        } else {
+            format = RAW;
+        }
+        mode = HEADER;
+    }
+
+    /**
+     * Returns the format of the compressed data.
+     *
+     * @return {@link #RAW}, {@link #ZLIB} or {@link #GZIP}.
+     */
+    int getFormat() {
+        return format;
+    }
+
+    /**
+     * Continues inflating from a block boundary.
+     *
+     * @param position  The position in the inflated data of the first byte of the block.
+     * @param bitPos    The position in the compressed data of the first bit of the block.
+     * @param window    The bytes inflated just before the block; at least {@link #WINDOW_SIZE} bytes, unless the
+     *                  block is preceded by less.
+     * @param format    The format of the compressed data.
+     * @throws IOException If the file cannot be read.
+     */
+    void resume(long position, long bitPos, byte[] window, int format) throws IOException {
+        this.format = format;
+        System.arraycopy(window, 0, output, 0, window.length);
+        outputLength = window.length;
+        outputStart = position - window.length;
+        inputLength = 0;
+        loaded = bitPos >>> 3;
+        bitBuf = 0;
+        bitCount = 0;
+        need((int) (bitPos & 7));
+        drop((int) (bitPos & 7));
+        mode = HEADER;
+        lastBlock = false;
+    }
+
+    /**
+     * Returns whether the decoder is positioned at the start of a block, or at the end of the data.
+     *
+     * @return <code>true</code> if inflating could be resumed from the current position.
+     */
+    boolean atBoundary() {
+        return mode == HEADER || mode == DONE;
+    }
+
+    /**
+     * Returns whether all data has been inflated.
+     *
+     * @return <code>true</code> if the end of the compressed data has been reached.
+     */
+    boolean isDone() {
+        return mode == DONE;
+    }
+
+    /**
+     * Returns the position in the compressed data of the next bit to be decoded.
+     *
+     * @return The position, counted in bits.
+     */
+    long getBitPos() {
+        return (loaded << 3) - bitCount;
+    }
+
+    /**
+     * Returns the position in the inflated data of the next byte to be inflated.
+     *
+     * @return The number of bytes inflated so far.
+     */
+    long getPosition() {
+        return outputStart + outputLength;
+    }
+
+    /**
+     * Returns a copy of the last {@link #WINDOW_SIZE} bytes inflated, or all bytes if less have been inflated.
+     *
+     * @return The bytes preceding the current position.
+     */
+    byte[] getWindow() {
+        int length = Math.min(outputLength, WINDOW_SIZE);
+        byte[] result = new byte[length];
+        System.arraycopy(output, outputLength - length, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Returns whether the byte at the given position is available without inflating anything.
+     *
+     * @param index The position of the byte in the inflated data.
+     * @return <code>true</code> if the byte has been inflated and is still available.
+     */
+    boolean covers(long index) {
+        return index >= outputStart && index < outputStart + outputLength;
+    }
+
+    /**
+     * Returns the byte at the given position, which should be {@link #covers(long) covered}.
+     *
+     * @param index The position of the byte in the inflated data.
+     * @return The byte at that position.
+     */
+    byte get(long index) {
+        return output[(int) (index - outputStart)];
+    }
+
+    /**
+     * Returns the buffer holding the inflated bytes, of which the first corresponds to {@link #getOutputStart()}.
+     *
+     * @return The buffer holding the bytes inflated most recently.
+     */
+    byte[] getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the position in the inflated data of the first byte in the buffer returned by {@link #getOutput()}.
+     *
+     * @return The position of the first byte available.
+     */
+    long getOutputStart() {
+        return outputStart;
+    }
+
+    /**
+     * Inflates data until the byte at the given position is available, along with a few bytes following it. Bytes
+     * preceding that position may be dropped, except for the last {@link #WINDOW_SIZE} bytes.
+     *
+     * @param index The position of the byte in the inflated data, which should not precede the current position.
+     * @throws IOException If the file cannot be read, or the compressed data is invalid or ends prematurely.
+     */
+    void advance(long index) throws IOException {
+        while (getPosition() <= index) {
+            if (mode == DONE) {
+                throw new IOException("Unable to inflate byte " + index + ": data ends at "
+                        + getPosition() + ".");
+            }
+            stop = index + READ_AHEAD;
+            step();
+        }
+        stop = Long.MAX_VALUE;
+    }
+
+    /**
+     * Inflates a block, or a part of it if the buffer runs full, or decodes the header of a block.
+     *
+     * @throws IOException If the file cannot be read, or the compressed data is invalid or ends prematurely.
+     */
+    void step() throws IOException {
+        if (output.length - outputLength < MAX_MATCH) {
+            // Keep the window required for back references, and drop the rest
+            int keep = Math.min(outputLength, WINDOW_SIZE);
+            System.arraycopy(output, outputLength - keep, output, 0, keep);
+            outputStart += outputLength - keep;
+            outputLength = keep;
+        }
+        try {
+            switch (mode) {
+                case HEADER:
+                    readBlockHeader();
+                    break;
+                case STORED:
+                    copyStored();
+                    break;
+                case CODES:
+                    decodeCodes();
+                    break;
+                case END:
+                    readTrailer();
+                    break;
+                default:
+                    break;
+            }
+        } catch (DataFormatException dfe) {
+            IOException ioe = new IOException("Invalid compressed data at bit " + getBitPos() + ": "
+                    + dfe.getMessage());
+            ioe.initCause(dfe);
+            throw ioe;
+        }
+    }
+
+    private void readBlockHeader() throws IOException, DataFormatException {
+        lastBlock = bits(1) == 1;
+        switch (bits(2)) {
+            case 0:
+                drop(bitCount & 7);
+                int length = bits(16);
+                if ((length ^ 0xFFFF) != bits(16)) {
+                    throw new DataFormatException("stored block length does not match its complement");
+                }
+                storedRemaining = length;
+                mode = STORED;
+                if (length == 0) {
+                    endBlock();
+                }
+                break;
+            case 1:
+                literals = FIXED_LITERALS;
+                distances = FIXED_DISTANCES;
+                mode = CODES;
+                break;
+            case 2:
+                readDynamicCodes();
+                literals = dynamicLiterals;
+                distances = dynamicDistances;
+                mode = CODES;
+                break;
+            default:
+                throw new DataFormatException("invalid block type");
+        }
+    }
+
+    private void readDynamicCodes() throws IOException, DataFormatException {
+        int nrLiterals = bits(5) + 257;
+        int nrDistances = bits(5) + 1;
+        int nrCodeLengths = bits(4) + 4;
+        if (nrLiterals > 286 || nrDistances > 30) {
+            throw new DataFormatException("too many length or distance codes");
+        }
+        Arrays.fill(lengths, 0, 19, 0);
+        for (int i = 0; i < nrCodeLengths; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        codeLengths.build(lengths, 0, 19);
+        int index = 0;
+        while (index < nrLiterals + nrDistances) {
+            int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[index++] = symbol;
+            } else {
+                int length = 0;
+                int repeat;
+                if (symbol == 16) {
+                    if (index == 0) {
+                        throw new DataFormatException("repeated length without first length");
+                    }
+                    length = lengths[index - 1];
+                    repeat = 3 + bits(2);
+                } else if (symbol == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+                if (index + repeat > nrLiterals + nrDistances) {
+                    throw new DataFormatException("too many code lengths");
+                }
+                while (repeat-- > 0) {
+                    lengths[index++] = length;
+                }
+            }
+        }
+        if (lengths[256] == 0) {
+            throw new DataFormatException("missing end-of-block code");
+        }
+        dynamicLiterals.build(lengths, 0, nrLiterals);
+        dynamicDistances.build(lengths, nrLiterals, nrDistances);
+    }
+
+    private void copyStored() throws IOException {
+        int count = Math.min(storedRemaining, output.length - outputLength);
+        for (int i = 0; i < count; i++) {
+            output[outputLength++] = (byte) bits(8);
+        }
+        storedRemaining -= count;
+        if (storedRemaining == 0) {
+            endBlock();
+        }
+    }
+
+    private void decodeCodes() throws IOException, DataFormatException {
+        byte[] output = this.output;
+        int limit = (int) Math.min(output.length - MAX_MATCH, stop - outputStart);
+        int length = outputLength;
+        try {
+            while (length <= limit) {
+                int symbol = decode(literals);
+                if (symbol < 256) {
+                    output[length++] = (byte) symbol;
+                } else if (symbol == 256) {
+                    endBlock();
+                    return;
+                } else {
+                    symbol -= 257;
+                    if (symbol >= 29) {
+                        throw new DataFormatException("invalid length code");
+                    }
+                    int matchLength = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+                    symbol = decode(distances);
+                    if (symbol >= 30) {
+                        throw new DataFormatException("invalid distance code");
+                    }
+                    int distance = DISTANCE_BASE[symbol] + bits(DISTANCE_EXTRA[symbol]);
+                    if (distance > length) {
+                        throw new DataFormatException("distance too far back");
+                    }
+                    int from = length - distance;
+                    for (int i = 0; i < matchLength; i++) {
+                        output[length++] = output[from++];
+                    }
+                }
+            }
+        } finally {
+            outputLength = length;
+        }
+    }
+
+    private void endBlock() {
+        mode = lastBlock ? END : HEADER;
+    }
+
+    private void readTrailer() throws IOException, DataFormatException {
+        drop(bitCount & 7);
+        if (format == ZLIB) {
+            bits(16);
+            bits(16);
+            mode = DONE;
+        } else if (format == GZIP) {
+            bits(16);
+            bits(16);
+            bits(16);
+            bits(16);
+            mode = DONE;
+            if (getBitPos() + 16 <= compressedSize << 3) {
+                need(16);
+                if ((bitBuf & 0xFFFF) == 0x8B1F) {
+                    // Another gzip member; its data simply follows the data of the previous member
+                    readGzipHeader();
+                    mode = HEADER;
+                }
+            }
+        } else {
+            mode = DONE;
+        }
+    }
+
+    private void readGzipHeader() throws IOException {
+        bits(16);
+        if (bits(8) != 8) {
+            throw new IOException("Unsupported compression method in gzip header.");
+        }
+        int flags = bits(8);
+        bits(16);
+        bits(16);
+        bits(16);
+        if ((flags & 4) != 0) {
+            int length = bits(16);
+            while (length-- > 0) {
+                bits(8);
+            }
+        }
+        if ((flags & 8) != 0) {
+            while (bits(8) != 0) {
+            }
+        }
+        if ((flags & 16) != 0) {
+            while (bits(8) != 0) {
+            }
+        }
+        if ((flags & 2) != 0) {
+            bits(16);
+        }
+    }
+
+    /**
+     * Decodes a symbol, using the lookup table for short codes, and decoding longer codes bit by bit.
+     */
+    private int decode(Huffman huffman) throws IOException, DataFormatException {
+        need(15);
+        int entry = huffman.fast[(int) bitBuf & Huffman.FAST_MASK];
+        if (entry != 0) {
+            drop(entry & 15);
+            return entry >>> 4;
+        }
+        long bits = bitBuf;
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        for (int length = 1; length <= 15; length++) {
+            code |= (int) bits & 1;
+            bits >>>= 1;
+            int count = huffman.counts[length];
+            if (code - count < first) {
+                drop(length);
+                return huffman.symbols[index + (code - first)];
+            }
+            index += count;
+            first += count;
+            first <<= 1;
+            code <<= 1;
+        }
+        throw new DataFormatException("invalid code");
+    }
+
+    /**
+     * Consumes and returns the given number of bits (max 16).
+     */
+    private int bits(int nrBits) throws IOException {
+        need(nrBits);
+        int result = (int) bitBuf & ((1 << nrBits) - 1);
+        drop(nrBits);
+        return result;
+    }
+
+    /**
+     * Makes sure at least the given number of bits is available in {@link #bitBuf}. Past the end of the data, zeros are
+     * loaded; actually consuming them will fail.
+     */
+    private void need(int nrBits) throws IOException {
+        while (bitCount < nrBits) {
+            int index = (int) (loaded - inputStart);
+            if (index >= inputLength || index < 0) {
+                fill();
+                index = 0;
+            }
+            int value = index < inputLength ? input[index] & 0xFF : 0;
+            bitBuf |= ((long) value) << bitCount;
+            bitCount += 8;
+            loaded++;
+        }
+    }
+
+    /**
+     * Consumes the given number of bits.
+     */
+    private void drop(int nrBits) throws IOException {
+        bitBuf >>>= nrBits;
+        bitCount -= nrBits;
+        if (loaded > compressedSize && getBitPos() > compressedSize << 3) {
+            throw new IOException("Unexpected end of compressed data.");
+        }
+    }
+
+    /**
+     * Reads the compressed data starting at {@link #loaded} into the input buffer.
+     */
+    private void fill() throws IOException {
+        inputStart = loaded;
+        inputLength = 0;
+        ByteBuffer buffer = ByteBuffer.wrap(input);
+        while (buffer.hasRemaining() && inputStart + buffer.position() < compressedSize) {
+            if (channel.read(buffer, inputStart + buffer.position()) < 0) {
+                break;
+            }
+        }
+        inputLength = buffer.position();
+    }
+
+    /** A canonical Huffman code. */
+    private static final class Huffman {
+
+        /** The number of bits resolved using a single table lookup. */
+        static final int FAST_BITS = 10;
+
+        static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+        /** The number of codes of each length. */
+        final int[] counts = new int[16];
+
+        /** The symbols, ordered by code. */
+        final int[] symbols;
+
+        /**
+         * The symbol and the length of the code starting with the {@link #FAST_BITS} bits used as an index, encoded as
+         * <code>symbol &lt;&lt; 4 | length</code>, or 0 if the code is longer.
+         */
+        final int[] fast = new int[1 << FAST_BITS];
+
+        private final int[] offsets = new int[16];
+
+        Huffman(int nrSymbols) {
+            symbols = new int[nrSymbols];
+        }
+
+        void build(int[] lengths, int offset, int nrSymbols) throws DataFormatException {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < nrSymbols; i++) {
+                counts[lengths[offset + i]]++;
+            }
+            counts[0] = 0;
+            int left = 1;
+            for (int length = 1; length <= 15; length++) {
+                left = (left << 1) - counts[length];
+                if (left < 0) {
+                    throw new DataFormatException("over-subscribed code");
+                }
+            }
+            offsets[1] = 0;
+            for (int length = 1; length < 15; length++) {
+                offsets[length + 1] = offsets[length] + counts[length];
+            }
+            for (int i = 0; i < nrSymbols; i++) {
+                if (lengths[offset + i] != 0) {
+                    symbols[offsets[lengths[offset + i]]++] = i;
+                }
+            }
+            Arrays.fill(fast, 0);
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= Math.min(15, FAST_BITS); length++) {
+                for (int i = 0; i < counts[length]; i++) {
+                    int reversed = Integer.reverse(code) >>> (32 - length);
+                    int entry = (symbols[index] << 4) | length;
+                    for (int j = reversed; j < fast.length; j += 1 << length) {
+                        fast[j] = entry;
+                    }
+                    code++;
+                    index++;
+                }
+                code <<= 1;
+            }
+        }
+
+    }
+
+}
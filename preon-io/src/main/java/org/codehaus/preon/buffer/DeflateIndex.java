@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An index of checkpoints in a file holding deflate compressed data (gzip, zlib or raw deflate), allowing an {@link
+ * InflatingBitBuffer} to start inflating at the checkpoint preceding the data requested, rather than at the start of
+ * the file. A checkpoint is recorded at the first block boundary after every {@link #getInterval() interval} bytes of
+ * inflated data, and consists of the position of that boundary in both the compressed and the inflated data, and the
+ * 32 KB of data inflated before it.
+ * <p/>
+ * Building the index requires inflating the entire file once. Since the index only depends on the file, it can be
+ * {@link #save(File) saved} to a sidecar file, and {@link #load(File) loaded} later on, to avoid building it again.
+ *
+ * @author Wilfred Springer
+ */
+@Immutable
+public class DeflateIndex {
+
+    /** The default number of bytes of inflated data between two checkpoints: 1 MB. */
+    public static final long DEFAULT_INTERVAL = 1L << 20;
+
+    /** The first four bytes of a saved index. */
+    private static final int MAGIC = 0x50444958;
+
+    /** The version of the format of a saved index. */
+    private static final int VERSION = 1;
+
+    /** The size of the compressed file. */
+    private final long compressedSize;
+
+    /** The format of the compressed data. */
+    private final int format;
+
+    /** The size of the inflated data. */
+    private final long size;
+
+    /** The number of bytes of inflated data between two checkpoints. */
+    private final long interval;
+
+    /** The positions in the inflated data of the checkpoints, in ascending order. */
+    private final long[] positions;
+
+    /** The positions in the compressed data of the checkpoints, in bits. */
+    private final long[] bitPositions;
+
+    /** The data inflated just before each of the checkpoints. */
+    private final byte[][] windows;
+
+    private DeflateIndex(long compressedSize, int format, long size, long interval, long[] positions,
+                         long[] bitPositions, byte[][] windows) {
+        this.compressedSize = compressedSize;
+        this.format = format;
+        this.size = size;
+        this.interval = interval;
+        this.positions = positions;
+        this.bitPositions = bitPositions;
+        this.windows = windows;
+    }
+
+    /**
+     * Builds an index of the file passed in, recording a checkpoint every {@link #DEFAULT_INTERVAL} bytes.
+     *
+     * @param file The file holding the compressed data.
+     * @return The index of the file.
+     * @throws IOException If the file cannot be read, or does not hold valid compressed data.
+     */
+    public static DeflateIndex build(File file) throws IOException {
+        return build(file, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Builds an index of the file passed in.
+     *
+     * @param file     The file holding the compressed data.
+     * @param interval The number of bytes of inflated data between two checkpoints.
+     * @return The index of the file.
+     * @throws IOException If the file cannot be read, or does not hold valid compressed data.
+     */
+    public static DeflateIndex build(File file, long interval) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval (" + interval + ") should be positive.");
+        }
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            long compressedSize = channel.size();
+            DeflateDecoder decoder = new DeflateDecoder(channel, compressedSize);
+            List<Long> positions = new ArrayList<Long>();
+            List<Long> bitPositions = new ArrayList<Long>();
+            List<byte[]> windows = new ArrayList<byte[]>();
+            long next = 0;
+            while (!decoder.isDone()) {
+                if (decoder.atBoundary() && decoder.getPosition() >= next) {
+                    positions.add(decoder.getPosition());
+                    bitPositions.add(decoder.getBitPos());
+                    windows.add(decoder.getWindow());
+                    next = decoder.getPosition() + interval;
+                }
+                decoder.step();
+            }
+            long[] positionArray = new long[positions.size()];
+            long[] bitPositionArray = new long[positions.size()];
+            for (int i = 0; i < positionArray.length; i++) {
+                positionArray[i] = positions.get(i);
+                bitPositionArray[i] = bitPositions.get(i);
+            }
+            return new DeflateIndex(compressedSize, decoder.getFormat(), decoder.getPosition(), interval,
+                    positionArray, bitPositionArray, windows.toArray(new byte[windows.size()][]));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Loads an index saved before using {@link #save(File)}.
+     *
+     * @param sidecar The file holding the index.
+     * @return The index.
+     * @throws IOException If the file cannot be read, or does not hold an index.
+     */
+    public static DeflateIndex load(File sidecar) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(sidecar))));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(sidecar + " does not hold a supported index.");
+            }
+            long compressedSize = in.readLong();
+            int format = in.readInt();
+            long size = in.readLong();
+            long interval = in.readLong();
+            int count = in.readInt();
+            long[] positions = new long[count];
+            long[] bitPositions = new long[count];
+            byte[][] windows = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                positions[i] = in.readLong();
+                bitPositions[i] = in.readLong();
+                windows[i] = new byte[in.readInt()];
+                in.readFully(windows[i]);
+            }
+            return new DeflateIndex(compressedSize, format, size, interval, positions, bitPositions, windows);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the index to a file, from which it can be {@link #load(File) loaded} later on. The file is compressed.
+     *
+     * @param sidecar The file to which the index will be written.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(File sidecar) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(sidecar))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(compressedSize);
+            out.writeInt(format);
+            out.writeLong(size);
+            out.writeLong(interval);
+            out.writeInt(positions.length);
+            for (int i = 0; i < positions.length; i++) {
+                out.writeLong(positions[i]);
+                out.writeLong(bitPositions[i]);
+                out.writeInt(windows[i].length);
+                out.write(windows[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the size of the compressed file indexed.
+     *
+     * @return The number of bytes of compressed data.
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * Returns the size of the inflated data.
+     *
+     * @return The number of bytes of inflated data.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of inflated data between two checkpoints.
+     *
+     * @return The minimal distance between two checkpoints.
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the number of checkpoints.
+     *
+     * @return The number of checkpoints.
+     */
+    public int getNrCheckpoints() {
+        return positions.length;
+    }
+
+    /**
+     * Returns the index of the last checkpoint at or before the given position.
+     *
+     * @param position A position in the inflated data.
+     * @return The index of the checkpoint preceding that position.
+     */
+    int getCheckpoint(long position) {
+        int index = Arrays.binarySearch(positions, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Returns the position in the inflated data of a checkpoint.
+     *
+     * @param checkpoint The index of the checkpoint.
+     * @return The position of the checkpoint in the inflated data.
+     */
+    long getPosition(int checkpoint) {
+        return positions[checkpoint];
+    }
+
+    /**
+     * Makes the decoder passed in continue inflating from a checkpoint.
+     *
+     * @param checkpoint The index of the checkpoint.
+     * @param decoder    The decoder.
+     * @throws IOException If reading from the file fails.
+     */
+    void resume(int checkpoint, DeflateDecoder decoder) throws IOException {
+        decoder.resume(positions[checkpoint], bitPositions[checkpoint], windows[checkpoint], format);
+    }
+
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+
+/**
+ * A {@link BitBuffer} on top of a file holding deflate compressed data (gzip, zlib or raw deflate), inflating the data
+ * on demand, rather than inflating the entire file up front. Moving to an arbitrary position does not require
+ * inflating everything preceding it: a {@link DeflateIndex} records checkpoints every so many bytes, from which
+ * inflating can be resumed. The index is either built when the buffer is constructed, or passed in, typically after
+ * {@link DeflateIndex#load(File) loading} it from a sidecar file.
+ * <p/>
+ * Inflating the data is done by a small number of decoders, shared by all instances created by {@link #duplicate()}
+ * and {@link #slice(long)}. A read is served by a decoder still holding the byte requested, or a decoder that can reach
+ * it by inflating forward less than the distance from the nearest checkpoint, and otherwise by the least recently used
+ * decoder, resumed from that checkpoint. As a consequence, sequential reading performs like reading a stream, and
+ * lazily loaded lists and objects, reading from duplicates at different positions, do not interfere with each other.
+ * Since decoders are shared, duplicates should not be read from different threads.
+ * <p/>
+ * Instances need to be {@link #close() closed} once they are no longer needed, which closes the file for all
+ * duplicates and slices.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+public class InflatingBitBuffer extends AbstractBitBuffer implements Closeable {
+
+    /** The maximum number of decoders shared by an instance and its duplicates. */
+    public static final int MAX_DECODERS = 4;
+
+    /** The decoders, shared by all duplicates. */
+    private final Decoders decoders;
+
+    /** The decoder used last by this instance. */
+    private DeflateDecoder current;
+
+    /**
+     * Constructs a new instance, building an index with checkpoints every {@link DeflateIndex#DEFAULT_INTERVAL} bytes,
+     * which requires inflating the entire file once.
+     *
+     * @param file The file holding the compressed data.
+     * @throws IOException If the file cannot be read, or does not hold valid compressed data.
+     */
+    public InflatingBitBuffer(File file) throws IOException {
+        this(file, DeflateIndex.build(file));
+    }
+
+    /**
+     * Constructs a new instance, using the index passed in.
+     *
+     * @param file  The file holding the compressed data.
+     * @param index The index of that file.
+     * @throws IOException If the file cannot be read.
+     */
+    public InflatingBitBuffer(File file, DeflateIndex index) throws IOException {
+        this(new Decoders(new FileInputStream(file).getChannel(), index), 0L);
+    }
+
+    /**
+     * Constructs a new instance, sharing the decoders passed in.
+     *
+     * @param decoders The decoders.
+     * @param bitPos   The initial bit position.
+     */
+    private InflatingBitBuffer(Decoders decoders, long bitPos) {
+        super(decoders.index.getSize() << 3, bitPos);
+        this.decoders = decoders;
+    }
+
+    /**
+     * Returns the index used to find the checkpoints from which to start inflating.
+     *
+     * @return The index of the file.
+     */
+    public DeflateIndex getIndex() {
+        return decoders.index;
+    }
+
+    /**
+     * Closes the file. Reading from this instance, or any of its duplicates or slices, is no longer possible
+     * afterwards.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    public void close() throws IOException {
+        decoders.close();
+    }
+
+    /**
+     * Returns a decoder holding the byte at the given position.
+     *
+     * @param index The position of the byte.
+     * @return A decoder {@link DeflateDecoder#covers(long) covering} that byte.
+     */
+    private DeflateDecoder getDecoder(long index) {
+        if (current == null || !current.covers(index)) {
+            current = decoders.get(index);
+        }
+        return current;
+    }
+
+    @Override
+    protected byte getByte(long index) {
+        return getDecoder(index).get(index);
+    }
+
+    @Override
+    protected long getNumberBuf(long firstBytePos, int nrReadBytes, ByteOrder byteOrder) {
+        DeflateDecoder decoder = getDecoder(firstBytePos);
+        if (!decoder.covers(firstBytePos + nrReadBytes - 1)) {
+            return super.getNumberBuf(firstBytePos, nrReadBytes, byteOrder);
+        }
+        byte[] output = decoder.getOutput();
+        int offset = (int) (firstBytePos - decoder.getOutputStart());
+        long result = 0;
+        if (byteOrder == ByteOrder.BigEndian) {
+            for (int i = 0; i < nrReadBytes; i++) {
+                result = (result << 8) | (output[offset + i] & 0xFF);
+            }
+        } else {
+            for (int i = nrReadBytes - 1; i >= 0; i--) {
+                result = (result << 8) | (output[offset + i] & 0xFF);
+            }
+        }
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer duplicate() {
+        return new InflatingBitBuffer(decoders, getBitPos());
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer(int length) throws BitBufferUnderflowException {
+        long bitPos = getBitPos();
+        if ((bitPos % 8) != 0) {
+            throw new BitBufferException(
+                    "8-bit alignment exception. Bit position (" + bitPos
+                            + ") should be 8-bit aligned");
+        }
+        long bitsToRead = ((long) length) << 3;
+        if (bitPos + bitsToRead > getBitBufBitSize()) {
+            throw new BitBufferUnderflowException(bitPos, bitsToRead);
+        }
+        ByteBuffer result = readAsByteBuffer(bitPos >>> 3, length);
+        setBitPos(bitPos + bitsToRead);
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer() {
+        long size = decoders.index.getSize();
+        if (size > Integer.MAX_VALUE) {
+            throw new BitBufferException("Unable to expose " + size
+                    + " bytes through a single ByteBuffer.");
+        }
+        return readAsByteBuffer(0L, (int) size);
+    }
+
+    /**
+     * Copies the given range of inflated bytes into a newly allocated {@link ByteBuffer}.
+     *
+     * @param firstBytePos The offset of the first byte.
+     * @param length       The number of bytes.
+     * @return A {@link ByteBuffer} holding the bytes requested.
+     */
+    private ByteBuffer readAsByteBuffer(long firstBytePos, int length) {
+        byte[] result = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            long position = firstBytePos + copied;
+            DeflateDecoder decoder = getDecoder(position);
+            int offset = (int) (position - decoder.getOutputStart());
+            int count = (int) Math.min(length - copied, decoder.getPosition() - position);
+            System.arraycopy(decoder.getOutput(), offset, result, copied, count);
+            copied += count;
+        }
+        return ByteBuffer.wrap(result);
+    }
+
+    /** The decoders inflating the data of a file, shared by all duplicates. */
+    private static class Decoders {
+
+        /** The channel from which compressed data is read. */
+        private final FileChannel channel;
+
+        /** The index of the file. */
+        private final DeflateIndex index;
+
+        /** The decoders, most recently used first. */
+        private final LinkedList<DeflateDecoder> decoders = new LinkedList<DeflateDecoder>();
+
+        /** Whether the file has been closed. */
+        private boolean closed;
+
+        public Decoders(FileChannel channel, DeflateIndex index) throws IOException {
+            long size = channel.size();
+            if (size != index.getCompressedSize()) {
+                channel.close();
+                throw new IllegalArgumentException("The index passed in covers " + index.getCompressedSize()
+                        + " bytes of compressed data, but the file holds " + size + " bytes.");
+            }
+            this.channel = channel;
+            this.index = index;
+        }
+
+        /**
+         * Returns a decoder holding the byte at the given position, inflating data if required.
+         *
+         * @param position The position of the byte.
+         * @return A decoder {@link DeflateDecoder#covers(long) covering} that byte.
+         */
+        public DeflateDecoder get(long position) {
+            if (closed) {
+                throw new BitBufferException("Unable to read byte " + position + ": the file has been closed.");
+            }
+            int checkpoint = index.getCheckpoint(position);
+            DeflateDecoder selected = null;
+            for (DeflateDecoder decoder : decoders) {
+                if (decoder.covers(position)) {
+                    selected = decoder;
+                    break;
+                } else if (decoder.getPosition() <= position
+                        && decoder.getPosition() >= index.getPosition(checkpoint)
+                        && (selected == null || decoder.getPosition() > selected.getPosition())) {
+                    selected = decoder;
+                }
+            }
+            try {
+                if (selected == null) {
+                    if (decoders.size() < MAX_DECODERS) {
+                        selected = new DeflateDecoder(channel, index.getCompressedSize());
+                    } else {
+                        selected = decoders.getLast();
+                    }
+                    index.resume(checkpoint, selected);
+                }
+                if (!selected.covers(position)) {
+                    selected.advance(position);
+                }
+            } catch (IOException ioe) {
+                throw new BitBufferException("Failed to inflate byte " + position + ".", ioe);
+            }
+            decoders.remove(selected);
+            decoders.addFirst(selected);
+            return selected;
+        }
+
+        public void close() throws IOException {
+            closed = true;
+            decoders.clear();
+            channel.close();
+        }
+
+    }
+
+}
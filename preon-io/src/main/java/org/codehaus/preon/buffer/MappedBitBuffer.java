@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link BitBuffer} providing access to the contents of a file, mapping it into memory as a series of fixed-size
+ * segments. Unlike the {@link DefaultBitBuffer}, which is limited to what a single {@link ByteBuffer} is able to
+ * address, all positions are <code>long</code> offsets, so it is capable of dealing with files exceeding 2 GB. Reads
+ * crossing the boundary between two segments are handled transparently.
+ * <p/>
+ * All instances created by {@link #duplicate()} and {@link #slice(long)} share the same segments; only the position
+ * is copied.
+ *
+ * @author Wilfred Springer
+ */
+public class MappedBitBuffer extends AbstractBitBuffer {
+
+    /** The default size of a segment: 1 GB. */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    /** The segments, each mapping a region of {@link #segmentSize} bytes (except for the last one). */
+    private final ByteBuffer[] segments;
+
+    /** The number of bits to shift a byte offset to the right in order to get the index of its segment. */
+    private final int segmentShift;
+
+    /** The mask leaving the offset of a byte within its segment. */
+    private final long segmentMask;
+
+    /**
+     * Constructs a new instance, mapping the file passed in using segments of {@link #DEFAULT_SEGMENT_SIZE} bytes.
+     *
+     * @param file The file to be mapped.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedBitBuffer(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a new instance, mapping the file passed in using segments of the given size.
+     *
+     * @param file        The file to be mapped.
+     * @param segmentSize The size of a single segment, in bytes. Needs to be a power of two.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedBitBuffer(File file, int segmentSize) throws IOException {
+        this(map(file, segmentSize), segmentSize, file.length() << 3, 0L);
+    }
+
+    /**
+     * Constructs a new instance, sharing the segments passed in.
+     *
+     * @param segments      The segments holding the data.
+     * @param segmentSize   The size of all segments, except for the last one.
+     * @param bitBufBitSize The number of bits accessible.
+     * @param bitPos        The initial bit position.
+     */
+    private MappedBitBuffer(ByteBuffer[] segments, int segmentSize, long bitBufBitSize, long bitPos) {
+        super(bitBufBitSize, bitPos);
+        this.segments = segments;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        this.segmentMask = segmentSize - 1;
+    }
+
+    /**
+     * Maps the file in segments of the given size.
+     *
+     * @param file        The file to be mapped.
+     * @param segmentSize The size of a single segment.
+     * @return The segments mapping the entire file.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    private static ByteBuffer[] map(File file, int segmentSize) throws IOException {
+        if (segmentSize <= 0 || Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("Segment size (" + segmentSize
+                    + ") should be a positive power of two.");
+        }
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            int nrSegments = (int) ((size + segmentSize - 1) / segmentSize);
+            ByteBuffer[] segments = new ByteBuffer[nrSegments];
+            for (int i = 0; i < nrSegments; i++) {
+                long position = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(segmentSize, size - position));
+            }
+            return segments;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    protected byte getByte(long index) {
+        return segments[(int) (index >>> segmentShift)].get((int) (index & segmentMask));
+    }
+
+    @Override
+    protected long getNumberBuf(long firstBytePos, int nrReadBytes, ByteOrder byteOrder) {
+        int offset = (int) (firstBytePos & segmentMask);
+        ByteBuffer segment = segments[(int) (firstBytePos >>> segmentShift)];
+        if (nrReadBytes == 8 && offset <= segment.limit() - 8) {
+            // All bytes in a single segment
+            long value = segment.getLong(offset);
+            if (segment.order() == java.nio.ByteOrder.BIG_ENDIAN) {
+                return byteOrder == ByteOrder.BigEndian ? value : Long.reverseBytes(value);
+            } else {
+                return byteOrder == ByteOrder.LittleEndian ? value : Long.reverseBytes(value);
+            }
+        } else {
+            return super.getNumberBuf(firstBytePos, nrReadBytes, byteOrder);
+        }
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer duplicate() {
+        return new MappedBitBuffer(segments, (int) (segmentMask + 1), getBitBufBitSize(), getBitPos());
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer(int length) throws BitBufferUnderflowException {
+        long bitPos = getBitPos();
+        if ((bitPos % 8) != 0) {
+            throw new BitBufferException(
+                    "8-bit alignment exception. Bit position (" + bitPos
+                            + ") should be 8-bit aligned");
+        }
+        long bitsToRead = ((long) length) << 3;
+        if (bitPos + bitsToRead > getBitBufBitSize()) {
+            throw new BitBufferUnderflowException(bitPos, bitsToRead);
+        }
+        ByteBuffer result = readAsByteBuffer(bitPos >>> 3, length);
+        setBitPos(bitPos + bitsToRead);
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer() {
+        long size = getBitBufBitSize() >>> 3;
+        if (size > Integer.MAX_VALUE) {
+            throw new BitBufferException("Unable to expose " + size
+                    + " bytes through a single ByteBuffer.");
+        }
+        return readAsByteBuffer(0, (int) size);
+    }
+
+    /**
+     * Returns a {@link ByteBuffer} holding the given range of bytes. If the range is contained in a single segment, the
+     * result will be a view on that segment. Otherwise the bytes will be copied.
+     *
+     * @param firstBytePos The offset of the first byte.
+     * @param length       The number of bytes.
+     * @return A {@link ByteBuffer} holding the bytes requested.
+     */
+    private ByteBuffer readAsByteBuffer(long firstBytePos, int length) {
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        int index = (int) (firstBytePos >>> segmentShift);
+        int offset = (int) (firstBytePos & segmentMask);
+        if (offset + length <= segments[index].limit()) {
+            ByteBuffer view = segments[index].duplicate();
+            view.limit(offset + length).position(offset);
+            return view.slice();
+        } else {
+            ByteBuffer result = ByteBuffer.allocate(length);
+            long position = firstBytePos;
+            while (result.hasRemaining()) {
+                ByteBuffer view = segments[(int) (position >>> segmentShift)].duplicate();
+                int start = (int) (position & segmentMask);
+                int end = Math.min(view.limit(), start + result.remaining());
+                view.limit(end).position(start);
+                position += end - start;
+                result.put(view);
+            }
+            result.flip();
+            return result;
+        }
+    }
+
+}
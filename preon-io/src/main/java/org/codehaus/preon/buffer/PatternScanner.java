@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+/**
+ * Searches a {@link BitBuffer} for a bit pattern, such as the sync word preceding a frame, shared by all {@link
+ * BitBuffer} implementations.
+ * <p/>
+ * For patterns of at least 8 bits, every byte of the buffer is first matched against a table listing, for each of the
+ * eight possible alignments of the pattern, the bits of the pattern that would end up in that byte. Only for bytes
+ * passing that test, the entire pattern is compared at the corresponding positions. Bytes are read in chunks, using
+ * the bulk reads of the {@link BitBuffer}. Shorter patterns, and the last few bits of the buffer, are scanned by
+ * reading 64-bit words and comparing the pattern against each of the positions within the word.
+ *
+ * @author Wilfred Springer
+ */
+final class PatternScanner {
+
+    /** The number of bytes read at once. */
+    private static final int CHUNK_SIZE = 4096;
+
+    private PatternScanner() {
+    }
+
+    /**
+     * Returns the position of the first occurrence of a bit pattern, without moving the bit pointer of the buffer.
+     *
+     * @param buffer     The {@link BitBuffer} to search.
+     * @param pattern    The pattern, in the <code>nrBits</code> least significant bits.
+     * @param nrBits     The number of bits of the pattern.
+     * @param fromBitPos The position from which to start searching.
+     * @param aligned    Whether only byte-aligned positions should be considered.
+     * @return The position of the first bit of the first occurrence, or <code>-1</code> if there is none.
+     */
+    static long indexOf(BitBuffer buffer, long pattern, int nrBits, long fromBitPos, boolean aligned) {
+        if (nrBits < 1 || nrBits > 64) {
+            throw new BitBufferException("Number of bits of the pattern ("
+                    + nrBits + ") should be between 1 and 64.");
+        }
+        pattern &= 0xFFFFFFFFFFFFFFFFL >>> (64 - nrBits);
+        long from = Math.max(fromBitPos, 0L);
+        if (aligned) {
+            from = (from + 7) & ~7L;
+        }
+        long size = buffer.getBitBufBitSize();
+        long last = size - nrBits;
+        if (from > last) {
+            return -1;
+        }
+        BitBuffer cursor = buffer.duplicate();
+        if (nrBits >= 8) {
+            // the number of bits of the pattern preceding the byte tested, for each alignment considered
+            int maxLead = aligned ? 0 : 7;
+            int[] masks = new int[maxLead + 1];
+            int[] values = new int[maxLead + 1];
+            long leftAligned = pattern << (64 - nrBits);
+            for (int lead = 0; lead <= maxLead; lead++) {
+                masks[lead] = (0xFF << (8 - Math.min(8, nrBits - lead))) & 0xFF;
+                values[lead] = (int) ((leftAligned << lead) >>> 56) & masks[lead];
+            }
+            boolean[] candidates = new boolean[256];
+            for (int value = 0; value < 256; value++) {
+                for (int lead = 0; lead <= maxLead; lead++) {
+                    candidates[value] |= (value & masks[lead]) == values[lead];
+                }
+            }
+            long firstByte = (from + 7) >>> 3;
+            long lastByte = Math.min((last + 7) >>> 3, (size >>> 3) - 1);
+            if (firstByte <= lastByte) {
+                byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, lastByte - firstByte + 1)];
+                for (long index = firstByte; index <= lastByte; index += chunk.length) {
+                    int count = (int) Math.min(chunk.length, lastByte - index + 1);
+                    cursor.setBitPos(index << 3);
+                    cursor.readBytes(chunk, 0, count, 8, ByteOrder.BigEndian);
+                    for (int i = nextCandidate(chunk, 0, count, candidates); i < count;
+                         i = nextCandidate(chunk, i + 1, count, candidates)) {
+                        int value = chunk[i] & 0xFF;
+                        long bytePos = (index + i) << 3;
+                        for (int lead = maxLead; lead >= 0; lead--) {
+                            long bitPos = bytePos - lead;
+                            if ((value & masks[lead]) == values[lead]
+                                    && bitPos >= from && bitPos <= last
+                                    && cursor.readBits(bitPos, nrBits) == pattern) {
+                                return bitPos;
+                            }
+                        }
+                    }
+                }
+                from = Math.max(from, (lastByte << 3) + 1);
+            }
+        }
+        return scan(cursor, pattern, nrBits, from, last, aligned);
+    }
+
+    /**
+     * Returns the index of the first byte passing the test of the candidates table.
+     *
+     * @param chunk      The bytes to test.
+     * @param from       The index of the first byte to test.
+     * @param count      The number of bytes in the chunk.
+     * @param candidates The table telling for every value of a byte whether it could be part of the pattern.
+     * @return The index of the first byte passing the test, or <code>count</code> if there is none.
+     */
+    private static int nextCandidate(byte[] chunk, int from, int count, boolean[] candidates) {
+        int i = from;
+        while (i < count && !candidates[chunk[i] & 0xFF]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Searches for a pattern by comparing it against all positions within 64-bit words.
+     *
+     * @param cursor  The {@link BitBuffer} to search; its bit pointer will be moved.
+     * @param pattern The pattern, in the <code>nrBits</code> least significant bits.
+     * @param nrBits  The number of bits of the pattern.
+     * @param from    The first position to consider.
+     * @param last    The last position to consider.
+     * @param aligned Whether only byte-aligned positions should be considered.
+     * @return The position of the first occurrence, or <code>-1</code> if there is none.
+     */
+    private static long scan(BitBuffer cursor, long pattern, int nrBits, long from, long last, boolean aligned) {
+        long size = cursor.getBitBufBitSize();
+        long bitPos = from;
+        while (bitPos <= last) {
+            int width = (int) Math.min(64, size - bitPos);
+            long word = cursor.readBits(bitPos, width) << (64 - width);
+            int nrPositions = (int) Math.min(width - nrBits + 1, last - bitPos + 1);
+            for (int i = 0; i < nrPositions; i++) {
+                if (((word << i) >>> (64 - nrBits)) == pattern
+                        && (!aligned || ((bitPos + i) & 7) == 0)) {
+                    return bitPos + i;
+                }
+            }
+            bitPos += nrPositions;
+        }
+        return -1;
+    }
+
+}
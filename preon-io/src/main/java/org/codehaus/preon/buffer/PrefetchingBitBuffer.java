@@ -0,0 +1,384 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link BitBuffer} reading a file in blocks, loading the next few blocks in the background while the current one is
+ * being decoded. Unlike the {@link MappedBitBuffer}, it does not depend on page faults to get the data in, which may
+ * stall the decoding thread on some storage, and it does not require the address space to map the file.
+ * <p/>
+ * Blocks are read by a single background thread, using positional reads on a {@link FileChannel}. Whenever a block is
+ * needed, the {@link #getPrefetchDepth() prefetch depth} blocks following it are scheduled for loading as well, so
+ * sequential decoding will normally find its data already loaded. A limited number of blocks is kept in memory. All
+ * instances created by {@link #duplicate()} and {@link #slice(long)} share the blocks and the background thread; each
+ * instance remembers the block it used last.
+ * <p/>
+ * Instances need to be {@link #close() closed} once they are no longer needed, which closes the file and stops the
+ * background thread, for all duplicates and slices.
+ *
+ * @author Wilfred Springer
+ */
+public class PrefetchingBitBuffer extends AbstractBitBuffer implements Closeable {
+
+    /** The default size of a block: 1 MB. */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /** The default number of blocks loaded ahead. */
+    public static final int DEFAULT_PREFETCH_DEPTH = 2;
+
+    /** The blocks, shared by all duplicates. */
+    private final Blocks blocks;
+
+    /** The index of the block used last by this instance, or <code>-1</code>. */
+    private long currentIndex = -1;
+
+    /** The block used last by this instance. */
+    private ByteBuffer current;
+
+    /**
+     * Constructs a new instance, reading the file passed in using blocks of {@link #DEFAULT_BLOCK_SIZE} bytes, loading
+     * {@link #DEFAULT_PREFETCH_DEPTH} blocks ahead.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file cannot be opened.
+     */
+    public PrefetchingBitBuffer(File file) throws IOException {
+        this(file, DEFAULT_BLOCK_SIZE, DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param file          The file to read.
+     * @param blockSize     The number of bytes read at once.
+     * @param prefetchDepth The number of blocks to load ahead of the block being read.
+     * @throws IOException If the file cannot be opened.
+     */
+    public PrefetchingBitBuffer(File file, int blockSize, int prefetchDepth) throws IOException {
+        this(new Blocks(new FileInputStream(file).getChannel(), blockSize, prefetchDepth), 0L);
+    }
+
+    /**
+     * Constructs a new instance, sharing the blocks passed in.
+     *
+     * @param blocks The blocks.
+     * @param bitPos The initial bit position.
+     */
+    private PrefetchingBitBuffer(Blocks blocks, long bitPos) {
+        super(blocks.size << 3, bitPos);
+        this.blocks = blocks;
+    }
+
+    /**
+     * Returns the number of bytes read at once.
+     *
+     * @return The size of a block.
+     */
+    public int getBlockSize() {
+        return blocks.blockSize;
+    }
+
+    /**
+     * Returns the number of blocks loaded ahead of the block being read.
+     *
+     * @return The prefetch depth.
+     */
+    public int getPrefetchDepth() {
+        return blocks.prefetchDepth;
+    }
+
+    /**
+     * Closes the file and stops the background thread. Reading from this instance, or any of its duplicates or slices,
+     * is no longer possible afterwards.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    public void close() throws IOException {
+        blocks.close();
+    }
+
+    /**
+     * Returns the block with the given index, waiting for it to be loaded if needed.
+     *
+     * @param index The index of the block.
+     * @return The block.
+     */
+    private ByteBuffer getBlock(long index) {
+        if (index != currentIndex) {
+            current = blocks.get(index);
+            currentIndex = index;
+        }
+        return current;
+    }
+
+    @Override
+    protected byte getByte(long index) {
+        return getBlock(index / blocks.blockSize).get((int) (index % blocks.blockSize));
+    }
+
+    @Override
+    protected long getNumberBuf(long firstBytePos, int nrReadBytes, ByteOrder byteOrder) {
+        int offset = (int) (firstBytePos % blocks.blockSize);
+        ByteBuffer block = getBlock(firstBytePos / blocks.blockSize);
+        if (offset <= block.limit() - 8) {
+            // Take all bytes from a single big endian word, ignoring the bytes following them
+            long value = block.getLong(offset);
+            if (byteOrder == ByteOrder.BigEndian) {
+                return value >>> ((8 - nrReadBytes) << 3);
+            } else {
+                return Long.reverseBytes(value) & (0xFFFFFFFFFFFFFFFFL >>> ((8 - nrReadBytes) << 3));
+            }
+        } else {
+            return super.getNumberBuf(firstBytePos, nrReadBytes, byteOrder);
+        }
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer duplicate() {
+        return new PrefetchingBitBuffer(blocks, getBitPos());
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer(int length) throws BitBufferUnderflowException {
+        long bitPos = getBitPos();
+        if ((bitPos % 8) != 0) {
+            throw new BitBufferException(
+                    "8-bit alignment exception. Bit position (" + bitPos
+                            + ") should be 8-bit aligned");
+        }
+        long bitsToRead = ((long) length) << 3;
+        if (bitPos + bitsToRead > getBitBufBitSize()) {
+            throw new BitBufferUnderflowException(bitPos, bitsToRead);
+        }
+        ByteBuffer result = readAsByteBuffer(bitPos >>> 3, length);
+        setBitPos(bitPos + bitsToRead);
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer() {
+        if (blocks.size > Integer.MAX_VALUE) {
+            throw new BitBufferException("Unable to expose " + blocks.size
+                    + " bytes through a single ByteBuffer.");
+        }
+        return readAsByteBuffer(0, (int) blocks.size);
+    }
+
+    /**
+     * Returns a {@link ByteBuffer} holding the given range of bytes. If the range is contained in a single block, the
+     * result will be a view on that block. Otherwise the bytes will be copied.
+     *
+     * @param firstBytePos The offset of the first byte.
+     * @param length       The number of bytes.
+     * @return A {@link ByteBuffer} holding the bytes requested.
+     */
+    private ByteBuffer readAsByteBuffer(long firstBytePos, int length) {
+        ByteBuffer result = null;
+        long position = firstBytePos;
+        int remaining = length;
+        while (remaining > 0) {
+            int offset = (int) (position % blocks.blockSize);
+            ByteBuffer view = getBlock(position / blocks.blockSize).duplicate();
+            int count = Math.min(remaining, view.limit() - offset);
+            view.limit(offset + count).position(offset);
+            if (result == null && count == length) {
+                return view.slice();
+            } else if (result == null) {
+                result = ByteBuffer.allocate(length);
+            }
+            result.put(view);
+            position += count;
+            remaining -= count;
+        }
+        if (result == null) {
+            return ByteBuffer.allocate(0);
+        }
+        result.flip();
+        return result;
+    }
+
+    /** The blocks of the file, loaded by a background thread. */
+    private static class Blocks {
+
+        /** The channel from which blocks are read. */
+        private final FileChannel channel;
+
+        /** The number of bytes in the file. */
+        private final long size;
+
+        /** The number of bytes of a block. */
+        private final int blockSize;
+
+        /** The number of blocks to load ahead. */
+        private final int prefetchDepth;
+
+        /** The thread loading the blocks. */
+        private final ExecutorService loader;
+
+        /** The blocks loaded or being loaded, least recently used first. */
+        @GuardedBy("this")
+        private final Map<Long, Future<ByteBuffer>> futures = new LinkedHashMap<Long, Future<ByteBuffer>>(16, 0.75f, true);
+
+        /** Whether the file has been closed. */
+        @GuardedBy("this")
+        private boolean closed;
+
+        public Blocks(FileChannel channel, int blockSize, int prefetchDepth) throws IOException {
+            if (blockSize <= 0 || prefetchDepth < 0) {
+                channel.close();
+                throw new IllegalArgumentException("Block size (" + blockSize
+                        + ") should be positive, and prefetch depth (" + prefetchDepth + ") non-negative.");
+            }
+            this.channel = channel;
+            this.size = channel.size();
+            this.blockSize = blockSize;
+            this.prefetchDepth = prefetchDepth;
+            this.loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "PrefetchingBitBuffer loader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        /**
+         * Returns the block with the given index, waiting for it to be loaded, and schedules loading of the blocks
+         * following it.
+         *
+         * @param index The index of the block.
+         * @return The block.
+         */
+        public ByteBuffer get(long index) {
+            Future<ByteBuffer> future;
+            synchronized (this) {
+                if (closed) {
+                    throw new BitBufferException("Unable to read block " + index + ": the file has been closed.");
+                }
+                future = schedule(index);
+                long nrBlocks = (size + blockSize - 1) / blockSize;
+                for (long next = index + 1; next <= index + prefetchDepth && next < nrBlocks; next++) {
+                    schedule(next);
+                }
+                // keep the blocks around that may still be used by other duplicates
+                Iterator<Long> indexes = futures.keySet().iterator();
+                while (futures.size() > 2 * (prefetchDepth + 1) && indexes.hasNext()) {
+                    indexes.next();
+                    indexes.remove();
+                }
+            }
+            try {
+                return future.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new BitBufferException("Interrupted while waiting for block " + index + ".", ie);
+            } catch (ExecutionException ee) {
+                throw new BitBufferException("Failed to read block " + index + ".", ee.getCause());
+            }
+        }
+
+        /**
+         * Schedules a block for loading, unless it has been scheduled before.
+         *
+         * @param index The index of the block.
+         * @return The {@link Future} providing the block.
+         */
+        @GuardedBy("this")
+        private Future<ByteBuffer> schedule(final long index) {
+            Future<ByteBuffer> future = futures.get(index);
+            if (future == null) {
+                future = loader.submit(new Callable<ByteBuffer>() {
+                    public ByteBuffer call() throws IOException {
+                        return read(index);
+                    }
+                });
+                futures.put(index, future);
+            }
+            return future;
+        }
+
+        /**
+         * Reads the block with the given index from the file.
+         *
+         * @param index The index of the block.
+         * @return The block.
+         * @throws IOException If reading from the file fails.
+         */
+        private ByteBuffer read(long index) throws IOException {
+            long position = index * blockSize;
+            ByteBuffer block = ByteBuffer.allocate((int) Math.min(blockSize, size - position));
+            while (block.hasRemaining()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException();
+                }
+                if (channel.read(block, position + block.position()) < 0) {
+                    throw new IOException("Unexpected end of file at " + (position + block.position()) + ".");
+                }
+            }
+            block.flip();
+            return block;
+        }
+
+        public void close() throws IOException {
+            synchronized (this) {
+                closed = true;
+                futures.clear();
+            }
+            loader.shutdownNow();
+            channel.close();
+        }
+
+    }
+
+}
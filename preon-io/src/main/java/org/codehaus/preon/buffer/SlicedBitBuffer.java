@@ -186,7 +186,7 @@ public class SlicedBitBuffer implements BitBuffer {
 
     public long readAsLong(long bitPos, int nrBits, ByteOrder endian) {
         assureValidRead(bitPos + startPos, nrBits);
-        return delegate.readAsLong(bitPos, nrBits, endian);
+        return delegate.readAsLong(bitPos + startPos, nrBits, endian);
     }
 
     public short readAsShort(int nrBits) {
@@ -226,7 +226,48 @@ public class SlicedBitBuffer implements BitBuffer {
 
     public long readBits(long bitPos, int nrBits, ByteOrder endian) {
         assureValidRead(bitPos + startPos, nrBits);
-        return delegate.readBits(bitPos + startPos, nrBits);
+        return delegate.readBits(bitPos + startPos, nrBits, endian);
+    }
+
+    public void readBytes(byte[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        assureValidBulkRead(count, nrBits);
+        delegate.readBytes(dst, off, count, nrBits, endian);
+    }
+
+    public void readShorts(short[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        assureValidBulkRead(count, nrBits);
+        delegate.readShorts(dst, off, count, nrBits, endian);
+    }
+
+    public void readInts(int[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        assureValidBulkRead(count, nrBits);
+        delegate.readInts(dst, off, count, nrBits, endian);
+    }
+
+    public void readLongs(long[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        assureValidBulkRead(count, nrBits);
+        delegate.readLongs(dst, off, count, nrBits, endian);
+    }
+
+    public long indexOf(long pattern, int nrBits, long fromBitPos) {
+        return PatternScanner.indexOf(this, pattern, nrBits, fromBitPos, false);
+    }
+
+    public long indexOfAligned(long pattern, int nrBits, long fromBitPos) {
+        return PatternScanner.indexOf(this, pattern, nrBits, fromBitPos, true);
+    }
+
+    /**
+     * Validates if it is possible to read <code>count</code> values of <code>nrBits</code> each.
+     *
+     * @param count  The number of values to read.
+     * @param nrBits The number of bits of a single value.
+     */
+    private void assureValidBulkRead(int count, int nrBits) {
+        long totalBits = ((long) count) * nrBits;
+        if (delegate.getBitPos() > endPos - totalBits) {
+            throw new BitBufferUnderflowException(delegate.getBitPos() - startPos, totalBits);
+        }
     }
 
     public void setBitPos(long bitPos) {
@@ -241,6 +282,10 @@ public class SlicedBitBuffer implements BitBuffer {
     // JavaDoc inherited
 
     public BitBuffer slice(long length) {
+        // slicing the delegate directly, rather than wrapping this instance, prevents slices of slices from nesting
+        if (length < 0 || delegate.getBitPos() + length > endPos) {
+            throw new BitBufferUnderflowException(delegate.getBitPos() - startPos, length);
+        }
         return delegate.slice(length);
     }
 
@@ -259,7 +304,18 @@ public class SlicedBitBuffer implements BitBuffer {
     }
 
     public ByteBuffer readAsByteBuffer() {
-        return delegate.readAsByteBuffer();
+        long size = (endPos - startPos + 7) >>> 3;
+        if (size > Integer.MAX_VALUE) {
+            throw new BitBufferException("Unable to expose " + size
+                    + " bytes through a single ByteBuffer.");
+        }
+        long bitPos = delegate.getBitPos();
+        delegate.setBitPos(startPos);
+        try {
+            return delegate.readAsByteBuffer((int) size);
+        } finally {
+            delegate.setBitPos(bitPos);
+        }
     }
 
     public long getActualBitPos() {
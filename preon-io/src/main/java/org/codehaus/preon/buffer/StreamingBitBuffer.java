@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+
+/**
+ * A {@link BitBuffer} reading its data from a {@link ReadableByteChannel}, without requiring the entire input to be
+ * available upfront. Data is read into a bounded window on demand. Bytes preceding the <em>release mark</em> are no
+ * longer needed and will be dropped from the window once it fills up, allowing sequential decoding of an arbitrary
+ * amount of data in constant memory:
+ * <p/>
+ * <pre>
+ * StreamingBitBuffer buffer = new StreamingBitBuffer(in);
+ * while (...) {
+ *     PacketRecord record = codec.decode(buffer, resolver, builder);
+ *     buffer.release();
+ * }
+ * </pre>
+ * <p/>
+ * Moving back to a position preceding the release mark is not possible; an attempt to do so results in a {@link
+ * BitBufferException}. Since the total size of the data is not known until the end of the stream has been reached,
+ * {@link #getBitBufBitSize()} returns {@link Long#MAX_VALUE} until then.
+ * <p/>
+ * The release mark may be moved beyond the data read so far, for instance after skipping a region not needed. The
+ * bytes preceding it are then read from the channel and thrown away, so skipping regions larger than the window is
+ * fine.
+ * <p/>
+ * Duplicates and slices share the window, and therefore also the release mark.
+ * <p/>
+ * Only blocking channels are supported; a {@link SelectableChannel} in non-blocking mode is rejected, and a read that
+ * returns no data at all results in a {@link BitBufferException}.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+public class StreamingBitBuffer extends AbstractBitBuffer {
+
+    /** The default size of the window: 1 MB. */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 20;
+
+    /** The window, shared by all duplicates. */
+    private final Window window;
+
+    /**
+     * Constructs a new instance, reading from the {@link InputStream} passed in, using a window of {@link
+     * #DEFAULT_WINDOW_SIZE} bytes.
+     *
+     * @param in The {@link InputStream} providing the data.
+     */
+    public StreamingBitBuffer(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    /**
+     * Constructs a new instance, reading from the {@link ReadableByteChannel} passed in, using a window of {@link
+     * #DEFAULT_WINDOW_SIZE} bytes.
+     *
+     * @param channel The {@link ReadableByteChannel} providing the data.
+     */
+    public StreamingBitBuffer(ReadableByteChannel channel) {
+        this(channel, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructs a new instance, reading from the {@link ReadableByteChannel} passed in.
+     *
+     * @param channel    The {@link ReadableByteChannel} providing the data.
+     * @param windowSize The maximum number of bytes retained, counted from the release mark.
+     */
+    public StreamingBitBuffer(ReadableByteChannel channel, int windowSize) {
+        this(new Window(channel, windowSize), 0L);
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("Non-blocking channels are not supported.");
+        }
+    }
+
+    private StreamingBitBuffer(Window window, long bitPos) {
+        super(Long.MAX_VALUE, bitPos);
+        this.window = window;
+    }
+
+    /**
+     * Releases all data preceding the current position.
+     *
+     * @see #release(long)
+     */
+    public void release() {
+        release(getBitPos());
+    }
+
+    /**
+     * Moves the release mark to the given position, allowing the bytes preceding it to be dropped from the window. The
+     * byte holding the bit at the given position will be retained. The release mark never moves backward, but may
+     * move beyond the data read so far; the bytes skipped that way will never be held in the window.
+     *
+     * @param bitPos The position of the first bit that might still be needed.
+     */
+    public void release(long bitPos) {
+        window.release(bitPos >>> 3);
+    }
+
+    /**
+     * Returns the position of the release mark, in bits.
+     *
+     * @return The position of the first bit that can still be read.
+     */
+    public long getReleaseMark() {
+        return window.released << 3;
+    }
+
+    @Override
+    public long getBitBufBitSize() {
+        return window.endOfStream ? window.end << 3 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void setBitPos(long bitPos) {
+        if ((bitPos >>> 3) < window.released) {
+            throw new BitBufferException("Cannot move to bit position " + bitPos
+                    + "; all data preceding bit position " + getReleaseMark() + " has been released.");
+        }
+        super.setBitPos(bitPos);
+    }
+
+    @Override
+    protected byte getByte(long index) {
+        window.require(index, 1);
+        return window.data[(int) (index - window.start)];
+    }
+
+    @Override
+    protected long getNumberBuf(long firstBytePos, int nrReadBytes, ByteOrder byteOrder) {
+        window.require(firstBytePos, nrReadBytes);
+        byte[] data = window.data;
+        int offset = (int) (firstBytePos - window.start);
+        long result = 0L;
+        if (byteOrder == ByteOrder.LittleEndian) {
+            for (int i = 0; i < nrReadBytes; i++) {
+                result |= (0xFFL & data[offset + i]) << (i << 3);
+            }
+        } else {
+            for (int i = 0; i < nrReadBytes; i++) {
+                result = (result << 8) | (0xFFL & data[offset + i]);
+            }
+        }
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer duplicate() {
+        return new StreamingBitBuffer(window, getBitPos());
+    }
+
+    /**
+     * Returns a <em>copy</em> of the given number of bytes; a view on the window would get corrupted as soon as the
+     * window moves on.
+     */
+    public ByteBuffer readAsByteBuffer(int length) throws BitBufferUnderflowException {
+        long bitPos = getBitPos();
+        if ((bitPos % 8) != 0) {
+            throw new BitBufferException(
+                    "8-bit alignment exception. Bit position (" + bitPos
+                            + ") should be 8-bit aligned");
+        }
+        long firstBytePos = bitPos >>> 3;
+        window.require(firstBytePos, length);
+        ByteBuffer result = ByteBuffer.allocate(length);
+        result.put(window.data, (int) (firstBytePos - window.start), length);
+        result.flip();
+        setBitPos(bitPos + (((long) length) << 3));
+        return result;
+    }
+
+    /**
+     * Not supported, since the data is not available in its entirety.
+     *
+     * @throws BitBufferException Always.
+     */
+    public ByteBuffer readAsByteBuffer() {
+        throw new BitBufferException("Unable to expose the entire contents of a stream.");
+    }
+
+    /** The data currently held in memory, along with the state of the underlying channel. */
+    private static class Window {
+
+        /** The channel providing the data. */
+        private final ReadableByteChannel channel;
+
+        /** The bytes currently held. */
+        private final byte[] data;
+
+        /** The offset (in the stream) of the first byte in {@link #data}. */
+        private long start;
+
+        /** The offset (in the stream) of the first byte not yet read into {@link #data}. */
+        private long end;
+
+        /** The offset (in the stream) of the first byte that has not been released. */
+        private long released;
+
+        /** Whether the end of the stream has been reached. */
+        private boolean endOfStream;
+
+        private Window(ReadableByteChannel channel, int size) {
+            this.channel = channel;
+            this.data = new byte[size];
+        }
+
+        /**
+         * Makes sure the given range of bytes is held in the window, reading more data if required.
+         *
+         * @param firstBytePos The offset of the first byte.
+         * @param nrBytes      The number of bytes.
+         * @throws BitBufferUnderflowException If the stream ends before the last byte.
+         * @throws BitBufferException          If the bytes have already been released, or do not fit in the window.
+         */
+        private void require(long firstBytePos, int nrBytes) {
+            if (firstBytePos < released) {
+                throw new BitBufferException("Cannot read from bit position " + (firstBytePos << 3)
+                        + "; all data preceding bit position " + (released << 3) + " has been released.");
+            }
+            long last = firstBytePos + nrBytes;
+            while (last > end) {
+                if (endOfStream) {
+                    throw new BitBufferUnderflowException(firstBytePos << 3, ((long) nrBytes) << 3);
+                }
+                fill(last);
+            }
+        }
+
+        /**
+         * Reads more data, dropping all released bytes from the window if it is full. If the release mark is beyond
+         * the data read so far, the bytes preceding it are read and thrown away first.
+         *
+         * @param last The offset of the first byte following the data required.
+         */
+        private void fill(long last) {
+            if (released >= end) {
+                start = end;
+                while (end < released && !endOfStream) {
+                    read(0, (int) Math.min(data.length, released - end));
+                    start = end;
+                }
+                if (endOfStream) {
+                    return;
+                }
+            }
+            int length = (int) (end - start);
+            if (length == data.length) {
+                if (last - released > data.length) {
+                    throw new BitBufferException("Unable to hold " + (last - released)
+                            + " bytes in a window of " + data.length
+                            + " bytes; release data no longer needed or increase the window size.");
+                }
+                int dropped = (int) (released - start);
+                System.arraycopy(data, dropped, data, 0, length - dropped);
+                start = released;
+                length -= dropped;
+            }
+            read(length, data.length - length);
+        }
+
+        /**
+         * Reads data from the channel into the given part of {@link #data}, moving {@link #end} accordingly.
+         *
+         * @param offset The offset in {@link #data}.
+         * @param length The maximum number of bytes to read; at least one.
+         */
+        private void read(int offset, int length) {
+            int read;
+            try {
+                read = channel.read(ByteBuffer.wrap(data, offset, length));
+            } catch (IOException ioe) {
+                throw new BitBufferException("Failed to read from channel.", ioe);
+            }
+            if (read < 0) {
+                endOfStream = true;
+            } else if (read == 0) {
+                throw new BitBufferException("No data read from channel; non-blocking channels are not supported.");
+            } else {
+                end += read;
+            }
+        }
+
+        private void release(long bytePos) {
+            if (bytePos > released) {
+                released = bytePos;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,476 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BitBuffer} for input that is known to be valid, such as fixed-layout frames that have already been checked
+ * by other means. Whereas the {@link DefaultBitBuffer} validates every single read, this implementation only checks
+ * bounds once for every span of data: when it is created, and when a {@link #slice(long) slice} or {@link
+ * #readAsByteBuffer(int) ByteBuffer} is taken from it. Individual reads only rely on the bounds checks of the
+ * underlying {@link ByteBuffer}, which means that reading beyond the end of a <em>slice</em> will not be detected,
+ * while reading beyond the end of the underlying data still will.
+ * <p/>
+ * The data is read from the remaining bytes of the {@link ByteBuffer} passed in, which would typically be a direct
+ * buffer. Use {@link #allocateDirect(byte[])} for copying an array of bytes into native memory.
+ *
+ * @author Wilfred Springer
+ */
+public class TrustedBitBuffer implements BitBuffer {
+
+    /** The data, always accessed in big-endian order. */
+    private final ByteBuffer byteBuffer;
+
+    /** The position of the first bit of this span in {@link #byteBuffer}. */
+    private final long startPos;
+
+    /** The number of bits in this span. */
+    private final long bitBufBitSize;
+
+    /** The current position, relative to {@link #startPos}. */
+    private long bitPos;
+
+    /**
+     * Constructs a new instance, providing access to the remaining bytes of the {@link ByteBuffer} passed in.
+     *
+     * @param byteBuffer The {@link ByteBuffer} holding the data.
+     */
+    public TrustedBitBuffer(ByteBuffer byteBuffer) {
+        this(byteBuffer.slice().order(java.nio.ByteOrder.BIG_ENDIAN), 0L,
+                ((long) byteBuffer.remaining()) << 3, 0L);
+    }
+
+    private TrustedBitBuffer(ByteBuffer byteBuffer, long startPos, long bitBufBitSize, long bitPos) {
+        this.byteBuffer = byteBuffer;
+        this.startPos = startPos;
+        this.bitBufBitSize = bitBufBitSize;
+        this.bitPos = bitPos;
+    }
+
+    /**
+     * Creates a {@link TrustedBitBuffer} holding a copy of the bytes passed in, in native memory.
+     *
+     * @param data The bytes to be copied.
+     * @return A {@link TrustedBitBuffer} backed by a direct {@link ByteBuffer}.
+     */
+    public static TrustedBitBuffer allocateDirect(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        return new TrustedBitBuffer(buffer);
+    }
+
+    // JavaDoc inherited
+
+    public void setBitPos(long bitPos) {
+        this.bitPos = bitPos;
+    }
+
+    // JavaDoc inherited
+
+    public long getBitPos() {
+        return bitPos;
+    }
+
+    // JavaDoc inherited
+
+    public long getBitBufBitSize() {
+        return bitBufBitSize;
+    }
+
+    // JavaDoc inherited
+
+    public long getActualBitPos() {
+        return startPos + bitPos;
+    }
+
+    // readBits
+
+    // JavaDoc inherited
+
+    public long readBits(int nrBits) {
+        return read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public long readBits(long bitPos, int nrBits) {
+        return read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public long readBits(int nrBits, ByteOrder byteOrder) {
+        return read(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public long readBits(long bitPos, int nrBits, ByteOrder byteOrder) {
+        if (nrBits <= 8)
+            return (byte) read(bitPos, nrBits, byteOrder);
+        else if (nrBits <= 16)
+            return (short) read(bitPos, nrBits, byteOrder);
+        else if (nrBits <= 32)
+            return (int) read(bitPos, nrBits, byteOrder);
+        else
+            return read(bitPos, nrBits, byteOrder);
+    }
+
+    // boolean
+
+    // JavaDoc inherited
+
+    public boolean readAsBoolean() {
+        return read(bitPos, 1, ByteOrder.BigEndian) == 1;
+    }
+
+    // JavaDoc inherited
+
+    public boolean readAsBoolean(long bitPos) {
+        return read(bitPos, 1, ByteOrder.BigEndian) == 1;
+    }
+
+    // JavaDoc inherited
+
+    public boolean readAsBoolean(ByteOrder byteOrder) {
+        return read(bitPos, 1, byteOrder) == 1;
+    }
+
+    // JavaDoc inherited
+
+    public boolean readAsBoolean(long bitPos, ByteOrder byteOrder) {
+        return read(bitPos, 1, byteOrder) == 1;
+    }
+
+    // signed byte
+
+    // JavaDoc inherited
+
+    public byte readAsByte(int nrBits) {
+        return (byte) read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public byte readAsByte(int nrBits, ByteOrder byteOrder) {
+        return (byte) read(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public byte readAsByte(int nrBits, long bitPos) {
+        return (byte) read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public byte readAsByte(long bitPos, int nrBits, ByteOrder byteOrder) {
+        return (byte) read(bitPos, nrBits, byteOrder);
+    }
+
+    // signed short
+
+    // JavaDoc inherited
+
+    public short readAsShort(int nrBits) {
+        return (short) read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public short readAsShort(long bitPos, int nrBits) {
+        return (short) read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public short readAsShort(int nrBits, ByteOrder byteOrder) {
+        return (short) read(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public short readAsShort(long bitPos, int nrBits, ByteOrder byteOrder) {
+        return (short) read(bitPos, nrBits, byteOrder);
+    }
+
+    // signed int
+
+    // JavaDoc inherited
+
+    public int readAsInt(int nrBits) {
+        return (int) read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public int readAsInt(long bitPos, int nrBits) {
+        return (int) read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public int readAsInt(int nrBits, ByteOrder byteOrder) {
+        return (int) read(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public int readAsInt(long bitPos, int nrBits, ByteOrder byteOrder) {
+        return (int) read(bitPos, nrBits, byteOrder);
+    }
+
+    // signed long
+
+    // JavaDoc inherited
+
+    public long readAsLong(int nrBits) {
+        return read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public long readAsLong(long bitPos, int nrBits) {
+        return read(bitPos, nrBits, ByteOrder.BigEndian);
+    }
+
+    // JavaDoc inherited
+
+    public long readAsLong(int nrBits, ByteOrder byteOrder) {
+        return read(bitPos, nrBits, byteOrder);
+    }
+
+    // JavaDoc inherited
+
+    public long readAsLong(long bitPos, int nrBits, ByteOrder byteOrder) {
+        return read(bitPos, nrBits, byteOrder);
+    }
+
+    // bulk reads
+
+    // JavaDoc inherited
+
+    public void readBytes(byte[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        checkSpan(((long) count) * nrBits);
+        if (BulkReads.isSupported(startPos + bitPos, nrBits, 8)) {
+            BulkReads.readBytes(byteBuffer, (startPos + bitPos) >>> 3, dst, off, count);
+            bitPos += ((long) count) * nrBits;
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = readAsByte(nrBits, endian);
+            }
+        }
+    }
+
+    // JavaDoc inherited
+
+    public void readShorts(short[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        checkSpan(((long) count) * nrBits);
+        if (BulkReads.isSupported(startPos + bitPos, nrBits, 16)) {
+            BulkReads.readShorts(byteBuffer, (startPos + bitPos) >>> 3, dst, off, count, nrBits, endian);
+            bitPos += ((long) count) * nrBits;
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = readAsShort(nrBits, endian);
+            }
+        }
+    }
+
+    // JavaDoc inherited
+
+    public void readInts(int[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        checkSpan(((long) count) * nrBits);
+        if (BulkReads.isSupported(startPos + bitPos, nrBits, 32)) {
+            BulkReads.readInts(byteBuffer, (startPos + bitPos) >>> 3, dst, off, count, nrBits, endian);
+            bitPos += ((long) count) * nrBits;
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = readAsInt(nrBits, endian);
+            }
+        }
+    }
+
+    // JavaDoc inherited
+
+    public void readLongs(long[] dst, int off, int count, int nrBits, ByteOrder endian) {
+        checkSpan(((long) count) * nrBits);
+        if (BulkReads.isSupported(startPos + bitPos, nrBits, 64)) {
+            BulkReads.readLongs(byteBuffer, (startPos + bitPos) >>> 3, dst, off, count, nrBits, endian);
+            bitPos += ((long) count) * nrBits;
+        } else {
+            for (int i = off; i < off + count; i++) {
+                dst[i] = readAsLong(nrBits, endian);
+            }
+        }
+    }
+
+    // JavaDoc inherited
+
+    public long indexOf(long pattern, int nrBits, long fromBitPos) {
+        return PatternScanner.indexOf(this, pattern, nrBits, fromBitPos, false);
+    }
+
+    // JavaDoc inherited
+
+    public long indexOfAligned(long pattern, int nrBits, long fromBitPos) {
+        return PatternScanner.indexOf(this, pattern, nrBits, fromBitPos, true);
+    }
+
+    /**
+     * Reads the given bits, without any validation, and moves the bit pointer to the first bit following them.
+     *
+     * @param bitPos    position of the first bit to read, relative to the start of this span
+     * @param nrBits    number of bits to read
+     * @param byteOrder order of reading bytes (either Endian.Big or Endian.Little)
+     * @return the value represented by the given bits
+     */
+    private long read(long bitPos, int nrBits, ByteOrder byteOrder) {
+        long absolutePos = startPos + bitPos;
+        int firstBytePos = (int) (absolutePos >>> 3);
+        int offset = (int) absolutePos & 7;
+        long result;
+        if (offset + nrBits <= 64 && firstBytePos <= byteBuffer.limit() - 8) {
+            long word = byteBuffer.getLong(firstBytePos);
+            if (byteOrder == ByteOrder.BigEndian) {
+                result = (word << offset) >>> (64 - nrBits);
+            } else {
+                result = (Long.reverseBytes(word) >>> offset) & (0xFFFFFFFFFFFFFFFFL >>> (64 - nrBits));
+            }
+        } else {
+            result = readFromTail(absolutePos, nrBits, byteOrder);
+        }
+        this.bitPos = bitPos + nrBits;
+        return result;
+    }
+
+    /**
+     * Reads the given bits one byte at a time; used near the end of the data, and for unaligned reads spanning nine
+     * bytes.
+     *
+     * @param absolutePos position of the first bit to read in {@link #byteBuffer}
+     * @param nrBits      number of bits to read
+     * @param byteOrder   order of reading bytes (either Endian.Big or Endian.Little)
+     * @return the value represented by the given bits
+     */
+    private long readFromTail(long absolutePos, int nrBits, ByteOrder byteOrder) {
+        if (absolutePos + nrBits > ((long) byteBuffer.limit()) << 3) {
+            throw new BitBufferUnderflowException(absolutePos - startPos, nrBits);
+        }
+        int firstBytePos = (int) (absolutePos >>> 3);
+        int offset = (int) absolutePos & 7;
+        int nrReadBytes = (offset + nrBits + 7) >> 3;
+        int nrWordBytes = Math.min(nrReadBytes, 8);
+        long word = 0L;
+        if (byteOrder == ByteOrder.BigEndian) {
+            for (int i = 0; i < nrWordBytes; i++) {
+                word = (word << 8) | (0xFFL & byteBuffer.get(firstBytePos + i));
+            }
+            if (nrReadBytes > 8) {
+                long lastByte = 0xFFL & byteBuffer.get(firstBytePos + 8);
+                return ((word << offset) | (lastByte >>> (8 - offset))) >>> (64 - nrBits);
+            } else {
+                return (word << (64 - (nrReadBytes << 3) + offset)) >>> (64 - nrBits);
+            }
+        } else {
+            for (int i = 0; i < nrWordBytes; i++) {
+                word |= (0xFFL & byteBuffer.get(firstBytePos + i)) << (i << 3);
+            }
+            long result = word >>> offset;
+            if (nrReadBytes > 8) {
+                result |= (0xFFL & byteBuffer.get(firstBytePos + 8)) << (64 - offset);
+            }
+            return result & (0xFFFFFFFFFFFFFFFFL >>> (64 - nrBits));
+        }
+    }
+
+    /**
+     * Makes sure the given number of bits, counted from the current position, is available in this span.
+     *
+     * @param nrBits The number of bits.
+     * @throws BitBufferUnderflowException If the bits are not available.
+     */
+    private void checkSpan(long nrBits) {
+        if (bitPos < 0 || bitPos + nrBits > bitBufBitSize) {
+            throw new BitBufferUnderflowException(bitPos, nrBits);
+        }
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer slice(long length) throws BitBufferUnderflowException {
+        checkSpan(length);
+        BitBuffer result = new TrustedBitBuffer(byteBuffer, startPos + bitPos, length, 0L);
+        bitPos += length;
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public BitBuffer duplicate() {
+        return new TrustedBitBuffer(byteBuffer, startPos, bitBufBitSize, bitPos);
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer(int length) throws BitBufferUnderflowException {
+        long absolutePos = startPos + bitPos;
+        if ((absolutePos % 8) != 0) {
+            throw new BitBufferException(
+                    "8-bit alignment exception. Bit position (" + bitPos
+                            + ") should be 8-bit aligned");
+        }
+        checkSpan(((long) length) << 3);
+        ByteBuffer result = byteBuffer.duplicate();
+        int firstBytePos = (int) (absolutePos >>> 3);
+        result.limit(firstBytePos + length).position(firstBytePos);
+        bitPos += ((long) length) << 3;
+        return result.slice();
+    }
+
+    // JavaDoc inherited
+
+    public ByteBuffer readAsByteBuffer() {
+        if ((startPos % 8) != 0) {
+            throw new BitBufferException(
+                    "8-bit alignment exception. Start position (" + startPos
+                            + ") should be 8-bit aligned");
+        }
+        ByteBuffer result = byteBuffer.duplicate();
+        int firstBytePos = (int) (startPos >>> 3);
+        result.limit(firstBytePos + (int) ((bitBufBitSize + 7) >>> 3)).position(firstBytePos);
+        return result.slice();
+    }
+
+}
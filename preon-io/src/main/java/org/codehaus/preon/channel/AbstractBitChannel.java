@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The base class of {@link BitChannel BitChannels} collecting bits in a 64-bit register, before handing them to
+ * whatever stores them as whole bytes: eight at a time once the register is full, and one by one when the channel is
+ * flushed. Values are never broken into separate bytes, and byte arrays and {@link ByteBuffer ByteBuffers} written at a
+ * byte boundary are passed on as a whole.
+ * <p/>
+ * Subclasses able to modify the bytes they stored may implement {@link SeekableBitChannel}, relying on {@link
+ * #patch(long, int, long, ByteOrder)} to modify bits that may or may not have left the register.
+ *
+ * @author Wilfred Springer
+ */
+public abstract class AbstractBitChannel implements BitChannel {
+
+    /** The bits not stored yet, aligned to the least significant bit. */
+    private long register;
+
+    /** The number of bits in the {@link #register}; always less than 64. */
+    private int registerBits;
+
+    /** The number of bytes stored. */
+    private long stored;
+
+    public void write(boolean value) throws IOException {
+        write(1, value ? 1L : 0L);
+    }
+
+    public void write(@Nonnegative int nrbits, byte value) throws IOException {
+        assert nrbits > 0;
+        assert nrbits <= 8;
+        write(nrbits, (long) value);
+    }
+
+    public void write(@Nonnegative int nrbits, int value, ByteOrder byteOrder) throws IOException {
+        write(nrbits, (long) value, byteOrder);
+    }
+
+    public void write(@Nonnegative int nrbits, long value, ByteOrder byteOrder) throws IOException {
+        if (byteOrder == ByteOrder.LittleEndian && nrbits > 8) {
+            // The least significant bytes first, followed by the remaining most significant bits
+            int steps = nrbits >>> 3;
+            write(steps << 3, Long.reverseBytes(value) >>> (64 - (steps << 3)));
+            if ((nrbits & 7) != 0) {
+                write(nrbits & 7, value >>> (steps << 3));
+            }
+        } else {
+            write(nrbits, value);
+        }
+    }
+
+    public void write(@Nonnegative int nrbits, short value, ByteOrder byteOrder) throws IOException {
+        write(nrbits, (long) value, byteOrder);
+    }
+
+    public void write(@Nonnull byte[] src, int offset, int length) throws IOException {
+        if ((registerBits & 7) == 0) {
+            drainRegister();
+            putBytes(src, offset, length);
+            stored += length;
+        } else {
+            for (; length >= 8; offset += 8, length -= 8) {
+                write(64, ((src[offset] & 0xFFL) << 56) | ((src[offset + 1] & 0xFFL) << 48)
+                        | ((src[offset + 2] & 0xFFL) << 40) | ((src[offset + 3] & 0xFFL) << 32)
+                        | ((src[offset + 4] & 0xFFL) << 24) | ((src[offset + 5] & 0xFFL) << 16)
+                        | ((src[offset + 6] & 0xFFL) << 8) | (src[offset + 7] & 0xFFL));
+            }
+            for (; length > 0; offset++, length--) {
+                write(8, (long) src[offset]);
+            }
+        }
+    }
+
+    public long write(@Nonnull ByteBuffer src) throws IOException {
+        long result = ((long) src.remaining()) << 3;
+        if ((registerBits & 7) == 0) {
+            drainRegister();
+            stored += src.remaining();
+            putBytes(src);
+        } else {
+            while (src.remaining() >= 8) {
+                write(64, src.getLong());
+            }
+            while (src.hasRemaining()) {
+                write(8, (long) src.get());
+            }
+        }
+        return result;
+    }
+
+    public
+    @Nonnegative
+    int getRelativeBitPos() {
+        return registerBits & 7;
+    }
+
+    /**
+     * Stores all bits written so far, padding the last byte with zeros.
+     *
+     * @throws IOException If the bits cannot be stored.
+     */
+    public void flush() throws IOException {
+        if ((registerBits & 7) != 0) {
+            write(8 - (registerBits & 7), 0L);
+        }
+        drainRegister();
+    }
+
+    /**
+     * Returns the number of bits written so far.
+     *
+     * @return The position of the next bit to be written.
+     */
+    public long getBitPos() {
+        return (stored << 3) + registerBits;
+    }
+
+    /** Forgets about all bits written, making the next bit written the first one. */
+    protected void resetBits() {
+        register = 0;
+        registerBits = 0;
+        stored = 0;
+    }
+
+    /**
+     * Writes the given number of zeros, to be {@link #patch(long, int, long, ByteOrder) patched} later on.
+     *
+     * @param nrBits The number of bits to reserve.
+     * @return The position of the first bit reserved.
+     * @throws IOException If the bits cannot be stored.
+     */
+    protected long reserve(int nrBits) throws IOException {
+        long result = getBitPos();
+        for (int remaining = nrBits; remaining > 0; remaining -= 64) {
+            write(Math.min(remaining, 64), 0L);
+        }
+        return result;
+    }
+
+    /**
+     * Overwrites bits written before, with the bits that would have been written by {@link #write(int, long,
+     * ByteOrder)}. Bits still in the register are modified in place; for bits already stored, {@link #patchByte(long,
+     * int, int)} is called for every byte affected.
+     *
+     * @param bitPos    The position of the first bit to overwrite.
+     * @param nrbits    The number of bits to overwrite; at most 64.
+     * @param value     The value to write.
+     * @param byteOrder The byte order of the value.
+     * @throws IOException If the bits cannot be modified.
+     */
+    protected void patch(long bitPos, int nrbits, long value, ByteOrder byteOrder) throws IOException {
+        if (bitPos < 0 || nrbits < 0 || nrbits > 64 || bitPos + nrbits > getBitPos()) {
+            throw new BitChannelException("Unable to patch " + nrbits + " bits at position " + bitPos
+                    + ": only " + getBitPos() + " bits have been written.");
+        }
+        // The bits in the order in which they would have been written
+        long bits = value;
+        if (byteOrder == ByteOrder.LittleEndian && nrbits > 8) {
+            int steps = nrbits >>> 3;
+            int remainder = nrbits & 7;
+            bits = ((Long.reverseBytes(value) >>> (64 - (steps << 3))) << remainder)
+                    | ((value >>> (steps << 3)) & ((1L << remainder) - 1));
+        }
+        long end = bitPos + nrbits;
+        for (long index = bitPos >>> 3; (index << 3) < end; index++) {
+            int from = (int) Math.max(bitPos - (index << 3), 0);
+            int to = (int) Math.min(end - (index << 3), 8);
+            int width = to - from;
+            int chunk = (int) (bits >>> (end - (index << 3) - to)) & ((1 << width) - 1);
+            int mask = ((1 << width) - 1) << (8 - to);
+            if (index < stored) {
+                patchByte(index, mask, chunk << (8 - to));
+            } else {
+                // The register holds the bits of this byte, most significant bit first
+                int shift = registerBits - 8 - (int) ((index - stored) << 3);
+                if (shift >= 0) {
+                    register = (register & ~((long) mask << shift)) | ((long) (chunk << (8 - to)) << shift);
+                } else {
+                    register = (register & ~((long) mask >>> -shift)) | ((long) (chunk << (8 - to)) >>> -shift);
+                }
+            }
+        }
+    }
+
+    /**
+     * Modifies a byte stored before. Only called from {@link #patch(long, int, long, ByteOrder)}; the default
+     * implementation fails.
+     *
+     * @param index The position of the byte, counting from the first byte stored.
+     * @param mask  The bits of the byte to be modified.
+     * @param bits  The new value of the bits to be modified; all other bits are 0.
+     * @throws IOException If the byte cannot be modified.
+     */
+    protected void patchByte(long index, int mask, int bits) throws IOException {
+        throw new BitChannelException("Unable to modify byte " + index + ": it has been written already.");
+    }
+
+    /**
+     * Appends the given number of bits of the value passed in, most significant bit first.
+     *
+     * @param nrBits The number of bits to write; at most 64.
+     * @param value  The value, aligned to the least significant bit; any other bits are ignored.
+     * @throws IOException If the register is full, and its bits cannot be stored.
+     */
+    private void write(int nrBits, long value) throws IOException {
+        int free = 64 - registerBits;
+        if (nrBits < free) {
+            register = (register << nrBits) | (value & ((1L << nrBits) - 1));
+            registerBits += nrBits;
+        } else {
+            // Fill the register, store it, and keep the bits that did not fit
+            int rest = nrBits - free;
+            stored += 8;
+            putLong((registerBits == 0 ? 0L : register << free) | ((value << (64 - nrBits)) >>> registerBits));
+            register = value & ((1L << rest) - 1);
+            registerBits = rest;
+        }
+    }
+
+    /**
+     * Stores the whole bytes in the register.
+     *
+     * @throws IOException If the bytes cannot be stored.
+     */
+    private void drainRegister() throws IOException {
+        while (registerBits >= 8) {
+            registerBits -= 8;
+            stored++;
+            putByte((byte) (register >>> registerBits));
+        }
+        register &= (1L << registerBits) - 1;
+    }
+
+    /**
+     * Stores eight bytes, most significant byte first.
+     *
+     * @param value The bytes to store.
+     * @throws IOException If the bytes cannot be stored.
+     */
+    protected abstract void putLong(long value) throws IOException;
+
+    /**
+     * Stores a single byte.
+     *
+     * @param value The byte to store.
+     * @throws IOException If the byte cannot be stored.
+     */
+    protected abstract void putByte(byte value) throws IOException;
+
+    /**
+     * Stores a range of bytes from the array passed in.
+     *
+     * @param src    The array holding the bytes.
+     * @param offset The offset of the first byte.
+     * @param length The number of bytes.
+     * @throws IOException If the bytes cannot be stored.
+     */
+    protected abstract void putBytes(byte[] src, int offset, int length) throws IOException;
+
+    /**
+     * Stores the remaining bytes of the {@link ByteBuffer} passed in.
+     *
+     * @param src The {@link ByteBuffer} holding the bytes.
+     * @throws IOException If the bytes cannot be stored.
+     */
+    protected abstract void putBytes(ByteBuffer src) throws IOException;
+
+}
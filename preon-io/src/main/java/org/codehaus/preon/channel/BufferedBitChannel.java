@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BitChannel} writing to an {@link OutputStream} in blocks. Bits are collected in a 64-bit register, which is
+ * copied into a byte array once it is full, and the array is written to the {@link OutputStream} once that is full, or
+ * when the channel is {@link #flush() flushed}. Unlike the {@link OutputStreamBitChannel}, which hands every single byte
+ * to the {@link OutputStream}, values are never broken into separate bytes, and byte arrays and {@link ByteBuffer
+ * ByteBuffers} written at a byte boundary are copied as a whole.
+ * <p/>
+ * Nothing is guaranteed to have reached the {@link OutputStream} before {@link #flush()} or {@link #close()} is
+ * called.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+public class BufferedBitChannel extends AbstractBitChannel implements Closeable {
+
+    /** The default size of the buffer: 8 KB. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 13;
+
+    /** The {@link OutputStream} wrapped. */
+    private final OutputStream out;
+
+    /** The bytes not written to the {@link OutputStream} yet. */
+    private final byte[] buffer;
+
+    /** The number of bytes in the {@link #buffer}. */
+    private int position;
+
+    /**
+     * Constructs a new instance, using a buffer of {@link #DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @param out The {@link OutputStream} to write to.
+     */
+    public BufferedBitChannel(@Nonnull OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param out        The {@link OutputStream} to write to.
+     * @param bufferSize The number of bytes collected before writing them to the {@link OutputStream}; at least 8.
+     */
+    public BufferedBitChannel(@Nonnull OutputStream out, int bufferSize) {
+        if (bufferSize < 8) {
+            throw new IllegalArgumentException("Buffer size (" + bufferSize + ") should be at least 8.");
+        }
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Flushes all bits written, and closes the {@link OutputStream}.
+     *
+     * @throws IOException If the {@link OutputStream} fails to accept the data, or cannot be closed.
+     */
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    /**
+     * Writes all bits written so far to the {@link OutputStream}, padding the last byte with zeros, and flushes the
+     * {@link OutputStream}.
+     *
+     * @throws IOException If the {@link OutputStream} fails to accept the data.
+     */
+    @Override
+    public void flush() throws IOException {
+        super.flush();
+        drainBuffer();
+        out.flush();
+    }
+
+    @Override
+    protected void putLong(long value) throws IOException {
+        if (buffer.length - position < 8) {
+            drainBuffer();
+        }
+        byte[] buffer = this.buffer;
+        int position = this.position;
+        buffer[position] = (byte) (value >>> 56);
+        buffer[position + 1] = (byte) (value >>> 48);
+        buffer[position + 2] = (byte) (value >>> 40);
+        buffer[position + 3] = (byte) (value >>> 32);
+        buffer[position + 4] = (byte) (value >>> 24);
+        buffer[position + 5] = (byte) (value >>> 16);
+        buffer[position + 6] = (byte) (value >>> 8);
+        buffer[position + 7] = (byte) value;
+        this.position = position + 8;
+    }
+
+    @Override
+    protected void putByte(byte value) throws IOException {
+        if (position == buffer.length) {
+            drainBuffer();
+        }
+        buffer[position++] = value;
+    }
+
+    @Override
+    protected void putBytes(byte[] src, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == 0 && length >= buffer.length) {
+                out.write(src, offset, length);
+                return;
+            }
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(src, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+            if (position == buffer.length) {
+                drainBuffer();
+            }
+        }
+    }
+
+    @Override
+    protected void putBytes(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            int count = Math.min(src.remaining(), buffer.length - position);
+            src.get(buffer, position, count);
+            position += count;
+            if (position == buffer.length) {
+                drainBuffer();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffer to the {@link OutputStream}.
+     *
+     * @throws IOException If the {@link OutputStream} fails to accept the data.
+     */
+    private void drainBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+}
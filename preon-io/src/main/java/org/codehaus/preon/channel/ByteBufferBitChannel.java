@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * A {@link BitChannel} writing into a {@link ByteBuffer}, which grows as needed. The bytes encoded are exposed as a
+ * read-only {@link ByteBuffer} by {@link #getByteBuffer()}, which can be handed to a {@link
+ * java.nio.channels.WritableByteChannel} without copying them first. The messages encoded by several instances can be
+ * written to a {@link GatheringByteChannel} in one go, using {@link #write(GatheringByteChannel,
+ * ByteBufferBitChannel[])}. Since all bytes written remain in the buffer, bits written before can be {@link
+ * #patch(long, int, long, ByteOrder) patched} at any time.
+ * <p/>
+ * Buffers are allocated in direct memory by default. Instances constructed with a {@link ByteBufferPool} take their
+ * buffers from that pool, and return them to the pool when growing, or when {@link #release() released}. Instances can
+ * be {@link #reset() reset} in order to encode the next message into the same buffer.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+public class ByteBufferBitChannel extends AbstractBitChannel implements SeekableBitChannel {
+
+    /** The default initial capacity: 4 KB. */
+    public static final int DEFAULT_CAPACITY = 1 << 12;
+
+    /** The pool providing buffers, or <code>null</code>. */
+    private final ByteBufferPool pool;
+
+    /** Whether buffers not taken from a pool are allocated in direct memory. */
+    private final boolean direct;
+
+    /** The buffer holding the bytes written, positioned after the last byte; <code>null</code> once released. */
+    private ByteBuffer buffer;
+
+    /** Constructs a new instance, writing into direct memory, with an initial capacity of {@link #DEFAULT_CAPACITY}. */
+    public ByteBufferBitChannel() {
+        this(DEFAULT_CAPACITY, true);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param capacity The initial capacity, in bytes.
+     * @param direct   Whether to write into direct memory, rather than into a byte array.
+     */
+    public ByteBufferBitChannel(int capacity, boolean direct) {
+        this.pool = null;
+        this.direct = direct;
+        this.buffer = allocate(capacity);
+    }
+
+    /**
+     * Constructs a new instance, writing into the buffer passed in, starting at its position. Useful if the number of
+     * bytes to be written is known up front. If the buffer turns out to be too small, the bytes written so far are
+     * copied into a larger buffer, which is then written into instead.
+     *
+     * @param buffer The buffer to write into.
+     */
+    public ByteBufferBitChannel(@Nonnull ByteBuffer buffer) {
+        this.pool = null;
+        this.direct = buffer.isDirect();
+        this.buffer = buffer.slice();
+    }
+
+    /**
+     * Constructs a new instance, taking its buffers from the pool passed in.
+     *
+     * @param pool The pool providing direct buffers.
+     */
+    public ByteBufferBitChannel(@Nonnull ByteBufferPool pool) {
+        this.pool = pool;
+        this.direct = true;
+        this.buffer = allocate(0);
+    }
+
+    /**
+     * Returns the bytes written so far, after {@link #flush() flushing} the bits written, as a read-only view on the
+     * underlying buffer. The view is positioned at the first byte, and limited to the last; it is no longer valid
+     * after writing more data, or after the instance has been {@link #reset() reset} or {@link #release() released}.
+     *
+     * @return A read-only {@link ByteBuffer} holding the bytes written.
+     * @throws IOException Never, in practice.
+     */
+    public ByteBuffer getByteBuffer() throws IOException {
+        flush();
+        ByteBuffer result = getBuffer().asReadOnlyBuffer();
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Returns the number of whole bytes written so far.
+     *
+     * @return The number of bytes written.
+     */
+    public int size() {
+        return getBuffer().position();
+    }
+
+    /** Discards all data written, allowing the buffer to be reused for encoding the next message. */
+    public void reset() {
+        resetBits();
+        getBuffer().clear();
+    }
+
+    /**
+     * Returns the buffer to the pool passed in when this instance was constructed, if any. The instance can no longer
+     * be used afterwards.
+     */
+    public void release() {
+        if (pool != null && buffer != null) {
+            pool.release(buffer);
+        }
+        buffer = null;
+    }
+
+    /**
+     * Flushes all bits written. The buffer is not released; use {@link #release()} for that.
+     *
+     * @throws IOException Never, in practice.
+     */
+    public void close() throws IOException {
+        flush();
+    }
+
+    // JavaDoc inherited
+
+    @Override
+    public long reserve(int nrbits) throws IOException {
+        return super.reserve(nrbits);
+    }
+
+    // JavaDoc inherited
+
+    @Override
+    public void patch(long bitPos, int nrbits, long value, ByteOrder byteOrder) throws IOException {
+        super.patch(bitPos, nrbits, value, byteOrder);
+    }
+
+    /**
+     * Writes the bytes written to the channels passed in to a {@link GatheringByteChannel}, using as few calls as
+     * possible. Since this operation blocks until all data has been written, it is meant for channels in blocking mode.
+     *
+     * @param channel  The {@link GatheringByteChannel} to write to.
+     * @param channels The channels holding the messages to be written, in order.
+     * @return The number of bytes written.
+     * @throws IOException If the {@link GatheringByteChannel} fails to accept the data.
+     */
+    public static long write(GatheringByteChannel channel, ByteBufferBitChannel... channels) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[channels.length];
+        long remaining = 0;
+        for (int i = 0; i < channels.length; i++) {
+            buffers[i] = channels[i].getByteBuffer();
+            remaining += buffers[i].remaining();
+        }
+        long result = remaining;
+        int offset = 0;
+        while (remaining > 0) {
+            remaining -= channel.write(buffers, offset, buffers.length - offset);
+            while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected void putLong(long value) {
+        ensureRemaining(8).putLong(value);
+    }
+
+    @Override
+    protected void putByte(byte value) {
+        ensureRemaining(1).put(value);
+    }
+
+    @Override
+    protected void putBytes(byte[] src, int offset, int length) {
+        ensureRemaining(length).put(src, offset, length);
+    }
+
+    @Override
+    protected void putBytes(ByteBuffer src) {
+        ensureRemaining(src.remaining()).put(src);
+    }
+
+    /**
+     * Returns the buffer, after making sure it has room for the given number of bytes.
+     *
+     * @param length The number of bytes about to be written.
+     * @return The buffer, with at least <code>length</code> bytes remaining.
+     */
+    private ByteBuffer ensureRemaining(int length) {
+        ByteBuffer current = getBuffer();
+        if (current.remaining() < length) {
+            ByteBuffer grown = allocate(Math.max(current.capacity() << 1, current.position() + length));
+            current.flip();
+            grown.put(current);
+            if (pool != null) {
+                pool.release(current);
+            }
+            buffer = grown;
+            return grown;
+        }
+        return current;
+    }
+
+    @Override
+    protected void patchByte(long index, int mask, int bits) {
+        ByteBuffer current = getBuffer();
+        current.put((int) index, (byte) ((current.get((int) index) & ~mask) | bits));
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        if (pool != null) {
+            return pool.acquire(capacity);
+        } else if (direct) {
+            return ByteBuffer.allocateDirect(capacity);
+        } else {
+            return ByteBuffer.allocate(capacity);
+        }
+    }
+
+    private ByteBuffer getBuffer() {
+        if (buffer == null) {
+            throw new IllegalStateException("The channel has been released.");
+        }
+        return buffer;
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * A pool of direct {@link ByteBuffer ByteBuffers}, allowing a stream of messages to be encoded by {@link
+ * ByteBufferBitChannel ByteBufferBitChannels} without allocating direct memory for every single message:
+ * <p/>
+ * <pre>
+ * ByteBufferBitChannel channel = new ByteBufferBitChannel(pool);
+ * try {
+ *     codec.encode(packet, channel, resolver);
+ *     socket.write(channel.getByteBuffer());
+ * } finally {
+ *     channel.release();
+ * }
+ * </pre>
+ * <p/>
+ * The pool is meant to be confined to a single thread; threads encoding in parallel should all have a pool of their
+ * own. Buffers should not be used after having been released.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+public class ByteBufferPool {
+
+    /** The default maximum number of buffers kept in the pool. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /** The default minimal size of a buffer: 4 KB. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 12;
+
+    /** The buffers available for reuse. */
+    private final ByteBuffer[] available;
+
+    /** The number of buffers available for reuse. */
+    private int size;
+
+    /** The minimal size of a buffer allocated. */
+    private final int bufferSize;
+
+    /**
+     * Constructs a new instance, allocating buffers of at least {@link #DEFAULT_BUFFER_SIZE} bytes, and keeping at most
+     * {@link #DEFAULT_CAPACITY} buffers.
+     */
+    public ByteBufferPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param bufferSize The minimal size of a buffer allocated.
+     * @param capacity   The maximum number of released buffers kept in the pool.
+     */
+    public ByteBufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.available = new ByteBuffer[capacity];
+    }
+
+    /**
+     * Returns a cleared direct {@link ByteBuffer} of at least the given capacity, reusing a released buffer if there is
+     * one large enough.
+     *
+     * @param capacity The minimal capacity required.
+     * @return A direct {@link ByteBuffer}, positioned at 0, and limited to its capacity.
+     */
+    public ByteBuffer acquire(int capacity) {
+        for (int i = size - 1; i >= 0; i--) {
+            ByteBuffer result = available[i];
+            if (result.capacity() >= capacity) {
+                available[i] = available[--size];
+                available[size] = null;
+                result.clear();
+                return result;
+            }
+        }
+        return ByteBuffer.allocateDirect(Math.max(capacity, bufferSize));
+    }
+
+    /**
+     * Returns a buffer to the pool, allowing it to be handed out again by {@link #acquire(int)}. If the pool is full,
+     * the buffer is left to the garbage collector.
+     *
+     * @param buffer The {@link ByteBuffer} no longer used.
+     */
+    public void release(ByteBuffer buffer) {
+        if (size < available.length) {
+            available[size++] = buffer;
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BitChannel} discarding everything written to it, only counting the number of bits. Used to determine the
+ * exact size of an encoded value before allocating room for it. Since nothing is kept, {@link #patch(long, int, long,
+ * ByteOrder) patching} bits written before only checks whether they have been written.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+public class CountingBitChannel implements SeekableBitChannel {
+
+    /** The number of bits written so far. */
+    private long bitPos;
+
+    public void write(boolean value) {
+        bitPos += 1;
+    }
+
+    public void write(@Nonnegative int nrbits, byte value) {
+        bitPos += nrbits;
+    }
+
+    public void write(@Nonnegative int nrbits, int value, ByteOrder byteOrder) {
+        bitPos += nrbits;
+    }
+
+    public void write(@Nonnegative int nrbits, long value, ByteOrder byteOrder) {
+        bitPos += nrbits;
+    }
+
+    public void write(@Nonnegative int nrbits, short value, ByteOrder byteOrder) {
+        bitPos += nrbits;
+    }
+
+    public void write(@Nonnull byte[] src, int offset, int length) {
+        bitPos += ((long) length) << 3;
+    }
+
+    public long write(@Nonnull ByteBuffer buffer) {
+        long result = ((long) buffer.remaining()) << 3;
+        buffer.position(buffer.limit());
+        bitPos += result;
+        return result;
+    }
+
+    public int getRelativeBitPos() {
+        return (int) (bitPos & 7);
+    }
+
+    // JavaDoc inherited
+
+    public long getBitPos() {
+        return bitPos;
+    }
+
+    // JavaDoc inherited
+
+    public long reserve(int nrbits) {
+        long result = bitPos;
+        bitPos += nrbits;
+        return result;
+    }
+
+    // JavaDoc inherited
+
+    public void patch(long bitPos, int nrbits, long value, ByteOrder byteOrder) {
+        if (bitPos < 0 || nrbits < 0 || nrbits > 64 || bitPos + nrbits > this.bitPos) {
+            throw new BitChannelException("Unable to patch " + nrbits + " bits at position " + bitPos
+                    + ": only " + this.bitPos + " bits have been written.");
+        }
+    }
+
+    /** Does nothing; in particular, the last byte is not padded, leaving {@link #getBitPos()} unaffected. */
+    public void flush() {
+    }
+
+    /** Does nothing. */
+    public void close() {
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link BitChannel} writing to a {@link FileChannel}, starting at the position of the {@link FileChannel} at the
+ * time of construction. Bytes are collected in a buffer, and written to the file once the buffer is full, or when the
+ * channel is {@link #flush() flushed}. Bits written before can be {@link #patch(long, int, long, ByteOrder) patched}
+ * at any time: in the buffer if they are still in there, and in the file otherwise. Patching whole bytes in the file
+ * only writes to it; patching part of a byte in the file reads that byte back first, which requires a {@link
+ * FileChannel} that is readable as well, such as the one of a {@link java.io.RandomAccessFile} opened in "rw" mode,
+ * rather than the one of a {@link java.io.FileOutputStream}.
+ *
+ * @author Wilfred Springer
+ */
+@NotThreadSafe
+public class FileChannelBitChannel extends AbstractBitChannel implements SeekableBitChannel, Closeable {
+
+    /** The default size of the buffer: 64 KB. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** The file written to. */
+    private final FileChannel channel;
+
+    /** The position in the file of the first byte written. */
+    private final long start;
+
+    /** The bytes not written to the file yet. */
+    private final ByteBuffer buffer;
+
+    /** The number of bytes written to the file. */
+    private long written;
+
+    /**
+     * Constructs a new instance, using a buffer of {@link #DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @param channel The {@link FileChannel} to write to.
+     * @throws IOException If the position of the {@link FileChannel} cannot be determined.
+     */
+    public FileChannelBitChannel(@Nonnull FileChannel channel) throws IOException {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param channel    The {@link FileChannel} to write to.
+     * @param bufferSize The number of bytes collected before writing them to the file; at least 8.
+     * @throws IOException If the position of the {@link FileChannel} cannot be determined.
+     */
+    public FileChannelBitChannel(@Nonnull FileChannel channel, int bufferSize) throws IOException {
+        if (bufferSize < 8) {
+            throw new IllegalArgumentException("Buffer size (" + bufferSize + ") should be at least 8.");
+        }
+        this.channel = channel;
+        this.start = channel.position();
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    // JavaDoc inherited
+
+    @Override
+    public long reserve(int nrbits) throws IOException {
+        return super.reserve(nrbits);
+    }
+
+    // JavaDoc inherited
+
+    @Override
+    public void patch(long bitPos, int nrbits, long value, ByteOrder byteOrder) throws IOException {
+        super.patch(bitPos, nrbits, value, byteOrder);
+    }
+
+    /**
+     * Writes all bits written so far to the file, padding the last byte with zeros, and moves the position of the
+     * {@link FileChannel} beyond the last byte written.
+     *
+     * @throws IOException If writing to the file fails.
+     */
+    @Override
+    public void flush() throws IOException {
+        super.flush();
+        drainBuffer();
+        channel.position(start + written);
+    }
+
+    /**
+     * Flushes all bits written, and closes the {@link FileChannel}.
+     *
+     * @throws IOException If writing to the file fails, or it cannot be closed.
+     */
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    @Override
+    protected void putLong(long value) throws IOException {
+        if (buffer.remaining() < 8) {
+            drainBuffer();
+        }
+        buffer.putLong(value);
+    }
+
+    @Override
+    protected void putByte(byte value) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drainBuffer();
+        }
+        buffer.put(value);
+    }
+
+    @Override
+    protected void putBytes(byte[] src, int offset, int length) throws IOException {
+        putBytes(ByteBuffer.wrap(src, offset, length));
+    }
+
+    @Override
+    protected void putBytes(ByteBuffer src) throws IOException {
+        if (src.remaining() >= buffer.capacity()) {
+            drainBuffer();
+            while (src.hasRemaining()) {
+                written += channel.write(src, start + written);
+            }
+        } else {
+            while (src.hasRemaining()) {
+                if (!buffer.hasRemaining()) {
+                    drainBuffer();
+                }
+                int limit = src.limit();
+                src.limit(src.position() + Math.min(src.remaining(), buffer.remaining()));
+                buffer.put(src);
+                src.limit(limit);
+            }
+        }
+    }
+
+    @Override
+    protected void patchByte(long index, int mask, int bits) throws IOException {
+        if (index >= written) {
+            int offset = (int) (index - written);
+            buffer.put(offset, (byte) ((buffer.get(offset) & ~mask) | bits));
+        } else if (mask == 0xFF) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            value.put(0, (byte) bits);
+            while (value.hasRemaining()) {
+                channel.write(value, start + index);
+            }
+        } else {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            while (value.hasRemaining()) {
+                if (channel.read(value, start + index) < 0) {
+                    throw new IOException("Unable to read byte " + index + " back from the file.");
+                }
+            }
+            value.put(0, (byte) ((value.get(0) & ~mask) | bits));
+            value.flip();
+            while (value.hasRemaining()) {
+                channel.write(value, start + index);
+            }
+        }
+    }
+
+    /**
+     * Writes the buffer to the file.
+     *
+     * @throws IOException If writing to the file fails.
+     */
+    private void drainBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, start + written);
+        }
+        buffer.clear();
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+
+import java.io.IOException;
+
+/**
+ * A {@link BitChannel} allowing bits written before to be overwritten. Used to encode values preceded by a field that
+ * depends on the encoded value itself, like its length, in a single pass: {@link #reserve(int) reserve} the bits of the
+ * field, write the value, and {@link #patch(long, int, long, ByteOrder) patch} the field afterwards.
+ */
+public interface SeekableBitChannel extends BitChannel {
+
+    /** Returns the number of bits written so far. */
+    long getBitPos();
+
+    /**
+     * Writes <code>nrbits</code> zeros, to be patched later on, and returns the position of the first bit. At most 64
+     * bits can be reserved at once.
+     */
+    long reserve(int nrbits) throws IOException;
+
+    /**
+     * Overwrites <code>nrbits</code> bits starting at position <code>bitPos</code> with the bits that would have been
+     * written by {@link #write(int, long, ByteOrder)}. At most 64 bits can be patched at once, and all of them must
+     * have been written before.
+     */
+    void patch(long bitPos, int nrbits, long value, ByteOrder byteOrder) throws IOException;
+
+}
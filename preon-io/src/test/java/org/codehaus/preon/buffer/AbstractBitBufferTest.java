@@ -0,0 +1,306 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests every {@link BitBuffer} implementation is expected to pass. Expected values are calculated independently, by
+ * treating the entire buffer as one (big) number.
+ */
+public abstract class AbstractBitBufferTest extends TestCase {
+
+    private byte[] data;
+
+    private BitBuffer buffer;
+
+    /**
+     * Creates the {@link BitBuffer} under test, holding the given data.
+     *
+     * @param data The data.
+     * @return A {@link BitBuffer} holding the data.
+     */
+    protected abstract BitBuffer createBitBuffer(byte[] data);
+
+    @Override
+    protected void setUp() throws Exception {
+        data = new byte[24];
+        new Random(13).nextBytes(data);
+        buffer = createBitBuffer(data);
+    }
+
+    public void testSize() {
+        assertEquals(data.length * 8, buffer.getBitBufBitSize());
+        assertEquals(0, buffer.getBitPos());
+    }
+
+    public void testBigEndianReads() {
+        BigInteger value = new BigInteger(1, data);
+        for (int nrBits = 1; nrBits <= 64; nrBits++) {
+            for (int bitPos = 0; bitPos + nrBits <= data.length * 8; bitPos++) {
+                long expected = value.shiftRight(data.length * 8 - bitPos - nrBits).longValue() & mask(nrBits);
+                assertReads(expected, bitPos, nrBits, ByteOrder.BigEndian);
+            }
+        }
+    }
+
+    public void testLittleEndianReads() {
+        byte[] reversed = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            reversed[i] = data[data.length - 1 - i];
+        }
+        BigInteger value = new BigInteger(1, reversed);
+        for (int nrBits = 1; nrBits <= 64; nrBits++) {
+            for (int bitPos = 0; bitPos + nrBits <= data.length * 8; bitPos++) {
+                long expected = value.shiftRight(bitPos).longValue() & mask(nrBits);
+                assertReads(expected, bitPos, nrBits, ByteOrder.LittleEndian);
+            }
+        }
+    }
+
+    public void testSequentialReads() {
+        assertEquals(data[0], buffer.readAsByte(8));
+        assertEquals(8, buffer.getBitPos());
+        assertEquals(ByteBuffer.wrap(data).getShort(1), buffer.readAsShort(16));
+        assertEquals(ByteBuffer.wrap(data).getInt(3), buffer.readAsInt(32));
+        assertEquals(ByteBuffer.wrap(data).getLong(7), buffer.readAsLong(64));
+        assertEquals(120, buffer.getBitPos());
+        buffer.setBitPos(4);
+        assertEquals((data[0] >> 3) & 1, buffer.readAsBoolean() ? 1 : 0);
+        assertEquals(5, buffer.getBitPos());
+    }
+
+    public void testSlice() {
+        buffer.setBitPos(12);
+        BitBuffer slice = buffer.slice(40);
+        assertEquals(52, buffer.getBitPos());
+        assertEquals(40, slice.getBitBufBitSize());
+        assertEquals(0, slice.getBitPos());
+        assertEquals(buffer.readAsLong(12, 40), slice.readAsLong(40));
+        assertEquals(buffer.readAsInt(20, 9), slice.readAsInt(8, 9));
+        assertEquals(17, slice.getBitPos());
+    }
+
+    public void testReadAsByteBufferOfSlice() {
+        buffer.setBitPos(16);
+        BitBuffer slice = buffer.slice(24);
+        ByteBuffer contents = slice.readAsByteBuffer();
+        assertEquals(3, contents.remaining());
+        assertEquals(data[2], contents.get());
+        assertEquals(data[3], contents.get());
+        assertEquals(data[4], contents.get());
+    }
+
+    public void testNestedSlices() {
+        buffer.setBitPos(3);
+        BitBuffer outer = buffer.slice(150);
+        outer.setBitPos(5);
+        BitBuffer inner = outer.slice(100);
+        assertEquals(105, outer.getBitPos());
+        assertEquals(100, inner.getBitBufBitSize());
+        inner.setBitPos(7);
+        BitBuffer innermost = inner.slice(80);
+        assertEquals(87, inner.getBitPos());
+        assertEquals(buffer.readAsLong(15, 64), innermost.readAsLong(64));
+        assertEquals(buffer.readAsInt(31, 17, ByteOrder.LittleEndian),
+                innermost.readAsInt(16, 17, ByteOrder.LittleEndian));
+        assertEquals(buffer.readAsByte(8, 40L), outer.readAsByte(8, 37L));
+    }
+
+    public void testSliceBeyondEnd() {
+        buffer.setBitPos(8);
+        BitBuffer slice = buffer.slice(64);
+        try {
+            slice.slice(65);
+            fail("Expected BitBufferUnderflowException");
+        } catch (BitBufferUnderflowException bbue) {
+            // Ok
+        }
+        try {
+            buffer.slice(data.length * 8);
+            fail("Expected BitBufferUnderflowException");
+        } catch (BitBufferUnderflowException bbue) {
+            // Ok
+        }
+    }
+
+    public void testIndexOf() {
+        Random random = new Random(7);
+        buffer.setBitPos(5);
+        for (int nrBits = 1; nrBits <= 64; nrBits++) {
+            for (int attempt = 0; attempt < 8; attempt++) {
+                long pattern;
+                if (attempt < 6) {
+                    // a pattern that occurs at least once
+                    pattern = buffer.readBits(random.nextInt(data.length * 8 - nrBits + 1), nrBits);
+                } else {
+                    pattern = random.nextLong() & mask(nrBits);
+                }
+                long fromBitPos = random.nextInt(data.length * 8) - 4;
+                assertEquals(naiveIndexOf(pattern, nrBits, fromBitPos, false),
+                        buffer.indexOf(pattern, nrBits, fromBitPos));
+                assertEquals(naiveIndexOf(pattern, nrBits, fromBitPos, true),
+                        buffer.indexOfAligned(pattern, nrBits, fromBitPos));
+            }
+        }
+        buffer.setBitPos(5);
+        buffer.indexOf(0, 3, 0);
+        assertEquals(5, buffer.getBitPos());
+    }
+
+    public void testIndexOfInSlice() {
+        buffer.setBitPos(3);
+        BitBuffer slice = buffer.slice(100);
+        long pattern = buffer.readBits(90, 13);
+        assertEquals(naiveIndexOf(pattern, 13, 4, false) - 3, slice.indexOf(pattern, 13, 1));
+        assertEquals(-1, slice.indexOf(buffer.readBits(95, 13), 13, 89));
+    }
+
+    /**
+     * Searches for a pattern the slow way, reading the bits at every position.
+     */
+    private long naiveIndexOf(long pattern, int nrBits, long fromBitPos, boolean aligned) {
+        for (long bitPos = Math.max(fromBitPos, 0); bitPos + nrBits <= data.length * 8; bitPos++) {
+            if ((!aligned || bitPos % 8 == 0) && buffer.duplicate().readBits(bitPos, nrBits) == pattern) {
+                return bitPos;
+            }
+        }
+        return -1;
+    }
+
+    public void testDuplicate() {
+        buffer.setBitPos(16);
+        BitBuffer duplicate = buffer.duplicate();
+        assertEquals(16, duplicate.getBitPos());
+        assertEquals(data[2], duplicate.readAsByte(8));
+        assertEquals(16, buffer.getBitPos());
+        assertEquals(data[2], buffer.readAsByte(8));
+    }
+
+    public void testReadAsByteBuffer() {
+        buffer.setBitPos(16);
+        ByteBuffer bytes = buffer.readAsByteBuffer(4);
+        assertEquals(48, buffer.getBitPos());
+        assertEquals(4, bytes.remaining());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(data[2 + i], bytes.get());
+        }
+    }
+
+    public void testReadBeyondEnd() {
+        buffer.setBitPos(data.length * 8 - 7);
+        try {
+            buffer.readAsByte(8);
+            fail("Expecting exception while reading beyond end of buffer.");
+        } catch (BitBufferUnderflowException bbue) {
+            // Expected
+        }
+    }
+
+    public void testBulkReads() {
+        for (int bitPos : new int[]{0, 3, 8}) {
+            for (ByteOrder byteOrder : ByteOrder.values()) {
+                for (int nrBits : new int[]{5, 8, 16, 32, 64}) {
+                    int count = (data.length * 8 - bitPos) / nrBits - 1;
+                    BitBuffer reference = buffer.duplicate();
+                    reference.setBitPos(bitPos);
+                    buffer.setBitPos(bitPos);
+                    long[] longs = new long[count + 1];
+                    buffer.readLongs(longs, 1, count, nrBits, byteOrder);
+                    assertEquals(reference.getBitPos() + count * nrBits, buffer.getBitPos());
+                    for (int i = 0; i < count; i++) {
+                        assertEquals(reference.readAsLong(nrBits, byteOrder), longs[i + 1]);
+                    }
+                    if (nrBits <= 32) {
+                        int[] ints = new int[count];
+                        buffer.setBitPos(bitPos);
+                        buffer.readInts(ints, 0, count, nrBits, byteOrder);
+                        for (int i = 0; i < count; i++) {
+                            assertEquals((int) longs[i + 1], ints[i]);
+                        }
+                    }
+                    if (nrBits <= 16) {
+                        short[] shorts = new short[count];
+                        buffer.setBitPos(bitPos);
+                        buffer.readShorts(shorts, 0, count, nrBits, byteOrder);
+                        for (int i = 0; i < count; i++) {
+                            assertEquals((short) longs[i + 1], shorts[i]);
+                        }
+                    }
+                    if (nrBits <= 8) {
+                        byte[] bytes = new byte[count];
+                        buffer.setBitPos(bitPos);
+                        buffer.readBytes(bytes, 0, count, nrBits, byteOrder);
+                        for (int i = 0; i < count; i++) {
+                            assertEquals((byte) longs[i + 1], bytes[i]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testBulkReadBeyondEnd() {
+        buffer.setBitPos(8);
+        try {
+            buffer.readInts(new int[data.length], 0, data.length, 8, ByteOrder.BigEndian);
+            fail("Expecting exception while reading beyond end of buffer.");
+        } catch (BitBufferUnderflowException bbue) {
+            // Expected
+        }
+    }
+
+    private void assertReads(long expected, int bitPos, int nrBits, ByteOrder byteOrder) {
+        String message = byteOrder + " read of " + nrBits + " bits at " + bitPos;
+        assertEquals(message, expected, buffer.readAsLong(bitPos, nrBits, byteOrder));
+        assertEquals(message, bitPos + nrBits, buffer.getBitPos());
+        if (nrBits <= 32) {
+            assertEquals(message, (int) expected, buffer.readAsInt(bitPos, nrBits, byteOrder));
+        }
+        if (nrBits <= 16) {
+            assertEquals(message, (short) expected, buffer.readAsShort(bitPos, nrBits, byteOrder));
+        }
+        if (nrBits <= 8) {
+            assertEquals(message, (byte) expected, buffer.readAsByte(bitPos, nrBits, byteOrder));
+        }
+    }
+
+    private static long mask(int nrBits) {
+        return 0xFFFFFFFFFFFFFFFFL >>> (64 - nrBits);
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * A simple benchmark, reading aligned and unaligned fields of various sizes from a {@link DefaultBitBuffer}, and
+ * reading from slices nested ten levels deep, both as slices of the {@link DefaultBitBuffer} and as a chain of {@link
+ * SlicedBitBuffer SlicedBitBuffers}. Also compares scanning for an 11-bit sync word using {@link
+ * BitBuffer#indexOf(long, int, long)} against reading the bits at every single position. Not a test case; run it using
+ * its {@link #main(String[])} method.
+ *
+ * @author Wilfred Springer
+ */
+public class BitBufferBenchmark {
+
+    private static final int SIZE = 1 << 20;
+
+    private static final int ROUNDS = 20;
+
+    private static final int NESTING = 10;
+
+    public static void main(String[] args) {
+        byte[] data = new byte[SIZE];
+        new Random(0).nextBytes(data);
+        BitBuffer buffer = new DefaultBitBuffer(ByteBuffer.wrap(data));
+        for (int warmup = 0; warmup < 2; warmup++) {
+            for (ByteOrder endian : ByteOrder.values()) {
+                for (int nrBits : new int[]{8, 16, 32, 64, 13}) {
+                    run(buffer, nrBits, endian, warmup == 1);
+                }
+            }
+            BitBuffer slice = buffer.duplicate();
+            BitBuffer chain = buffer.duplicate();
+            for (int depth = 0; depth < NESTING; depth++) {
+                slice.setBitPos(8);
+                slice = slice.slice(slice.getBitBufBitSize() - 16);
+                chain.setBitPos(8);
+                chain = new SlicedBitBuffer(chain, chain.getBitBufBitSize() - 16);
+            }
+            if (warmup == 1) {
+                System.out.println("Slices nested " + NESTING + " levels deep:");
+            }
+            run(slice, 32, ByteOrder.BigEndian, warmup == 1);
+            if (warmup == 1) {
+                System.out.println("Chain of " + NESTING + " SlicedBitBuffers:");
+            }
+            run(chain, 32, ByteOrder.BigEndian, warmup == 1);
+            scan(data, warmup == 1);
+        }
+    }
+
+    private static void scan(byte[] data, boolean report) {
+        // no runs of more than three bits set, except for the sync word at the very end
+        byte[] stream = new byte[data.length];
+        for (int i = 0; i < stream.length; i++) {
+            stream[i] = (byte) (data[i] & 0x77);
+        }
+        stream[stream.length - 2] = (byte) 0xFF;
+        stream[stream.length - 1] = (byte) 0xE0;
+        BitBuffer buffer = new DefaultBitBuffer(ByteBuffer.wrap(stream));
+        long start = System.nanoTime();
+        long found = buffer.indexOf(0x7FF, 11, 0);
+        long scanning = System.nanoTime() - start;
+        start = System.nanoTime();
+        long naive = 0;
+        while (buffer.readAsInt(naive, 11) != 0x7FF) {
+            naive++;
+        }
+        long reading = System.nanoTime() - start;
+        if (report) {
+            System.out.println("Sync word at " + found + " (" + naive + "): indexOf " + (scanning / 1000)
+                    + " us, reading every position " + (reading / 1000) + " us");
+        }
+    }
+
+    private static void run(BitBuffer buffer, int nrBits, ByteOrder endian, boolean report) {
+        long checksum = 0;
+        long reads = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            buffer.setBitPos(0);
+            long remaining = buffer.getBitBufBitSize() / nrBits;
+            for (long i = 0; i < remaining; i++) {
+                checksum += buffer.readAsLong(nrBits, endian);
+            }
+            reads += remaining;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.println(endian + ", " + nrBits + " bits: "
+                    + (elapsed / reads) + "." + ((elapsed * 10 / reads) % 10) + " ns/read (checksum "
+                    + checksum + ")");
+        }
+    }
+
+}
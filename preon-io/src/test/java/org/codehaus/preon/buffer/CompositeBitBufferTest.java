@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class CompositeBitBufferTest extends TestCase {
+
+    private byte[] first = new byte[]{0x01, 0x02, 0x03, 0x04};
+
+    private byte[] second = new byte[]{0x05, 0x06, 0x07, 0x08, 0x09, 0x0A, 0x0B, 0x0C, 0x0D, 0x0E};
+
+    private CompositeBitBuffer buffer;
+
+    @Override
+    protected void setUp() throws Exception {
+        ByteBuffer padded = ByteBuffer.wrap(new byte[]{(byte) 0xFF, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0A,
+                0x0B, 0x0C, 0x0D, 0x0E, (byte) 0xFF});
+        padded.position(1).limit(11);
+        buffer = new CompositeBitBuffer(ByteBuffer.wrap(first), ByteBuffer.allocate(0), padded);
+    }
+
+    public void testSize() {
+        assertEquals(112, buffer.getBitBufBitSize());
+    }
+
+    public void testReadsCrossingFragments() {
+        assertEquals(0x0304050607L, buffer.readAsLong(16, 40));
+        assertEquals(0x0706050403L, buffer.readAsLong(16, 40, ByteOrder.LittleEndian));
+        assertEquals(0x0405, buffer.readAsShort(24, 16));
+        assertEquals(0x4050, buffer.readAsShort(28, 16));
+        assertEquals(0x0E, buffer.readAsByte(8, 104L));
+    }
+
+    public void testReadsJumpingBetweenFragments() {
+        assertEquals(0x0D, buffer.readAsByte(8, 96L));
+        assertEquals(0x01, buffer.readAsByte(8, 0L));
+        assertEquals(0x08, buffer.readAsByte(8, 56L));
+        assertEquals(0x04, buffer.readAsByte(8, 24L));
+    }
+
+    public void testSliceWithinFragmentIsView() {
+        buffer.setBitPos(44);
+        BitBuffer slice = buffer.slice(12);
+        assertEquals(56, buffer.getBitPos());
+        assertEquals(12, slice.getBitBufBitSize());
+        assertEquals(0x607, slice.readAsShort(12));
+        buffer.setBitPos(32);
+        slice = buffer.slice(32);
+        assertTrue(slice instanceof DefaultBitBuffer);
+        assertEquals(0x05060708, slice.readAsInt(32));
+    }
+
+    public void testSliceCrossingFragments() {
+        buffer.setBitPos(16);
+        BitBuffer slice = buffer.slice(32);
+        assertEquals(0x03040506, slice.readAsInt(32));
+    }
+
+    public void testReadAsByteBuffer() {
+        buffer.setBitPos(40);
+        ByteBuffer view = buffer.readAsByteBuffer(3);
+        assertEquals(3, view.remaining());
+        assertEquals(0x06, view.get(0));
+        buffer.setBitPos(16);
+        ByteBuffer copy = buffer.readAsByteBuffer(4);
+        assertEquals(4, copy.remaining());
+        assertEquals(0x03040506, copy.getInt(0));
+        ByteBuffer all = buffer.readAsByteBuffer();
+        assertEquals(14, all.remaining());
+        assertEquals(0x0E, all.get(13));
+    }
+
+}
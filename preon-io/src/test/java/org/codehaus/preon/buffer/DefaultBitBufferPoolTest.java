@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class DefaultBitBufferPoolTest extends TestCase {
+
+    public void testReusesReleasedInstances() {
+        DefaultBitBufferPool pool = new DefaultBitBufferPool(1);
+        DefaultBitBuffer first = pool.acquire(ByteBuffer.wrap(new byte[]{0x01}));
+        assertEquals(0x01, first.readAsByte(8));
+        pool.release(first);
+        DefaultBitBuffer second = pool.acquire(ByteBuffer.wrap(new byte[]{0x02, 0x03}));
+        assertSame(first, second);
+        assertEquals(0, second.getBitPos());
+        assertEquals(16, second.getBitBufBitSize());
+        assertEquals(0x0203, second.readAsShort(16));
+    }
+
+    public void testCapacity() {
+        DefaultBitBufferPool pool = new DefaultBitBufferPool(1);
+        DefaultBitBuffer first = pool.acquire(ByteBuffer.wrap(new byte[]{0x01}));
+        DefaultBitBuffer second = pool.acquire(ByteBuffer.wrap(new byte[]{0x02}));
+        assertNotSame(first, second);
+        pool.release(first);
+        pool.release(second);
+        assertSame(first, pool.acquire(ByteBuffer.wrap(new byte[]{0x03})));
+        DefaultBitBuffer third = pool.acquire(ByteBuffer.wrap(new byte[]{0x04}));
+        assertNotSame(first, third);
+        assertNotSame(second, third);
+    }
+
+}
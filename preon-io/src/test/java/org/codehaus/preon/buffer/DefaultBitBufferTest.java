@@ -259,4 +259,87 @@ public class DefaultBitBufferTest extends TestCase {
         BitBuffer bitBuffer = new DefaultBitBuffer(buffer);
         assertEquals(1, bitBuffer.readAsInt(32));
     }
+
+    public void testWordReadsMatchTailReads() {
+        byte[] data = new byte[]{0x01, 0x23, 0x45, 0x67, (byte) 0x89,
+                (byte) 0xAB, (byte) 0xCD, (byte) 0xEF, 0x01, 0x23, 0x45, 0x67};
+        // Reads from the first bytes take the word path, reads from the last bytes the tail path
+        BitBuffer bitBuffer = new DefaultBitBuffer(ByteBuffer.wrap(data));
+        assertEquals(0x23456, bitBuffer.readAsInt(8, 20));
+        assertEquals(0x23456, bitBuffer.readAsInt(72, 20));
+        assertEquals(0x6745, bitBuffer.readAsInt(16, 16, ByteOrder.LittleEndian));
+        assertEquals(0x6745, bitBuffer.readAsInt(80, 16, ByteOrder.LittleEndian));
+    }
+
+    public void testUnalignedLong() {
+        BitBuffer bitBuffer = new DefaultBitBuffer(ByteBuffer.wrap(new byte[]{
+                0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xAB, (byte) 0xCD,
+                (byte) 0xEF, (byte) 0xF0}));
+        assertEquals(0x123456789ABCDEFFL, bitBuffer.readAsLong(4, 64));
+        assertEquals(68, bitBuffer.getBitPos());
+    }
+
+    public void testLittleEndianByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{0x01, 0x02, 0x03, 0x04,
+                0x05, 0x06, 0x07, 0x08}).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        BitBuffer bitBuffer = new DefaultBitBuffer(buffer);
+        assertEquals(0x0102, bitBuffer.readAsInt(0, 16));
+        assertEquals(0x0201, bitBuffer.readAsInt(0, 16, ByteOrder.LittleEndian));
+    }
+
+    public void testHonoursPositionAndLimit() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0xFF, 0x01, 0x02,
+                0x03, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+        buffer.position(1).limit(4);
+        BitBuffer bitBuffer = new DefaultBitBuffer(ByteBuffer.allocate(0)).reset(buffer);
+        buffer.position(0);
+        assertEquals(24, bitBuffer.getBitBufBitSize());
+        assertEquals(0x010203, bitBuffer.readAsInt(24));
+        try {
+            bitBuffer.readAsInt(0, 32);
+            fail("Expected BitBufferUnderflowException");
+        } catch (BitBufferUnderflowException bbue) {
+            // Ok
+        }
+        ByteBuffer contents = bitBuffer.readAsByteBuffer();
+        assertEquals(3, contents.remaining());
+        assertEquals(0x01, contents.get(0));
+    }
+
+    public void testIgnoresPosition() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putShort((short) 0x0102);
+        BitBuffer bitBuffer = new DefaultBitBuffer(buffer);
+        assertEquals(32, bitBuffer.getBitBufBitSize());
+        assertEquals(0x0102, bitBuffer.readAsInt(16));
+    }
+
+    public void testReset() {
+        DefaultBitBuffer bitBuffer = new DefaultBitBuffer(ByteBuffer.wrap(new byte[]{0x01, 0x02}));
+        bitBuffer.readAsInt(16);
+        BitBuffer duplicate = bitBuffer.duplicate();
+        ByteBuffer next = ByteBuffer.wrap(new byte[]{0x00, 0x03, 0x04, 0x05});
+        next.position(1);
+        assertSame(bitBuffer, bitBuffer.reset(next));
+        assertEquals(0, bitBuffer.getBitPos());
+        assertEquals(24, bitBuffer.getBitBufBitSize());
+        assertEquals(0x030405, bitBuffer.readAsInt(24));
+        assertEquals(0x0102, duplicate.readAsInt(0, 16));
+    }
+
+    public void testSlicesDoNotNest() {
+        BitBuffer bitBuffer = new DefaultBitBuffer(ByteBuffer.wrap(new byte[]{0x01, 0x02, 0x03, 0x04}));
+        bitBuffer.setBitPos(4);
+        BitBuffer slice = bitBuffer.slice(24).slice(16);
+        assertTrue(slice instanceof DefaultBitBuffer);
+        assertEquals(0x1020, slice.readAsShort(16));
+        try {
+            slice.readAsByte(1);
+            fail("Expected BitBufferUnderflowException");
+        } catch (BitBufferUnderflowException bbue) {
+            // Ok
+        }
+    }
+
 }
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import edu.umd.cs.mtc.MultithreadedTest;
+import edu.umd.cs.mtc.TestFramework;
+import junit.framework.TestCase;
+
+/**
+ * A test suite for the {@link DefaultBitSource}.
+ *
+ * @author Wilfred Springer
+ */
+public class DefaultBitSourceTest extends TestCase {
+
+    /** The number of 32-bit values in the file decoded concurrently. */
+    private static final int NR_VALUES = 1 << 16;
+
+    public void testCursorsAreIndependent() {
+        BitSource source = new DefaultBitSource(ByteBuffer.wrap(new byte[]{0x01, 0x02, 0x03, 0x04}));
+        BitBuffer first = source.cursor();
+        BitBuffer second = source.cursor();
+        assertEquals(32, source.getBitSize());
+        assertEquals(0x0102, first.readAsShort(16));
+        assertEquals(0x01, second.readAsByte(8));
+        assertEquals(0x03, first.readAsByte(8));
+        assertEquals(8, second.getBitPos());
+    }
+
+    public void testRegionCursor() {
+        BitSource source = new DefaultBitSource(ByteBuffer.wrap(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05}));
+        BitBuffer cursor = source.cursor(8, 24);
+        assertEquals(24, cursor.getBitBufBitSize());
+        assertEquals(0, cursor.getBitPos());
+        assertEquals(0x0203, cursor.readAsShort(16));
+        assertEquals(0x0302, cursor.readAsLong(0, 16, ByteOrder.LittleEndian));
+        assertEquals(0x0403, cursor.readBits(8, 16, ByteOrder.LittleEndian));
+        try {
+            cursor.readAsShort(16);
+            fail("Expected BitBufferUnderflowException");
+        } catch (BitBufferUnderflowException bbue) {
+            // Ok
+        }
+    }
+
+    public void testRegionBeyondEnd() {
+        BitSource source = new DefaultBitSource(ByteBuffer.wrap(new byte[]{0x01, 0x02}));
+        try {
+            source.cursor(8, 16);
+            fail("Expected BitBufferUnderflowException");
+        } catch (BitBufferUnderflowException bbue) {
+            // Ok
+        }
+    }
+
+    /**
+     * Tests that many threads can decode different regions of the same mapped file, each using a cursor of its own.
+     *
+     * @throws Throwable If the {@link MultithreadedTest} is throwing exceptions.
+     */
+    public void testConcurrentDecoding() throws Throwable {
+        TestFramework.runManyTimes(new Test(), 5);
+    }
+
+    /** Tests concurrent decoding of a {@link DefaultBitSource} using four threads. */
+    private static class Test extends MultithreadedTest {
+
+        /** The file holding the data. */
+        private File file;
+
+        /** The {@link BitSource} shared by all threads. */
+        private BitSource source;
+
+        public void initialize() {
+            try {
+                file = File.createTempFile("preon", ".bin");
+                file.deleteOnExit();
+                ByteBuffer buffer = ByteBuffer.allocate(NR_VALUES * 4);
+                for (int i = 0; i < NR_VALUES; i++) {
+                    buffer.putInt(i);
+                }
+                FileOutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(buffer.array());
+                } finally {
+                    out.close();
+                }
+                source = new DefaultBitSource(file);
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        }
+
+        public void thread1() {
+            decode(0);
+        }
+
+        public void thread2() {
+            decode(1);
+        }
+
+        public void thread3() {
+            decode(2);
+        }
+
+        public void thread4() {
+            decode(3);
+        }
+
+        /**
+         * Decodes one quarter of the file, using absolute reads first and sequential reads next.
+         *
+         * @param region The index of the quarter to decode.
+         */
+        private void decode(int region) {
+            int nrValues = NR_VALUES / 4;
+            int first = region * nrValues;
+            for (int round = 0; round < 4; round++) {
+                BitBuffer cursor = source.cursor(((long) first) * 32, ((long) nrValues) * 32);
+                for (int i = nrValues - 1; i >= 0; i--) {
+                    assertEquals(first + i, cursor.readAsInt(((long) i) * 32, 32));
+                }
+                cursor.setBitPos(0);
+                for (int i = 0; i < nrValues; i++) {
+                    assertEquals(first + i, cursor.readAsInt(32));
+                }
+                assertEquals(((long) nrValues) * 32, cursor.getBitPos());
+            }
+        }
+
+    }
+
+}
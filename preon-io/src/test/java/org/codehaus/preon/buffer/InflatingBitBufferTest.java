@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class InflatingBitBufferTest extends TestCase {
+
+    private byte[] data;
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        // Compressible, but not too compressible, to get plenty of blocks
+        data = new byte[3000000];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 1000 < 200 ? random.nextInt() : random.nextInt(16));
+        }
+        file = File.createTempFile("preon", ".gz");
+        write(new GZIPOutputStream(new FileOutputStream(file)), data, 0, data.length);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testSequentialReads() throws IOException {
+        InflatingBitBuffer buffer = new InflatingBitBuffer(file);
+        try {
+            assertEquals(data.length * 8L, buffer.getBitBufBitSize());
+            ByteBuffer reference = ByteBuffer.wrap(data);
+            for (int i = 0; i < data.length / 8; i++) {
+                assertEquals(reference.getLong(), buffer.readAsLong(64));
+            }
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testRandomAccess() throws IOException {
+        DeflateIndex index = DeflateIndex.build(file, 100000);
+        assertEquals(data.length, index.getSize());
+        assertTrue(index.getNrCheckpoints() > 10);
+        InflatingBitBuffer buffer = new InflatingBitBuffer(file, index);
+        try {
+            Random random = new Random(7);
+            for (int i = 0; i < 1000; i++) {
+                int position = random.nextInt(data.length - 4);
+                buffer.setBitPos(position * 8L);
+                assertEquals(ByteBuffer.wrap(data).getInt(position), buffer.readAsInt(32));
+            }
+            assertEquals(data[data.length - 1] & 0xF, buffer.readAsInt(8L * data.length - 4, 4));
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testInterleavedDuplicates() throws IOException {
+        InflatingBitBuffer buffer = new InflatingBitBuffer(file, DeflateIndex.build(file, 500000));
+        try {
+            // As many duplicates as decoders: every duplicate should keep a decoder of its own
+            assertInterleavedReads(buffer, InflatingBitBuffer.MAX_DECODERS, 100000);
+            // More duplicates than decoders: decoders get resumed from checkpoints all the time
+            assertInterleavedReads(buffer, InflatingBitBuffer.MAX_DECODERS + 2, 100);
+        } finally {
+            buffer.close();
+        }
+    }
+
+    private void assertInterleavedReads(BitBuffer buffer, int nrDuplicates, int nrReads) {
+        BitBuffer[] duplicates = new BitBuffer[nrDuplicates];
+        for (int i = 0; i < duplicates.length; i++) {
+            duplicates[i] = buffer.duplicate();
+            duplicates[i].setBitPos(8L * i * (data.length / duplicates.length));
+        }
+        for (int j = 0; j < nrReads; j++) {
+            for (int i = 0; i < duplicates.length; i++) {
+                int position = (int) (duplicates[i].getBitPos() >>> 3);
+                assertEquals(data[position], duplicates[i].readAsByte(8));
+            }
+        }
+    }
+
+    public void testReadAsByteBuffer() throws IOException {
+        InflatingBitBuffer buffer = new InflatingBitBuffer(file);
+        try {
+            buffer.setBitPos(8L * 1000000);
+            ByteBuffer result = buffer.readAsByteBuffer(500000);
+            assertEquals(8L * 1500000, buffer.getBitPos());
+            assertEquals(ByteBuffer.wrap(data, 1000000, 500000), result);
+            assertEquals(ByteBuffer.wrap(data), buffer.readAsByteBuffer());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testSaveAndLoadIndex() throws IOException {
+        DeflateIndex index = DeflateIndex.build(file, 200000);
+        File sidecar = File.createTempFile("preon", ".idx");
+        try {
+            index.save(sidecar);
+            DeflateIndex loaded = DeflateIndex.load(sidecar);
+            assertEquals(index.getSize(), loaded.getSize());
+            assertEquals(index.getCompressedSize(), loaded.getCompressedSize());
+            assertEquals(200000, loaded.getInterval());
+            assertEquals(index.getNrCheckpoints(), loaded.getNrCheckpoints());
+            InflatingBitBuffer buffer = new InflatingBitBuffer(file, loaded);
+            try {
+                assertEquals(data[2999999], buffer.readAsByte(8, 8L * 2999999));
+                assertEquals(data[1234567], buffer.readAsByte(8, 8L * 1234567));
+            } finally {
+                buffer.close();
+            }
+        } finally {
+            sidecar.delete();
+        }
+    }
+
+    public void testIndexOfOtherFile() throws IOException {
+        File other = File.createTempFile("preon", ".gz");
+        try {
+            write(new GZIPOutputStream(new FileOutputStream(other)), data, 0, 1000);
+            try {
+                new InflatingBitBuffer(file, DeflateIndex.build(other));
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException iae) {
+                // What we expect
+            }
+        } finally {
+            other.delete();
+        }
+    }
+
+    public void testZlib() throws IOException {
+        write(new DeflaterOutputStream(new FileOutputStream(file)), data, 0, data.length);
+        assertContents(new InflatingBitBuffer(file, DeflateIndex.build(file, 100000)));
+    }
+
+    public void testRawDeflate() throws IOException {
+        write(new DeflaterOutputStream(new FileOutputStream(file), new Deflater(Deflater.BEST_SPEED, true)),
+                data, 0, data.length);
+        assertContents(new InflatingBitBuffer(file, DeflateIndex.build(file, 100000)));
+    }
+
+    public void testStoredBlocks() throws IOException {
+        write(new DeflaterOutputStream(new FileOutputStream(file), new Deflater(Deflater.NO_COMPRESSION)),
+                data, 0, data.length);
+        assertContents(new InflatingBitBuffer(file, DeflateIndex.build(file, 100000)));
+    }
+
+    public void testMultipleMembers() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            GZIPOutputStream member = new GZIPOutputStream(out);
+            member.write(data, 0, 1000000);
+            member.finish();
+            member = new GZIPOutputStream(out);
+            member.write(data, 1000000, data.length - 1000000);
+            member.finish();
+        } finally {
+            out.close();
+        }
+        assertContents(new InflatingBitBuffer(file, DeflateIndex.build(file, 100000)));
+    }
+
+    public void testTruncatedData() throws IOException {
+        write(new FileOutputStream(file), new byte[]{0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, 0, 0x62}, 0, 11);
+        try {
+            DeflateIndex.build(file);
+            fail("Expected IOException");
+        } catch (IOException ioe) {
+            // What we expect
+        }
+    }
+
+    private void assertContents(InflatingBitBuffer buffer) throws IOException {
+        try {
+            assertEquals(data.length * 8L, buffer.getBitBufBitSize());
+            for (int position = data.length - 1; position >= 0; position -= 9973) {
+                assertEquals(data[position], buffer.readAsByte(8, 8L * position));
+            }
+            buffer.setBitPos(0);
+            assertEquals(ByteBuffer.wrap(data), buffer.readAsByteBuffer(data.length));
+        } finally {
+            buffer.close();
+        }
+    }
+
+    private static void write(OutputStream out, byte[] data, int offset, int length) throws IOException {
+        try {
+            out.write(data, offset, length);
+        } finally {
+            out.close();
+        }
+    }
+
+}
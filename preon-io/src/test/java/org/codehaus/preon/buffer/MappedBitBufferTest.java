@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MappedBitBufferTest extends TestCase {
+
+    private byte[] data;
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        data = new byte[64];
+        new Random(42).nextBytes(data);
+        file = File.createTempFile("preon", ".bin");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testReadsCrossingSegments() throws IOException {
+        BitBuffer mapped = new MappedBitBuffer(file, 4);
+        BitBuffer reference = new DefaultBitBuffer(ByteBuffer.wrap(data));
+        for (int nrBits = 1; nrBits <= 56; nrBits++) {
+            for (long bitPos = 0; bitPos + nrBits <= data.length * 8; bitPos += 3) {
+                assertEquals(reference.readAsLong(bitPos, nrBits, ByteOrder.BigEndian),
+                        mapped.readAsLong(bitPos, nrBits, ByteOrder.BigEndian));
+                assertEquals(reference.readAsLong(bitPos, nrBits, ByteOrder.LittleEndian),
+                        mapped.readAsLong(bitPos, nrBits, ByteOrder.LittleEndian));
+            }
+        }
+    }
+
+    public void testUnalignedLong() throws IOException {
+        BitBuffer mapped = new MappedBitBuffer(file, 4);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long expected = (buffer.getLong(1) << 3) | ((data[9] & 0xFF) >>> 5);
+        assertEquals(expected, mapped.readAsLong(11, 64));
+        assertEquals(75, mapped.getBitPos());
+    }
+
+    public void testSliceAndDuplicate() throws IOException {
+        BitBuffer mapped = new MappedBitBuffer(file, 8);
+        mapped.setBitPos(60);
+        BitBuffer slice = mapped.slice(16);
+        assertEquals(76, mapped.getBitPos());
+        assertEquals(16, slice.getBitBufBitSize());
+        assertEquals(mapped.readAsInt(60, 16), slice.readAsInt(16));
+        BitBuffer duplicate = mapped.duplicate();
+        assertEquals(mapped.getBitPos(), duplicate.getBitPos());
+        duplicate.readAsInt(8);
+        assertEquals(76, mapped.getBitPos());
+    }
+
+    public void testReadAsByteBuffer() throws IOException {
+        BitBuffer mapped = new MappedBitBuffer(file, 16);
+        mapped.setBitPos(8);
+        ByteBuffer within = mapped.readAsByteBuffer(4);
+        ByteBuffer crossing = mapped.readAsByteBuffer(20);
+        assertEquals(200, mapped.getBitPos());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(data[1 + i], within.get(i));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(data[5 + i], crossing.get(i));
+        }
+        assertEquals(64, mapped.readAsByteBuffer().remaining());
+    }
+
+    public void testReadBeyondEnd() throws IOException {
+        BitBuffer mapped = new MappedBitBuffer(file, 16);
+        mapped.setBitPos(data.length * 8 - 4);
+        try {
+            mapped.readAsByte(8);
+            fail("Expecting exception while reading beyond end of buffer.");
+        } catch (BitBufferUnderflowException bbue) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * A simple benchmark, comparing the {@link PrefetchingBitBuffer} with a {@link DefaultBitBuffer} on a memory mapped file,
+ * walking through a file of sequential records laid out like a snoop capture: a 16-byte file header, followed by
+ * records having a 24-byte header, holding the length of the packet and of the record, followed by the packet data and
+ * padding. Not a test case; run it using its {@link #main(String[])} method, optionally passing the size of the file
+ * in MB.
+ *
+ * @author Wilfred Springer
+ */
+public class PrefetchingBitBufferBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        File file = File.createTempFile("preon", ".snoop");
+        file.deleteOnExit();
+        write(file, ((long) megabytes) << 20);
+        for (int warmup = 0; warmup < 2; warmup++) {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                run("Memory mapped", new DefaultBitBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size())), warmup == 1);
+            } finally {
+                in.close();
+            }
+            for (int blockSize : new int[]{1 << 16, 1 << 20}) {
+                PrefetchingBitBuffer buffer = new PrefetchingBitBuffer(file, blockSize, 2);
+                try {
+                    run("Prefetching, " + (blockSize >> 10) + " KB blocks", buffer, warmup == 1);
+                } finally {
+                    buffer.close();
+                }
+            }
+        }
+    }
+
+    private static void write(File file, long size) throws IOException {
+        Random random = new Random(0);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            out.write("snoop\0\0\0".getBytes("US-ASCII"));
+            out.writeInt(2);
+            out.writeInt(4);
+            long written = 16;
+            byte[] packet = new byte[1600];
+            while (written < size) {
+                int length = 60 + random.nextInt(1454);
+                int recordLength = 24 + ((length + 3) & ~3);
+                out.writeInt(length);
+                out.writeInt(length);
+                out.writeInt(recordLength);
+                out.writeInt(0);
+                out.writeInt((int) (written >> 10));
+                out.writeInt((int) written);
+                random.nextBytes(packet);
+                out.write(packet, 0, recordLength - 24);
+                written += recordLength;
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void run(String name, BitBuffer buffer, boolean report) {
+        long start = System.nanoTime();
+        long records = 0;
+        long checksum = 0;
+        buffer.setBitPos(16 * 8);
+        while (buffer.getBitPos() < buffer.getBitBufBitSize()) {
+            long recordStart = buffer.getBitPos();
+            int length = buffer.readAsInt(32);
+            buffer.readAsInt(32);
+            int recordLength = buffer.readAsInt(32);
+            buffer.readAsInt(32);
+            checksum += buffer.readAsInt(32) + buffer.readAsInt(32);
+            // look at the ethernet header, and skip the remainder of the packet
+            checksum += buffer.readAsLong(48) + buffer.readAsLong(48) + buffer.readAsInt(16) + length;
+            buffer.setBitPos(recordStart + recordLength * 8L);
+            records++;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.println(name + ": " + records + " records in " + (elapsed / 1000000) + " ms, "
+                    + (buffer.getBitBufBitSize() / 8 * 1000 / Math.max(1, elapsed)) + " MB/s (checksum " + checksum
+                    + ")");
+        }
+    }
+
+}
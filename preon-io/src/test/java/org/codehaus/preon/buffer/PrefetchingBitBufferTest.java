@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PrefetchingBitBufferTest extends TestCase {
+
+    private byte[] data;
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        data = new byte[10000];
+        new Random(42).nextBytes(data);
+        file = File.createTempFile("preon", ".bin");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testSequentialReads() throws IOException {
+        PrefetchingBitBuffer buffer = new PrefetchingBitBuffer(file, 64, 3);
+        try {
+            assertEquals(64, buffer.getBlockSize());
+            assertEquals(3, buffer.getPrefetchDepth());
+            assertEquals(data.length * 8, buffer.getBitBufBitSize());
+            ByteBuffer reference = ByteBuffer.wrap(data);
+            for (int i = 0; i < data.length / 4; i++) {
+                assertEquals(reference.getInt(), buffer.readAsInt(32));
+            }
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testRandomReadsFromDuplicates() throws IOException {
+        PrefetchingBitBuffer buffer = new PrefetchingBitBuffer(file, 100, 1);
+        try {
+            BitBuffer reference = new DefaultBitBuffer(ByteBuffer.wrap(data));
+            BitBuffer duplicate = buffer.duplicate();
+            Random random = new Random(1);
+            for (int i = 0; i < 1000; i++) {
+                long bitPos = random.nextInt(data.length * 8 - 64);
+                BitBuffer target = i % 2 == 0 ? buffer : duplicate;
+                assertEquals(reference.readAsLong(bitPos, 64), target.readAsLong(bitPos, 64));
+            }
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testReadAsByteBufferAcrossBlocks() throws IOException {
+        PrefetchingBitBuffer buffer = new PrefetchingBitBuffer(file, 100, 1);
+        try {
+            buffer.setBitPos(90 * 8);
+            ByteBuffer bytes = buffer.readAsByteBuffer(250);
+            assertEquals(250, bytes.remaining());
+            assertEquals(ByteBuffer.wrap(data, 90, 250), bytes);
+            assertEquals(ByteBuffer.wrap(data), buffer.readAsByteBuffer());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    public void testClosed() throws IOException {
+        PrefetchingBitBuffer buffer = new PrefetchingBitBuffer(file, 100, 1);
+        buffer.readAsInt(32);
+        buffer.close();
+        try {
+            buffer.readAsInt(8000, 32);
+            fail("Expected BitBufferException");
+        } catch (BitBufferException bbe) {
+            // Ok
+        }
+    }
+
+}
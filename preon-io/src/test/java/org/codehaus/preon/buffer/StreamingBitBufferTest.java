@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class StreamingBitBufferTest extends TestCase {
+
+    private byte[] data;
+
+    @Override
+    protected void setUp() throws Exception {
+        data = new byte[1000];
+        new Random(7).nextBytes(data);
+    }
+
+    public void testSequentialReadsInConstantMemory() {
+        StreamingBitBuffer buffer = new StreamingBitBuffer(
+                java.nio.channels.Channels.newChannel(new TrickleInputStream(data)), 16);
+        BitBuffer reference = new DefaultBitBuffer(ByteBuffer.wrap(data));
+        while (buffer.getBitPos() + 29 <= data.length * 8) {
+            assertEquals(reference.readAsInt(29), buffer.readAsInt(29));
+            buffer.release();
+        }
+    }
+
+    public void testBackwardIntoReleasedData() {
+        StreamingBitBuffer buffer = new StreamingBitBuffer(new ByteArrayInputStream(data));
+        buffer.readAsLong(64);
+        buffer.readAsLong(64);
+        buffer.release();
+        assertEquals(128, buffer.getReleaseMark());
+        buffer.setBitPos(128);
+        try {
+            buffer.setBitPos(120);
+            fail("Expecting exception while moving into released data.");
+        } catch (BitBufferException bbe) {
+            // Expected
+        }
+        try {
+            buffer.readAsInt(0, 8);
+            fail("Expecting exception while reading released data.");
+        } catch (BitBufferException bbe) {
+            // Expected
+        }
+    }
+
+    public void testReadBeyondEnd() {
+        StreamingBitBuffer buffer = new StreamingBitBuffer(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertEquals(Long.MAX_VALUE, buffer.getBitBufBitSize());
+        assertEquals(0x010203, buffer.readAsInt(24));
+        try {
+            buffer.readAsByte(8);
+            fail("Expecting exception while reading beyond end of stream.");
+        } catch (BitBufferUnderflowException bbue) {
+            // Expected
+        }
+        assertEquals(24, buffer.getBitBufBitSize());
+    }
+
+    public void testWindowExhausted() {
+        StreamingBitBuffer buffer = new StreamingBitBuffer(
+                java.nio.channels.Channels.newChannel(new ByteArrayInputStream(data)), 8);
+        buffer.readAsLong(64);
+        try {
+            buffer.readAsByte(8);
+            fail("Expecting exception without releasing data.");
+        } catch (BitBufferException bbe) {
+            // Expected
+        }
+    }
+
+    public void testSkippingBeyondWindow() {
+        StreamingBitBuffer buffer = new StreamingBitBuffer(
+                java.nio.channels.Channels.newChannel(new TrickleInputStream(data)), 16);
+        assertEquals(data[0], buffer.readAsByte(8));
+        buffer.setBitPos(800);
+        buffer.release();
+        assertEquals(800, buffer.getReleaseMark());
+        for (int i = 100; i < 140; i++) {
+            assertEquals(data[i], buffer.readAsByte(8));
+            buffer.release();
+        }
+        // Skipping from within the window
+        buffer.release(8000 - 16);
+        assertEquals(data[998], buffer.readAsByte(8, 8000L - 16));
+        assertEquals(data[999], buffer.readAsByte(8, 8000L - 8));
+    }
+
+    public void testReleasingBeyondEnd() {
+        StreamingBitBuffer buffer = new StreamingBitBuffer(
+                java.nio.channels.Channels.newChannel(new ByteArrayInputStream(data)), 16);
+        buffer.release(8008);
+        try {
+            buffer.readAsByte(8, 8008L);
+            fail("Expecting exception while reading beyond end of stream.");
+        } catch (BitBufferUnderflowException bbue) {
+            // Expected
+        }
+        assertEquals(8000, buffer.getBitBufBitSize());
+    }
+
+    public void testChannelWithoutData() {
+        StreamingBitBuffer buffer = new StreamingBitBuffer(new ReadableByteChannel() {
+            public int read(ByteBuffer dst) {
+                return 0;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        }, 16);
+        try {
+            buffer.readAsByte(8);
+            fail("Expecting exception if the channel does not provide data.");
+        } catch (BitBufferException bbe) {
+            // Expected
+        }
+    }
+
+    public void testSliceAndReadAsByteBuffer() {
+        StreamingBitBuffer buffer = new StreamingBitBuffer(new ByteArrayInputStream(data));
+        buffer.readAsByte(8);
+        BitBuffer slice = buffer.slice(16);
+        assertEquals(data[1], slice.readAsByte(8));
+        assertEquals(data[2], slice.readAsByte(8));
+        ByteBuffer bytes = buffer.readAsByteBuffer(3);
+        assertEquals(data[3], bytes.get());
+        assertEquals(data[5], bytes.get(2));
+    }
+
+    /** An {@link InputStream} handing out at most three bytes at a time. */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+
+        public TrickleInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 3));
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A simple benchmark, comparing the {@link OutputStreamBitChannel}, the {@link BufferedBitChannel} and the {@link
+ * ByteBufferBitChannel} (writing into direct memory) writing records
+ * resembling those of the bmp sample (byte aligned little endian fields and pixel data) and records made of unaligned
+ * bit fields. Not a test case; run it using its {@link #main(String[])} method.
+ *
+ * @author Wilfred Springer
+ */
+public class BitChannelBenchmark {
+
+    private static final int RECORDS = 1 << 18;
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        for (int warmup = 0; warmup < 2; warmup++) {
+            for (int type = 0; type < 3; type++) {
+                run(type, true, warmup == 1);
+                run(type, false, warmup == 1);
+            }
+        }
+    }
+
+    private static void run(int type, boolean aligned, boolean report) throws IOException {
+        byte[] pixels = new byte[48];
+        long start = System.nanoTime();
+        long size = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteBufferBitChannel direct = new ByteBufferBitChannel();
+            BitChannel channel = type == 0 ? new OutputStreamBitChannel(out)
+                    : type == 1 ? new BufferedBitChannel(out) : direct;
+            for (int i = 0; i < RECORDS; i++) {
+                if (aligned) {
+                    channel.write(16, (short) 0x4D42, ByteOrder.LittleEndian);
+                    channel.write(32, i, ByteOrder.LittleEndian);
+                    channel.write(32, i * 3, ByteOrder.LittleEndian);
+                    channel.write(8, (byte) i);
+                    channel.write(pixels, 0, pixels.length);
+                } else {
+                    channel.write(11, 0x7FF, ByteOrder.BigEndian);
+                    channel.write(2, (byte) 3);
+                    channel.write(true);
+                    channel.write(4, (byte) i);
+                    channel.write(13, i, ByteOrder.BigEndian);
+                    channel.write(33, (long) i << 1, ByteOrder.BigEndian);
+                }
+            }
+            channel.flush();
+            size += out.size() + direct.size();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.println(new String[]{"OutputStreamBitChannel", "BufferedBitChannel", "ByteBufferBitChannel"}[type] + ", "
+                    + (aligned ? "aligned" : "unaligned") + " fields: "
+                    + (size * 1000 / elapsed) + " MB/s");
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class BufferedBitChannelTest {
+
+    @Test
+    public void shouldWriteWhatOutputStreamBitChannelWrites() throws IOException {
+        Random random = new Random(42);
+        for (int round = 0; round < 100; round++) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            BitChannel reference = new OutputStreamBitChannel(expected);
+            BitChannel channel = new BufferedBitChannel(actual, 8 + random.nextInt(64));
+            long seed = random.nextLong();
+            writeRandomly(reference, new Random(seed));
+            writeRandomly(channel, new Random(seed));
+            assertEquals(reference.getRelativeBitPos(), channel.getRelativeBitPos());
+            reference.flush();
+            channel.flush();
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    public void shouldWriteNothingBeforeFlush() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedBitChannel channel = new BufferedBitChannel(out);
+        channel.write(12, 0xfff, ByteOrder.BigEndian);
+        channel.write(4, 0x0, ByteOrder.BigEndian);
+        assertEquals(0, out.size());
+        channel.flush();
+        assertArrayEquals(new byte[]{(byte) 0xff, (byte) 0xf0}, out.toByteArray());
+    }
+
+    @Test
+    public void shouldWriteFullBuffers() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedBitChannel channel = new BufferedBitChannel(out, 16);
+        for (int i = 0; i < 30; i++) {
+            channel.write(8, (byte) i);
+        }
+        assertEquals(16, out.size());
+        channel.flush();
+        assertEquals(30, out.size());
+    }
+
+    @Test
+    public void shouldPadOnFlush() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedBitChannel channel = new BufferedBitChannel(out);
+        channel.write(3, (byte) 0xff);
+        assertEquals(3, channel.getRelativeBitPos());
+        channel.flush();
+        assertEquals(0, channel.getRelativeBitPos());
+        assertArrayEquals(new byte[]{(byte) 0xe0}, out.toByteArray());
+    }
+
+    @Test
+    public void shouldFlushOnClose() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedBitChannel channel = new BufferedBitChannel(out);
+        channel.write(64, 0x0102030405060708L, ByteOrder.LittleEndian);
+        channel.close();
+        assertArrayEquals(new byte[]{8, 7, 6, 5, 4, 3, 2, 1}, out.toByteArray());
+    }
+
+    @Test
+    public void shouldCopyAlignedArrays() throws IOException {
+        byte[] data = new byte[1000];
+        new Random(0).nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedBitChannel channel = new BufferedBitChannel(out, 64);
+        channel.write(16, (short) 0x1234, ByteOrder.BigEndian);
+        channel.write(data, 10, 30);
+        channel.write(data, 0, data.length);
+        channel.flush();
+        byte[] result = out.toByteArray();
+        assertEquals(2 + 30 + data.length, result.length);
+        assertEquals(0x12, result[0]);
+        assertEquals(0x34, result[1]);
+        assertArrayEquals(slice(data, 10, 30), slice(result, 2, 30));
+        assertArrayEquals(data, slice(result, 32, data.length));
+    }
+
+    @Test
+    public void shouldShiftUnalignedByteBuffers() throws IOException {
+        byte[] data = new byte[100];
+        new Random(0).nextBytes(data);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        BitChannel reference = new OutputStreamBitChannel(expected);
+        BufferedBitChannel channel = new BufferedBitChannel(actual, 16);
+        reference.write(5, (byte) 0x15);
+        reference.write(data, 0, data.length);
+        channel.write(5, (byte) 0x15);
+        assertEquals(800L, channel.write(ByteBuffer.wrap(data)));
+        reference.flush();
+        channel.flush();
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void shouldCopyAlignedByteBuffers() throws IOException {
+        byte[] data = new byte[100];
+        new Random(0).nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedBitChannel channel = new BufferedBitChannel(out, 16);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        assertEquals(800L, channel.write(buffer));
+        assertEquals(0, buffer.remaining());
+        channel.flush();
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    private static void writeRandomly(BitChannel channel, Random random) throws IOException {
+        for (int i = 0; i < 200; i++) {
+            ByteOrder byteOrder = random.nextBoolean() ? ByteOrder.BigEndian : ByteOrder.LittleEndian;
+            switch (random.nextInt(6)) {
+                case 0:
+                    channel.write(random.nextBoolean());
+                    break;
+                case 1:
+                    channel.write(1 + random.nextInt(8), (byte) random.nextInt());
+                    break;
+                case 2:
+                    channel.write(1 + random.nextInt(16), (short) random.nextInt(), byteOrder);
+                    break;
+                case 3:
+                    channel.write(1 + random.nextInt(32), random.nextInt(), byteOrder);
+                    break;
+                case 4:
+                    channel.write(1 + random.nextInt(64), random.nextLong(), byteOrder);
+                    break;
+                default:
+                    byte[] bytes = new byte[random.nextInt(40)];
+                    random.nextBytes(bytes);
+                    channel.write(bytes, 0, bytes.length);
+                    break;
+            }
+        }
+    }
+
+    private static byte[] slice(byte[] data, int offset, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(data, offset, result, 0, length);
+        return result;
+    }
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+public class ByteBufferBitChannelTest {
+
+    @Test
+    public void shouldWriteWhatBufferedBitChannelWrites() throws IOException {
+        byte[] data = new byte[5000];
+        new Random(0).nextBytes(data);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        BitChannel reference = new BufferedBitChannel(expected);
+        ByteBufferBitChannel channel = new ByteBufferBitChannel(16, false);
+        for (BitChannel target : new BitChannel[]{reference, channel}) {
+            target.write(3, (byte) 5);
+            target.write(29, 0x12345678, ByteOrder.LittleEndian);
+            target.write(data, 0, data.length);
+            target.write(true);
+            target.write(64, -2L, ByteOrder.BigEndian);
+            target.write(ByteBuffer.wrap(data));
+        }
+        reference.flush();
+        assertArrayEquals(expected.toByteArray(), toArray(channel.getByteBuffer()));
+        assertEquals(expected.size(), channel.size());
+    }
+
+    @Test
+    public void shouldExposeReadOnlyView() throws IOException {
+        ByteBufferBitChannel channel = new ByteBufferBitChannel();
+        channel.write(12, 0xabc, ByteOrder.BigEndian);
+        ByteBuffer result = channel.getByteBuffer();
+        assertTrue(result.isReadOnly());
+        assertTrue(result.isDirect());
+        assertEquals(0, result.position());
+        assertEquals(2, result.remaining());
+        assertEquals((byte) 0xab, result.get(0));
+        assertEquals((byte) 0xc0, result.get(1));
+        try {
+            result.put(0, (byte) 0);
+            fail("Expected ReadOnlyBufferException");
+        } catch (ReadOnlyBufferException robe) {
+            // What we expect
+        }
+    }
+
+    @Test
+    public void shouldReset() throws IOException {
+        ByteBufferBitChannel channel = new ByteBufferBitChannel();
+        channel.write(32, 1, ByteOrder.BigEndian);
+        channel.write(3, (byte) 7);
+        channel.reset();
+        assertEquals(0, channel.size());
+        assertEquals(0, channel.getRelativeBitPos());
+        channel.write(8, (byte) 42);
+        assertArrayEquals(new byte[]{42}, toArray(channel.getByteBuffer()));
+    }
+
+    @Test
+    public void shouldTakeBuffersFromPool() throws IOException {
+        ByteBufferPool pool = new ByteBufferPool(64, 4);
+        ByteBufferBitChannel channel = new ByteBufferBitChannel(pool);
+        channel.write(new byte[100], 0, 100);
+        ByteBuffer buffer = channel.getByteBuffer();
+        assertEquals(100, buffer.remaining());
+        channel.release();
+        // Both the initial buffer and the grown buffer have been released
+        ByteBuffer grown = pool.acquire(100);
+        assertTrue(grown.capacity() >= 100);
+        assertEquals(0, grown.position());
+        assertEquals(64, pool.acquire(1).capacity());
+        try {
+            channel.size();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ise) {
+            // What we expect
+        }
+    }
+
+    @Test
+    public void shouldGatherMessages() throws IOException {
+        ByteBufferBitChannel[] messages = new ByteBufferBitChannel[3];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new ByteBufferBitChannel();
+            messages[i].write(16, (short) (i + 1), ByteOrder.BigEndian);
+            messages[i].write(4, (byte) 0xf);
+        }
+        File file = File.createTempFile("preon", ".bin");
+        try {
+            FileChannel channel = new FileOutputStream(file).getChannel();
+            try {
+                assertEquals(9, ByteBufferBitChannel.write(channel, messages));
+            } finally {
+                channel.close();
+            }
+            byte[] result = new byte[9];
+            FileInputStream in = new FileInputStream(file);
+            try {
+                assertEquals(9, in.read(result));
+            } finally {
+                in.close();
+            }
+            assertArrayEquals(new byte[]{0, 1, (byte) 0xf0, 0, 2, (byte) 0xf0, 0, 3, (byte) 0xf0}, result);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldWriteIntoBufferPassedIn() throws IOException {
+        byte[] data = new byte[4];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(1);
+        ByteBufferBitChannel channel = new ByteBufferBitChannel(buffer);
+        channel.write(20, 0xabcde, ByteOrder.BigEndian);
+        channel.flush();
+        assertArrayEquals(new byte[]{0, (byte) 0xab, (byte) 0xcd, (byte) 0xe0}, data);
+        assertEquals(3, channel.size());
+        // Running out of room
+        channel.write(16, (short) 0x1234, ByteOrder.BigEndian);
+        assertArrayEquals(new byte[]{(byte) 0xab, (byte) 0xcd, (byte) 0xe0, 0x12, 0x34},
+                toArray(channel.getByteBuffer()));
+    }
+
+    @Test
+    public void shouldPatchReservedBits() throws IOException {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            long seed = random.nextLong();
+            ByteBufferBitChannel expected = new ByteBufferBitChannel(16, false);
+            ByteBufferBitChannel actual = new ByteBufferBitChannel(16, true);
+            writeWithPatch(expected, new Random(seed), false);
+            writeWithPatch(actual, new Random(seed), true);
+            assertEquals(expected.getBitPos(), actual.getBitPos());
+            assertArrayEquals(toArray(expected.getByteBuffer()), toArray(actual.getByteBuffer()));
+        }
+    }
+
+    @Test
+    public void shouldRefusePatchingBeyondEnd() throws IOException {
+        ByteBufferBitChannel channel = new ByteBufferBitChannel();
+        channel.write(12, 0, ByteOrder.BigEndian);
+        try {
+            channel.patch(8, 8, 0xff, ByteOrder.BigEndian);
+            fail("Expected BitChannelException");
+        } catch (BitChannelException bce) {
+            // What we expect
+        }
+    }
+
+    /**
+     * Writes random fields, either directly, or by reserving the bits of one of them, and patching them after writing
+     * everything else.
+     */
+    static void writeWithPatch(SeekableBitChannel channel, Random random, boolean patch) throws IOException {
+        int nrFields = 1 + random.nextInt(40);
+        int patched = random.nextInt(nrFields);
+        int patchedBits = 1 + random.nextInt(64);
+        long patchedValue = random.nextLong();
+        ByteOrder patchedOrder = random.nextBoolean() ? ByteOrder.BigEndian : ByteOrder.LittleEndian;
+        long patchedPos = -1;
+        for (int i = 0; i < nrFields; i++) {
+            if (i == patched) {
+                if (patch) {
+                    patchedPos = channel.reserve(patchedBits);
+                } else {
+                    channel.write(patchedBits, patchedValue, patchedOrder);
+                }
+            }
+            channel.write(1 + random.nextInt(64), random.nextLong(), ByteOrder.BigEndian);
+        }
+        if (patch) {
+            channel.patch(patchedPos, patchedBits, patchedValue, patchedOrder);
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class CountingBitChannelTest {
+
+    @Test
+    public void shouldCountBitsWritten() {
+        CountingBitChannel channel = new CountingBitChannel();
+        channel.write(true);
+        channel.write(3, (byte) 5);
+        channel.write(29, 0x12345678, ByteOrder.LittleEndian);
+        assertEquals(1, channel.getRelativeBitPos());
+        channel.write(new byte[10], 2, 5);
+        ByteBuffer buffer = ByteBuffer.allocate(7);
+        assertEquals(56, channel.write(buffer));
+        assertEquals(0, buffer.remaining());
+        channel.write(64, -1L, ByteOrder.BigEndian);
+        channel.flush();
+        assertEquals(1 + 3 + 29 + 40 + 56 + 64, channel.getBitPos());
+    }
+
+    @Test
+    public void shouldCountWhatByteBufferBitChannelWrites() throws IOException {
+        Random random = new Random(7);
+        for (int round = 0; round < 100; round++) {
+            long seed = random.nextLong();
+            ByteBufferBitChannel expected = new ByteBufferBitChannel(16, false);
+            CountingBitChannel actual = new CountingBitChannel();
+            ByteBufferBitChannelTest.writeWithPatch(expected, new Random(seed), true);
+            ByteBufferBitChannelTest.writeWithPatch(actual, new Random(seed), true);
+            assertEquals(expected.getBitPos(), actual.getBitPos());
+        }
+    }
+
+    @Test
+    public void shouldRefusePatchingBeyondEnd() {
+        CountingBitChannel channel = new CountingBitChannel();
+        channel.reserve(12);
+        try {
+            channel.patch(8, 8, 0xff, ByteOrder.BigEndian);
+            fail("Expected BitChannelException");
+        } catch (BitChannelException bce) {
+            // What we expect
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.channel;
+
+import org.codehaus.preon.buffer.ByteOrder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class FileChannelBitChannelTest {
+
+    @Test
+    public void shouldWriteWhatByteBufferBitChannelWrites() throws IOException {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            long seed = random.nextLong();
+            ByteBufferBitChannel expected = new ByteBufferBitChannel();
+            ByteBufferBitChannelTest.writeWithPatch(expected, new Random(seed), false);
+            File file = File.createTempFile("preon", ".bin");
+            try {
+                RandomAccessFile out = new RandomAccessFile(file, "rw");
+                out.write(new byte[]{1, 2, 3});
+                FileChannelBitChannel channel = new FileChannelBitChannel(out.getChannel(), 16);
+                ByteBufferBitChannelTest.writeWithPatch(channel, new Random(seed), true);
+                channel.close();
+                ByteBuffer written = expected.getByteBuffer();
+                byte[] result = read(file);
+                assertEquals(3 + written.remaining(), result.length);
+                byte[] bytes = new byte[written.remaining()];
+                written.get(bytes);
+                byte[] tail = new byte[bytes.length];
+                System.arraycopy(result, 3, tail, 0, tail.length);
+                assertArrayEquals(bytes, tail);
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void shouldWriteLargeArraysDirectly() throws IOException {
+        byte[] data = new byte[100];
+        new Random(0).nextBytes(data);
+        File file = File.createTempFile("preon", ".bin");
+        try {
+            FileChannelBitChannel channel = new FileChannelBitChannel(new RandomAccessFile(file, "rw").getChannel(), 16);
+            long prefix = channel.reserve(16);
+            channel.write(data, 0, data.length);
+            channel.write(4, (byte) 0xf);
+            channel.patch(prefix, 16, data.length, ByteOrder.LittleEndian);
+            assertEquals(16 + 800 + 4, channel.getBitPos());
+            channel.close();
+            byte[] result = read(file);
+            assertEquals(103, result.length);
+            assertEquals(100, result[0]);
+            assertEquals(0, result[1]);
+            assertEquals(data[99], result[101]);
+            assertEquals((byte) 0xf0, result[102]);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldPatchWholeBytesWithoutReadingThemBack() throws IOException {
+        File file = File.createTempFile("preon", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            FileChannelBitChannel channel = new FileChannelBitChannel(out.getChannel(), 8);
+            long prefix = channel.reserve(16);
+            channel.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, 0, 10);
+            channel.patch(prefix, 16, 0x0a0b, ByteOrder.BigEndian);
+            channel.close();
+            byte[] result = read(file);
+            assertEquals(12, result.length);
+            assertEquals(0x0a, result[0]);
+            assertEquals(0x0b, result[1]);
+            assertEquals(10, result[11]);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] result = new byte[(int) in.length()];
+            in.readFully(result);
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+}
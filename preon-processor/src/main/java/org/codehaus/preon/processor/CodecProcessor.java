@@ -0,0 +1,425 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.processor;
+
+import org.codehaus.preon.annotation.Bound;
+import org.codehaus.preon.annotation.BoundNumber;
+import org.codehaus.preon.annotation.If;
+import org.codehaus.preon.annotation.Purpose;
+import org.codehaus.preon.codec.GeneratedCodec;
+import org.codehaus.preon.processor.ExpressionTranslator.Kind;
+import org.codehaus.preon.processor.ExpressionTranslator.Translation;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An annotation processor generating a {@link GeneratedCodec} for every class with fields bound using {@link Bound}
+ * or {@link BoundNumber}, at compile time. The codecs generated read and write fields directly, and have all
+ * expressions translated into Java, so constructing them does not involve any reflection or expression parsing.
+ * {@link org.codehaus.preon.Codecs#create(Class)} picks them up automatically.
+ * <p/>
+ * Only classes binding numbers and booleans, optionally guarded by {@link If}, to fields that are neither private nor
+ * final are supported. No codec is generated for any other class; a note explaining why is issued instead, and the
+ * class will be bound through reflection at runtime, like before. That includes classes with a private or final bound
+ * field, and classes with methods or constructors carrying Preon annotations, such as
+ * {@link org.codehaus.preon.annotation.Init}, since the generated codecs would not invoke them. To enable the
+ * processor, simply put this module on the compiler's classpath.
+ *
+ * @author Wilfred Springer
+ */
+@SupportedAnnotationTypes({"org.codehaus.preon.annotation.Bound", "org.codehaus.preon.annotation.BoundNumber"})
+public class CodecProcessor extends AbstractProcessor {
+
+    /** The name of the variable holding the object decoded or encoded, in generated code. */
+    private static final String TARGET = "value";
+
+    /** The package holding all Preon annotations. */
+    private static final String ANNOTATION_PACKAGE = "org.codehaus.preon.";
+
+    /** The number types supported, by the name of their primitive and wrapper types. */
+    private static final Map<String, NumberType> NUMBER_TYPES = new HashMap<String, NumberType>();
+
+    static {
+        for (NumberType type : NumberType.values()) {
+            NUMBER_TYPES.put(type.primitive, type);
+            NUMBER_TYPES.put(type.wrapper, type);
+        }
+    }
+
+    /** The number types supported, and the way they are read and written. */
+    private enum NumberType {
+
+        BYTE("byte", "java.lang.Byte", 8, "buffer.readAsByte(%1$s, %2$s)", "channel.write(%1$s, (byte) %3$s);"),
+        SHORT("short", "java.lang.Short", 16, "buffer.readAsShort(%1$s, %2$s)",
+                "channel.write(%1$s, (short) %3$s, %2$s);"),
+        INTEGER("int", "java.lang.Integer", 32, "buffer.readAsInt(%1$s, %2$s)",
+                "channel.write(%1$s, (int) %3$s, %2$s);"),
+        LONG("long", "java.lang.Long", 64, "buffer.readAsLong(%1$s, %2$s)",
+                "channel.write(%1$s, (long) %3$s, %2$s);"),
+        FLOAT("float", "java.lang.Float", 32, "java.lang.Float.intBitsToFloat(buffer.readAsInt(%1$s, %2$s))",
+                "encodingNotSupported(\"floats\");"),
+        DOUBLE("double", "java.lang.Double", 64, "java.lang.Double.longBitsToDouble(buffer.readAsLong(%1$s, %2$s))",
+                "encodingNotSupported(\"doubles\");");
+
+        private final String primitive;
+
+        private final String wrapper;
+
+        private final int defaultSize;
+
+        /** The format of the expression reading a value, given the size and byte order. */
+        private final String read;
+
+        /** The format of the statement writing a value, given the size, byte order and value. */
+        private final String write;
+
+        NumberType(String primitive, String wrapper, int defaultSize, String read, String write) {
+            this.primitive = primitive;
+            this.wrapper = wrapper;
+            this.defaultSize = defaultSize;
+            this.read = read;
+            this.write = write;
+        }
+
+        /** Whether the value can be referred to from expressions. */
+        boolean isIntegral() {
+            return this != FLOAT && this != DOUBLE;
+        }
+
+    }
+
+    /**
+     * Returns the latest source version supported by the compiler running the processor, since the fields and
+     * annotations inspected are modeled the same way in every source version.
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.FIELD) {
+                    types.add((TypeElement) element.getEnclosingElement());
+                }
+            }
+        }
+        for (TypeElement type : types) {
+            try {
+                String source = generate(type);
+                Writer writer = processingEnv.getFiler().createSourceFile(getGeneratedName(type), type).openWriter();
+                try {
+                    writer.write(source);
+                } finally {
+                    writer.close();
+                }
+            } catch (UnsupportedBindingException ube) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "No codec generated for "
+                        + type.getQualifiedName() + ": " + ube.getMessage() + ".", type);
+            } catch (IOException ioe) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write codec for "
+                        + type.getQualifiedName() + ": " + ioe.getMessage(), type);
+            }
+        }
+        // Leaving the annotations to other processors
+        return false;
+    }
+
+    /**
+     * Returns the fully qualified name of the codec generated for the type passed in.
+     *
+     * @param type The type bound.
+     * @return The name of the class to be generated.
+     */
+    private String getGeneratedName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type) + GeneratedCodec.SUFFIX;
+    }
+
+    /**
+     * Generates the source of the codec for the type passed in.
+     *
+     * @param type The type bound.
+     * @return The Java source of the codec.
+     * @throws UnsupportedBindingException If the type is bound in a way not supported.
+     */
+    String generate(TypeElement type) throws UnsupportedBindingException {
+        checkType(type);
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String generatedName = getGeneratedName(type).substring(packageName.length() == 0 ? 0 : packageName.length() + 1);
+        String typeName = type.getQualifiedName().toString();
+        StringWriter load = new StringWriter();
+        StringWriter save = new StringWriter();
+        PrintWriter loadOut = new PrintWriter(load);
+        PrintWriter saveOut = new PrintWriter(save);
+        Map<String, Kind> bound = new HashMap<String, Kind>();
+        ExpressionTranslator translator = new ExpressionTranslator(TARGET, bound);
+        int size = 0;
+        int count = 0;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC) || !isBound(field)) {
+                continue;
+            }
+            if (field.getModifiers().contains(Modifier.PRIVATE) || field.getModifiers().contains(Modifier.FINAL)) {
+                throw new UnsupportedBindingException("field " + field.getSimpleName() + " is private or final");
+            }
+            count++;
+            String name = field.getSimpleName().toString();
+            String reference = TARGET + "." + name;
+            String indent = "        ";
+            AnnotationMirror condition = getAnnotation(field, If.class.getName());
+            if (condition != null) {
+                Translation translation = translator.translateBoolean(getValue(condition, "value").toString());
+                loadOut.println(indent + "if (" + translation.getJava() + ") {");
+                saveOut.println(indent + "if (" + translation.getJava() + ") {");
+                indent += "    ";
+                size = -1;
+            }
+            String fieldType = field.asType().toString();
+            if (fieldType.equals("boolean") || fieldType.equals("java.lang.Boolean")) {
+                if (getAnnotation(field, Bound.class.getName()) == null) {
+                    throw new UnsupportedBindingException("field " + name + " should be bound using @Bound");
+                }
+                loadOut.println(indent + reference + " = buffer.readAsBoolean();");
+                saveOut.println(indent + "channel.write((boolean) " + reference + ");");
+                size = size < 0 ? -1 : size + 1;
+                bound.put(name, Kind.BOOLEAN);
+            } else {
+                NumberType numberType = NUMBER_TYPES.get(fieldType);
+                if (numberType == null) {
+                    throw new UnsupportedBindingException("field " + name + " is of type " + fieldType);
+                }
+                String byteOrder = "LittleEndian";
+                Translation sizeExpr = new Translation(Kind.INTEGER, Integer.toString(numberType.defaultSize),
+                        numberType.defaultSize);
+                Translation matchExpr = null;
+                AnnotationMirror settings = getAnnotation(field, BoundNumber.class.getName());
+                if (settings != null) {
+                    if (!"java.lang.Number".equals(getValue(settings, "type").toString())) {
+                        throw new UnsupportedBindingException("field " + name + " overrides its type");
+                    }
+                    byteOrder = getValue(settings, "byteOrder").toString();
+                    String sizeSetting = (String) getValue(settings, "size");
+                    if (sizeSetting.length() != 0) {
+                        sizeExpr = translator.translateInteger(sizeSetting);
+                    }
+                    String matchSetting = (String) getValue(settings, "match");
+                    if (matchSetting.trim().length() != 0) {
+                        if (!numberType.isIntegral()) {
+                            throw new UnsupportedBindingException("field " + name + " matches a floating point value");
+                        }
+                        matchExpr = translator.translateInteger(matchSetting);
+                    }
+                }
+                String order = "org.codehaus.preon.buffer.ByteOrder." + byteOrder;
+                String read = String.format(numberType.read, sizeExpr.getJava(), order);
+                loadOut.println(indent + reference + " = " + read + ";");
+                if (matchExpr != null) {
+                    loadOut.println(indent + "if (((int) " + reference + ") != " + matchExpr.getJava() + ") {");
+                    if (matchExpr.getValue() != null) {
+                        loadOut.println(indent + "    throw new org.codehaus.preon.DecodingException(\"Expected "
+                                + matchExpr.getValue() + " but got \" + " + reference + ");");
+                    } else {
+                        loadOut.println(indent + "    throw new org.codehaus.preon.DecodingException("
+                                + "\"Expected different value than \" + " + reference + ");");
+                    }
+                    loadOut.println(indent + "}");
+                }
+                saveOut.println(indent + String.format(numberType.write, sizeExpr.getJava(), order, reference));
+                size = size < 0 || sizeExpr.getValue() == null ? -1 : size + sizeExpr.getValue();
+                if (numberType.isIntegral()) {
+                    bound.put(name, Kind.INTEGER);
+                }
+            }
+            if (condition != null) {
+                loadOut.println("        }");
+                saveOut.println("        }");
+            }
+        }
+        if (count == 0) {
+            throw new UnsupportedBindingException("no fields bound");
+        }
+        loadOut.flush();
+        saveOut.flush();
+        StringWriter result = new StringWriter();
+        PrintWriter out = new PrintWriter(result);
+        if (packageName.length() > 0) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+        out.println("/**");
+        out.println(" * The codec of {@link " + typeName + "}, generated by {@link " + getClass().getName() + "}.");
+        out.println(" */");
+        out.println("public final class " + generatedName + " extends "
+                + GeneratedCodec.class.getName() + "<" + typeName + "> {");
+        out.println();
+        out.println("    public " + generatedName + "() {");
+        out.println("        super(" + typeName + ".class, " + size + ");");
+        out.println("    }");
+        out.println();
+        out.println("    @Override");
+        out.println("    protected void load(" + typeName + " " + TARGET
+                + ", org.codehaus.preon.buffer.BitBuffer buffer) throws org.codehaus.preon.DecodingException {");
+        out.print(load.toString());
+        out.println("    }");
+        out.println();
+        out.println("    public void encode(" + typeName + " " + TARGET
+                + ", org.codehaus.preon.channel.BitChannel channel, org.codehaus.preon.Resolver resolver)");
+        out.println("            throws java.io.IOException {");
+        out.print(save.toString());
+        out.println("    }");
+        out.println();
+        out.println("}");
+        out.flush();
+        return result.toString();
+    }
+
+    /**
+     * Checks whether code can be generated for the type passed in.
+     *
+     * @param type The type bound.
+     * @throws UnsupportedBindingException If the type cannot be supported.
+     */
+    private void checkType(TypeElement type) throws UnsupportedBindingException {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new UnsupportedBindingException("not a concrete class");
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            throw new UnsupportedBindingException("generic classes are not supported");
+        }
+        for (Element element = type; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+            if (!(element instanceof TypeElement)) {
+                throw new UnsupportedBindingException("local classes are not supported");
+            }
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new UnsupportedBindingException("private classes are not supported");
+            }
+            if (element.getEnclosingElement() instanceof TypeElement
+                    && !element.getModifiers().contains(Modifier.STATIC)) {
+                throw new UnsupportedBindingException("inner classes are not supported");
+            }
+        }
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED
+                || !"java.lang.Object".equals(((TypeElement) ((DeclaredType) superclass).asElement())
+                .getQualifiedName().toString())) {
+            throw new UnsupportedBindingException("subclasses are not supported");
+        }
+        checkAnnotations(type);
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (!field.getModifiers().contains(Modifier.STATIC)) {
+                checkAnnotations(field);
+            }
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            checkAnnotations(method);
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            checkAnnotations(constructor);
+        }
+    }
+
+    /**
+     * Checks whether the element passed in carries Preon annotations other than those supported. Methods and
+     * constructors may not carry any.
+     *
+     * @param element The type, field, method or constructor.
+     * @throws UnsupportedBindingException If the element carries other Preon annotations.
+     */
+    private void checkAnnotations(Element element) throws UnsupportedBindingException {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            if (name.startsWith(ANNOTATION_PACKAGE) && !name.equals(Purpose.class.getName())
+                    && (element.getKind() != ElementKind.FIELD || !(name.equals(Bound.class.getName())
+                    || name.equals(BoundNumber.class.getName()) || name.equals(If.class.getName())))) {
+                throw new UnsupportedBindingException(element.getSimpleName() + " is annotated with " + name);
+            }
+        }
+    }
+
+    private static boolean isBound(VariableElement field) {
+        return getAnnotation(field, Bound.class.getName()) != null
+                || getAnnotation(field, BoundNumber.class.getName()) != null;
+    }
+
+    private static AnnotationMirror getAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of an attribute of an annotation, taking default values into account. Enumeration constants
+     * are returned as their {@link VariableElement}, and classes as their {@link TypeMirror}.
+     */
+    private Object getValue(AnnotationMirror mirror, String attribute) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                return entry.getValue().getValue();
+            }
+        }
+        throw new IllegalArgumentException("No attribute " + attribute + " on " + mirror);
+    }
+
+}
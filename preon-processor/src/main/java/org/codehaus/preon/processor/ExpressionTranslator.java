@@ -0,0 +1,394 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates Limbo expressions into Java expressions, at compile time. Only the part of the language that refers to
+ * nothing but the fields of the object being decoded is supported: integer literals, references to fields bound
+ * before, arithmetic, comparisons and boolean operators. Anything else, like references to outer objects, properties,
+ * list items or strings, is rejected, leaving the expression to be evaluated at runtime instead.
+ * <p/>
+ * The Java expressions produced mimic the semantics of the expression language: all arithmetic is done on
+ * <code>int</code> values, and <code>&&</code> and <code>||</code> have the same precedence, associating to the left.
+ * Like in the expression language, a boolean field can make up a condition by itself, but cannot be an operand of
+ * <code>&&</code> or <code>||</code>.
+ *
+ * @author Wilfred Springer
+ */
+class ExpressionTranslator {
+
+    /** The kind of value an expression evaluates to. */
+    enum Kind {
+        INTEGER, BOOLEAN
+    }
+
+    /** The result of translating an expression. */
+    static class Translation {
+
+        private final Kind kind;
+
+        private final String java;
+
+        private final Integer value;
+
+        private final boolean reference;
+
+        Translation(Kind kind, String java, Integer value) {
+            this(kind, java, value, false);
+        }
+
+        Translation(Kind kind, String java, Integer value, boolean reference) {
+            this.kind = kind;
+            this.java = java;
+            this.value = value;
+            this.reference = reference;
+        }
+
+        /** Returns the kind of value the expression evaluates to. */
+        Kind getKind() {
+            return kind;
+        }
+
+        /** Returns the Java expression. */
+        String getJava() {
+            return java;
+        }
+
+        /** Returns the value of the expression, if it is an integer expression not referring to any field. */
+        Integer getValue() {
+            return value;
+        }
+
+        /** Returns whether the expression is nothing but a reference to a field. */
+        boolean isReference() {
+            return reference;
+        }
+
+    }
+
+    /** The name of the variable holding the object the fields of which are referenced. */
+    private final String target;
+
+    /** The fields that can be referenced, and the kind of value they hold. */
+    private final Map<String, Kind> fields;
+
+    /** The tokens of the expression being translated. */
+    private List<String> tokens;
+
+    /** The index of the next token. */
+    private int pos;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param target The name of the variable holding the object the fields of which are referenced.
+     * @param fields The fields that can be referenced, and the kind of value they hold.
+     */
+    ExpressionTranslator(String target, Map<String, Kind> fields) {
+        this.target = target;
+        this.fields = fields;
+    }
+
+    /**
+     * Translates an expression evaluating to an integer.
+     *
+     * @param expr The Limbo expression.
+     * @return The translation.
+     * @throws UnsupportedBindingException If the expression is not supported.
+     */
+    Translation translateInteger(String expr) throws UnsupportedBindingException {
+        Translation result = translate(expr, false);
+        if (result.getKind() != Kind.INTEGER) {
+            throw new UnsupportedBindingException("\"" + expr + "\" does not evaluate to an integer");
+        }
+        return result;
+    }
+
+    /**
+     * Translates an expression evaluating to a boolean.
+     *
+     * @param expr The Limbo expression.
+     * @return The translation.
+     * @throws UnsupportedBindingException If the expression is not supported.
+     */
+    Translation translateBoolean(String expr) throws UnsupportedBindingException {
+        Translation result = translate(expr, true);
+        if (result.getKind() != Kind.BOOLEAN) {
+            throw new UnsupportedBindingException("\"" + expr + "\" does not evaluate to a boolean");
+        }
+        return result;
+    }
+
+    private Translation translate(String expr, boolean condition) throws UnsupportedBindingException {
+        tokens = tokenize(expr);
+        pos = 0;
+        Translation result = condition ? condExpression() : additiveExpression();
+        if (pos < tokens.size()) {
+            throw new UnsupportedBindingException("unexpected \"" + tokens.get(pos) + "\" in \"" + expr + "\"");
+        }
+        return result;
+    }
+
+    private Translation condExpression() throws UnsupportedBindingException {
+        Translation result = relationalExpression();
+        while ("&&".equals(peek()) || "||".equals(peek())) {
+            String operator = next();
+            Translation rhs = relationalExpression();
+            requireCondition(result, operator);
+            requireCondition(rhs, operator);
+            result = new Translation(Kind.BOOLEAN, "(" + result.getJava() + " " + operator + " " + rhs.getJava() + ")",
+                    null);
+        }
+        return result;
+    }
+
+    private Translation relationalExpression() throws UnsupportedBindingException {
+        int start = pos;
+        try {
+            Translation result = additiveExpression();
+            String operator = peek();
+            if ("<=".equals(operator) || ">=".equals(operator) || "<".equals(operator) || ">".equals(operator)
+                    || "==".equals(operator)) {
+                next();
+                Translation rhs = additiveExpression();
+                requireKind(Kind.INTEGER, result, operator);
+                requireKind(Kind.INTEGER, rhs, operator);
+                result = new Translation(Kind.BOOLEAN, "(" + result.getJava() + " " + operator + " " + rhs.getJava()
+                        + ")", null);
+            }
+            return result;
+        } catch (UnsupportedBindingException ube) {
+            // Like the grammar, try a parenthesized condition instead
+            pos = start;
+            if (!"(".equals(peek())) {
+                throw ube;
+            }
+            next();
+            try {
+                Translation result = condExpression();
+                expect(")");
+                return result;
+            } catch (UnsupportedBindingException nested) {
+                throw ube;
+            }
+        }
+    }
+
+    private Translation additiveExpression() throws UnsupportedBindingException {
+        Translation result = multiplicativeExpression();
+        while ("+".equals(peek()) || "-".equals(peek())) {
+            result = arithmetic(result, next(), multiplicativeExpression());
+        }
+        return result;
+    }
+
+    private Translation multiplicativeExpression() throws UnsupportedBindingException {
+        Translation result = powExpression();
+        while ("*".equals(peek()) || "/".equals(peek())) {
+            result = arithmetic(result, next(), powExpression());
+        }
+        return result;
+    }
+
+    private Translation powExpression() throws UnsupportedBindingException {
+        Translation result = unaryExpression();
+        if ("^".equals(peek())) {
+            result = arithmetic(result, next(), powExpression());
+        }
+        return result;
+    }
+
+    private Translation unaryExpression() throws UnsupportedBindingException {
+        String token = next();
+        if (token == null) {
+            throw new UnsupportedBindingException("unexpected end of expression");
+        } else if ("(".equals(token)) {
+            Translation result = additiveExpression();
+            expect(")");
+            return result;
+        } else if (token.startsWith("'")) {
+            throw new UnsupportedBindingException("strings are not supported");
+        } else if (Character.isDigit(token.charAt(0))) {
+            return literal(token);
+        } else if (Character.isLetter(token.charAt(0))) {
+            if (".".equals(peek()) || "[".equals(peek())) {
+                throw new UnsupportedBindingException("properties and items of " + token + " are not supported");
+            }
+            Kind kind = fields.get(token);
+            if (kind == null) {
+                throw new UnsupportedBindingException("cannot refer to " + token);
+            }
+            String java = target + "." + token;
+            return new Translation(kind, kind == Kind.INTEGER ? "((int) " + java + ")" : java, null, true);
+        } else {
+            throw new UnsupportedBindingException("unexpected \"" + token + "\"");
+        }
+    }
+
+    private Translation literal(String token) throws UnsupportedBindingException {
+        int value;
+        try {
+            if (token.startsWith("0b")) {
+                value = Integer.parseInt(token.substring(2), 2);
+            } else if (token.startsWith("0x")) {
+                if (!token.substring(2).matches("[0-7a-fA-F]+")) {
+                    throw new UnsupportedBindingException("invalid hexadecimal number " + token);
+                }
+                value = Integer.parseInt(token.substring(2), 16);
+            } else {
+                value = Integer.parseInt(token);
+            }
+        } catch (NumberFormatException nfe) {
+            throw new UnsupportedBindingException("invalid number " + token);
+        }
+        return new Translation(Kind.INTEGER, Integer.toString(value), value);
+    }
+
+    private Translation arithmetic(Translation lhs, String operator, Translation rhs)
+            throws UnsupportedBindingException {
+        requireKind(Kind.INTEGER, lhs, operator);
+        requireKind(Kind.INTEGER, rhs, operator);
+        Integer value = null;
+        if (lhs.getValue() != null && rhs.getValue() != null) {
+            int a = lhs.getValue();
+            int b = rhs.getValue();
+            if ("+".equals(operator)) {
+                value = a + b;
+            } else if ("-".equals(operator)) {
+                value = a - b;
+            } else if ("*".equals(operator)) {
+                value = a * b;
+            } else if ("/".equals(operator)) {
+                value = b == 0 ? null : a / b;
+            } else {
+                value = (int) Math.pow(a, b);
+            }
+        }
+        if (value != null) {
+            return new Translation(Kind.INTEGER, value < 0 ? "(" + value + ")" : value.toString(), value);
+        } else if ("^".equals(operator)) {
+            return new Translation(Kind.INTEGER, "((int) java.lang.Math.pow(" + lhs.getJava() + ", " + rhs.getJava()
+                    + "))", null);
+        } else {
+            return new Translation(Kind.INTEGER, "(" + lhs.getJava() + " " + operator + " " + rhs.getJava() + ")",
+                    null);
+        }
+    }
+
+    private static void requireKind(Kind kind, Translation operand, String operator)
+            throws UnsupportedBindingException {
+        if (operand.getKind() != kind) {
+            throw new UnsupportedBindingException("operands of " + operator + " should be of type "
+                    + kind.name().toLowerCase());
+        }
+    }
+
+    /**
+     * Checks whether the operand passed in is a comparison or another boolean operation, the only operands of
+     * <code>&&</code> and <code>||</code> the expression language accepts.
+     */
+    private static void requireCondition(Translation operand, String operator) throws UnsupportedBindingException {
+        requireKind(Kind.BOOLEAN, operand, operator);
+        if (operand.isReference()) {
+            throw new UnsupportedBindingException("operands of " + operator + " should be comparisons");
+        }
+    }
+
+    private String peek() {
+        return pos < tokens.size() ? tokens.get(pos) : null;
+    }
+
+    private String next() {
+        return pos < tokens.size() ? tokens.get(pos++) : null;
+    }
+
+    private void expect(String token) throws UnsupportedBindingException {
+        String actual = next();
+        if (!token.equals(actual)) {
+            throw new UnsupportedBindingException("expected \"" + token + "\" instead of "
+                    + (actual == null ? "end of expression" : "\"" + actual + "\""));
+        }
+    }
+
+    /**
+     * Splits an expression into tokens: identifiers, numbers, strings and operators.
+     *
+     * @param expr The expression.
+     * @return The tokens.
+     * @throws UnsupportedBindingException If the expression contains characters not recognized.
+     */
+    static List<String> tokenize(String expr) throws UnsupportedBindingException {
+        List<String> result = new ArrayList<String>();
+        int i = 0;
+        while (i < expr.length()) {
+            char c = expr.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            } else if (Character.isLetter(c)) {
+                while (i < expr.length() && (Character.isLetterOrDigit(expr.charAt(i)) || expr.charAt(i) == '_')) {
+                    i++;
+                }
+            } else if (Character.isDigit(c)) {
+                while (i < expr.length() && Character.isLetterOrDigit(expr.charAt(i))) {
+                    i++;
+                }
+            } else if (c == '\'') {
+                i = expr.indexOf('\'', i + 1);
+                if (i < 0) {
+                    throw new UnsupportedBindingException("unterminated string in \"" + expr + "\"");
+                }
+                i++;
+            } else if (i + 1 < expr.length() && isTwoCharacterOperator(expr.substring(i, i + 2))) {
+                i += 2;
+            } else if ("<>+-*/^()[].".indexOf(c) >= 0) {
+                i++;
+            } else {
+                throw new UnsupportedBindingException("unexpected '" + c + "' in \"" + expr + "\"");
+            }
+            result.add(expr.substring(start, i));
+        }
+        return result;
+    }
+
+    private static boolean isTwoCharacterOperator(String candidate) {
+        return "<=".equals(candidate) || ">=".equals(candidate) || "==".equals(candidate) || "&&".equals(candidate)
+                || "||".equals(candidate);
+    }
+
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.processor;
+
+import org.codehaus.preon.Codec;
+import org.codehaus.preon.Codecs;
+import org.codehaus.preon.DefaultBuilder;
+import org.codehaus.preon.DefaultCodecFactory;
+import org.codehaus.preon.buffer.DefaultBitBuffer;
+import org.codehaus.preon.channel.ByteBufferBitChannel;
+import org.codehaus.preon.codec.GeneratedCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class CodecProcessorTest {
+
+    private static final String SOURCE = "package sample;\n"
+            + "import org.codehaus.preon.annotation.*;\n"
+            + "import org.codehaus.preon.buffer.ByteOrder;\n"
+            + "public class Packet {\n"
+            + "    @BoundNumber(size = \"4\", byteOrder = ByteOrder.BigEndian) int version;\n"
+            + "    @Bound boolean extended;\n"
+            + "    @BoundNumber(size = \"3\", byteOrder = ByteOrder.BigEndian) byte kind;\n"
+            + "    @If(\"version > 2 && kind == 2\")\n"
+            + "    @BoundNumber(size = \"version * 4\", byteOrder = ByteOrder.BigEndian) long payload;\n"
+            + "    @BoundNumber(size = \"4\", byteOrder = ByteOrder.BigEndian) int padding;\n"
+            + "    @BoundNumber(size = \"8\", match = \"0x7f\") Short magic;\n"
+            + "    int unbound;\n"
+            + "    public static class Fixed {\n"
+            + "        @Bound byte a;\n"
+            + "        @BoundNumber(size = \"16\", byteOrder = ByteOrder.BigEndian) int b;\n"
+            + "    }\n"
+            + "    public static class Flagged {\n"
+            + "        @Bound boolean present;\n"
+            + "        @If(\"present\") @BoundNumber(size = \"7\") int value;\n"
+            + "    }\n"
+            + "    public static class Private {\n"
+            + "        @Bound private byte a;\n"
+            + "    }\n"
+            + "    public static class Initialized {\n"
+            + "        @Bound byte a;\n"
+            + "        int doubled;\n"
+            + "        @Init public void init() { doubled = a * 2; }\n"
+            + "    }\n"
+            + "}\n";
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("preon", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        delete(directory);
+    }
+
+    @Test
+    public void shouldGenerateCodecs() throws Exception {
+        ClassLoader loader = compile();
+        Class<?> type = loader.loadClass("sample.Packet");
+        Codec<?> codec = GeneratedCodec.forType(type);
+        assertNotNull(codec);
+        assertNull(codec.getSize());
+        // 0011 1 010 | 1111 1111 | 1111 0000 | 0111 1111
+        byte[] data = {0x3a, (byte) 0xff, (byte) 0xf0, 0x7f};
+        Object value = codec.decode(new DefaultBitBuffer(ByteBuffer.wrap(data)), null, new DefaultBuilder());
+        assertEquals(3, get(value, "version"));
+        assertEquals(true, get(value, "extended"));
+        assertEquals((byte) 2, get(value, "kind"));
+        assertEquals(0xfffL, get(value, "payload"));
+        assertEquals((short) 0x7f, get(value, "magic"));
+        assertArrayEquals(data, encode(codec, value));
+
+        Class<?> fixed = loader.loadClass("sample.Packet$Fixed");
+        Codec<?> fixedCodec = GeneratedCodec.forType(fixed);
+        assertNotNull(fixedCodec);
+        assertEquals(Integer.valueOf(24), fixedCodec.getSize().eval(null));
+    }
+
+    @Test
+    public void shouldLeaveUnsupportedTypesToReflection() throws Exception {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        ClassLoader loader = compile(diagnostics);
+        assertNull(GeneratedCodec.forType(loader.loadClass("sample.Packet$Private")));
+        boolean noted = false;
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            noted |= diagnostic.getKind() == Diagnostic.Kind.NOTE
+                    && diagnostic.getMessage(null).contains("sample.Packet.Private");
+        }
+        assertTrue(noted);
+        assertFalse(new File(directory, "sample/Packet$Private$PreonCodec.class").exists());
+    }
+
+    @Test
+    public void shouldLeaveTypesWithInitMethodsToReflection() throws Exception {
+        ClassLoader loader = compile();
+        Class<?> type = loader.loadClass("sample.Packet$Initialized");
+        assertNull(GeneratedCodec.forType(type));
+        Object value = Codecs.decode(Codecs.create(type), new byte[]{3});
+        assertEquals((byte) 3, get(value, "a"));
+        assertEquals(6, get(value, "doubled"));
+    }
+
+    @Test
+    public void shouldDecodeLikeReflectiveCodecs() throws Exception {
+        ClassLoader loader = compile();
+        Class<?> packet = loader.loadClass("sample.Packet");
+        // With and without the payload
+        assertDecodedAlike(packet, new byte[]{0x3a, (byte) 0xff, (byte) 0xf0, 0x7f});
+        assertDecodedAlike(packet, new byte[]{0x39, (byte) 0xf0, 0x07});
+        assertDecodedAlike(loader.loadClass("sample.Packet$Fixed"), new byte[]{(byte) 0x81, 0x12, 0x34});
+        Class<?> flagged = loader.loadClass("sample.Packet$Flagged");
+        assertDecodedAlike(flagged, new byte[]{(byte) 0xff});
+        assertDecodedAlike(flagged, new byte[]{0x00});
+    }
+
+    /**
+     * Decodes the data passed in using the generated codec, as well as the codec constructed by reflecting on the
+     * type, and asserts that both decode and encode all fields in the same way.
+     */
+    private static void assertDecodedAlike(Class<?> type, byte[] data) throws Exception {
+        Codec<?> generated = GeneratedCodec.forType(type);
+        assertNotNull(generated);
+        Codec<?> reflective = new DefaultCodecFactory().create(type);
+        assertFalse(reflective instanceof GeneratedCodec);
+        Object expected = reflective.decode(new DefaultBitBuffer(ByteBuffer.wrap(data)), null, new DefaultBuilder());
+        Object actual = generated.decode(new DefaultBitBuffer(ByteBuffer.wrap(data)), null, new DefaultBuilder());
+        for (Field field : type.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                assertEquals(field.getName(), get(expected, field.getName()), get(actual, field.getName()));
+            }
+        }
+        assertArrayEquals(encode(reflective, expected), encode(generated, actual));
+    }
+
+    private ClassLoader compile() throws IOException {
+        return compile(new DiagnosticCollector<JavaFileObject>());
+    }
+
+    private ClassLoader compile(DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+        File source = new File(directory, "sample/Packet.java");
+        assertTrue(source.getParentFile().mkdirs());
+        FileWriter writer = new FileWriter(source);
+        try {
+            writer.write(SOURCE);
+        } finally {
+            writer.close();
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", directory.getPath(),
+                            "-s", directory.getPath()),
+                    null, fileManager.getJavaFileObjects(source));
+            task.setProcessors(Arrays.asList(new CodecProcessor()));
+            assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        } finally {
+            fileManager.close();
+        }
+        return new URLClassLoader(new URL[]{directory.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] encode(Codec codec, Object value) throws IOException {
+        ByteBufferBitChannel channel = new ByteBufferBitChannel();
+        codec.encode(value, channel, null);
+        ByteBuffer buffer = channel.getByteBuffer();
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+    private static Object get(Object value, String name) throws Exception {
+        Field field = value.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(value);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.processor;
+
+import org.codehaus.preon.processor.ExpressionTranslator.Kind;
+import org.codehaus.preon.processor.ExpressionTranslator.Translation;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ExpressionTranslatorTest {
+
+    private ExpressionTranslator createTranslator() {
+        Map<String, Kind> fields = new HashMap<String, Kind>();
+        fields.put("nrBits", Kind.INTEGER);
+        fields.put("flag", Kind.BOOLEAN);
+        return new ExpressionTranslator("value", fields);
+    }
+
+    @Test
+    public void shouldFoldConstants() throws UnsupportedBindingException {
+        Translation translation = createTranslator().translateInteger("(1 + 2) * 0x10 - 0b11 ^ 2 / 3");
+        assertEquals(Integer.valueOf(45), translation.getValue());
+        assertEquals("45", translation.getJava());
+    }
+
+    @Test
+    public void shouldTranslateReferences() throws UnsupportedBindingException {
+        Translation translation = createTranslator().translateInteger("nrBits * 8 + 2 ^ nrBits");
+        assertEquals(null, translation.getValue());
+        assertEquals("((((int) value.nrBits) * 8) + ((int) java.lang.Math.pow(2, ((int) value.nrBits))))",
+                translation.getJava());
+    }
+
+    @Test
+    public void shouldGiveBooleanOperatorsEqualPrecedence() throws UnsupportedBindingException {
+        Translation translation = createTranslator().translateBoolean("nrBits < 1 || nrBits > 3 && nrBits <= 8");
+        assertEquals("(((((int) value.nrBits) < 1) || (((int) value.nrBits) > 3)) && (((int) value.nrBits) <= 8))",
+                translation.getJava());
+    }
+
+    @Test
+    public void shouldAcceptParenthesizedConditions() throws UnsupportedBindingException {
+        Translation translation = createTranslator().translateBoolean("(nrBits == 1) || ((nrBits > 8))");
+        assertEquals("((((int) value.nrBits) == 1) || (((int) value.nrBits) > 8))", translation.getJava());
+    }
+
+    @Test
+    public void shouldAcceptBooleanFieldsAsConditions() throws UnsupportedBindingException {
+        assertEquals("value.flag", createTranslator().translateBoolean("flag").getJava());
+        assertEquals("value.flag", createTranslator().translateBoolean("((flag))").getJava());
+    }
+
+    @Test
+    public void shouldRejectWhatCannotBeTranslated() {
+        String[] expressions = {"outer.nrBits", "items[0]", "unknown", "'text'", "nrBits +", "flag + 1", "nrBits",
+                "0x8f", "nrBits != 2", "flag || nrBits > 3", "nrBits > 3 && (flag)"};
+        for (String expression : expressions) {
+            try {
+                createTranslator().translateBoolean(expression);
+                fail("Expected UnsupportedBindingException for " + expression);
+            } catch (UnsupportedBindingException ube) {
+                // What we expect
+            }
+        }
+    }
+
+}
@@ -34,7 +34,9 @@ package org.codehaus.preon.sample.mpeg;
 
 import org.codehaus.preon.annotation.Bound;
 import org.codehaus.preon.annotation.BoundNumber;
+import org.codehaus.preon.annotation.Resync;
 
+@Resync(pattern = 0x7FF, size = 11)
 public class MpegHeader {
 
     @BoundNumber(size = "11", match = "0b11111111111")
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.sample.rtp;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.codehaus.preon.Codec;
+import org.codehaus.preon.Codecs;
+import org.codehaus.preon.DecodingException;
+import org.codehaus.preon.DefaultBuilder;
+import org.codehaus.preon.buffer.BitBuffer;
+import org.codehaus.preon.buffer.DefaultBitBuffer;
+
+/**
+ * A simple benchmark, decoding a buffer of random bytes as RTP headers, one after the other. Since the headers are
+ * small, the time taken mostly depends on the overhead of binding the values decoded to the fields of every header.
+ * The bytes allocated per header are reported as well, since the fields are all primitives, and should be set without
+ * boxing the values decoded. Not a test case; run it using its {@link #main(String[])} method, optionally passing the
+ * number of headers. Requires a JVM supporting {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ *
+ * @author Wilfred Springer
+ */
+public class RtpHeaderBenchmark {
+
+    /**
+     * The maximum size of a header, in bytes: the fixed part, followed by up to 15 CSRC identifiers.
+     */
+    private static final int MAX_HEADER_SIZE = 12 + 15 * 4;
+
+    public static void main(String[] args) throws DecodingException {
+        int headers = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        byte[] data = new byte[headers * MAX_HEADER_SIZE];
+        new Random(0).nextBytes(data);
+        Codec<RtpHeader> codec = Codecs.create(RtpHeader.class);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < 5; round++) {
+            BitBuffer buffer = new DefaultBitBuffer(ByteBuffer.wrap(data));
+            long checksum = 0;
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (int i = 0; i < headers; i++) {
+                RtpHeader header = codec.decode(buffer, null, new DefaultBuilder());
+                checksum += header.sequenceNumber + header.csrcs.length;
+            }
+            long end = System.nanoTime();
+            allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+            System.out.println(headers + " headers decoded in " + (end - start) / 1000000 + " ms, "
+                    + (end - start) / headers + " ns and " + allocated / headers + " bytes allocated per header"
+                    + " (checksum " + checksum + ")");
+        }
+    }
+
+}
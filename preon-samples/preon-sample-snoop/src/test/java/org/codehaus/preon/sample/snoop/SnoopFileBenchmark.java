@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2009-2010 Wilfred Springer
+ *
+ * This file is part of Preon.
+ *
+ * Preon is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2, or (at your option) any later version.
+ *
+ * Preon is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Preon; see the file COPYING. If not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is making a
+ * combined work based on this library. Thus, the terms and conditions of the
+ * GNU General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent modules, and
+ * to copy and distribute the resulting executable under terms of your choice,
+ * provided that you also meet, for each linked independent module, the terms
+ * and conditions of the license of that module. An independent module is a
+ * module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but
+ * you are not obligated to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package org.codehaus.preon.sample.snoop;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.codehaus.preon.Codec;
+import org.codehaus.preon.Codecs;
+import org.codehaus.preon.DecodingException;
+
+/**
+ * A simple benchmark, decoding a snoop capture of random ethernet packets, and walking through all of its records. The
+ * list of records has no size, so the time taken mostly depends on the way the end of the list is found. The bytes
+ * allocated per record are reported as well. Not a test case; run it using its {@link #main(String[])} method,
+ * optionally passing the number of records. Requires a JVM supporting
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ *
+ * @author Wilfred Springer
+ */
+public class SnoopFileBenchmark {
+
+    public static void main(String[] args) throws IOException, DecodingException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        File file = File.createTempFile("preon", ".snoop");
+        file.deleteOnExit();
+        write(file, records);
+        Codec<SnoopFile> codec = Codecs.create(SnoopFile.class);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < 5; round++) {
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            SnoopFile snoopFile = Codecs.decode(codec, file);
+            long decoded = System.nanoTime();
+            long checksum = 0;
+            for (int i = 0; i < snoopFile.getRecords().size(); i++) {
+                checksum += snoopFile.getRecords().get(i).getIncludedLength();
+            }
+            long end = System.nanoTime();
+            allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+            System.out.println(snoopFile.getRecords().size() + " records decoded in " + (decoded - start) / 1000000
+                    + " ms, accessed by index in " + (end - decoded) / 1000000 + " ms, "
+                    + allocated / snoopFile.getRecords().size() + " bytes allocated per record (checksum " + checksum
+                    + ")");
+        }
+    }
+
+    private static void write(File file, int records) throws IOException {
+        Random random = new Random(0);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            out.write("snoop\0\0\0".getBytes("US-ASCII"));
+            out.writeInt(2);
+            out.writeInt(SnoopFile.DatalinkType.ETHERNET.ordinal());
+            byte[] packet = new byte[1600];
+            for (int i = 0; i < records; i++) {
+                int length = 60 + random.nextInt(1454);
+                int recordLength = 24 + ((length + 3) & ~3);
+                out.writeInt(length);
+                out.writeInt(length);
+                out.writeInt(recordLength);
+                out.writeInt(0);
+                out.writeInt(i);
+                out.writeInt(0);
+                random.nextBytes(packet);
+                out.write(packet, 0, recordLength - 24);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+}